@@ -40,6 +40,21 @@ public interface Cache {
      */
     <K, V> boolean putIfAbsent(K key, V value);
 
+    /**
+     * 当前的值 与 oldValue 相等时 替换为 newValue 返回true，否则 不替换 返回false，需要保证是原子化的操作。
+     * 默认 不支持 原子替换，总是返回 false，调用者 应将其 视为 缓存被并发修改
+     *
+     * @param key      The key under which the item is stored
+     * @param oldValue The item expected to be stored under the key
+     * @param newValue The item to replace it with
+     * @param <K>      The type of key used
+     * @param <V>      The type of value stored
+     * @return <code>true</code> if the value was replaced, <code>false</code> otherwise.
+     */
+    default <K, V> boolean replace(K key, V oldValue, V newValue) {
+        return false;
+    }
+
     /**
      * 移除缓存，如果不存在则不做实际操作
      *
@@ -0,0 +1,92 @@
+package org.sluckframework.cache;
+
+import java.io.Serializable;
+
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.domain.identifier.Identifier;
+
+/**
+ * 缓存失效通知，表示 某个聚合 已在某个节点 提交到给定版本，缓存中 版本更低的实例 已过期。
+ * 通知 带有 发布者的标示，发布者 收到 自己发布的通知时 应忽略
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class CacheInvalidation implements Serializable {
+
+    private static final long serialVersionUID = -3859226510433196285L;
+
+    private final String originId;
+    private final String aggregateType;
+    private final Identifier<?> aggregateIdentifier;
+    private final long version;
+
+    /**
+     * 使用 发布者的标示、聚合类型、标示符 和 提交后的版本 初始化
+     *
+     * @param originId            The identifier of the publisher, e.g. the node or the cache owner
+     * @param aggregateType       The type identifier of the aggregate
+     * @param aggregateIdentifier The identifier of the aggregate
+     * @param version             The version of the aggregate after the commit
+     */
+    public CacheInvalidation(String originId, String aggregateType, Identifier<?> aggregateIdentifier, long version) {
+        Assert.notNull(originId, "originId may not be null");
+        Assert.notNull(aggregateType, "aggregateType may not be null");
+        Assert.notNull(aggregateIdentifier, "aggregateIdentifier may not be null");
+        this.originId = originId;
+        this.aggregateType = aggregateType;
+        this.aggregateIdentifier = aggregateIdentifier;
+        this.version = version;
+    }
+
+    /**
+     * 返回 发布者的标示
+     *
+     * @return the identifier of the publisher of this invalidation
+     */
+    public String getOriginId() {
+        return originId;
+    }
+
+    /**
+     * 返回 聚合类型
+     *
+     * @return the type identifier of the aggregate
+     */
+    public String getAggregateType() {
+        return aggregateType;
+    }
+
+    /**
+     * 返回 聚合标示符
+     *
+     * @return the identifier of the aggregate
+     */
+    public Identifier<?> getAggregateIdentifier() {
+        return aggregateIdentifier;
+    }
+
+    /**
+     * 返回 提交后的版本
+     *
+     * @return the version of the aggregate after the commit
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 给定版本的 缓存实例 是否已过期
+     *
+     * @param cachedVersion the version of the cached instance, may be <code>null</code>
+     * @return <code>true</code> if the cached instance is older than the committed version
+     */
+    public boolean isNewerThan(Long cachedVersion) {
+        return cachedVersion == null || cachedVersion < version;
+    }
+
+    @Override
+    public String toString() {
+        return aggregateType + "/" + aggregateIdentifier + "@" + version + " from " + originId;
+    }
+}
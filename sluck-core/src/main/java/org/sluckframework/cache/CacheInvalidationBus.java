@@ -0,0 +1,32 @@
+package org.sluckframework.cache;
+
+/**
+ * 缓存失效通知 的通道，多个节点 各自缓存聚合时，提交的节点 发布 (类型, 标示符, 版本)，其他节点 收到后 移除过期的实例。
+ * 通知 在提交后 异步到达，接收前的 短暂窗口内 节点仍可能 读到过期实例，此时 追加事件 会因 序列号重复 失败
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface CacheInvalidationBus {
+
+    /**
+     * 发布 失效通知
+     *
+     * @param invalidation the invalidation to publish
+     */
+    void publish(CacheInvalidation invalidation);
+
+    /**
+     * 订阅 失效通知
+     *
+     * @param listener the listener to notify of invalidations
+     */
+    void subscribe(CacheInvalidationListener listener);
+
+    /**
+     * 取消订阅
+     *
+     * @param listener the listener to remove
+     */
+    void unsubscribe(CacheInvalidationListener listener);
+}
@@ -0,0 +1,17 @@
+package org.sluckframework.cache;
+
+/**
+ * 缓存失效通知 的监听器
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface CacheInvalidationListener {
+
+    /**
+     * 处理 失效通知，节点 也会收到 自己发布的通知，实现应 只移除 版本更低的缓存实例
+     *
+     * @param invalidation the invalidation that was published
+     */
+    void onInvalidation(CacheInvalidation invalidation);
+}
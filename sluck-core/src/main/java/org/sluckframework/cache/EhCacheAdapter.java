@@ -42,6 +42,11 @@ public class EhCacheAdapter extends AbstractCacheAdapter<CacheEventListener> {
         return ehCache.putIfAbsent(new Element(key, value)) == null;
     }
 
+    @Override
+    public <K, V> boolean replace(K key, V oldValue, V newValue) {
+        return ehCache.replace(new Element(key, oldValue), new Element(key, newValue));
+    }
+
     @Override
     public <K> boolean remove(K key) {
         return ehCache.remove(key);
@@ -0,0 +1,19 @@
+package org.sluckframework.cache;
+
+/**
+ * 计算 缓存条目的权重，{@link WindowTinyLfuCache} 按权重之和 限制容量
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface EntryWeigher {
+
+    /**
+     * 返回 条目的权重，必须大于 0，同一个值 在缓存期间 权重不应变化
+     *
+     * @param key   The key of the entry
+     * @param value The value of the entry
+     * @return the weight of the entry
+     */
+    int weigh(Object key, Object value);
+}
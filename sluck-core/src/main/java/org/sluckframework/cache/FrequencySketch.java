@@ -0,0 +1,111 @@
+package org.sluckframework.cache;
+
+/**
+ * 访问频率的 近似统计(count-min sketch)，每个 key 使用 4 个 4 位计数器，估计值 为其中的最小值，最大为 15。
+ * 计数 达到 样本数量 后 所有计数器 减半，使 频率 随时间衰减。
+ * <p/>
+ * 非线程安全，由 {@link WindowTinyLfuCache} 在持有淘汰锁时 访问
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+final class FrequencySketch {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAXIMUM_TABLE_SIZE = 1 << 24;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * 按 预计的 缓存条目数 初始化
+     *
+     * @param expectedEntries The expected number of entries in the cache
+     */
+    FrequencySketch(long expectedEntries) {
+        this.table = new long[0];
+        ensureCapacity(expectedEntries);
+    }
+
+    /**
+     * 条目数 超过 计数器表 的大小时 扩大计数器表，已有的计数 被丢弃
+     *
+     * @param expectedEntries The number of entries the sketch should be able to tell apart
+     */
+    void ensureCapacity(long expectedEntries) {
+        if (table.length > 0 && (expectedEntries <= table.length || table.length >= MAXIMUM_TABLE_SIZE)) {
+            return;
+        }
+        int length = 16;
+        while (length < expectedEntries && length < MAXIMUM_TABLE_SIZE) {
+            length <<= 1;
+        }
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = length * 10;
+        this.size = 0;
+    }
+
+    /**
+     * 返回 key 的 估计访问频率
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 增加 key 的访问频率
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = size >>> 1;
+    }
+
+    private int indexOf(int hash, int depth) {
+        long h = (hash + SEED[depth]) * SEED[depth];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,41 @@
+package org.sluckframework.cache;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 同一 jvm 内的 失效通知通道，发布时 在调用线程中 通知所有监听器，用于 单进程部署 和 测试
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class LoopbackCacheInvalidationBus implements CacheInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackCacheInvalidationBus.class);
+
+    private final Set<CacheInvalidationListener> listeners = new CopyOnWriteArraySet<CacheInvalidationListener>();
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        for (CacheInvalidationListener listener : listeners) {
+            try {
+                listener.onInvalidation(invalidation);
+            } catch (RuntimeException e) {
+                logger.warn("Cache invalidation listener failed to process {}", invalidation, e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(CacheInvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(CacheInvalidationListener listener) {
+        listeners.remove(listener);
+    }
+}
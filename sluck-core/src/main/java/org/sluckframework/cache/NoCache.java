@@ -29,6 +29,11 @@ public class NoCache implements Cache{
         return true;
     }
 
+    @Override
+    public boolean replace(Object key, Object oldValue, Object newValue) {
+        return false;
+    }
+
     @Override
     public boolean remove(Object key) {
         return false;
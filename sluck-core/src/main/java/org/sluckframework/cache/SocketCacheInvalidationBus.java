@@ -0,0 +1,200 @@
+package org.sluckframework.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.exception.SluckConfigurationException;
+import org.sluckframework.common.thread.SluckThreadFactory;
+import org.sluckframework.domain.identifier.Identifier;
+
+/**
+ * 基于 udp 的 失效通知通道，每个节点 绑定一个本地端口，发布时 向所有对端 发送一个数据报，后台线程 接收对端的通知。
+ * 通知 使用 java 序列化，接收时 只允许 通知本身、聚合标示符 和 java.lang 中的类型。
+ * <p/>
+ * udp 不保证送达，丢失的通知 使对端 在下一次提交前 继续使用过期实例，过期实例的 提交 会因 序列号重复 被事件仓储拒绝，
+ * 回滚时 缓存实例 被移除，因此 丢失 只影响性能 不影响正确性
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class SocketCacheInvalidationBus implements CacheInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketCacheInvalidationBus.class);
+    private static final ThreadGroup RECEIVER_THREAD_GROUP = new ThreadGroup("SocketCacheInvalidationBus");
+    private static final int MAX_PACKET_SIZE = 65507;
+
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers;
+    private final Set<CacheInvalidationListener> listeners = new CopyOnWriteArraySet<CacheInvalidationListener>();
+    private final Thread receiverThread;
+    private volatile boolean running = true;
+
+    /**
+     * 绑定 本机回环地址的 给定端口，向 本机的 对端端口 发布
+     *
+     * @param port      The local port to receive invalidations on
+     * @param peerPorts The local ports of the other nodes
+     */
+    public SocketCacheInvalidationBus(int port, int... peerPorts) {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), loopbackAddresses(peerPorts));
+    }
+
+    /**
+     * 绑定 给定地址，向 给定的对端 发布
+     *
+     * @param bindAddress The address to receive invalidations on
+     * @param peers       The addresses of the other nodes
+     */
+    public SocketCacheInvalidationBus(InetSocketAddress bindAddress, Collection<InetSocketAddress> peers) {
+        Assert.notNull(bindAddress, "bindAddress may not be null");
+        Assert.notNull(peers, "peers may not be null");
+        this.peers = new ArrayList<InetSocketAddress>(peers);
+        try {
+            this.socket = new DatagramSocket(bindAddress);
+        } catch (SocketException e) {
+            throw new SluckConfigurationException("Unable to bind the cache invalidation socket to " + bindAddress,
+                                                  e);
+        }
+        this.receiverThread = new SluckThreadFactory(RECEIVER_THREAD_GROUP).newThread(new Receiver());
+        this.receiverThread.start();
+    }
+
+    private static List<InetSocketAddress> loopbackAddresses(int... ports) {
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(ports.length);
+        for (int port : ports) {
+            addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        }
+        return addresses;
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        byte[] data;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(invalidation);
+            out.close();
+            data = bytes.toByteArray();
+        } catch (IOException e) {
+            logger.warn("Unable to serialize cache invalidation {}", invalidation, e);
+            return;
+        }
+        for (InetSocketAddress peer : peers) {
+            try {
+                socket.send(new DatagramPacket(data, data.length, peer));
+            } catch (IOException e) {
+                logger.warn("Unable to send cache invalidation {} to {}", invalidation, peer, e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(CacheInvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(CacheInvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 关闭 socket 并等待 接收线程 结束
+     */
+    public void shutDown() {
+        running = false;
+        socket.close();
+        try {
+            receiverThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(CacheInvalidation invalidation) {
+        for (CacheInvalidationListener listener : listeners) {
+            try {
+                listener.onInvalidation(invalidation);
+            } catch (RuntimeException e) {
+                logger.warn("Cache invalidation listener failed to process {}", invalidation, e);
+            }
+        }
+    }
+
+    private final class Receiver implements Runnable {
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[MAX_PACKET_SIZE];
+            while (running) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(packet);
+                } catch (IOException e) {
+                    if (running) {
+                        logger.warn("Failed to receive a cache invalidation", e);
+                    }
+                    continue;
+                }
+                // a bad datagram must never end the loop, the node would silently stop invalidating
+                try {
+                    ObjectInputStream in = new InvalidationInputStream(
+                            new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+                    Object received = in.readObject();
+                    if (received instanceof CacheInvalidation) {
+                        dispatch((CacheInvalidation) received);
+                    } else {
+                        logger.warn("Ignoring datagram from {} that is not a cache invalidation: {}",
+                                    packet.getSocketAddress(), received == null ? null : received.getClass());
+                    }
+                } catch (IOException e) {
+                    logger.warn("Ignoring malformed cache invalidation from {}", packet.getSocketAddress(), e);
+                } catch (ClassNotFoundException e) {
+                    logger.warn("Ignoring cache invalidation of unknown type from {}", packet.getSocketAddress(), e);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to process a cache invalidation from {}", packet.getSocketAddress(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 只允许 反序列化 通知本身、聚合标示符 和 java.lang 中的类型
+     */
+    private static final class InvalidationInputStream extends ObjectInputStream {
+
+        private InvalidationInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> type = super.resolveClass(desc);
+            if (type.isPrimitive() || type.getName().startsWith("java.lang.")
+                    || CacheInvalidation.class.equals(type) || Identifier.class.isAssignableFrom(type)) {
+                return type;
+            }
+            throw new InvalidClassException(type.getName(), "Not allowed in a cache invalidation");
+        }
+    }
+}
@@ -79,6 +79,25 @@ public class WeakReferenceCache implements Cache{
         return false;
     }
 
+    @Override
+    public <K, V> boolean replace(K key, V oldValue, V newValue) {
+        if (newValue == null) {
+            throw new IllegalArgumentException("Null values not supported");
+        }
+        purgeItems();
+        Entry current = cache.get(key);
+        if (current == null || oldValue == null || !oldValue.equals(current.get())) {
+            return false;
+        }
+        if (cache.replace(key, current, new Entry(key, newValue))) {
+            for (EntryListener adapter : adapters) {
+                adapter.onEntryUpdated(key, newValue);
+            }
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public <K> boolean remove(K key) {
         if (cache.remove(key) != null) {
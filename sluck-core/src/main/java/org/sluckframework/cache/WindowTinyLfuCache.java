@@ -0,0 +1,466 @@
+package org.sluckframework.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.monitoring.MonitorRegistry;
+
+/**
+ * 有容量上限的 缓存，使用 W-TinyLFU 淘汰策略：新条目 先进入 占容量 1% 的 LRU 窗口，离开窗口时 与 主区域中
+ * 最久未访问的条目 比较 访问频率(由 {@link FrequencySketch} 估计)，频率更高者 留下。主区域 分为 试用区 和 保护区(80%)，
+ * 试用区中 再次被访问的条目 进入保护区。只被访问一次的条目(如 事件重建 时 依次加载的聚合) 无法挤出 经常访问的条目。
+ * <p/>
+ * 读取 不加锁，只在 ConcurrentHashMap 中查找，并将 访问记录 放入 按线程分段的 有损缓冲区，缓冲区 满时 或 写入时
+ * 在淘汰锁下 批量应用到 淘汰策略。写入 和 删除 持有淘汰锁。默认 每个条目 权重为 1，可以通过 {@link EntryWeigher}
+ * 按 条目大小 限制容量。被淘汰的条目 通过 {@link EntryListener#onEntryExpired(Object)} 通知
+ * <p/>
+ * 频率统计 按 条目数 而不是 权重 分配，条目数 超过 预计条目数 时 自动扩大。统计信息 默认注册为 MXBean，
+ * 不再使用的缓存 应调用 {@link #shutdown()} 注销
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class WindowTinyLfuCache implements Cache {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final EntryWeigher SINGLETON_WEIGHER = new EntryWeigher() {
+        @Override
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    };
+
+    private final ConcurrentMap<Object, Node> data = new ConcurrentHashMap<Object, Node>();
+    private final Set<EntryListener> listeners = new CopyOnWriteArraySet<EntryListener>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer[] readBuffers;
+    private final EntryWeigher weigher;
+    private final FrequencySketch sketch;
+    private final WindowTinyLfuCacheStatistics statistics;
+    private final boolean monitoringBeanRegistered;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private final AccessOrderDeque window = new AccessOrderDeque();
+    private final AccessOrderDeque probation = new AccessOrderDeque();
+    private final AccessOrderDeque protectedQueue = new AccessOrderDeque();
+    private long weightedSize;
+    private long windowWeight;
+    private long protectedWeight;
+
+    /**
+     * 使用 最大条目数 初始化
+     *
+     * @param maximumSize The maximum number of entries in the cache
+     */
+    public WindowTinyLfuCache(long maximumSize) {
+        this(maximumSize, maximumSize, SINGLETON_WEIGHER, true);
+    }
+
+    /**
+     * 使用 最大权重 和 权重计算 初始化，频率统计 随 条目数 扩大
+     *
+     * @param maximumWeight The maximum total weight of the entries in the cache
+     * @param weigher       The weigher calculating the weight of each entry
+     */
+    public WindowTinyLfuCache(long maximumWeight, EntryWeigher weigher) {
+        this(maximumWeight, 0, weigher, true);
+    }
+
+    /**
+     * 使用指定属性初始化
+     *
+     * @param maximumWeight          The maximum total weight of the entries in the cache
+     * @param expectedEntries        The expected number of entries, used to size the frequency sketch
+     * @param weigher                The weigher calculating the weight of each entry
+     * @param registerMonitoringBean Whether to register the statistics with the {@link MonitorRegistry}
+     */
+    public WindowTinyLfuCache(long maximumWeight, long expectedEntries, EntryWeigher weigher,
+                              boolean registerMonitoringBean) {
+        Assert.isTrue(maximumWeight > 0, "maximumWeight must be positive");
+        Assert.isTrue(expectedEntries >= 0, "expectedEntries may not be negative");
+        Assert.notNull(weigher, "weigher may not be null");
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.protectedMaximum = (maximumWeight - windowMaximum) * 80 / 100;
+        this.sketch = new FrequencySketch(expectedEntries);
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors()) {
+            stripes <<= 1;
+        }
+        this.readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+        this.statistics = new WindowTinyLfuCacheStatistics(maximumWeight);
+        this.monitoringBeanRegistered = registerMonitoringBean;
+        if (registerMonitoringBean) {
+            MonitorRegistry.registerMonitoringBean(statistics, WindowTinyLfuCache.class);
+        }
+    }
+
+    /**
+     * 注销 统计信息 的 MXBean，缓存 本身 仍可以使用
+     */
+    public void shutdown() {
+        if (monitoringBeanRegistered) {
+            MonitorRegistry.unregisterMonitoringBean(statistics, WindowTinyLfuCache.class);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V> V get(K key) {
+        Node node = data.get(key);
+        if (node == null) {
+            statistics.recordMiss();
+            return null;
+        }
+        V value = (V) node.value;
+        statistics.recordHit();
+        recordRead(node);
+        for (EntryListener listener : listeners) {
+            listener.onEntryRead(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public <K, V> void put(K key, V value) {
+        doPut(key, value, false, null);
+    }
+
+    @Override
+    public <K, V> boolean putIfAbsent(K key, V value) {
+        return doPut(key, value, true, null);
+    }
+
+    @Override
+    public <K, V> boolean replace(K key, V oldValue, V newValue) {
+        return oldValue != null && doPut(key, newValue, false, oldValue);
+    }
+
+    /**
+     * 保存 value，onlyIfAbsent 为 true 时 只在 不存在时 保存，expectedValue 不为 null 时 只在 当前值与之相等时 替换
+     */
+    private boolean doPut(Object key, Object value, boolean onlyIfAbsent, Object expectedValue) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values not supported");
+        }
+        int weight = weigher.weigh(key, value);
+        Assert.isTrue(weight > 0, "weight must be positive");
+        boolean created;
+        List<Object> evicted;
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            Node existing = data.get(key);
+            if (existing != null && onlyIfAbsent) {
+                return false;
+            }
+            if (expectedValue != null && (existing == null || !expectedValue.equals(existing.value))) {
+                return false;
+            }
+            if (existing != null) {
+                existing.value = value;
+                int delta = weight - existing.weight;
+                existing.weight = weight;
+                weightedSize += delta;
+                if (existing.queue == WINDOW) {
+                    windowWeight += delta;
+                } else if (existing.queue == PROTECTED) {
+                    protectedWeight += delta;
+                }
+                onAccess(existing);
+                created = false;
+            } else {
+                Node node = new Node(key, value, weight);
+                data.put(key, node);
+                window.linkLast(node);
+                windowWeight += weight;
+                weightedSize += weight;
+                sketch.ensureCapacity(data.size());
+                sketch.increment(key);
+                created = true;
+            }
+            evicted = evictEntries();
+            statistics.updateSize(data.size(), weightedSize);
+        } finally {
+            evictionLock.unlock();
+        }
+        for (EntryListener listener : listeners) {
+            if (created) {
+                listener.onEntryCreated(key, value);
+            } else {
+                listener.onEntryUpdated(key, value);
+            }
+        }
+        notifyExpired(evicted);
+        return true;
+    }
+
+    @Override
+    public <K> boolean remove(K key) {
+        evictionLock.lock();
+        try {
+            Node node = data.remove(key);
+            if (node == null) {
+                return false;
+            }
+            unlink(node);
+            statistics.updateSize(data.size(), weightedSize);
+        } finally {
+            evictionLock.unlock();
+        }
+        for (EntryListener listener : listeners) {
+            listener.onEntryRemoved(key);
+        }
+        return true;
+    }
+
+    @Override
+    public <K> boolean containsKey(K key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public void registerCacheEntryListener(EntryListener cacheEntryListener) {
+        listeners.add(cacheEntryListener);
+    }
+
+    @Override
+    public void unregisterCacheEntryListener(EntryListener cacheEntryListener) {
+        listeners.remove(cacheEntryListener);
+    }
+
+    /**
+     * 返回 统计信息
+     *
+     * @return the statistics of this cache
+     */
+    public WindowTinyLfuCacheStatisticsMXBean getStatistics() {
+        return statistics;
+    }
+
+    private void recordRead(Node node) {
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+        if (!buffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drain();
+        }
+    }
+
+    private void onAccess(Node node) {
+        if (!node.alive) {
+            return;
+        }
+        sketch.increment(node.key);
+        if (node.queue == WINDOW) {
+            window.moveToLast(node);
+        } else if (node.queue == PROBATION) {
+            probation.unlink(node);
+            node.queue = PROTECTED;
+            protectedQueue.linkLast(node);
+            protectedWeight += node.weight;
+            while (protectedWeight > protectedMaximum && protectedQueue.head != node) {
+                Node demoted = protectedQueue.head;
+                protectedQueue.unlink(demoted);
+                protectedWeight -= demoted.weight;
+                demoted.queue = PROBATION;
+                probation.linkLast(demoted);
+            }
+        } else {
+            protectedQueue.moveToLast(node);
+        }
+    }
+
+    /**
+     * 将超出窗口容量的条目 移入试用区，然后 在总权重 超出上限时 比较 新移入的条目 与 试用区中 最久未访问的条目，
+     * 淘汰 频率较低者
+     */
+    private List<Object> evictEntries() {
+        Node candidate = null;
+        while (windowWeight > windowMaximum && window.head != null) {
+            Node node = window.head;
+            window.unlink(node);
+            windowWeight -= node.weight;
+            node.queue = PROBATION;
+            probation.linkLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+        List<Object> evicted = Collections.emptyList();
+        while (weightedSize > maximumWeight) {
+            Node victim = probation.head != null ? probation.head
+                    : protectedQueue.head != null ? protectedQueue.head : window.head;
+            Node evict;
+            if (candidate == null) {
+                evict = victim;
+            } else if (candidate == victim) {
+                evict = candidate;
+                candidate = candidate.next;
+            } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evict = victim;
+            } else {
+                evict = candidate;
+                candidate = candidate.next;
+            }
+            if (evicted.isEmpty()) {
+                evicted = new ArrayList<Object>();
+            }
+            data.remove(evict.key, evict);
+            unlink(evict);
+            evicted.add(evict.key);
+            statistics.recordEviction();
+        }
+        return evicted;
+    }
+
+    private void unlink(Node node) {
+        if (node.queue == WINDOW) {
+            window.unlink(node);
+            windowWeight -= node.weight;
+        } else if (node.queue == PROBATION) {
+            probation.unlink(node);
+        } else {
+            protectedQueue.unlink(node);
+            protectedWeight -= node.weight;
+        }
+        weightedSize -= node.weight;
+        node.alive = false;
+    }
+
+    private void notifyExpired(List<Object> evictedKeys) {
+        for (Object key : evictedKeys) {
+            for (EntryListener listener : listeners) {
+                listener.onEntryExpired(key);
+            }
+        }
+    }
+
+    private static final class Node {
+
+        private final Object key;
+        private volatile Object value;
+        private int weight;
+        private int queue = WINDOW;
+        private boolean alive = true;
+        private Node prev;
+        private Node next;
+
+        private Node(Object key, Object value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 按访问顺序 排列的 双向链表，head 为 最久未访问的条目
+     */
+    private static final class AccessOrderDeque {
+
+        private Node head;
+        private Node tail;
+
+        private void linkLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        private void unlink(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        private void moveToLast(Node node) {
+            if (tail != node) {
+                unlink(node);
+                linkLast(node);
+            }
+        }
+    }
+
+    /**
+     * 有损的 访问记录缓冲区，满时 丢弃新的记录，只在持有淘汰锁时 读取
+     */
+    private final class ReadBuffer {
+
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicLong writeCounter = new AtomicLong();
+        private final AtomicReferenceArray<Node> slots = new AtomicReferenceArray<Node>(SIZE);
+        private volatile long readCounter;
+
+        /**
+         * @return <code>false</code> when the buffer is full and should be drained
+         */
+        private boolean offer(Node node) {
+            long writes = writeCounter.get();
+            if (writes - readCounter >= SIZE) {
+                return false;
+            }
+            if (writeCounter.compareAndSet(writes, writes + 1)) {
+                slots.lazySet((int) (writes & MASK), node);
+            }
+            return true;
+        }
+
+        private void drain() {
+            long reads = readCounter;
+            long writes = writeCounter.get();
+            for (; reads < writes; reads++) {
+                int index = (int) (reads & MASK);
+                Node node = slots.get(index);
+                if (node == null) {
+                    break;
+                }
+                slots.lazySet(index, null);
+                onAccess(node);
+            }
+            readCounter = reads;
+        }
+    }
+}
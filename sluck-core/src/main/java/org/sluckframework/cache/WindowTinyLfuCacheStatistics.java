@@ -0,0 +1,79 @@
+package org.sluckframework.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * W-TinyLFU 缓存 的统计信息，读取计数 使用 LongAdder，不会在 并发读取时 竞争同一个计数器
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class WindowTinyLfuCacheStatistics implements WindowTinyLfuCacheStatisticsMXBean {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final long maximumWeight;
+    private volatile long size;
+    private volatile long weightedSize;
+
+    WindowTinyLfuCacheStatistics(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = hitCount.sum();
+        long reads = hits + missCount.sum();
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    @Override
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /*----- end of jmx enabled methods -----*/
+
+    void recordHit() {
+        hitCount.increment();
+    }
+
+    void recordMiss() {
+        missCount.increment();
+    }
+
+    void recordEviction() {
+        evictionCount.increment();
+    }
+
+    void updateSize(long size, long weightedSize) {
+        this.size = size;
+        this.weightedSize = weightedSize;
+    }
+}
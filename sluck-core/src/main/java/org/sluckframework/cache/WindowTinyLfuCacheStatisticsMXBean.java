@@ -0,0 +1,59 @@
+package org.sluckframework.cache;
+
+/**
+ * W-TinyLFU 缓存 的监视
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface WindowTinyLfuCacheStatisticsMXBean {
+
+    /**
+     * 返回 命中次数
+     *
+     * @return the number of reads that found a value
+     */
+    long getHitCount();
+
+    /**
+     * 返回 未命中次数
+     *
+     * @return the number of reads that found no value
+     */
+    long getMissCount();
+
+    /**
+     * 返回 命中率
+     *
+     * @return the ratio of hits to reads, or 0 when nothing has been read
+     */
+    double getHitRatio();
+
+    /**
+     * 返回 因容量 被淘汰的条目数
+     *
+     * @return the number of entries evicted by the size policy
+     */
+    long getEvictionCount();
+
+    /**
+     * 返回 当前条目数
+     *
+     * @return the number of entries in the cache
+     */
+    long getSize();
+
+    /**
+     * 返回 当前权重之和
+     *
+     * @return the total weight of the entries in the cache
+     */
+    long getWeightedSize();
+
+    /**
+     * 返回 最大权重
+     *
+     * @return the maximum total weight of the cache
+     */
+    long getMaximumWeight();
+}
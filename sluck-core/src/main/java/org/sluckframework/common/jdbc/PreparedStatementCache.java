@@ -0,0 +1,233 @@
+package org.sluckframework.common.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.cqrs.unitofwork.CurrentUnitOfWork;
+import org.sluckframework.cqrs.unitofwork.UnitOfWork;
+import org.sluckframework.cqrs.unitofwork.UnitOfWorkListenerAdapter;
+
+/**
+ * PreparedStatement 缓存，根据 连接 和 sql 缓存 statement。返回的 statement 调用 close 时不会真正关闭，
+ * 而是清空参数后 放回缓存供同一连接 再次使用。
+ * <p/>
+ * statement 在传入的 逻辑连接 上创建，连接池 可以跟踪 并在连接归还时 关闭它们，不会被 下一个借出者 使用。
+ * 只在 工作单元 中缓存，工作单元 持有的连接 在 cleanup 时关闭，缓存的 statement 在此之前 关闭并移除；
+ * 工作单元 之外的连接 每次使用后 就会关闭，直接创建 不缓存的 statement，跨连接的复用 交给 连接池 或 驱动 的 statement 缓存。
+ * <p/>
+ * 每个连接最多缓存 maxStatementsPerConnection 个 statement，超出时按 LRU 淘汰 并关闭。
+ * 正在使用中的 statement 不会被重复借出，此时返回一个不缓存的新 statement
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class PreparedStatementCache {
+
+    private static final int DEFAULT_MAX_STATEMENTS_PER_CONNECTION = 32;
+
+    private final int maxStatementsPerConnection;
+    private final ConcurrentMap<Connection, StatementPool> pools = new ConcurrentHashMap<Connection, StatementPool>();
+
+    /**
+     * 使用默认的容量 初始化
+     */
+    public PreparedStatementCache() {
+        this(DEFAULT_MAX_STATEMENTS_PER_CONNECTION);
+    }
+
+    /**
+     * 使用指定的容量 初始化
+     *
+     * @param maxStatementsPerConnection The maximum number of statements to cache per connection
+     */
+    public PreparedStatementCache(int maxStatementsPerConnection) {
+        Assert.isTrue(maxStatementsPerConnection > 0, "maxStatementsPerConnection must be positive");
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    /**
+     * 返回 给定连接上 给定 sql 的 statement，工作单元 中优先使用缓存
+     *
+     * @param connection The connection to prepare the statement on
+     * @param sql        The sql of the statement
+     * @return a prepared statement, which is returned to the cache when closed
+     * @throws SQLException when the statement cannot be prepared
+     */
+    public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        if (!CurrentUnitOfWork.isStarted()) {
+            return connection.prepareStatement(sql);
+        }
+        StatementPool pool = pools.get(connection);
+        if (pool == null) {
+            StatementPool newPool = new StatementPool();
+            pool = pools.putIfAbsent(connection, newPool);
+            if (pool == null) {
+                pool = newPool;
+                CurrentUnitOfWork.get().registerListener(new EvictingUnitOfWorkListener(connection));
+            }
+        }
+        CachedStatement cached;
+        synchronized (pool) {
+            cached = pool.statements.get(sql);
+            if (cached != null && cached.inUse) {
+                cached = null;
+            } else if (cached != null) {
+                cached.inUse = true;
+            }
+        }
+        if (cached != null) {
+            return cached.proxy;
+        }
+        PreparedStatement statement = connection.prepareStatement(sql);
+        synchronized (pool) {
+            if (!pool.evicted && !pool.statements.containsKey(sql)) {
+                cached = new CachedStatement(statement, pool);
+                pool.statements.put(sql, cached);
+                return cached.proxy;
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * 移除并关闭 给定连接 缓存的所有 statement，应在连接真正关闭前调用，工作单元 cleanup 时 会自动调用
+     *
+     * @param connection The connection to evict
+     */
+    public void evict(Connection connection) {
+        StatementPool pool = pools.remove(connection);
+        if (pool == null) {
+            return;
+        }
+        List<CachedStatement> idle = new ArrayList<CachedStatement>();
+        synchronized (pool) {
+            pool.evicted = true;
+            for (CachedStatement statement : pool.statements.values()) {
+                statement.evicted = true;
+                if (!statement.inUse) {
+                    idle.add(statement);
+                }
+            }
+            pool.statements.clear();
+        }
+        for (CachedStatement statement : idle) {
+            JdbcUtils.closeQuietly(statement.delegate);
+        }
+    }
+
+    private void release(CachedStatement statement) {
+        StatementPool pool = statement.pool;
+        synchronized (pool) {
+            if (!statement.inUse) {
+                return;
+            }
+        }
+        boolean reusable;
+        try {
+            statement.delegate.clearParameters();
+            statement.delegate.clearBatch();
+            statement.delegate.setMaxRows(statement.maxRows);
+            statement.delegate.setFetchSize(statement.fetchSize);
+            reusable = true;
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        synchronized (pool) {
+            statement.inUse = false;
+            if (!reusable && !statement.evicted) {
+                statement.evicted = true;
+                pool.statements.values().remove(statement);
+            }
+            reusable = !statement.evicted;
+        }
+        if (!reusable) {
+            JdbcUtils.closeQuietly(statement.delegate);
+        }
+    }
+
+    private final class StatementPool {
+
+        private boolean evicted;
+
+        private final Map<String, CachedStatement> statements =
+                new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                        if (size() > maxStatementsPerConnection) {
+                            CachedStatement statement = eldest.getValue();
+                            statement.evicted = true;
+                            if (!statement.inUse) {
+                                JdbcUtils.closeQuietly(statement.delegate);
+                            }
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+    }
+
+    private final class EvictingUnitOfWorkListener extends UnitOfWorkListenerAdapter {
+
+        private final Connection connection;
+
+        private EvictingUnitOfWorkListener(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onCleanup(UnitOfWork unitOfWork) {
+            evict(connection);
+        }
+    }
+
+    private final class CachedStatement implements InvocationHandler {
+
+        private final PreparedStatement delegate;
+        private final PreparedStatement proxy;
+        private final StatementPool pool;
+        private final int maxRows;
+        private final int fetchSize;
+        private boolean inUse = true;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement delegate, StatementPool pool) throws SQLException {
+            this.delegate = delegate;
+            this.pool = pool;
+            this.maxRows = delegate.getMaxRows();
+            this.fetchSize = delegate.getFetchSize();
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                                                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName()) && (args == null || args.length == 0)) {
+                release(this);
+                return null;
+            } else if ("equals".equals(method.getName()) && args != null && args.length == 1) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(method.getName()) && (args == null || args.length == 0)) {
+                return System.identityHashCode(proxy);
+            }
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,19 +1,33 @@
 package org.sluckframework.common.lock;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.sluckframework.common.exception.Assert;
+
 import static java.util.Collections.newSetFromMap;
 import static java.util.Collections.synchronizedMap;
 
 /**
  * 标示符锁机制，每个标示符都对应一个锁，一个线程可以获取锁多次，但是也必须释放相应的次数别的线程才能获取这个聚合的锁
- * 
+ * <p/>
+ * 默认 为每个正在使用的标示符 创建一个锁，释放后 销毁。使用 {@link #IdentifierBasedLock(int)} 创建的 分段锁
+ * 使用 固定数量的锁，标示符 按 hash 映射到 其中一个，不再创建 和 销毁锁对象；代价是 不同的标示符 可能共用一个锁，
+ * 一个线程 同时持有多个标示符的锁时，可能与 持有其它标示符的线程 发生 原本不存在的 死锁(会被检测到 并抛出 DeadlockException)。
+ * 分段锁 另外记录 每个线程 获取的标示符 及次数，{@link #hasLock(String)} 和 {@link #releaseLock(String)} 只认 该标示符 本身的获取，
+ * 不受 共用同一分段的 其它标示符 影响。两种方式 都只在 获取锁 等待超时后 才进行 死锁检测
+ *
  * @author sunxy
  * @time 2015年9月1日 下午11:17:05
  * @since 1.0
@@ -23,12 +37,37 @@ public class IdentifierBasedLock {
     private static final Set<IdentifierBasedLock> INSTANCES =
             newSetFromMap(synchronizedMap(new WeakHashMap<>()));
 
+    private static final long DEADLOCK_CHECK_INTERVAL = 100;
+
     private final ConcurrentHashMap<String, DisposableLock> locks = new ConcurrentHashMap<>();
+    private final PubliclyOwnedReentrantLock[] stripes;
+    private final ThreadLocal<Map<String, Integer>> heldIdentifiers;
 
     /**
      * 创建一个新的标示符锁实例
      */
     public IdentifierBasedLock() {
+        this.stripes = null;
+        this.heldIdentifiers = null;
+        INSTANCES.add(this);
+    }
+
+    /**
+     * 创建一个 分段的 标示符锁实例，锁的数量 为 不小于 stripeCount 的 2 的幂
+     *
+     * @param stripeCount the minimum number of locks the identifiers are spread over
+     */
+    public IdentifierBasedLock(int stripeCount) {
+        Assert.isTrue(stripeCount > 0, "stripeCount must be positive");
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new PubliclyOwnedReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new PubliclyOwnedReentrantLock();
+        }
+        this.heldIdentifiers = ThreadLocal.withInitial(HashMap::new);
         INSTANCES.add(this);
     }
 
@@ -39,9 +78,9 @@ public class IdentifierBasedLock {
     private static Set<Thread> threadsWaitingForMyLocks(Thread owner, Set<IdentifierBasedLock> locksInUse) {
         Set<Thread> waitingThreads = new HashSet<>();
         for (IdentifierBasedLock lock : locksInUse) {
-            for (DisposableLock disposableLock : lock.locks.values()) {
-                if (disposableLock.isHeldBy(owner)) {
-                    final Collection<Thread> c = disposableLock.queuedThreads();
+            for (PubliclyOwnedReentrantLock reentrantLock : lock.locksInUse()) {
+                if (reentrantLock.isHeldBy(owner)) {
+                    final Collection<Thread> c = reentrantLock.getQueuedThreads();
                     for (Thread thread : c) {
                         if (waitingThreads.add(thread)) {
                             waitingThreads.addAll(threadsWaitingForMyLocks(thread, locksInUse));
@@ -53,6 +92,65 @@ public class IdentifierBasedLock {
         return waitingThreads;
     }
 
+    private Collection<PubliclyOwnedReentrantLock> locksInUse() {
+        if (stripes != null) {
+            return Arrays.asList(stripes);
+        }
+        List<PubliclyOwnedReentrantLock> inUse = new ArrayList<>(locks.size());
+        for (DisposableLock disposableLock : locks.values()) {
+            inUse.add(disposableLock.lock);
+        }
+        return inUse;
+    }
+
+    /**
+     * 获取锁，不能立即获取时 等待，每次等待超时后 检测死锁
+     */
+    private static void acquire(PubliclyOwnedReentrantLock lock) {
+        try {
+            if (!lock.tryLock(0, TimeUnit.NANOSECONDS)) {
+                while (!lock.tryLock(DEADLOCK_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    checkForDeadlock(lock);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new LockAcquisitionFailedException("Thread was interrupted", e);
+        }
+    }
+
+    private static void checkForDeadlock(PubliclyOwnedReentrantLock lock) {
+        if (!lock.isHeldByCurrentThread() && lock.isLocked()) {
+            for (Thread thread : threadsWaitingForMyLocks(Thread.currentThread())) {
+                if (lock.isHeldBy(thread)) {
+                    throw new DeadlockException(
+                            "An imminent deadlock was detected while attempting to acquire a lock");
+                }
+            }
+        }
+    }
+
+    private PubliclyOwnedReentrantLock stripeFor(String identifier) {
+        return stripes[stripeIndex(identifier)];
+    }
+
+    private int stripeIndex(String identifier) {
+        int hash = identifier.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * 一个线程 同时获取多个标示符的锁时 应使用的顺序，所有线程 按此顺序获取 不会相互等待。
+     * 分段锁 先按 分段的下标 再按 标示符 排序，否则 按 标示符 排序
+     *
+     * @return the order in which to obtain the locks of multiple identifiers
+     */
+    public Comparator<String> lockOrder() {
+        if (stripes == null) {
+            return Comparator.naturalOrder();
+        }
+        return Comparator.comparingInt(this::stripeIndex).thenComparing(Comparator.naturalOrder());
+    }
+
     /**
      * 判断当前的 标示符 是否有对应的锁
      * 
@@ -60,6 +158,9 @@ public class IdentifierBasedLock {
      * @return <code>true</code> if the current thread holds a lock, otherwise <code>false</code>
      */
     public boolean hasLock(String identifier) {
+        if (stripes != null) {
+            return heldIdentifiers.get().containsKey(identifier);
+        }
         return isLockAvailableFor(identifier)
                 && lockFor(identifier).isHeldByCurrentThread();
     }
@@ -70,6 +171,11 @@ public class IdentifierBasedLock {
      * @param identifier the identifier of the lock to obtain.
      */
     public void obtainLock(String identifier) {
+        if (stripes != null) {
+            acquire(stripeFor(identifier));
+            heldIdentifiers.get().merge(identifier, 1, Integer::sum);
+            return;
+        }
         boolean lockObtained = false;
         while (!lockObtained) {
             DisposableLock lock = lockFor(identifier);
@@ -87,6 +193,23 @@ public class IdentifierBasedLock {
      * @throws IllegalStateException        if no lock was ever obtained for this aggregate
      */
     public void releaseLock(String identifier) {
+        if (stripes != null) {
+            Map<String, Integer> held = heldIdentifiers.get();
+            Integer holdCount = held.get(identifier);
+            if (holdCount == null) {
+                throw new IllegalLockUsageException("No lock for this identifier is held by the current thread");
+            }
+            if (holdCount == 1) {
+                held.remove(identifier);
+                if (held.isEmpty()) {
+                    heldIdentifiers.remove();
+                }
+            } else {
+                held.put(identifier, holdCount - 1);
+            }
+            stripeFor(identifier).unlock();
+            return;
+        }
         if (!locks.containsKey(identifier)) {
             throw new IllegalLockUsageException("No lock for this identifier was ever obtained");
         }
@@ -130,15 +253,7 @@ public class IdentifierBasedLock {
         }
 
         private boolean lock() {
-            try {
-                if (!lock.tryLock(0, TimeUnit.NANOSECONDS)) {
-                    do {
-                        checkForDeadlock();
-                    } while (!lock.tryLock(100, TimeUnit.MILLISECONDS));
-                }
-            } catch (InterruptedException e) {
-                throw new LockAcquisitionFailedException("Thread was interrupted", e);
-            }
+            acquire(lock);
             if (isClosed) {
                 lock.unlock();
                 return false;
@@ -146,17 +261,6 @@ public class IdentifierBasedLock {
             return true;
         }
 
-        private void checkForDeadlock() {
-            if (!lock.isHeldByCurrentThread() && lock.isLocked()) {
-                for (Thread thread : threadsWaitingForMyLocks(Thread.currentThread())) {
-                    if (lock.isHeldBy(thread)) {
-                        throw new DeadlockException(
-                                "An imminent deadlock was detected while attempting to acquire a lock");
-                    }
-                }
-            }
-        }
-
         private void disposeIfUnused(String identifier) {
             if (lock.tryLock()) {
                 try {
@@ -170,14 +274,6 @@ public class IdentifierBasedLock {
                 }
             }
         }
-
-        public Collection<Thread> queuedThreads() {
-            return lock.getQueuedThreads();
-        }
-
-        public boolean isHeldBy(Thread owner) {
-            return lock.isHeldBy(owner);
-        }
     }
 
     private static final class PubliclyOwnedReentrantLock extends ReentrantLock {
@@ -83,6 +83,15 @@ public class SerializedAggregateEvent <T> implements AggregateEvent, Serializati
         return eventMessage.isPayloadDeserialized();
     }
 
+    /**
+     * 返回 从仓储中读取的 序列化 payload
+     *
+     * @return the serialized form of the payload, or <code>null</code> if it was not read from a serialized form
+     */
+    public SerializedObject<?> getSerializedPayload() {
+        return eventMessage.getSerializedPayload();
+    }
+
     /**
      * Java Serialization API Method that provides a replacement to serialize, as the fields contained in this instance
      * are not serializable themselves.
@@ -47,4 +47,11 @@ public interface SerializedAggregateEventData<T> {
      */
     SerializedObject<T> getPayload();
 
+    /**
+     * 返回 事件 在仓储中的 全局序号，序号随写入 单调递增，仓储不支持时 返回 <code>null</code>
+     *
+     * @return the global index of the event in the store, or <code>null</code> if the store does not assign one
+     */
+    Long getGlobalIndex();
+
 }
@@ -63,6 +63,15 @@ public class SerializedEventProxy<T> implements EventProxy<T>, SerializationAwar
         return serializedPayload.isDeserialized();
     }
 
+    /**
+     * 返回 从仓储中读取的 序列化 payload
+     *
+     * @return the serialized form of the payload, or <code>null</code> if it was not read from a serialized form
+     */
+    public SerializedObject<?> getSerializedPayload() {
+        return serializedPayload.getSerializedObject();
+    }
+
     protected Object writeReplace() {
         return new GenericEvent<>(getIdentifier(), getPayload(), getPayloadType(), occurredOn());
     }
@@ -17,6 +17,7 @@ public class SimpleSerializedAggregateEventData<T> implements SerializedAggregat
     private final long sequenceNumber;
     private final DateTime timestamp;
     private final SerializedObject<T> serializedPayload;
+    private final Long globalIndex;
 
     @SuppressWarnings("unchecked")
     public SimpleSerializedAggregateEventData(String eventIdentifier, Identifier<?> aggregateIdentifier, // NOSONAR - Long ctor
@@ -30,11 +31,18 @@ public class SimpleSerializedAggregateEventData<T> implements SerializedAggregat
     public SimpleSerializedAggregateEventData(String eventIdentifier, Identifier<?> aggregateIdentifier, // NOSONAR - Long ctor
                                            long sequenceNumber, Object timestamp,
                                            SerializedObject<T> serializedPayload) {
+        this(eventIdentifier, aggregateIdentifier, sequenceNumber, timestamp, serializedPayload, null);
+    }
+
+    public SimpleSerializedAggregateEventData(String eventIdentifier, Identifier<?> aggregateIdentifier, // NOSONAR - Long ctor
+                                           long sequenceNumber, Object timestamp,
+                                           SerializedObject<T> serializedPayload, Long globalIndex) {
         this.eventIdentifier = eventIdentifier;
         this.aggregateIdentifier = aggregateIdentifier;
         this.sequenceNumber = sequenceNumber;
         this.timestamp = new DateTime(timestamp);
         this.serializedPayload = serializedPayload;
+        this.globalIndex = globalIndex;
     }
 
     @Override
@@ -61,4 +69,9 @@ public class SimpleSerializedAggregateEventData<T> implements SerializedAggregat
     public SerializedObject<T> getPayload() {
         return serializedPayload;
     }
+
+    @Override
+    public Long getGlobalIndex() {
+        return globalIndex;
+    }
 }
@@ -55,4 +55,9 @@ public class UpcastSerializedAggregateEventData<T> implements SerializedAggregat
     public SerializedObject<T> getPayload() {
         return upcastPayload;
     }
+
+    @Override
+    public Long getGlobalIndex() {
+        return original.getGlobalIndex();
+    }
 }
@@ -0,0 +1,147 @@
+package org.sluckframework.common.serializer.binary;
+
+import java.io.IOException;
+
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.serializer.AnnotationRevisionResolver;
+import org.sluckframework.common.serializer.ChainingConverterFactory;
+import org.sluckframework.common.serializer.ContentTypeConverter;
+import org.sluckframework.common.serializer.ConverterFactory;
+import org.sluckframework.common.serializer.RevisionResolver;
+import org.sluckframework.common.serializer.SerializationException;
+import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.common.serializer.SimpleSerializedObject;
+import org.sluckframework.common.serializer.json.JacksonSerializer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * 使用 jackson 的 Smile 二进制格式 的序列化器，对象的映射规则 与 {@link JacksonSerializer} 相同，
+ * Smile 对重复的字段名 只写引用，数字 使用变长编码，解析时 不需要文本到数字的转换。
+ * <p/>
+ * 二进制 与 JsonNode 之间的转换 使用同一个 objectMapper，因此 为 {@link JacksonSerializer} 编写的
+ * 基于 JsonNode 的 upcaster 可以不经修改 用于此格式。序列化为 String 时 使用 Base64 编码，
+ * 这些转换 注册在 序列化器 自己的 ConverterFactory 中，传入的 ConverterFactory 不会被修改，
+ * 只用于 自己的 ConverterFactory 不支持的 类型转换
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class CompactBinarySerializer extends JacksonSerializer {
+
+    private final ConverterFactory converterFactory;
+
+    /**
+     * 使用 Smile 格式的 ObjectMapper 和 AnnotationRevisionResolver 初始化
+     */
+    public CompactBinarySerializer() {
+        this(new ObjectMapper(new SmileFactory()));
+    }
+
+    /**
+     * 使用 jackjson 的objectMapper 初始化，objectMapper 必须使用 二进制格式 例如 Smile
+     *
+     * @param objectMapper The objectMapper with a binary format factory
+     */
+    public CompactBinarySerializer(ObjectMapper objectMapper) {
+        this(objectMapper, new AnnotationRevisionResolver(), null, null);
+    }
+
+    /**
+     * 使用指定属性初始化
+     *
+     * @param objectMapper     The objectMapper with a binary format factory
+     * @param revisionResolver The strategy to use to resolve the revision of an object
+     * @param converterFactory The factory for conversions not provided by this serializer, may be <code>null</code>
+     * @param classLoader      The class loader to load classes with, or <code>null</code> for the default
+     */
+    public CompactBinarySerializer(ObjectMapper objectMapper, RevisionResolver revisionResolver,
+                                   ConverterFactory converterFactory, ClassLoader classLoader) {
+        super(objectMapper, revisionResolver, new ChainingConverterFactory(), classLoader);
+        Assert.isTrue(objectMapper.getFactory().canHandleBinaryNatively(),
+                      "CompactBinarySerializer requires an ObjectMapper with a binary format, such as Smile");
+        this.converterFactory = converterFactory == null ? super.getConverterFactory()
+                : new FallbackConverterFactory(super.getConverterFactory(), converterFactory);
+    }
+
+    @Override
+    protected void registerConverters(ChainingConverterFactory converterFactory) {
+        super.registerConverters(converterFactory);
+        converterFactory.registerConverter(new CompactBinaryToStringConverter());
+        converterFactory.registerConverter(new StringToCompactBinaryConverter());
+    }
+
+    @Override
+    public <T> SerializedObject<T> serialize(Object object, Class<T> expectedRepresentation) {
+        if (JsonNode.class.equals(expectedRepresentation)) {
+            return new SimpleSerializedObject<T>(expectedRepresentation.cast(getObjectMapper().valueToTree(object)),
+                                                 expectedRepresentation, typeForClass(object.getClass()));
+        }
+        try {
+            byte[] serializedBytes = getWriter().writeValueAsBytes(object);
+            T serializedContent = converterFactory.getConverter(byte[].class, expectedRepresentation)
+                                                  .convert(serializedBytes);
+            return new SimpleSerializedObject<T>(serializedContent, expectedRepresentation,
+                                                 typeForClass(object.getClass()));
+        } catch (IOException e) {
+            throw new SerializationException("Unable to serialize object", e);
+        }
+    }
+
+    @Override
+    public <T> boolean canSerializeTo(Class<T> expectedRepresentation) {
+        return JsonNode.class.equals(expectedRepresentation)
+                || converterFactory.hasConverter(byte[].class, expectedRepresentation);
+    }
+
+    @Override
+    public <S, T> T deserialize(SerializedObject<S> serializedObject) {
+        Class<?> type = classForType(serializedObject.getType());
+        try {
+            if (JsonNode.class.equals(serializedObject.getContentType())) {
+                return getReader(type).readValue((JsonNode) serializedObject.getData());
+            }
+            SerializedObject<byte[]> byteSerialized = converterFactory
+                    .getConverter(serializedObject.getContentType(), byte[].class).convert(serializedObject);
+            return getReader(type).readValue(byteSerialized.getData());
+        } catch (IOException e) {
+            throw new SerializationException("Error while deserializing object", e);
+        }
+    }
+
+    @Override
+    public ConverterFactory getConverterFactory() {
+        return converterFactory;
+    }
+
+    /**
+     * 优先使用 序列化器 自己的转换，没有时 使用 传入的 ConverterFactory
+     */
+    private static final class FallbackConverterFactory implements ConverterFactory {
+
+        private final ConverterFactory primary;
+        private final ConverterFactory fallback;
+
+        private FallbackConverterFactory(ConverterFactory primary, ConverterFactory fallback) {
+            this.primary = primary;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public <S, T> boolean hasConverter(Class<S> sourceContentType, Class<T> targetContentType) {
+            return primary.hasConverter(sourceContentType, targetContentType)
+                    || fallback.hasConverter(sourceContentType, targetContentType);
+        }
+
+        @Override
+        public <S, T> ContentTypeConverter<S, T> getConverter(Class<S> sourceContentType,
+                                                               Class<T> targetContentType) {
+            if (primary.hasConverter(sourceContentType, targetContentType)) {
+                return primary.getConverter(sourceContentType, targetContentType);
+            }
+            return fallback.getConverter(sourceContentType, targetContentType);
+        }
+    }
+}
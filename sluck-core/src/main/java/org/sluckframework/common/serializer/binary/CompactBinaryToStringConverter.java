@@ -0,0 +1,30 @@
+package org.sluckframework.common.serializer.binary;
+
+import java.util.Base64;
+
+import org.sluckframework.common.serializer.AbstractContentTypeConverter;
+
+/**
+ * 紧凑二进制 byte[] to String 的转换，使用 Base64 编码，
+ * 按 UTF-8 解码的 byte[] 到 String 的转换 会破坏 二进制内容
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class CompactBinaryToStringConverter extends AbstractContentTypeConverter<byte[], String> {
+
+    @Override
+    public Class<byte[]> expectedSourceType() {
+        return byte[].class;
+    }
+
+    @Override
+    public Class<String> targetType() {
+        return String.class;
+    }
+
+    @Override
+    public String convert(byte[] original) {
+        return Base64.getEncoder().encodeToString(original);
+    }
+}
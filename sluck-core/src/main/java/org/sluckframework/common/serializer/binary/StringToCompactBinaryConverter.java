@@ -0,0 +1,29 @@
+package org.sluckframework.common.serializer.binary;
+
+import java.util.Base64;
+
+import org.sluckframework.common.serializer.AbstractContentTypeConverter;
+
+/**
+ * String to 紧凑二进制 byte[] 的转换，与 {@link CompactBinaryToStringConverter} 对应，使用 Base64 解码
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class StringToCompactBinaryConverter extends AbstractContentTypeConverter<String, byte[]> {
+
+    @Override
+    public Class<String> expectedSourceType() {
+        return String.class;
+    }
+
+    @Override
+    public Class<byte[]> targetType() {
+        return byte[].class;
+    }
+
+    @Override
+    public byte[] convert(String original) {
+        return Base64.getDecoder().decode(original);
+    }
+}
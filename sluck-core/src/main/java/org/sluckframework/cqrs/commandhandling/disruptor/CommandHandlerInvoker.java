@@ -19,6 +19,10 @@ import org.sluckframework.domain.repository.AggregateNotFoundException;
 import org.sluckframework.domain.repository.ConflictingAggregateVersionException;
 import org.sluckframework.domain.repository.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
@@ -209,6 +213,16 @@ public class CommandHandlerInvoker implements EventHandler<CommandHandlingEntry>
             return aggregateRoot;
         }
 
+        @Override
+        public List<T> loadAll(Collection<ID> aggregateIdentifiers) {
+            // a disruptor unit of work holds a single aggregate, so there is nothing to gain from batching
+            List<T> aggregates = new ArrayList<T>(aggregateIdentifiers.size());
+            for (ID aggregateIdentifier : new LinkedHashSet<ID>(aggregateIdentifiers)) {
+                aggregates.add(load(aggregateIdentifier));
+            }
+            return aggregates;
+        }
+
         @Override
         public void add(T aggregate) {
             DisruptorUnitOfWork unitOfWork = (DisruptorUnitOfWork) CurrentUnitOfWork.get();
@@ -5,6 +5,10 @@ import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.EventHandlerGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sluckframework.cache.Cache;
+import org.sluckframework.cache.CacheInvalidation;
+import org.sluckframework.cache.CacheInvalidationBus;
+import org.sluckframework.cache.CacheInvalidationListener;
 import org.sluckframework.common.exception.Assert;
 import org.sluckframework.common.serializer.Serializer;
 import org.sluckframework.common.thread.SluckThreadFactory;
@@ -18,10 +22,13 @@ import org.sluckframework.cqrs.unitofwork.TransactionManager;
 import org.sluckframework.domain.event.aggregate.AggregateEventStream;
 import org.sluckframework.domain.event.eventstore.AggregateEventStore;
 import org.sluckframework.domain.identifier.Identifier;
+import org.sluckframework.domain.identifier.IdentifierFactory;
 import org.sluckframework.domain.repository.Repository;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
 
 import static java.lang.String.format;
@@ -54,6 +61,11 @@ public class DisruptorCommandBus implements CommandBus {
     private final int publisherCount;
     private final int serializerCount;
     private final CommandCallback<Object> failureLoggingCallback = new FailureLoggingCommandCallback();
+    private final Cache cache;
+    private final CacheInvalidationBus invalidationBus;
+    private final String invalidationOriginId = IdentifierFactory.getInstance().generateIdentifier();
+    private final Set<String> aggregateTypes = new CopyOnWriteArraySet<String>();
+    private final CacheInvalidationListener invalidationListener = new RecoveringInvalidationListener();
     private volatile boolean started = true;
     private volatile boolean disruptorShutDown = false;
 
@@ -121,6 +133,12 @@ public class DisruptorCommandBus implements CommandBus {
 
         coolingDownPeriod = configuration.getCoolingDownPeriod();
         disruptor.start();
+
+        cache = configuration.getCache();
+        invalidationBus = configuration.getCacheInvalidationBus();
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(invalidationListener);
+        }
     }
 
     @SuppressWarnings("rawtypes")
@@ -130,7 +148,8 @@ public class DisruptorCommandBus implements CommandBus {
         EventPublisher[] publishers = new EventPublisher[configuration.getPublisherThreadCount()];
         for (int t = 0; t < publishers.length; t++) {
             publishers[t] = new EventPublisher(AggregateEventStore, eventBus, executor, transactionManager,
-                                               configuration.getRollbackConfiguration(), t);
+                                               configuration.getRollbackConfiguration(), t,
+                                               configuration.getCacheInvalidationBus(), invalidationOriginId);
         }
         return publishers;
     }
@@ -251,6 +270,7 @@ public class DisruptorCommandBus implements CommandBus {
         for (CommandHandlerInvoker invoker : commandHandlerInvokers) {
             invoker.createRepository(aggregateFactory, decorator);
         }
+        aggregateTypes.add(aggregateFactory.getTypeIdentifier());
         return new DisruptorRepository(aggregateFactory.getTypeIdentifier());
     }
 
@@ -272,6 +292,9 @@ public class DisruptorCommandBus implements CommandBus {
             return;
         }
         started = false;
+        if (invalidationBus != null) {
+            invalidationBus.unsubscribe(invalidationListener);
+        }
         long lastChangeDetected = System.currentTimeMillis();
         long lastKnownCursor = disruptor.getRingBuffer().getCursor();
         while (System.currentTimeMillis() - lastChangeDetected < coolingDownPeriod && !Thread.interrupted()) {
@@ -287,6 +310,35 @@ public class DisruptorCommandBus implements CommandBus {
         }
     }
 
+    /**
+     * 其他节点 提交了 本 commandbus 管理的聚合类型，且 缓存中 是 版本更低的实例 时，发布 recovery 实体，
+     * 由 invoker 线程 移除 一级缓存 和 缓存中的实例。缓存中 没有 或 版本未知 时 不处理
+     */
+    private final class RecoveringInvalidationListener implements CacheInvalidationListener {
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void onInvalidation(CacheInvalidation invalidation) {
+            if (!started || invalidationOriginId.equals(invalidation.getOriginId())
+                    || !aggregateTypes.contains(invalidation.getAggregateType())) {
+                return;
+            }
+            Object cached = cache.get(invalidation.getAggregateIdentifier());
+            if (!(cached instanceof EventSourcedAggregateRoot)) {
+                return;
+            }
+            Long cachedVersion = ((EventSourcedAggregateRoot) cached).getVersion();
+            if (cachedVersion == null || !invalidation.isNewerThan(cachedVersion)) {
+                return;
+            }
+            RingBuffer<CommandHandlingEntry> ringBuffer = disruptor.getRingBuffer();
+            long sequence = ringBuffer.next();
+            CommandHandlingEntry entry = ringBuffer.get(sequence);
+            entry.resetAsRecoverEntry(invalidation.getAggregateIdentifier());
+            ringBuffer.publish(sequence);
+        }
+    }
+
     private static class FailureLoggingCommandCallback implements CommandCallback<Object> {
 
         @Override
@@ -321,6 +373,12 @@ public class DisruptorCommandBus implements CommandBus {
             return (T) CommandHandlerInvoker.getRepository(typeIdentifier).load(aggregateIdentifier);
         }
 
+        @SuppressWarnings("unchecked")
+        @Override
+        public List<T> loadAll(Collection<ID> aggregateIdentifiers) {
+            return CommandHandlerInvoker.getRepository(typeIdentifier).loadAll(aggregateIdentifiers);
+        }
+
         @SuppressWarnings("unchecked")
 		@Override
         public void add(T aggregate) {
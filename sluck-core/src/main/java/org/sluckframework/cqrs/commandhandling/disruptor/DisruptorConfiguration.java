@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.concurrent.Executor;
 
 import org.sluckframework.cache.Cache;
+import org.sluckframework.cache.CacheInvalidationBus;
 import org.sluckframework.cache.NoCache;
 import org.sluckframework.common.exception.Assert;
 import org.sluckframework.common.serializer.Serializer;
@@ -42,6 +43,7 @@ public class DisruptorConfiguration {
     private boolean rescheduleCommandsOnCorruptState;
     private long coolingDownPeriod;
     private Cache cache;
+    private CacheInvalidationBus cacheInvalidationBus;
     private final List<CommandHandlerInterceptor> invokerInterceptors = new ArrayList<CommandHandlerInterceptor>();
     private final List<CommandHandlerInterceptor> publisherInterceptors = new ArrayList<CommandHandlerInterceptor>();
     private final List<CommandDispatchInterceptor> dispatchInterceptors = new ArrayList<CommandDispatchInterceptor>();
@@ -225,6 +227,27 @@ public class DisruptorConfiguration {
         return this;
     }
 
+    /**
+     * 返回 缓存失效通知 通道
+     *
+     * @return the bus cache invalidations are published and received on, or <code>null</code> if not configured
+     */
+    public CacheInvalidationBus getCacheInvalidationBus() {
+        return cacheInvalidationBus;
+    }
+
+    /**
+     * 设置 缓存失效通知 通道，提交后 发布 聚合的新版本，收到 其他节点的通知时 通过 recovery 实体 移除 过期的缓存实例，
+     * 默认 不使用
+     *
+     * @param cacheInvalidationBus the bus to publish and receive invalidations on
+     * @return <code>this</code> for method chaining
+     */
+    public DisruptorConfiguration setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) { //NOSONAR
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        return this;
+    }
+
     /**
      * 命令解析器
      *
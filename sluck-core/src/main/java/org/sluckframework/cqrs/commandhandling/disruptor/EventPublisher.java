@@ -3,6 +3,9 @@ package org.sluckframework.cqrs.commandhandling.disruptor;
 import com.lmax.disruptor.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sluckframework.cache.CacheInvalidation;
+import org.sluckframework.cache.CacheInvalidationBus;
+import org.sluckframework.common.exception.Assert;
 import org.sluckframework.cqrs.commandhandling.Command;
 import org.sluckframework.cqrs.commandhandling.CommandCallback;
 import org.sluckframework.cqrs.commandhandling.RollbackConfiguration;
@@ -41,6 +44,8 @@ public class EventPublisher implements EventHandler<CommandHandlingEntry> {
     private final Set<Object> blackListedAggregates = new HashSet<>();
 	private final Map<Command, Object> failedCreateCommands = new WeakHashMap<>();
     private final TransactionManager transactionManager;
+    private final CacheInvalidationBus invalidationBus;
+    private final String invalidationOriginId;
 
     /**
      * 使用指定的 参数初始化
@@ -56,6 +61,29 @@ public class EventPublisher implements EventHandler<CommandHandlingEntry> {
     public EventPublisher(AggregateEventStore AggregateEventStore, EventBus eventBus, Executor executor,
                           TransactionManager transactionManager, RollbackConfiguration rollbackConfiguration,
                           int segmentId) {
+        this(AggregateEventStore, eventBus, executor, transactionManager, rollbackConfiguration, segmentId, null, null);
+    }
+
+    /**
+     * 使用指定的 参数 和 缓存失效通知通道 初始化，提交后 通过 executor 发布 聚合的新版本
+     *
+     * @param AggregateEventStore   The AggregateEventStore persisting the generated events
+     * @param eventBus              The EventBus to publish events on
+     * @param executor              The executor which schedules response reporting and invalidation publication
+     * @param transactionManager    The transaction manager that manages the transaction around event storage and
+     *                              publication
+     * @param rollbackConfiguration The configuration that indicates which exceptions should result in a UnitOfWork
+     * @param segmentId             The ID of the segment this publisher should handle
+     * @param invalidationBus       The bus to publish cache invalidations on, may be <code>null</code>
+     * @param invalidationOriginId  The origin of the published invalidations, required when invalidationBus is set
+     */
+    public EventPublisher(AggregateEventStore AggregateEventStore, EventBus eventBus, Executor executor,
+                          TransactionManager transactionManager, RollbackConfiguration rollbackConfiguration,
+                          int segmentId, CacheInvalidationBus invalidationBus, String invalidationOriginId) {
+        Assert.isTrue(invalidationBus == null || invalidationOriginId != null,
+                      "invalidationOriginId may not be null when an invalidationBus is set");
+        this.invalidationBus = invalidationBus;
+        this.invalidationOriginId = invalidationOriginId;
         this.AggregateEventStore = AggregateEventStore;
         this.eventBus = eventBus;
         this.executor = executor;
@@ -173,6 +201,12 @@ public class EventPublisher implements EventHandler<CommandHandlingEntry> {
                     transactionManager.commitTransaction(transaction);
                 }
                 unitOfWork.onAfterCommit();
+                if (invalidationBus != null && aggregate != null && aggregate.getVersion() != null) {
+                    // published from another thread: a loopback bus may block on this command bus' ring buffer
+                    executor.execute(new PublishInvalidationTask(invalidationBus, new CacheInvalidation(
+                            invalidationOriginId, unitOfWork.getAggregateType(), aggregate.getIdentifier(),
+                            aggregate.getVersion())));
+                }
             }
         } catch (Exception e) {
             try {
@@ -216,6 +250,22 @@ public class EventPublisher implements EventHandler<CommandHandlingEntry> {
         return exceptionResult;
     }
 
+    private static class PublishInvalidationTask implements Runnable {
+
+        private final CacheInvalidationBus invalidationBus;
+        private final CacheInvalidation invalidation;
+
+        public PublishInvalidationTask(CacheInvalidationBus invalidationBus, CacheInvalidation invalidation) {
+            this.invalidationBus = invalidationBus;
+            this.invalidation = invalidation;
+        }
+
+        @Override
+        public void run() {
+            invalidationBus.publish(invalidation);
+        }
+    }
+
     private static class ReportResultTask<R> implements Runnable {
 
         private final CommandCallback<R> callback;
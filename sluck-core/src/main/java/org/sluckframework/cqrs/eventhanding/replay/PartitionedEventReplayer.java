@@ -0,0 +1,263 @@
+package org.sluckframework.cqrs.eventhanding.replay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.thread.SluckThreadFactory;
+import org.sluckframework.cqrs.eventhanding.EventListener;
+import org.sluckframework.domain.event.aggregate.AggregateEvent;
+import org.sluckframework.domain.event.eventstore.EventStoreException;
+import org.sluckframework.domain.event.eventstore.EventVisitor;
+import org.sluckframework.domain.event.eventstore.query.Criteria;
+import org.sluckframework.domain.event.eventstore.query.CriteriaBuilder;
+import org.sluckframework.domain.event.eventstore.query.EventStoreQueryManagement;
+import org.sluckframework.monitoring.MonitorRegistry;
+
+/**
+ * 分区并行的 事件重建，将事件仓储 按 aggregateIdentifier 的范围 划分为多个分区，每个分区通过
+ * {@link EventStoreQueryManagement#visitEvents(Criteria, EventVisitor)} 并发读取(jdbc 仓储中每个分区使用独立的连接)。
+ * 同一个聚合的事件 总是落在同一个分区中，因此单个聚合的事件顺序不变，不同聚合之间的事件 会被并发投递，监听器需要线程安全。
+ * <p/>
+ * 默认的分区边界 假定聚合标示符 以十六进制字符开头(如 UUID)，其它格式的标示符 仍然会被完整重建，但分区可能不均匀，
+ * 此时可以通过 {@link #setSplitPoints(List)} 指定边界
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class PartitionedEventReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedEventReplayer.class);
+    private static final ThreadGroup REPLAY_THREAD_GROUP = new ThreadGroup("PartitionedEventReplayer");
+
+    private static final int DEFAULT_PARTITION_COUNT = 8;
+    private static final long DEFAULT_PROGRESS_INTERVAL = 100000;
+    private static final String AGGREGATE_IDENTIFIER = "aggregateIdentifier";
+
+    private final EventStoreQueryManagement eventStore;
+    private final List<EventListener> listeners;
+    private final ReplayStatistics statistics = new ReplayStatistics();
+
+    private List<String> splitPoints = hexSplitPoints(DEFAULT_PARTITION_COUNT);
+    private Executor executor;
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+    /**
+     * 使用 事件仓储 和 需要重建的监听器 初始化
+     *
+     * @param eventStore The event store to read the events from
+     * @param listeners  The listeners to replay the events to; must be thread safe
+     */
+    public PartitionedEventReplayer(EventStoreQueryManagement eventStore, List<? extends EventListener> listeners) {
+        Assert.notNull(eventStore, "eventStore may not be null");
+        Assert.notNull(listeners, "listeners may not be null");
+        this.eventStore = eventStore;
+        this.listeners = new ArrayList<EventListener>(listeners);
+        MonitorRegistry.registerMonitoringBean(statistics, PartitionedEventReplayer.class);
+    }
+
+    /**
+     * 重建所有事件
+     *
+     * @throws EventStoreException when a partition failed; the listeners are notified through onReplayFailed
+     */
+    public void replay() {
+        replay(null);
+    }
+
+    /**
+     * 重建 满足条件的事件，每个分区的条件为 给定条件 与 分区范围 的 and
+     *
+     * @param criteria Additional criteria the events must match, may be <code>null</code>
+     * @throws EventStoreException when a partition failed; the listeners are notified through onReplayFailed
+     */
+    public void replay(Criteria criteria) {
+        List<Criteria> partitions = partitionCriteria(criteria);
+        for (EventListener listener : listeners) {
+            if (listener instanceof ReplayAware) {
+                ((ReplayAware) listener).beforeReplay();
+            }
+        }
+        statistics.replayStarted(partitions.size());
+        logger.info("Starting replay of {} partitions", partitions.size());
+
+        ExecutorService ownExecutor = null;
+        Executor replayExecutor = executor;
+        if (replayExecutor == null) {
+            ownExecutor = Executors.newFixedThreadPool(partitions.size(),
+                                                       new SluckThreadFactory(REPLAY_THREAD_GROUP));
+            replayExecutor = ownExecutor;
+        }
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch finished = new CountDownLatch(partitions.size());
+        try {
+            for (final Criteria partition : partitions) {
+                replayExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            eventStore.visitEvents(partition, new PartitionVisitor(failure));
+                            statistics.recordCompletedPartition();
+                        } catch (ReplayAbortedException e) {
+                            // another partition failed
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        } catch (Error e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            finished.countDown();
+                        }
+                    }
+                });
+            }
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+            statistics.replayEnded();
+        }
+
+        Throwable cause = failure.get();
+        if (cause != null) {
+            logger.warn("Replay failed after {} events", statistics.getProcessedEventCount(), cause);
+            for (EventListener listener : listeners) {
+                if (listener instanceof ReplayAware) {
+                    ((ReplayAware) listener).onReplayFailed(cause);
+                }
+            }
+            throw new EventStoreException("Replay failed", cause);
+        }
+        for (EventListener listener : listeners) {
+            if (listener instanceof ReplayAware) {
+                ((ReplayAware) listener).afterReplay();
+            }
+        }
+        logger.info("Replay of {} events finished ({} events/s)",
+                    statistics.getProcessedEventCount(), (long) statistics.getEventsPerSecond());
+    }
+
+    private List<Criteria> partitionCriteria(Criteria criteria) {
+        CriteriaBuilder builder = eventStore.newCriteriaBuilder();
+        List<Criteria> partitions = new ArrayList<Criteria>(splitPoints.size() + 1);
+        for (int i = 0; i <= splitPoints.size(); i++) {
+            Criteria partition = null;
+            if (i > 0) {
+                partition = builder.property(AGGREGATE_IDENTIFIER).greaterThanEquals(splitPoints.get(i - 1));
+            }
+            if (i < splitPoints.size()) {
+                Criteria upper = builder.property(AGGREGATE_IDENTIFIER).lessThan(splitPoints.get(i));
+                partition = partition == null ? upper : partition.and(upper);
+            }
+            if (criteria != null) {
+                partition = partition == null ? criteria : partition.and(criteria);
+            }
+            partitions.add(partition == null ? criteria : partition);
+        }
+        return partitions;
+    }
+
+    /**
+     * 返回 重建的统计信息
+     *
+     * @return the statistics of the current or last replay
+     */
+    public ReplayStatisticsMXBean getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 设置 分区边界，n 个边界产生 n + 1 个分区，边界必须升序
+     *
+     * @param splitPoints the aggregate identifier values at which a new partition starts
+     */
+    public void setSplitPoints(List<String> splitPoints) {
+        Assert.notNull(splitPoints, "splitPoints may not be null");
+        List<String> sorted = new ArrayList<String>(splitPoints);
+        Collections.sort(sorted);
+        Assert.isTrue(sorted.equals(splitPoints), "splitPoints must be in ascending order");
+        this.splitPoints = sorted;
+    }
+
+    /**
+     * 设置 分区数量，使用 十六进制前缀 均匀划分标示符
+     *
+     * @param partitionCount the number of partitions to read concurrently
+     */
+    public void setPartitionCount(int partitionCount) {
+        Assert.isTrue(partitionCount > 0, "partitionCount must be positive");
+        this.splitPoints = hexSplitPoints(partitionCount);
+    }
+
+    /**
+     * 设置 执行分区读取的 executor，默认 每次重建 创建一个线程数等于分区数的线程池
+     *
+     * @param executor the executor running the partitions
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 设置 每处理多少事件 打印一次进度，默认 100000
+     *
+     * @param progressInterval the number of events between progress log statements
+     */
+    public void setProgressInterval(long progressInterval) {
+        Assert.isTrue(progressInterval > 0, "progressInterval must be positive");
+        this.progressInterval = progressInterval;
+    }
+
+    private static List<String> hexSplitPoints(int partitionCount) {
+        List<String> points = new ArrayList<String>(partitionCount - 1);
+        for (int i = 1; i < partitionCount; i++) {
+            String point = String.format("%04x", (int) ((long) i * 0x10000 / partitionCount));
+            if (points.isEmpty() || !points.get(points.size() - 1).equals(point)) {
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    private final class PartitionVisitor implements EventVisitor {
+
+        private final AtomicReference<Throwable> failure;
+
+        private PartitionVisitor(AtomicReference<Throwable> failure) {
+            this.failure = failure;
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void doWithEvent(AggregateEvent domainEvent) {
+            if (failure.get() != null) {
+                throw new ReplayAbortedException();
+            }
+            for (EventListener listener : listeners) {
+                listener.handle(domainEvent);
+            }
+            long count = statistics.recordProcessedEvent();
+            if (count % progressInterval == 0) {
+                logger.info("Replayed {} events, {}/{} partitions completed ({} events/s)",
+                            count, statistics.getCompletedPartitionCount(), statistics.getPartitionCount(),
+                            (long) statistics.getEventsPerSecond());
+            }
+        }
+    }
+
+    private static final class ReplayAbortedException extends RuntimeException {
+
+        private static final long serialVersionUID = -2315187946418473937L;
+    }
+}
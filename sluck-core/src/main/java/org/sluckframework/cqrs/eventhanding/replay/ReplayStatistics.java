@@ -0,0 +1,73 @@
+package org.sluckframework.cqrs.eventhanding.replay;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分区重建 的统计信息
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class ReplayStatistics implements ReplayStatisticsMXBean {
+
+    private final AtomicLong processedEventCount = new AtomicLong(0);
+    private final AtomicInteger completedPartitionCount = new AtomicInteger(0);
+    private volatile int partitionCount;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile boolean running;
+
+    ReplayStatistics() {
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    @Override
+    public int getCompletedPartitionCount() {
+        return completedPartitionCount.get();
+    }
+
+    @Override
+    public long getProcessedEventCount() {
+        return processedEventCount.get();
+    }
+
+    @Override
+    public double getEventsPerSecond() {
+        long end = running ? System.currentTimeMillis() : endTime;
+        long elapsed = end - startTime;
+        return elapsed <= 0 ? 0 : processedEventCount.get() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /*----- end of jmx enabled methods -----*/
+
+    void replayStarted(int partitions) {
+        partitionCount = partitions;
+        processedEventCount.set(0);
+        completedPartitionCount.set(0);
+        startTime = System.currentTimeMillis();
+        running = true;
+    }
+
+    long recordProcessedEvent() {
+        return processedEventCount.incrementAndGet();
+    }
+
+    void recordCompletedPartition() {
+        completedPartitionCount.incrementAndGet();
+    }
+
+    void replayEnded() {
+        endTime = System.currentTimeMillis();
+        running = false;
+    }
+}
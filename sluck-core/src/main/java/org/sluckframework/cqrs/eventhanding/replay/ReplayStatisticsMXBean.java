@@ -0,0 +1,45 @@
+package org.sluckframework.cqrs.eventhanding.replay;
+
+/**
+ * 分区重建 的监视
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface ReplayStatisticsMXBean {
+
+    /**
+     * 返回 分区的数量
+     *
+     * @return the number of partitions of the current or last replay
+     */
+    int getPartitionCount();
+
+    /**
+     * 返回 已完成的 分区数量
+     *
+     * @return the number of partitions that have been fully replayed
+     */
+    int getCompletedPartitionCount();
+
+    /**
+     * 返回 已处理的事件数量
+     *
+     * @return the number of events replayed so far
+     */
+    long getProcessedEventCount();
+
+    /**
+     * 返回 重建开始后的 平均吞吐量
+     *
+     * @return the average number of events replayed per second
+     */
+    double getEventsPerSecond();
+
+    /**
+     * 是否正在重建
+     *
+     * @return <code>true</code> while a replay is running
+     */
+    boolean isRunning();
+}
@@ -0,0 +1,21 @@
+package org.sluckframework.cqrs.eventhanding.tracking;
+
+import java.util.List;
+
+/**
+ * 可以 按全局顺序 读取事件的 事件仓储，供 {@link TrackingEventProcessor} 跟踪读取
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface StreamableEventStore {
+
+    /**
+     * 返回 位于 给定令牌之后 的下一批事件，按仓储的全局顺序 排列
+     *
+     * @param lastToken The token of the last processed event, or <code>null</code> to read from the start
+     * @param batchSize The maximum number of events to return
+     * @return the events after the given token, empty when there are no new events
+     */
+    List<TrackedAggregateEvent> readEvents(TrackingToken lastToken, int batchSize);
+}
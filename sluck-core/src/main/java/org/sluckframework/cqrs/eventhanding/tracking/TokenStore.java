@@ -0,0 +1,26 @@
+package org.sluckframework.cqrs.eventhanding.tracking;
+
+/**
+ * 跟踪令牌 的存储，保存 每个事件处理器 已处理到的位置，重启后 从保存的位置 继续处理
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface TokenStore {
+
+    /**
+     * 保存 事件处理器 的令牌，在当前 unitOfWork 中执行时 随 unitOfWork 一起提交
+     *
+     * @param processorName The name of the processor
+     * @param token         The token of the last processed event
+     */
+    void storeToken(String processorName, TrackingToken token);
+
+    /**
+     * 返回 事件处理器 保存的令牌
+     *
+     * @param processorName The name of the processor
+     * @return the stored token, or <code>null</code> if the processor has not stored a token yet
+     */
+    TrackingToken fetchToken(String processorName);
+}
@@ -0,0 +1,22 @@
+package org.sluckframework.cqrs.eventhanding.tracking;
+
+import org.sluckframework.common.exception.SluckTransientException;
+
+/**
+ * 读取 或 保存 跟踪令牌 失败时 抛出的异常
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class TokenStoreException extends SluckTransientException {
+
+    private static final long serialVersionUID = -4216541087389046702L;
+
+    public TokenStoreException(String message) {
+        super(message);
+    }
+
+    public TokenStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
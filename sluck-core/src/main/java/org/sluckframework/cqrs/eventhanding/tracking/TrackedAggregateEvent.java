@@ -0,0 +1,45 @@
+package org.sluckframework.cqrs.eventhanding.tracking;
+
+import org.sluckframework.domain.event.aggregate.AggregateEvent;
+
+/**
+ * 带有 跟踪令牌 的聚合事件，令牌 表示 该事件 在事件流中的位置
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+@SuppressWarnings("rawtypes")
+public class TrackedAggregateEvent {
+
+    private final AggregateEvent event;
+    private final TrackingToken trackingToken;
+
+    /**
+     * 使用 事件 和 事件的位置 初始化
+     *
+     * @param event         The event read from the store
+     * @param trackingToken The position of the event in the store
+     */
+    public TrackedAggregateEvent(AggregateEvent event, TrackingToken trackingToken) {
+        this.event = event;
+        this.trackingToken = trackingToken;
+    }
+
+    /**
+     * 返回 聚合事件
+     *
+     * @return the event
+     */
+    public AggregateEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * 返回 事件的 跟踪令牌，从此令牌继续读取 会返回 此事件之后的事件
+     *
+     * @return the tracking token of the event
+     */
+    public TrackingToken getTrackingToken() {
+        return trackingToken;
+    }
+}
@@ -0,0 +1,240 @@
+package org.sluckframework.cqrs.eventhanding.tracking;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.thread.SluckThreadFactory;
+import org.sluckframework.cqrs.eventhanding.EventListener;
+import org.sluckframework.cqrs.unitofwork.DefaultUnitOfWork;
+import org.sluckframework.cqrs.unitofwork.TransactionManager;
+import org.sluckframework.cqrs.unitofwork.UnitOfWork;
+
+/**
+ * 跟踪式 事件处理器，与 {@link org.sluckframework.cqrs.eventhanding.SimpleEventBus} 在提交命令的线程上 同步投递不同，
+ * 由独立的线程 按全局顺序 读取事件仓储，将事件 分批 投递给 订阅的监听器。
+ * <p/>
+ * 每一批事件 在一个 unitOfWork 中处理，处理完成后 在同一个 unitOfWork 中 保存最后一个事件的令牌，
+ * 因此 令牌与监听器的修改 一起提交 或 一起回滚。处理失败时 回滚并在等待后 从保存的令牌 重新处理该批事件，
+ * 重启后 同样从保存的令牌 继续处理，监听器 需要容忍 同一批事件 在失败后被重复投递
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class TrackingEventProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingEventProcessor.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_POLL_INTERVAL = 1000;
+    private static final long DEFAULT_RETRY_INTERVAL = 5000;
+
+    private final String name;
+    private final StreamableEventStore eventStore;
+    private final TokenStore tokenStore;
+    private final Set<EventListener> listeners = new CopyOnWriteArraySet<EventListener>();
+
+    private TransactionManager<?> transactionManager;
+    private ThreadFactory threadFactory;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long pollInterval = DEFAULT_POLL_INTERVAL;
+    private long retryInterval = DEFAULT_RETRY_INTERVAL;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * 使用 处理器名称，事件仓储 和 令牌存储 初始化
+     *
+     * @param name       The name of the processor, used as the key of its token
+     * @param eventStore The event store to read the events from
+     * @param tokenStore The store holding the position of the processor
+     */
+    public TrackingEventProcessor(String name, StreamableEventStore eventStore, TokenStore tokenStore) {
+        Assert.notNull(name, "name may not be null");
+        Assert.notNull(eventStore, "eventStore may not be null");
+        Assert.notNull(tokenStore, "tokenStore may not be null");
+        this.name = name;
+        this.eventStore = eventStore;
+        this.tokenStore = tokenStore;
+    }
+
+    /**
+     * 订阅 事件监听器
+     *
+     * @param eventListener The listener to subscribe
+     */
+    public void subscribe(EventListener eventListener) {
+        listeners.add(eventListener);
+    }
+
+    /**
+     * 取消订阅 事件监听器
+     *
+     * @param eventListener The listener to unsubscribe
+     */
+    public void unsubscribe(EventListener eventListener) {
+        listeners.remove(eventListener);
+    }
+
+    /**
+     * 启动 处理线程，已启动时 不做任何操作
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        ThreadFactory factory = threadFactory == null ? new SluckThreadFactory("TrackingEventProcessor-" + name)
+                : threadFactory;
+        worker = factory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                processingLoop();
+            }
+        });
+        worker.start();
+        logger.info("Tracking event processor [{}] started", name);
+    }
+
+    /**
+     * 停止 处理线程，等待 正在处理的批次完成
+     */
+    public synchronized void shutDown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+        logger.info("Tracking event processor [{}] stopped", name);
+    }
+
+    /**
+     * 返回 处理线程 是否在运行
+     *
+     * @return whether the processor is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void processingLoop() {
+        TrackingToken token = null;
+        boolean tokenLoaded = false;
+        while (running) {
+            try {
+                if (!tokenLoaded) {
+                    token = tokenStore.fetchToken(name);
+                    tokenLoaded = true;
+                }
+                List<TrackedAggregateEvent> batch = eventStore.readEvents(token, batchSize);
+                if (batch.isEmpty()) {
+                    Thread.sleep(pollInterval);
+                } else {
+                    token = processBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                stopInterrupted();
+                return;
+            } catch (RuntimeException e) {
+                logger.warn("Tracking event processor [{}] failed to process a batch. Retrying in {}ms",
+                            name, retryInterval, e);
+                tokenLoaded = false;
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (InterruptedException ie) {
+                    stopInterrupted();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 处理线程 被中断时 恢复中断状态 并退出，不是由 shutDown 引起时 标记为 已停止，之后可以 重新启动
+     */
+    private void stopInterrupted() {
+        Thread.currentThread().interrupt();
+        if (running) {
+            logger.warn("Tracking event processor [{}] was interrupted while running. Stopping.", name);
+            running = false;
+        }
+    }
+
+    private TrackingToken processBatch(List<TrackedAggregateEvent> batch) {
+        UnitOfWork unitOfWork = transactionManager == null ? DefaultUnitOfWork.startAndGet()
+                : DefaultUnitOfWork.startAndGet(transactionManager);
+        try {
+            for (TrackedAggregateEvent trackedEvent : batch) {
+                for (EventListener listener : listeners) {
+                    listener.handle(trackedEvent.getEvent());
+                }
+            }
+            TrackingToken lastToken = batch.get(batch.size() - 1).getTrackingToken();
+            tokenStore.storeToken(name, lastToken);
+            unitOfWork.commit();
+            return lastToken;
+        } catch (RuntimeException e) {
+            if (unitOfWork.isStarted()) {
+                unitOfWork.rollback(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 设置 每批处理的 最大事件数量，默认 100
+     *
+     * @param batchSize the maximum number of events to process in one unit of work
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 设置 没有新事件时 再次读取前 等待的毫秒数，默认 1000
+     *
+     * @param pollInterval the number of milliseconds to wait when the store has no new events
+     */
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * 设置 处理失败后 重试前 等待的毫秒数，默认 5000
+     *
+     * @param retryInterval the number of milliseconds to wait before retrying a failed batch
+     */
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * 设置 每批事件的 unitOfWork 使用的事务管理器，默认 不使用事务
+     *
+     * @param transactionManager the transaction manager backing the unit of work of each batch
+     */
+    public void setTransactionManager(TransactionManager<?> transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * 设置 创建处理线程的 ThreadFactory
+     *
+     * @param threadFactory the factory creating the processing thread
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+}
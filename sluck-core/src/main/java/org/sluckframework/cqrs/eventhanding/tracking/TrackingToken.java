@@ -0,0 +1,13 @@
+package org.sluckframework.cqrs.eventhanding.tracking;
+
+import java.io.Serializable;
+
+/**
+ * 跟踪令牌，标记 事件处理器 在事件流中 已处理到的位置，由 {@link StreamableEventStore} 生成 并解析，
+ * 对事件处理器而言 是不透明的，需要能被 {@link TokenStore} 序列化保存
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface TrackingToken extends Serializable {
+}
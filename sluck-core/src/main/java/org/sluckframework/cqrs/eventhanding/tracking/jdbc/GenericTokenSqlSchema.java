@@ -0,0 +1,89 @@
+package org.sluckframework.cqrs.eventhanding.tracking.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.common.serializer.SimpleSerializedObject;
+
+/**
+ * 通用的 令牌表 sql schema 实现
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class GenericTokenSqlSchema implements TokenSqlSchema {
+
+    public static final String DEFAULT_TOKEN_ENTRY_TABLE = "TokenEntry";
+
+    private final String tokenEntryTable;
+
+    /**
+     * 使用 默认的表名 初始化
+     */
+    public GenericTokenSqlSchema() {
+        this(DEFAULT_TOKEN_ENTRY_TABLE);
+    }
+
+    /**
+     * 使用 指定的表名 初始化
+     *
+     * @param tokenEntryTable The name of the token table
+     */
+    public GenericTokenSqlSchema(String tokenEntryTable) {
+        this.tokenEntryTable = tokenEntryTable;
+    }
+
+    @Override
+    public PreparedStatement sql_loadToken(Connection connection, String processorName) throws SQLException {
+        final String sql = "SELECT token, tokenType, revision FROM " + tokenEntryTable + " WHERE processorName = ?";
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        preparedStatement.setString(1, processorName);
+        return preparedStatement;
+    }
+
+    @Override
+    public PreparedStatement sql_updateToken(Connection connection, String processorName,
+                                             SerializedObject<byte[]> token) throws SQLException {
+        final String sql = "UPDATE " + tokenEntryTable + " SET token = ?, tokenType = ?, revision = ?"
+                + " WHERE processorName = ?";
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        preparedStatement.setBytes(1, token.getData());
+        preparedStatement.setString(2, token.getType().getName());
+        preparedStatement.setString(3, token.getType().getRevision());
+        preparedStatement.setString(4, processorName);
+        return preparedStatement;
+    }
+
+    @Override
+    public PreparedStatement sql_insertToken(Connection connection, String processorName,
+                                             SerializedObject<byte[]> token) throws SQLException {
+        final String sql = "INSERT INTO " + tokenEntryTable + " (processorName, token, tokenType, revision)"
+                + " VALUES(?, ?, ?, ?)";
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        preparedStatement.setString(1, processorName);
+        preparedStatement.setBytes(2, token.getData());
+        preparedStatement.setString(3, token.getType().getName());
+        preparedStatement.setString(4, token.getType().getRevision());
+        return preparedStatement;
+    }
+
+    @Override
+    public PreparedStatement sql_createTokenEntryTable(Connection connection) throws SQLException {
+        return connection.prepareStatement("create table " + tokenEntryTable + " (\n" +
+                "        processorName varchar(255) not null,\n" +
+                "        token blob,\n" +
+                "        tokenType varchar(255),\n" +
+                "        revision varchar(255),\n" +
+                "        primary key (processorName)\n" +
+                "    );");
+    }
+
+    @Override
+    public SerializedObject<byte[]> readSerializedToken(ResultSet resultSet) throws SQLException {
+        return new SimpleSerializedObject<byte[]>(resultSet.getBytes(1), byte[].class,
+                                                  resultSet.getString(2), resultSet.getString(3));
+    }
+}
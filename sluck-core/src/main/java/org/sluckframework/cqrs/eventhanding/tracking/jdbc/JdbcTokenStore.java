@@ -0,0 +1,126 @@
+package org.sluckframework.cqrs.eventhanding.tracking.jdbc;
+
+import static org.sluckframework.common.jdbc.JdbcUtils.closeQuietly;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.jdbc.ConnectionProvider;
+import org.sluckframework.common.jdbc.DataSourceConnectionProvider;
+import org.sluckframework.common.jdbc.UnitOfWorkAwareConnectionProviderWrapper;
+import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.common.serializer.Serializer;
+import org.sluckframework.common.serializer.json.JacksonSerializer;
+import org.sluckframework.cqrs.eventhanding.tracking.TokenStore;
+import org.sluckframework.cqrs.eventhanding.tracking.TokenStoreException;
+import org.sluckframework.cqrs.eventhanding.tracking.TrackingToken;
+
+/**
+ * jdbc 实现的 令牌存储，每个事件处理器 在令牌表中 占一行。
+ * 使用 {@link UnitOfWorkAwareConnectionProviderWrapper} 时 令牌的更新 与 处理事件的数据修改 在同一事务中提交
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class JdbcTokenStore implements TokenStore {
+
+    private final ConnectionProvider connectionProvider;
+    private final TokenSqlSchema sqldef;
+    private final Serializer serializer;
+
+    /**
+     * 使用 数据源 初始化，连接会加入 当前的 unitOfWork
+     *
+     * @param dataSource The data source to obtain connections from
+     */
+    public JdbcTokenStore(DataSource dataSource) {
+        this(new UnitOfWorkAwareConnectionProviderWrapper(new DataSourceConnectionProvider(dataSource)));
+    }
+
+    /**
+     * 使用 指定的连接 和 默认的 sqlSchema 初始化
+     *
+     * @param connectionProvider The provider to obtain connections from
+     */
+    public JdbcTokenStore(ConnectionProvider connectionProvider) {
+        this(connectionProvider, new GenericTokenSqlSchema(), new JacksonSerializer());
+    }
+
+    /**
+     * 使用 指定的配置 初始化
+     *
+     * @param connectionProvider The provider to obtain connections from
+     * @param sqldef             The definition of SQL operations to execute
+     * @param serializer         The serializer to serialize tokens with
+     */
+    public JdbcTokenStore(ConnectionProvider connectionProvider, TokenSqlSchema sqldef, Serializer serializer) {
+        Assert.notNull(connectionProvider, "connectionProvider may not be null");
+        Assert.notNull(sqldef, "sqldef may not be null");
+        Assert.notNull(serializer, "serializer may not be null");
+        this.connectionProvider = connectionProvider;
+        this.sqldef = sqldef;
+        this.serializer = serializer;
+    }
+
+    @Override
+    public void storeToken(String processorName, TrackingToken token) {
+        SerializedObject<byte[]> serializedToken = serializer.serialize(token, byte[].class);
+        Connection conn = null;
+        PreparedStatement statement = null;
+        try {
+            conn = connectionProvider.getConnection();
+            statement = sqldef.sql_updateToken(conn, processorName, serializedToken);
+            if (statement.executeUpdate() == 0) {
+                closeQuietly(statement);
+                statement = sqldef.sql_insertToken(conn, processorName, serializedToken);
+                statement.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new TokenStoreException("Exception while storing the token of processor " + processorName, e);
+        } finally {
+            closeQuietly(statement);
+            closeQuietly(conn);
+        }
+    }
+
+    @Override
+    public TrackingToken fetchToken(String processorName) {
+        Connection conn = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            conn = connectionProvider.getConnection();
+            statement = sqldef.sql_loadToken(conn, processorName);
+            resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                return null;
+            }
+            return (TrackingToken) serializer.deserialize(sqldef.readSerializedToken(resultSet));
+        } catch (SQLException e) {
+            throw new TokenStoreException("Exception while loading the token of processor " + processorName, e);
+        } finally {
+            closeQuietly(resultSet);
+            closeQuietly(statement);
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * 创建 令牌表
+     *
+     * @throws SQLException when an error occurs executing SQL statements
+     */
+    public void createSchema() throws SQLException {
+        final Connection connection = connectionProvider.getConnection();
+        try {
+            sqldef.sql_createTokenEntryTable(connection).executeUpdate();
+        } finally {
+            closeQuietly(connection);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.sluckframework.cqrs.eventhanding.tracking.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.sluckframework.common.serializer.SerializedObject;
+
+/**
+ * 跟踪令牌表 的 sql 定义
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface TokenSqlSchema {
+
+    /**
+     * 创建 查询 处理器令牌 的 statement
+     *
+     * @param connection    The connection to create the statement for
+     * @param processorName The name of the processor
+     * @return a statement that selects the token, readable with {@link #readSerializedToken(ResultSet)}
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_loadToken(Connection connection, String processorName) throws SQLException;
+
+    /**
+     * 创建 更新 处理器令牌 的 statement
+     *
+     * @param connection    The connection to create the statement for
+     * @param processorName The name of the processor
+     * @param token         The serialized token
+     * @return a statement that updates an existing token entry
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_updateToken(Connection connection, String processorName,
+                                      SerializedObject<byte[]> token) throws SQLException;
+
+    /**
+     * 创建 插入 处理器令牌 的 statement
+     *
+     * @param connection    The connection to create the statement for
+     * @param processorName The name of the processor
+     * @param token         The serialized token
+     * @return a statement that inserts a new token entry
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_insertToken(Connection connection, String processorName,
+                                      SerializedObject<byte[]> token) throws SQLException;
+
+    /**
+     * 创建 令牌表 的 statement
+     *
+     * @param connection The connection to create the statement for
+     * @return a statement that creates the token table
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_createTokenEntryTable(Connection connection) throws SQLException;
+
+    /**
+     * 从结果集中 读取 序列化的令牌
+     *
+     * @param resultSet The result set positioned at a token entry
+     * @return the serialized token
+     * @throws SQLException when an error occurs reading the result set
+     */
+    SerializedObject<byte[]> readSerializedToken(ResultSet resultSet) throws SQLException;
+}
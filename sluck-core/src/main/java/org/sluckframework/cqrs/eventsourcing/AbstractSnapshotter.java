@@ -33,10 +33,16 @@ public abstract class AbstractSnapshotter implements Snapshotter {
 
     @Override
     public void scheduleSnapshot(String typeIdentifier, Identifier<?> aggregateIdentifier) {
-        executor.execute(new SilentTask(
-                new TransactionalRunnableWrapper(transactionManager,
-                                                 createSnapshotterTask(typeIdentifier, aggregateIdentifier)
-                )));
+        scheduleTask(createSnapshotterTask(typeIdentifier, aggregateIdentifier));
+    }
+
+    /**
+     * 使用 executor 在事务中 执行 快照任务，任务的异常 只记录日志
+     *
+     * @param task the task creating and storing a snapshot
+     */
+    protected void scheduleTask(Runnable task) {
+        executor.execute(new SilentTask(new TransactionalRunnableWrapper(transactionManager, task)));
     }
 
     /**
@@ -61,6 +67,18 @@ public abstract class AbstractSnapshotter implements Snapshotter {
     protected abstract AggregateEvent createSnapshot(String typeIdentifier, Identifier<?> aggregateIdentifier,
                                                          AggregateEventStream eventStream);
 
+    /**
+     * 使用 内存中 已是最新状态的 聚合实例 创建并存储快照，从而 不必从事件仓储中 读取事件流。默认不支持，
+     * 返回 false 时 从事件仓储 读取事件流 创建快照
+     *
+     * @param typeIdentifier      The aggregate's type identifier
+     * @param aggregateIdentifier The identifier of the aggregate to create a snapshot for
+     * @return <code>true</code> if the snapshot was stored, <code>false</code> to read the event stream instead
+     */
+    protected boolean snapshotFromCurrentState(String typeIdentifier, Identifier<?> aggregateIdentifier) {
+        return false;
+    }
+
     /**
      * 设置事务管理器
      *
@@ -167,6 +185,9 @@ public abstract class AbstractSnapshotter implements Snapshotter {
 
         @Override
         public void run() {
+            if (snapshotFromCurrentState(typeIdentifier, aggregateIdentifier)) {
+                return;
+            }
             AggregateEventStream eventStream = eventStore.readEvents(typeIdentifier, aggregateIdentifier);
             try {
                 // a snapshot should only be stored if the snapshot replaces at least more than one event
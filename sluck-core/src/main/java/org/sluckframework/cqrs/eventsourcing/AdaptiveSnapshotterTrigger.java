@@ -0,0 +1,342 @@
+package org.sluckframework.cqrs.eventsourcing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sluckframework.cache.Cache;
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.serializer.SerializedAggregateEvent;
+import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.common.util.IOUtils;
+import org.sluckframework.cqrs.unitofwork.CurrentUnitOfWork;
+import org.sluckframework.cqrs.unitofwork.UnitOfWork;
+import org.sluckframework.cqrs.unitofwork.UnitOfWorkListenerAdapter;
+import org.sluckframework.domain.event.aggregate.AggregateEvent;
+import org.sluckframework.domain.event.aggregate.AggregateEventStream;
+import org.sluckframework.domain.identifier.Identifier;
+import org.sluckframework.monitoring.MonitorRegistry;
+
+/**
+ * 根据 测量的 加载代价 触发快照的生成。每次从事件仓储 加载聚合时，测量 快照之后的事件 的 数量、序列化大小 和 重建耗时
+ * (读取、反序列化 及 应用到聚合)，按 聚合类型 计算 平均代价；聚合 快照之后的事件 预计的重建耗时 超过 latencyBudget 时
+ * 触发快照。重建很快的聚合 可以积累更多的事件，重建很慢的聚合 更早生成快照。
+ * <p/>
+ * 某种聚合 尚未被测量时(如 一直在缓存中)，使用 固定的事件数量 fallbackTrigger 作为阈值。
+ * 每种聚合的 测量结果 和 触发阈值 通过 JMX 公开，每个触发器 注册一个监视。每个聚合的 事件统计 与
+ * {@link EventCountSnapshotterTrigger} 相同，保存在 有容量上限的 map 中，超出上限时 淘汰 最久未访问的聚合
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class AdaptiveSnapshotterTrigger implements SnapshotterTrigger {
+
+    private static final long DEFAULT_LATENCY_BUDGET = 100;
+    private static final int DEFAULT_FALLBACK_TRIGGER = 50;
+    private static final int DEFAULT_MAX_TAILS = 100000;
+
+    private volatile AggregateCounters<AggregateTail> tails = new AggregateCounters<AggregateTail>(DEFAULT_MAX_TAILS);
+    private final AdaptiveSnapshotterTriggerStatistics statistics =
+            new AdaptiveSnapshotterTriggerStatistics(DEFAULT_LATENCY_BUDGET);
+    private Snapshotter snapshotter;
+    private volatile boolean clearTailsAfterAppend = true;
+    private int fallbackTrigger = DEFAULT_FALLBACK_TRIGGER;
+
+    /**
+     * 初始化，并注册 JMX 监视
+     */
+    public AdaptiveSnapshotterTrigger() {
+        MonitorRegistry.registerMonitoringBean(statistics, AdaptiveSnapshotterTrigger.class);
+    }
+
+    @Override
+    public AggregateEventStream decorateForRead(String aggregateType, Object aggregateIdentifier,
+                                                AggregateEventStream eventStream) {
+        AggregateTail tail = new AggregateTail();
+        tails.put(aggregateIdentifier, tail);
+        return new MeasuringEventStream(statistics.forType(aggregateType), eventStream, tail);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public AggregateEventStream decorateForAppend(String aggregateType, EventSourcedAggregateRoot aggregate,
+                                                  AggregateEventStream eventStream) {
+        Identifier<?> aggregateIdentifier = aggregate.getIdentifier();
+        AggregateTail tail = tails.getOrCreate(aggregateIdentifier, AggregateTail::new);
+        return new TriggeringEventStream(aggregateType, aggregateIdentifier, eventStream, tail);
+    }
+
+    private void triggerSnapshotIfRequired(String type, Identifier<?> aggregateIdentifier, AggregateTail tail) {
+        AdaptiveSnapshotterTriggerStatistics.TypeStatistics typeStatistics = statistics.forType(type);
+        long events = tail.events.get();
+        boolean required;
+        if (typeStatistics.isMeasured()) {
+            required = events > 1
+                    && typeStatistics.predictNanos(events, tail.bytes.get()) > statistics.getLatencyBudgetNanos();
+        } else {
+            required = events > fallbackTrigger;
+        }
+        if (required) {
+            if (snapshotter instanceof CoalescingSnapshotScheduler) {
+                ((CoalescingSnapshotScheduler) snapshotter).scheduleSnapshot(type, aggregateIdentifier, events);
+            } else {
+                snapshotter.scheduleSnapshot(type, aggregateIdentifier);
+            }
+            typeStatistics.recordTriggeredSnapshot();
+            tail.reset();
+        }
+    }
+
+    private static long serializedSize(AggregateEvent<?, ?> event) {
+        if (event instanceof SerializedAggregateEvent) {
+            SerializedObject<?> payload = ((SerializedAggregateEvent<?>) event).getSerializedPayload();
+            Object data = payload == null ? null : payload.getData();
+            if (data instanceof byte[]) {
+                return ((byte[]) data).length;
+            } else if (data instanceof String) {
+                return ((String) data).length();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 配置 聚合快照的 真正创建者
+     *
+     * @param snapshotter the snapshotter to notify
+     */
+    public void setSnapshotter(Snapshotter snapshotter) {
+        this.snapshotter = snapshotter;
+    }
+
+    /**
+     * 设置 加载一个聚合 允许的 重建耗时，默认 100 毫秒
+     *
+     * @param latencyBudget the predicted replay time in milliseconds after which a snapshot is triggered
+     */
+    public void setLatencyBudget(long latencyBudget) {
+        Assert.isTrue(latencyBudget > 0, "latencyBudget must be positive");
+        statistics.setLatencyBudget(latencyBudget);
+    }
+
+    /**
+     * 设置 聚合类型 尚未被测量时 使用的 事件数量阈值，默认 50
+     *
+     * @param fallbackTrigger the number of events after which a snapshot is triggered for unmeasured types
+     */
+    public void setFallbackTrigger(int fallbackTrigger) {
+        this.fallbackTrigger = fallbackTrigger;
+    }
+
+    /**
+     * 设置 最多保存 多少个聚合的 事件统计，默认 100000，需要在使用前 设置
+     *
+     * @param maxTails The maximum number of aggregates to keep the event statistics for
+     */
+    public void setMaxTails(int maxTails) {
+        Assert.isTrue(maxTails > 0, "maxTails must be positive");
+        this.tails = new AggregateCounters<AggregateTail>(maxTails);
+    }
+
+    /**
+     * 设置 聚合 事件仓储 存储事件后 是否清除 聚合的 事件统计，默认为 true，使用缓存时 需要设置为 false
+     *
+     * @param clearTailsAfterAppend indicator whether to clear the per aggregate statistics after appending events
+     */
+    public void setClearTailsAfterAppend(boolean clearTailsAfterAppend) {
+        this.clearTailsAfterAppend = clearTailsAfterAppend;
+    }
+
+    /**
+     * 为 缓存仓储 设置 缓存
+     *
+     * @param cache The cache used by caching repositories
+     */
+    public void setAggregateCache(Cache cache) {
+        this.clearTailsAfterAppend = false;
+        cache.registerCacheEntryListener(new CacheListener());
+    }
+
+    /**
+     * 为 缓存仓储 设置 缓存
+     *
+     * @param caches The caches used by caching repositories
+     */
+    public void setAggregateCaches(List<Cache> caches) {
+        for (Cache cache : caches) {
+            setAggregateCache(cache);
+        }
+    }
+
+    /**
+     * 返回 统计信息
+     *
+     * @return the measured load costs and trigger decisions
+     */
+    public AdaptiveSnapshotterTriggerStatisticsMXBean getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 聚合 最近一次快照之后的 事件数量 和 序列化大小
+     */
+    private static final class AggregateTail {
+
+        private final AtomicLong events = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        private void reset() {
+            events.set(0);
+            bytes.set(0);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final class MeasuringEventStream implements AggregateEventStream, Closeable {
+
+        private final AdaptiveSnapshotterTriggerStatistics.TypeStatistics typeStatistics;
+        private final AggregateEventStream delegate;
+        private final AggregateTail tail;
+        private long startTime = -1;
+        private boolean recorded;
+
+        private MeasuringEventStream(AdaptiveSnapshotterTriggerStatistics.TypeStatistics typeStatistics,
+                                     AggregateEventStream delegate, AggregateTail tail) {
+            this.typeStatistics = typeStatistics;
+            this.delegate = delegate;
+            this.tail = tail;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = delegate.hasNext();
+            if (!hasNext) {
+                recordLoad();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public AggregateEvent next() {
+            long now = System.nanoTime();
+            AggregateEvent next = delegate.next();
+            if (isSnapshot(next)) {
+                // only the events after the snapshot are replayed on the next load
+                tail.reset();
+                startTime = -1;
+            } else {
+                if (startTime < 0) {
+                    startTime = now;
+                }
+                tail.events.incrementAndGet();
+                tail.bytes.addAndGet(serializedSize(next));
+            }
+            return next;
+        }
+
+        private boolean isSnapshot(AggregateEvent event) {
+            Class payloadType = event.getPayloadType();
+            return payloadType != null && EventSourcedAggregateRoot.class.isAssignableFrom(payloadType);
+        }
+
+        @Override
+        public AggregateEvent peek() {
+            return delegate.peek();
+        }
+
+        private void recordLoad() {
+            if (!recorded && startTime >= 0) {
+                recorded = true;
+                typeStatistics.recordLoad(tail.events.get(), tail.bytes.get(), System.nanoTime() - startTime);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOUtils.closeIfCloseable(delegate);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private final class TriggeringEventStream implements AggregateEventStream, Closeable {
+
+        private final String aggregateType;
+        private final Identifier<?> aggregateIdentifier;
+        private final AggregateEventStream delegate;
+        private final AggregateTail tail;
+
+        private TriggeringEventStream(String aggregateType, Identifier<?> aggregateIdentifier,
+                                      AggregateEventStream delegate, AggregateTail tail) {
+            this.aggregateType = aggregateType;
+            this.aggregateIdentifier = aggregateIdentifier;
+            this.delegate = delegate;
+            this.tail = tail;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = delegate.hasNext();
+            if (!hasNext) {
+                CurrentUnitOfWork.get().registerListener(new SnapshotTriggeringListener(aggregateType,
+                                                                                        aggregateIdentifier,
+                                                                                        tail));
+                if (clearTailsAfterAppend) {
+                    tails.remove(aggregateIdentifier, tail);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public AggregateEvent next() {
+            AggregateEvent next = delegate.next();
+            tail.events.incrementAndGet();
+            // the appended events are not serialized yet, assume the average size of the type
+            tail.bytes.addAndGet((long) statistics.forType(aggregateType).getBytesPerEvent());
+            return next;
+        }
+
+        @Override
+        public AggregateEvent peek() {
+            return delegate.peek();
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOUtils.closeIfCloseable(delegate);
+        }
+    }
+
+    private final class CacheListener extends Cache.EntryListenerAdapter {
+
+        @Override
+        public void onEntryExpired(Object key) {
+            tails.remove(key);
+        }
+
+        @Override
+        public void onEntryRemoved(Object key) {
+            tails.remove(key);
+        }
+    }
+
+    private class SnapshotTriggeringListener extends UnitOfWorkListenerAdapter {
+
+        private final String aggregateType;
+        private final Identifier<?> aggregateIdentifier;
+        private final AggregateTail tail;
+
+        public SnapshotTriggeringListener(String aggregateType, Identifier<?> aggregateIdentifier,
+                                          AggregateTail tail) {
+            this.aggregateType = aggregateType;
+            this.aggregateIdentifier = aggregateIdentifier;
+            this.tail = tail;
+        }
+
+        @Override
+        public void onCleanup(UnitOfWork unitOfWork) {
+            triggerSnapshotIfRequired(aggregateType, aggregateIdentifier, tail);
+        }
+    }
+}
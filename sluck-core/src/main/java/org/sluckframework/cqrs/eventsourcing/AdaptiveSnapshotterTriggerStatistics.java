@@ -0,0 +1,156 @@
+package org.sluckframework.cqrs.eventsourcing;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自适应快照触发器 的统计信息，按 聚合类型 维护 加载代价的 指数移动平均
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class AdaptiveSnapshotterTriggerStatistics implements AdaptiveSnapshotterTriggerStatisticsMXBean {
+
+    private final ConcurrentMap<String, TypeStatistics> types = new ConcurrentHashMap<String, TypeStatistics>();
+    private volatile long latencyBudgetNanos;
+
+    AdaptiveSnapshotterTriggerStatistics(long latencyBudgetMillis) {
+        this.latencyBudgetNanos = TimeUnit.MILLISECONDS.toNanos(latencyBudgetMillis);
+    }
+
+    @Override
+    public long getLatencyBudget() {
+        return TimeUnit.NANOSECONDS.toMillis(latencyBudgetNanos);
+    }
+
+    @Override
+    public Map<String, Long> getMeasuredLoadCounts() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, TypeStatistics> entry : types.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getLoadCount());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getNanosPerEvent() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, TypeStatistics> entry : types.entrySet()) {
+            result.put(entry.getKey(), (long) entry.getValue().getNanosPerEvent());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getBytesPerEvent() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, TypeStatistics> entry : types.entrySet()) {
+            result.put(entry.getKey(), (long) entry.getValue().getBytesPerEvent());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getEventThresholds() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, TypeStatistics> entry : types.entrySet()) {
+            double nanosPerEvent = entry.getValue().getNanosPerEvent();
+            if (nanosPerEvent > 0) {
+                result.put(entry.getKey(), (long) (latencyBudgetNanos / nanosPerEvent));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getTriggeredSnapshotCounts() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, TypeStatistics> entry : types.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().triggeredSnapshots.get());
+        }
+        return result;
+    }
+
+    /*----- end of jmx enabled methods -----*/
+
+    long getLatencyBudgetNanos() {
+        return latencyBudgetNanos;
+    }
+
+    void setLatencyBudget(long latencyBudgetMillis) {
+        this.latencyBudgetNanos = TimeUnit.MILLISECONDS.toNanos(latencyBudgetMillis);
+    }
+
+    TypeStatistics forType(String aggregateType) {
+        TypeStatistics statistics = types.get(aggregateType);
+        if (statistics == null) {
+            types.putIfAbsent(aggregateType, new TypeStatistics());
+            statistics = types.get(aggregateType);
+        }
+        return statistics;
+    }
+
+    /**
+     * 一种聚合的 加载代价，每次测量 以 1/4 的权重 计入平均值
+     */
+    static final class TypeStatistics {
+
+        private static final double WEIGHT = 0.25;
+
+        private final AtomicLong triggeredSnapshots = new AtomicLong();
+        private long loadCount;
+        private double nanosPerEvent;
+        private double nanosPerByte;
+        private double bytesPerEvent;
+
+        synchronized void recordLoad(long events, long bytes, long nanos) {
+            if (events <= 0) {
+                return;
+            }
+            nanosPerEvent = average(nanosPerEvent, (double) nanos / events);
+            bytesPerEvent = average(bytesPerEvent, (double) bytes / events);
+            if (bytes > 0) {
+                nanosPerByte = average(nanosPerByte, (double) nanos / bytes);
+            }
+            loadCount++;
+        }
+
+        private double average(double current, double sample) {
+            return loadCount == 0 ? sample : current + WEIGHT * (sample - current);
+        }
+
+        void recordTriggeredSnapshot() {
+            triggeredSnapshots.incrementAndGet();
+        }
+
+        /**
+         * 预测 重建 给定数量的事件 的耗时，已知事件大小时 按字节数 预测
+         */
+        synchronized long predictNanos(long events, long bytes) {
+            if (bytes > 0 && nanosPerByte > 0) {
+                return (long) (bytes * nanosPerByte);
+            }
+            return (long) (events * nanosPerEvent);
+        }
+
+        synchronized boolean isMeasured() {
+            return loadCount > 0;
+        }
+
+        synchronized long getLoadCount() {
+            return loadCount;
+        }
+
+        synchronized double getNanosPerEvent() {
+            return nanosPerEvent;
+        }
+
+        synchronized double getBytesPerEvent() {
+            return bytesPerEvent;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.sluckframework.cqrs.eventsourcing;
+
+import java.util.Map;
+
+/**
+ * 自适应快照触发器 的监视，按 聚合类型 返回 测量的加载代价 和 触发决策
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface AdaptiveSnapshotterTriggerStatisticsMXBean {
+
+    /**
+     * 返回 加载聚合 允许的 重建耗时
+     *
+     * @return the latency budget in milliseconds
+     */
+    long getLatencyBudget();
+
+    /**
+     * 返回 每种聚合 测量的 加载次数
+     *
+     * @return the number of measured loads per aggregate type
+     */
+    Map<String, Long> getMeasuredLoadCounts();
+
+    /**
+     * 返回 每种聚合 平均每个事件的 重建耗时
+     *
+     * @return the average replay time per event in nanoseconds, per aggregate type
+     */
+    Map<String, Long> getNanosPerEvent();
+
+    /**
+     * 返回 每种聚合 平均每个事件的 序列化大小
+     *
+     * @return the average serialized size per event in bytes, per aggregate type
+     */
+    Map<String, Long> getBytesPerEvent();
+
+    /**
+     * 返回 每种聚合 在耗时预算内 可以重建的 事件数量，即 当前的触发阈值
+     *
+     * @return the number of events after which a snapshot is triggered, per aggregate type
+     */
+    Map<String, Long> getEventThresholds();
+
+    /**
+     * 返回 每种聚合 触发的 快照数量
+     *
+     * @return the number of triggered snapshots per aggregate type
+     */
+    Map<String, Long> getTriggeredSnapshotCounts();
+}
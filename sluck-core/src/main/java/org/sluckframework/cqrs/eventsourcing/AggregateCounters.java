@@ -0,0 +1,144 @@
+package org.sluckframework.cqrs.eventsourcing;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 快照触发器 使用的 有容量上限的 每个聚合的统计，超出上限时 淘汰 最久未访问的聚合。
+ * 与 缓存不同 新的聚合 总是被保存，不会 因为访问频率低 被拒绝，因此 很少修改的聚合 也能 累积到 触发阈值
+ * <p/>
+ * 统计 保存在 ConcurrentHashMap 中，读取 不加锁，只记录 当前的 时钟值。时钟 只在 新增聚合时 前进，
+ * 超出上限时 由一个线程 按时钟值 淘汰 最久未访问的 约 10% 的聚合，淘汰顺序 是近似的 LRU
+ *
+ * @param <V> The type of statistics kept per aggregate
+ * @author sunxy
+ * @since 1.0
+ */
+final class AggregateCounters<V> {
+
+    private final ConcurrentMap<Object, Entry<V>> counters = new ConcurrentHashMap<Object, Entry<V>>();
+    private final AtomicLong clock = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final int maxCounters;
+    private final int evictionBatch;
+
+    /**
+     * 使用 最多保存的聚合数量 初始化
+     *
+     * @param maxCounters The maximum number of aggregates to keep statistics for
+     */
+    AggregateCounters(int maxCounters) {
+        this.maxCounters = maxCounters;
+        this.evictionBatch = Math.max(1, maxCounters / 10);
+    }
+
+    V get(Object aggregateIdentifier) {
+        Entry<V> entry = counters.get(aggregateIdentifier);
+        if (entry == null) {
+            return null;
+        }
+        entry.touch(clock.get());
+        return entry.value;
+    }
+
+    void put(Object aggregateIdentifier, V counter) {
+        if (counters.put(aggregateIdentifier, new Entry<V>(counter, clock.incrementAndGet())) == null) {
+            evictIfNecessary();
+        }
+    }
+
+    /**
+     * 返回 聚合的统计，不存在时 使用 factory 创建并保存
+     */
+    V getOrCreate(Object aggregateIdentifier, Supplier<V> factory) {
+        V existing = get(aggregateIdentifier);
+        if (existing != null) {
+            return existing;
+        }
+        Entry<V> created = new Entry<V>(factory.get(), clock.incrementAndGet());
+        Entry<V> current = counters.putIfAbsent(aggregateIdentifier, created);
+        if (current != null) {
+            return current.value;
+        }
+        evictIfNecessary();
+        return created.value;
+    }
+
+    void remove(Object aggregateIdentifier) {
+        counters.remove(aggregateIdentifier);
+    }
+
+    /**
+     * 只在 聚合的统计 仍是 counter 时 移除
+     */
+    void remove(Object aggregateIdentifier, V counter) {
+        Entry<V> entry = counters.get(aggregateIdentifier);
+        if (entry != null && Objects.equals(entry.value, counter)) {
+            counters.remove(aggregateIdentifier, entry);
+        }
+    }
+
+    int size() {
+        return counters.size();
+    }
+
+    /**
+     * 超出上限时 淘汰 时钟值 最小的 一批聚合，其他线程 正在淘汰时 直接返回
+     */
+    private void evictIfNecessary() {
+        if (counters.size() <= maxCounters || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int excess = counters.size() - maxCounters;
+            if (excess <= 0) {
+                return;
+            }
+            long[] accessTimes = new long[counters.size()];
+            int count = 0;
+            for (Entry<V> entry : counters.values()) {
+                if (count == accessTimes.length) {
+                    break;
+                }
+                accessTimes[count++] = entry.lastAccess;
+            }
+            if (count == 0) {
+                return;
+            }
+            Arrays.sort(accessTimes, 0, count);
+            long threshold = accessTimes[Math.min(count, excess + evictionBatch) - 1];
+            Iterator<Entry<V>> iterator = counters.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().lastAccess <= threshold) {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private volatile long lastAccess;
+
+        private Entry(V value, long lastAccess) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+
+        private void touch(long now) {
+            // skip the write when nothing was added since the last read, keeping the cache line shared
+            if (lastAccess != now) {
+                lastAccess = now;
+            }
+        }
+    }
+}
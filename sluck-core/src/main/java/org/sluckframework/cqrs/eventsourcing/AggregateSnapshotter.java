@@ -1,13 +1,19 @@
 package org.sluckframework.cqrs.eventsourcing;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sluckframework.cache.Cache;
+import org.sluckframework.common.exception.Assert;
 import org.sluckframework.domain.event.aggregate.AggregateEvent;
 import org.sluckframework.domain.event.aggregate.AggregateEventStream;
 import org.sluckframework.domain.event.aggregate.GenericAggregateEvent;
 import org.sluckframework.domain.identifier.Identifier;
+import org.sluckframework.domain.repository.lock.LockManager;
 
 /**
  * 聚合快照 创建者 的具体实现，聚合快照事件 其实就是 存储当前聚合的状态
@@ -19,7 +25,11 @@ import org.sluckframework.domain.identifier.Identifier;
 @SuppressWarnings("rawtypes")
 public class AggregateSnapshotter extends AbstractSnapshotter {
 
+    private static final Logger logger = LoggerFactory.getLogger(AggregateSnapshotter.class);
+
     private final Map<String, AggregateFactory<?>> aggregateFactories = new ConcurrentHashMap<String, AggregateFactory<?>>();
+    private Cache aggregateCache;
+    private LockManager lockManager;
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -35,6 +45,79 @@ public class AggregateSnapshotter extends AbstractSnapshotter {
                 aggregate.getIdentifier(), aggregate.getVersion(), aggregate);
     }
 
+    /**
+     * 缓存中的聚合 在持有锁时 即是已提交的最新状态，此时 直接使用缓存的实例 创建快照，并在持有锁时 存储快照
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    protected boolean snapshotFromCurrentState(String typeIdentifier, Identifier<?> aggregateIdentifier) {
+        AggregateFactory<?> aggregateFactory = aggregateFactories.get(typeIdentifier);
+        if (aggregateCache == null || aggregateFactory == null) {
+            return false;
+        }
+        lockManager.obtainLock(aggregateIdentifier);
+        try {
+            Object cached = aggregateCache.get(aggregateIdentifier);
+            if (!aggregateFactory.getAggregateType().isInstance(cached)) {
+                return false;
+            }
+            EventSourcedAggregateRoot aggregate = (EventSourcedAggregateRoot) cached;
+            Long version = aggregate.getVersion();
+            // a snapshot should only be stored if the snapshot replaces at least more than one event
+            if (version == null || version < 1 || aggregate.isDeleted() || aggregate.getUncommittedEventCount() > 0) {
+                return false;
+            }
+            getEventStore().appendSnapshotEvent(typeIdentifier,
+                                                new GenericAggregateEvent(aggregate.getIdentifier(), version,
+                                                                          aggregate));
+            return true;
+        } finally {
+            lockManager.releaseLock(aggregateIdentifier);
+        }
+    }
+
+    /**
+     * 使用 刚提交的 聚合状态 计划生成快照，不从事件仓储 读取事件流。调用时 当前线程 必须独占该聚合(如 持有聚合的锁)，
+     * 聚合状态 在调用时 被序列化为副本，之后 在 executor 中 反序列化 并 存储为 版本为 当前已提交版本 的快照
+     *
+     * @param typeIdentifier The aggregate's type identifier
+     * @param aggregate      The aggregate, in the state of its last committed event
+     * @return <code>true</code> if the snapshot was scheduled, <code>false</code> if the state cannot be captured
+     * and the snapshot should be created from the event stream instead
+     */
+    public boolean scheduleSnapshotOfCommittedState(String typeIdentifier, EventSourcedAggregateRoot aggregate) {
+        AggregateFactory<?> aggregateFactory = aggregateFactories.get(typeIdentifier);
+        Long version = aggregate.getVersion();
+        if (aggregateFactory == null || version == null || version < 1 || aggregate.isDeleted()
+                || aggregate.getUncommittedEventCount() > 0) {
+            return false;
+        }
+        byte[] state;
+        try {
+            state = AggregateStateCopy.capture(aggregate);
+        } catch (IOException e) {
+            logger.debug("Unable to capture the state of aggregate {}, falling back to the event stream",
+                         aggregate.getIdentifier(), e);
+            return false;
+        }
+        scheduleTask(new StoreCapturedStateTask(typeIdentifier, aggregate.getIdentifier(), version, state,
+                                                aggregateFactory.getAggregateType().getClassLoader()));
+        return true;
+    }
+
+    /**
+     * 设置 缓存仓储 使用的 缓存 和 锁，设置后 缓存中存在的聚合 直接 从内存状态 创建快照，不再读取事件流
+     *
+     * @param aggregateCache The cache used by the caching repositories
+     * @param lockManager    The lock manager of the caching repositories, guarding the cached instances
+     */
+    public void setAggregateCache(Cache aggregateCache, LockManager lockManager) {
+        Assert.notNull(aggregateCache, "aggregateCache may not be null");
+        Assert.notNull(lockManager, "lockManager may not be null");
+        this.aggregateCache = aggregateCache;
+        this.lockManager = lockManager;
+    }
+
     /**
      * 设置聚合工厂
      *
@@ -46,4 +129,30 @@ public class AggregateSnapshotter extends AbstractSnapshotter {
             this.aggregateFactories.put(factory.getTypeIdentifier(), factory);
         }
     }
+
+    private final class StoreCapturedStateTask implements Runnable {
+
+        private final String typeIdentifier;
+        private final Identifier<?> aggregateIdentifier;
+        private final long version;
+        private final byte[] state;
+        private final ClassLoader classLoader;
+
+        private StoreCapturedStateTask(String typeIdentifier, Identifier<?> aggregateIdentifier, long version,
+                                       byte[] state, ClassLoader classLoader) {
+            this.typeIdentifier = typeIdentifier;
+            this.aggregateIdentifier = aggregateIdentifier;
+            this.version = version;
+            this.state = state;
+            this.classLoader = classLoader;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void run() {
+            Object aggregate = AggregateStateCopy.restore(state, classLoader);
+            getEventStore().appendSnapshotEvent(typeIdentifier,
+                                                new GenericAggregateEvent(aggregateIdentifier, version, aggregate));
+        }
+    }
 }
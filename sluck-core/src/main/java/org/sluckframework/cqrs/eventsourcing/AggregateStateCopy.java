@@ -0,0 +1,79 @@
+package org.sluckframework.cqrs.eventsourcing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+import org.sluckframework.common.serializer.SerializationException;
+
+/**
+ * 使用 java 序列化 复制 聚合的状态，聚合根 都实现了 Serializable
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+final class AggregateStateCopy {
+
+    private AggregateStateCopy() {
+    }
+
+    /**
+     * 将 聚合的当前状态 序列化
+     *
+     * @param aggregate The aggregate to capture
+     * @return the serialized state of the aggregate
+     * @throws IOException when the aggregate or one of its fields cannot be serialized
+     */
+    static byte[] capture(Object aggregate) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(aggregate);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 从 序列化的状态 还原 聚合
+     *
+     * @param state       The state returned by {@link #capture(Object)}
+     * @param classLoader The class loader to resolve the aggregate classes with
+     * @return a new instance with the captured state
+     */
+    static Object restore(byte[] state, ClassLoader classLoader) {
+        try {
+            ObjectInputStream in = new ClassLoaderObjectInputStream(new ByteArrayInputStream(state), classLoader);
+            try {
+                return in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Unable to read the captured aggregate state", e);
+        } catch (ClassNotFoundException e) {
+            throw new SerializationException("Unable to read the captured aggregate state", e);
+        }
+    }
+
+    private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        private ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
@@ -1,19 +1,38 @@
 package org.sluckframework.cqrs.eventsourcing;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sluckframework.cache.Cache;
+import org.sluckframework.cache.CacheInvalidation;
+import org.sluckframework.cache.CacheInvalidationBus;
+import org.sluckframework.cache.CacheInvalidationListener;
 import org.sluckframework.cache.NoCache;
 import org.sluckframework.cqrs.unitofwork.CurrentUnitOfWork;
 import org.sluckframework.cqrs.unitofwork.UnitOfWork;
 import org.sluckframework.cqrs.unitofwork.UnitOfWorkListenerAdapter;
 import org.sluckframework.domain.event.eventstore.PartialStreamSupport;
 import org.sluckframework.domain.identifier.Identifier;
+import org.sluckframework.domain.identifier.IdentifierFactory;
 import org.sluckframework.domain.repository.lock.LockManager;
+import org.sluckframework.domain.repository.lock.NullLockManager;
 import org.sluckframework.domain.repository.lock.PessimisticLockManager;
 import org.sluckframework.domain.event.eventstore.AggregateEventStore;
 
 
 /**
- * 具有缓存功能的 ES仓储，默认只支持 悲观锁
+ * 具有缓存功能的 ES仓储，默认使用 悲观锁，命令 在 加载、处理 和 存储事件 的整个过程中 独占聚合。
+ * <p/>
+ * 乐观模式 不加锁：缓存中的聚合 被视为 不可变的快照，每个 unitOfWork 加载时 得到 缓存实例的 私有副本(java 序列化复制)，
+ * 提交后 修改过的副本 替换 缓存中的实例。并发修改 同一个聚合时，后提交者 在 事件仓储 追加事件时 得到 {@link
+ * org.sluckframework.domain.repository.ConcurrencyException}(重复的 聚合标示符 + 序列号)，回滚时 缓存中的实例 被移除，
+ * 命令 可以由 {@link org.sluckframework.cqrs.commandhandling.gateway.RetryScheduler} 重试，重试时 从事件仓储 重新加载。
+ * 给定 expectedVersion 并配置了 {@link ConflictResolver} 时，与 非缓存仓储 一样 检查 未看到的事件 是否冲突
  * 
  * @author sunxy
  * @time 2015年9月6日 下午2:46:01	
@@ -21,10 +40,16 @@ import org.sluckframework.domain.event.eventstore.AggregateEventStore;
  */
 public class CachingEventSourcingRepository<T extends EventSourcedAggregateRoot<ID>, ID extends Identifier<?>>
 		extends EventSourcingRepository<T, ID> {
-	
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingEventSourcingRepository.class);
+
     private Cache cache = NoCache.INSTANCE;
     private final boolean hasEventStorePartialReadSupport;
     private final PartialStreamSupport eventStore;
+    private final boolean optimistic;
+    private final String invalidationOriginId = IdentifierFactory.getInstance().generateIdentifier();
+    private final CacheInvalidationListener invalidationListener = new EvictingInvalidationListener();
+    private volatile CacheInvalidationBus invalidationBus;
 
     /**
      * 使用 指定的聚合工厂 和 悲观锁 初始化
@@ -48,6 +73,22 @@ public class CachingEventSourcingRepository<T extends EventSourcedAggregateRoot<
         super(aggregateFactory, eventStore, lockManager);
         this.hasEventStorePartialReadSupport = (eventStore instanceof PartialStreamSupport);
         this.eventStore = eventStore instanceof PartialStreamSupport ? (PartialStreamSupport) eventStore : null;
+        this.optimistic = false;
+    }
+
+    /**
+     * 使用 指定的聚合工厂 初始化，可选择 乐观模式
+     *
+     * @param aggregateFactory The factory for new aggregate instances
+     * @param eventStore       The event store that holds the event streams for this repository
+     * @param optimistic       whether to work on private copies of cached aggregates instead of locking them
+     */
+    public CachingEventSourcingRepository(AggregateFactory<T> aggregateFactory, AggregateEventStore eventStore,
+                                          boolean optimistic) {
+        super(aggregateFactory, eventStore, optimistic ? new NullLockManager() : new PessimisticLockManager());
+        this.hasEventStorePartialReadSupport = (eventStore instanceof PartialStreamSupport);
+        this.eventStore = eventStore instanceof PartialStreamSupport ? (PartialStreamSupport) eventStore : null;
+        this.optimistic = optimistic;
     }
 
     @Override
@@ -59,13 +100,53 @@ public class CachingEventSourcingRepository<T extends EventSourcedAggregateRoot<
     @Override
     protected void postSave(T aggregate) {
         super.postSave(aggregate);
-        cache.put(aggregate.getIdentifier(), aggregate);
+        cacheCommitted(aggregate);
+        publishInvalidation(aggregate);
     }
 
     @Override
     protected void postDelete(T aggregate) {
         super.postDelete(aggregate);
-        cache.put(aggregate.getIdentifier(), aggregate);
+        cacheCommitted(aggregate);
+        publishInvalidation(aggregate);
+    }
+
+    private void publishInvalidation(T aggregate) {
+        CacheInvalidationBus bus = invalidationBus;
+        if (bus != null && aggregate.getVersion() != null) {
+            CurrentUnitOfWork.get().registerListener(new InvalidationPublishingListener(
+                    bus, new CacheInvalidation(invalidationOriginId, getTypeIdentifier(), aggregate.getIdentifier(),
+                                               aggregate.getVersion())));
+        }
+    }
+
+    private void cacheCommitted(T aggregate) {
+        if (!optimistic) {
+            cache.put(aggregate.getIdentifier(), aggregate);
+            return;
+        }
+        // nothing locks the aggregate in optimistic mode, other units of work may only see committed state
+        CurrentUnitOfWork.get().registerListener(new CommittedStateCachingListener(aggregate));
+    }
+
+    private void replaceCachedState(T aggregate) {
+        // do not replace a newer instance stored by a unit of work that committed concurrently
+        T current = cache.get(aggregate.getIdentifier());
+        boolean cached;
+        if (current == null) {
+            cached = cache.putIfAbsent(aggregate.getIdentifier(), aggregate);
+        } else {
+            cached = isNewer(current, aggregate) || cache.replace(aggregate.getIdentifier(), current, aggregate);
+        }
+        if (!cached) {
+            // the entry changed concurrently, drop it rather than risk keeping the older state
+            cache.remove(aggregate.getIdentifier());
+        }
+    }
+
+    private boolean isNewer(T current, T aggregate) {
+        return current.getVersion() != null && aggregate.getVersion() != null
+                && current.getVersion() > aggregate.getVersion();
     }
 
     /**
@@ -78,6 +159,9 @@ public class CachingEventSourcingRepository<T extends EventSourcedAggregateRoot<
     @Override
     public T doLoad(ID aggregateIdentifier, Long expectedVersion) {
         T aggregate = cache.get(aggregateIdentifier);
+        if (optimistic && aggregate != null) {
+            aggregate = privateCopy(aggregate);
+        }
         if (aggregate == null
                 || (!hasEventStorePartialReadSupport && !hasExpectedVersion(expectedVersion, aggregate.getVersion()))) {
             // if the event store doesn't support partial stream loading, we need to load the aggregate from the event store entirely
@@ -93,6 +177,49 @@ public class CachingEventSourcingRepository<T extends EventSourcedAggregateRoot<
         return aggregate;
     }
 
+    /**
+     * 缓存中的聚合 逐个加载，其余聚合 通过事件仓储 批量加载
+     *
+     * @param aggregateIdentifiers the distinct identifiers of the aggregates to load
+     * @return the fully initialized aggregates by identifier, in the order of the identifiers
+     */
+    @Override
+    protected Map<ID, T> doLoadAll(List<ID> aggregateIdentifiers) {
+        List<ID> uncached = new ArrayList<ID>();
+        for (ID aggregateIdentifier : aggregateIdentifiers) {
+            if (cache.get(aggregateIdentifier) == null) {
+                uncached.add(aggregateIdentifier);
+            }
+        }
+        Map<ID, T> loaded = super.doLoadAll(uncached);
+        Map<ID, T> aggregates = new LinkedHashMap<ID, T>(aggregateIdentifiers.size());
+        for (ID aggregateIdentifier : aggregateIdentifiers) {
+            T aggregate = loaded.get(aggregateIdentifier);
+            if (aggregate == null) {
+                aggregate = doLoad(aggregateIdentifier, null);
+            } else {
+                CurrentUnitOfWork.get().registerListener(new CacheClearingUnitOfWorkListener(aggregateIdentifier));
+            }
+            aggregates.put(aggregateIdentifier, aggregate);
+        }
+        return aggregates;
+    }
+
+    /**
+     * 复制 缓存中的聚合，无法复制时 返回 null，从事件仓储 重新加载
+     */
+    @SuppressWarnings("unchecked")
+    private T privateCopy(T cached) {
+        try {
+            return (T) AggregateStateCopy.restore(AggregateStateCopy.capture(cached),
+                                                  cached.getClass().getClassLoader());
+        } catch (IOException e) {
+            logger.debug("Unable to copy cached aggregate {}, loading it from the event store",
+                         cached.getIdentifier(), e);
+            return null;
+        }
+    }
+
     private boolean hasExpectedVersion(Long expectedVersion, Long actualVersion) {
         return expectedVersion == null || (actualVersion != null && actualVersion.equals(expectedVersion));
     }
@@ -106,6 +233,79 @@ public class CachingEventSourcingRepository<T extends EventSourcedAggregateRoot<
         this.cache = cache;
     }
 
+    /**
+     * 设置 缓存失效通知 通道，提交后 发布 聚合的新版本，收到 其他节点的通知时 移除 版本更低的缓存实例
+     *
+     * @param invalidationBus the bus to publish and receive invalidations on, or <code>null</code> to disable
+     */
+    public void setCacheInvalidationBus(CacheInvalidationBus invalidationBus) {
+        if (this.invalidationBus != null) {
+            this.invalidationBus.unsubscribe(invalidationListener);
+        }
+        this.invalidationBus = invalidationBus;
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(invalidationListener);
+        }
+    }
+
+    private final class EvictingInvalidationListener implements CacheInvalidationListener {
+
+        @Override
+        public void onInvalidation(CacheInvalidation invalidation) {
+            if (invalidationOriginId.equals(invalidation.getOriginId())
+                    || !getTypeIdentifier().equals(invalidation.getAggregateType())) {
+                return;
+            }
+            T cached = cache.get(invalidation.getAggregateIdentifier());
+            // an instance without a known version is left alone, the event store rejects a stale commit
+            if (cached != null && cached.getVersion() != null && invalidation.isNewerThan(cached.getVersion())) {
+                logger.debug("Evicting {} from the cache, it was committed elsewhere", invalidation);
+                cache.remove(invalidation.getAggregateIdentifier());
+            }
+        }
+    }
+
+    /**
+     * 事务提交后 再发布，避免 对端 在提交前 重新加载到 旧的状态
+     */
+    private static final class InvalidationPublishingListener extends UnitOfWorkListenerAdapter {
+
+        private final CacheInvalidationBus bus;
+        private final CacheInvalidation invalidation;
+
+        private InvalidationPublishingListener(CacheInvalidationBus bus, CacheInvalidation invalidation) {
+            this.bus = bus;
+            this.invalidation = invalidation;
+        }
+
+        @Override
+        public void afterCommit(UnitOfWork unitOfWork) {
+            bus.publish(invalidation);
+        }
+    }
+
+    /**
+     * 乐观模式下 事务提交后 再将 聚合 放入缓存，回滚时 移除 缓存中的实例
+     */
+    private final class CommittedStateCachingListener extends UnitOfWorkListenerAdapter {
+
+        private final T aggregate;
+
+        private CommittedStateCachingListener(T aggregate) {
+            this.aggregate = aggregate;
+        }
+
+        @Override
+        public void afterCommit(UnitOfWork unitOfWork) {
+            replaceCachedState(aggregate);
+        }
+
+        @Override
+        public void onRollback(UnitOfWork unitOfWork, Throwable failureCause) {
+            cache.remove(aggregate.getIdentifier());
+        }
+    }
+
     private class CacheClearingUnitOfWorkListener extends UnitOfWorkListenerAdapter {
 
         private final Object identifier;
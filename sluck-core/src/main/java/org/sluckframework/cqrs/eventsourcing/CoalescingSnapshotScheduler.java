@@ -0,0 +1,255 @@
+package org.sluckframework.cqrs.eventsourcing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.thread.SluckThreadFactory;
+import org.sluckframework.domain.identifier.Identifier;
+
+/**
+ * 异步的 快照调度，将快照请求 交给 固定数量的 工作线程 执行，真正的快照 由 delegate 在工作线程上 同步创建
+ * (delegate 应使用默认的 DirectExecutor)。
+ * <p/>
+ * 同一个聚合(类型 + 标示符) 同时最多只有一个 等待中 或 执行中 的请求，重复的请求 被合并，合并时 累加 事件尾部长度。
+ * 等待中的请求 按 事件尾部长度 从大到小 执行，即 重建代价最大的聚合 优先生成快照。等待中的请求数量 达到上限时，
+ * 调度线程 最多阻塞 backpressureTimeout 毫秒，仍无空间时 放弃本次请求(触发器 会在之后 再次请求)
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class CoalescingSnapshotScheduler implements Snapshotter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingSnapshotScheduler.class);
+    private static final ThreadGroup SNAPSHOT_THREAD_GROUP = new ThreadGroup("CoalescingSnapshotScheduler");
+
+    private static final int DEFAULT_WORKER_COUNT = 2;
+    private static final int DEFAULT_MAX_PENDING = 1024;
+
+    private final Snapshotter delegate;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<AggregateKey, SnapshotRequest> pending =
+            new ConcurrentHashMap<AggregateKey, SnapshotRequest>();
+    private final Semaphore capacity;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long backpressureTimeout;
+
+    /**
+     * 使用 默认的 工作线程数(2) 和 等待上限(1024) 初始化
+     *
+     * @param delegate The snapshotter creating the snapshots on the worker threads
+     */
+    public CoalescingSnapshotScheduler(Snapshotter delegate) {
+        this(delegate, DEFAULT_WORKER_COUNT, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * 使用 指定的 工作线程数 和 等待上限 初始化
+     *
+     * @param delegate    The snapshotter creating the snapshots on the worker threads
+     * @param workerCount The number of threads creating snapshots concurrently
+     * @param maxPending  The maximum number of pending or running snapshot requests
+     */
+    public CoalescingSnapshotScheduler(Snapshotter delegate, int workerCount, int maxPending) {
+        Assert.notNull(delegate, "delegate may not be null");
+        Assert.isTrue(workerCount > 0, "workerCount must be positive");
+        Assert.isTrue(maxPending > 0, "maxPending must be positive");
+        this.delegate = delegate;
+        this.capacity = new Semaphore(maxPending);
+        this.executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                                               new PriorityBlockingQueue<Runnable>(),
+                                               new SluckThreadFactory(SNAPSHOT_THREAD_GROUP));
+    }
+
+    @Override
+    public void scheduleSnapshot(String typeIdentifier, Identifier<?> aggregateIdentifier) {
+        scheduleSnapshot(typeIdentifier, aggregateIdentifier, 0);
+    }
+
+    /**
+     * 计划生成快照，并给出 上次快照之后的 事件数量，用于 确定优先级
+     *
+     * @param typeIdentifier      the type of the aggregate to take the snapshot for
+     * @param aggregateIdentifier The identifier of the aggregate to take the snapshot for
+     * @param tailLength          The number of events applied since the last snapshot
+     */
+    public void scheduleSnapshot(String typeIdentifier, Identifier<?> aggregateIdentifier, long tailLength) {
+        AggregateKey key = new AggregateKey(typeIdentifier, aggregateIdentifier);
+        SnapshotRequest existing = pending.get(key);
+        if (existing != null) {
+            coalesce(existing, tailLength);
+            return;
+        }
+        if (!acquireCapacity()) {
+            droppedCount.incrementAndGet();
+            logger.debug("Snapshot queue full, dropping snapshot request for aggregate [{}] {}",
+                         typeIdentifier, aggregateIdentifier);
+            return;
+        }
+        SnapshotRequest request = new SnapshotRequest(key, tailLength, sequence.getAndIncrement());
+        existing = pending.putIfAbsent(key, request);
+        if (existing != null) {
+            capacity.release();
+            coalesce(existing, tailLength);
+            return;
+        }
+        try {
+            executor.execute(request);
+        } catch (RejectedExecutionException e) {
+            pending.remove(key, request);
+            capacity.release();
+            droppedCount.incrementAndGet();
+            logger.warn("Snapshot request for aggregate [{}] {} rejected, the scheduler is shut down",
+                        typeIdentifier, aggregateIdentifier);
+        }
+    }
+
+    /**
+     * 合并请求，请求仍在等待时 以新的 事件尾部长度 重新排队
+     */
+    private void coalesce(SnapshotRequest request, long tailLength) {
+        coalescedCount.incrementAndGet();
+        if (tailLength <= 0) {
+            return;
+        }
+        synchronized (request) {
+            // the priority of a queued request may not change while it is in the queue
+            if (executor.remove(request)) {
+                request.tailLength += tailLength;
+                try {
+                    executor.execute(request);
+                } catch (RejectedExecutionException e) {
+                    pending.remove(request.key, request);
+                    capacity.release();
+                }
+            }
+        }
+    }
+
+    private boolean acquireCapacity() {
+        try {
+            return backpressureTimeout > 0
+                    ? capacity.tryAcquire(backpressureTimeout, TimeUnit.MILLISECONDS)
+                    : capacity.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 停止接受新的请求，等待中的请求 仍会被执行
+     */
+    public void shutDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 设置 等待中的请求 达到上限时 调度线程 最多阻塞的时间，默认 0，即 立即放弃请求
+     *
+     * @param backpressureTimeout the maximum time in milliseconds to wait for room in the queue
+     */
+    public void setBackpressureTimeout(long backpressureTimeout) {
+        Assert.isTrue(backpressureTimeout >= 0, "backpressureTimeout may not be negative");
+        this.backpressureTimeout = backpressureTimeout;
+    }
+
+    /**
+     * 返回 等待中 或 执行中的 请求数量
+     *
+     * @return the number of pending or running snapshot requests
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 返回 被合并的 请求数量
+     *
+     * @return the number of requests merged into a pending request
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * 返回 因队列已满 被放弃的 请求数量
+     *
+     * @return the number of requests dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private final class SnapshotRequest implements Runnable, Comparable<SnapshotRequest> {
+
+        private final AggregateKey key;
+        private final long sequenceNumber;
+        private long tailLength;
+
+        private SnapshotRequest(AggregateKey key, long tailLength, long sequenceNumber) {
+            this.key = key;
+            this.tailLength = tailLength;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public void run() {
+            try {
+                delegate.scheduleSnapshot(key.typeIdentifier, key.aggregateIdentifier);
+            } catch (RuntimeException e) {
+                logger.warn("Snapshot creation for aggregate [{}] {} failed",
+                            key.typeIdentifier, key.aggregateIdentifier, e);
+            } finally {
+                pending.remove(key, this);
+                capacity.release();
+            }
+        }
+
+        @Override
+        public int compareTo(SnapshotRequest other) {
+            if (tailLength != other.tailLength) {
+                return tailLength > other.tailLength ? -1 : 1;
+            }
+            return sequenceNumber < other.sequenceNumber ? -1 : (sequenceNumber == other.sequenceNumber ? 0 : 1);
+        }
+    }
+
+    private static final class AggregateKey {
+
+        private final String typeIdentifier;
+        private final Identifier<?> aggregateIdentifier;
+
+        private AggregateKey(String typeIdentifier, Identifier<?> aggregateIdentifier) {
+            this.typeIdentifier = typeIdentifier;
+            this.aggregateIdentifier = aggregateIdentifier;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            AggregateKey that = (AggregateKey) o;
+            return typeIdentifier.equals(that.typeIdentifier) && aggregateIdentifier.equals(that.aggregateIdentifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * typeIdentifier.hashCode() + aggregateIdentifier.hashCode();
+        }
+    }
+}
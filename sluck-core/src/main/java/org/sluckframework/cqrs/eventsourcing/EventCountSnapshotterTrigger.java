@@ -3,11 +3,10 @@ package org.sluckframework.cqrs.eventsourcing;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.sluckframework.cache.Cache;
+import org.sluckframework.common.exception.Assert;
 import org.sluckframework.common.util.IOUtils;
 import org.sluckframework.cqrs.unitofwork.CurrentUnitOfWork;
 import org.sluckframework.cqrs.unitofwork.UnitOfWork;
@@ -17,7 +16,9 @@ import org.sluckframework.domain.event.aggregate.AggregateEventStream;
 import org.sluckframework.domain.identifier.Identifier;
 
 /**
- * 根据聚合事件 的 数量来 触发快照的生成，追踪 未提交聚合事件的 数量，仓储应该使用此装饰器，而避免使用真正的 事件流
+ * 根据聚合事件 的 数量来 触发快照的生成，追踪 未提交聚合事件的 数量，仓储应该使用此装饰器，而避免使用真正的 事件流。
+ * 每个聚合的计数器 保存在 有容量上限的 map 中，超出上限时 淘汰 最久未访问的聚合的计数器，
+ * 被淘汰的聚合 下次追加事件时 重新计数，因此 内存占用 不随 聚合的总数 增长，而 最近修改过的聚合 保持准确的计数
  * 
  * @author sunxy
  * @time 2015年9月6日 下午2:14:39	
@@ -26,10 +27,13 @@ import org.sluckframework.domain.identifier.Identifier;
 public class EventCountSnapshotterTrigger implements SnapshotterTrigger {
 
     private static final int DEFAULT_TRIGGER_VALUE = 50; //默认 追踪 的 未提交的 聚合事件数量
+    private static final int DEFAULT_MAX_COUNTERS = 100000;
 
     private Snapshotter snapshotter;
-    private final ConcurrentMap<Object, AtomicInteger> counters = new ConcurrentHashMap<Object, AtomicInteger>();
+    private volatile AggregateCounters<AtomicInteger> counters =
+            new AggregateCounters<AtomicInteger>(DEFAULT_MAX_COUNTERS);
     private volatile boolean clearCountersAfterAppend = true;
+    private volatile boolean snapshotCommittedState;
     private int trigger = DEFAULT_TRIGGER_VALUE;
 
     @Override
@@ -45,15 +49,38 @@ public class EventCountSnapshotterTrigger implements SnapshotterTrigger {
     public AggregateEventStream decorateForAppend(String aggregateType, EventSourcedAggregateRoot aggregate,
                                                AggregateEventStream eventStream) {
     	Identifier<?> aggregateIdentifier = aggregate.getIdentifier();
-        counters.putIfAbsent(aggregateIdentifier, new AtomicInteger(0));
-        AtomicInteger counter = counters.get(aggregateIdentifier);
-        return new TriggeringEventStream(aggregateType, aggregateIdentifier, eventStream, counter);
+        AtomicInteger counter = counterFor(aggregateIdentifier);
+        return new TriggeringEventStream(aggregateType, aggregate, eventStream, counter);
+    }
+
+    private AtomicInteger counterFor(Object aggregateIdentifier) {
+        return counters.getOrCreate(aggregateIdentifier, AtomicInteger::new);
+    }
+
+    /**
+     * 聚合事件 提交后 当前线程 仍持有聚合的锁，此时 使用 聚合的内存状态 生成快照，无法捕获时 回退到 读取事件流
+     */
+    @SuppressWarnings("rawtypes")
+    private void triggerSnapshotOfCommittedStateIfRequired(String type, EventSourcedAggregateRoot aggregate,
+                                                           final AtomicInteger eventCount) {
+        if (eventCount.get() > trigger) {
+            if (((AggregateSnapshotter) snapshotter).scheduleSnapshotOfCommittedState(type, aggregate)) {
+                eventCount.set(1);
+            } else {
+                triggerSnapshotIfRequired(type, aggregate.getIdentifier(), eventCount);
+            }
+        }
     }
 
     private void triggerSnapshotIfRequired(String type, Identifier<?> aggregateIdentifier,
                                            final AtomicInteger eventCount) {
-        if (eventCount.get() > trigger) {
-            snapshotter.scheduleSnapshot(type, aggregateIdentifier);
+        int count = eventCount.get();
+        if (count > trigger) {
+            if (snapshotter instanceof CoalescingSnapshotScheduler) {
+                ((CoalescingSnapshotScheduler) snapshotter).scheduleSnapshot(type, aggregateIdentifier, count);
+            } else {
+                snapshotter.scheduleSnapshot(type, aggregateIdentifier);
+            }
             eventCount.set(1);
         }
     }
@@ -67,6 +94,16 @@ public class EventCountSnapshotterTrigger implements SnapshotterTrigger {
         this.snapshotter = snapshotter;
     }
 
+    /**
+     * 设置 最多保存 多少个聚合的 计数器，默认 100000，需要在使用前 设置
+     *
+     * @param maxCounters The maximum number of aggregates to keep an event counter for
+     */
+    public void setMaxCounters(int maxCounters) {
+        Assert.isTrue(maxCounters > 0, "maxCounters must be positive");
+        this.counters = new AggregateCounters<AtomicInteger>(maxCounters);
+    }
+
     /**
      * 设置追踪的聚合未提交事件的数量
      *
@@ -88,6 +125,18 @@ public class EventCountSnapshotterTrigger implements SnapshotterTrigger {
         this.clearCountersAfterAppend = clearCountersAfterAppend;
     }
 
+    /**
+     * 设置 是否 在聚合事件提交后 直接使用 聚合的内存状态 生成快照，默认 false。需要 snapshotter 为
+     * {@link AggregateSnapshotter}，并且 仓储 在提交时 持有聚合的锁({@link EventSourcingRepository} 及其子类)。
+     * {@link org.sluckframework.cqrs.commandhandling.disruptor.DisruptorCommandBus} 在 发布线程 存储事件时
+     * 调用线程 可能已在修改聚合，不能开启
+     *
+     * @param snapshotCommittedState whether to snapshot the in-memory state of the aggregate after commit
+     */
+    public void setSnapshotCommittedState(boolean snapshotCommittedState) {
+        this.snapshotCommittedState = snapshotCommittedState;
+    }
+
     /**
      * 为 缓存仓储 设置 缓存
      * 
@@ -153,16 +202,19 @@ public class EventCountSnapshotterTrigger implements SnapshotterTrigger {
         }
     }
 
+    @SuppressWarnings("rawtypes")
     private final class TriggeringEventStream extends CountingEventStream {
 
         private final String aggregateType;
+        private final EventSourcedAggregateRoot aggregate;
         private final Identifier<?> aggregateIdentifier;
 
-        private TriggeringEventStream(String aggregateType, Identifier<?> aggregateIdentifier,
+        private TriggeringEventStream(String aggregateType, EventSourcedAggregateRoot aggregate,
                                       AggregateEventStream delegate, AtomicInteger counter) {
             super(delegate, counter);
             this.aggregateType = aggregateType;
-            this.aggregateIdentifier = aggregateIdentifier;
+            this.aggregate = aggregate;
+            this.aggregateIdentifier = aggregate.getIdentifier();
         }
 
         @Override
@@ -170,7 +222,7 @@ public class EventCountSnapshotterTrigger implements SnapshotterTrigger {
             boolean hasNext = super.hasNext();
             if (!hasNext) {
                 CurrentUnitOfWork.get().registerListener(new SnapshotTriggeringListener(aggregateType,
-                                                                                        aggregateIdentifier,
+                                                                                        aggregate,
                                                                                         getCounter()));
                 if (clearCountersAfterAppend) {
                     counters.remove(aggregateIdentifier, getCounter());
@@ -193,22 +245,34 @@ public class EventCountSnapshotterTrigger implements SnapshotterTrigger {
         }
     }
 
+    @SuppressWarnings("rawtypes")
     private class SnapshotTriggeringListener extends UnitOfWorkListenerAdapter {
 
         private final String aggregateType;
-        private final Identifier<?> aggregateIdentifier;
+        private final EventSourcedAggregateRoot aggregate;
         private final AtomicInteger counter;
+        private final boolean captureCommittedState;
 
         public SnapshotTriggeringListener(String aggregateType,
-                                          Identifier<?> aggregateIdentifier, AtomicInteger counter) {
+                                          EventSourcedAggregateRoot aggregate, AtomicInteger counter) {
             this.aggregateType = aggregateType;
-            this.aggregateIdentifier = aggregateIdentifier;
+            this.aggregate = aggregate;
             this.counter = counter;
+            this.captureCommittedState = snapshotCommittedState && snapshotter instanceof AggregateSnapshotter;
+        }
+
+        @Override
+        public void afterCommit(UnitOfWork unitOfWork) {
+            if (captureCommittedState) {
+                triggerSnapshotOfCommittedStateIfRequired(aggregateType, aggregate, counter);
+            }
         }
 
         @Override
         public void onCleanup(UnitOfWork unitOfWork) {
-            triggerSnapshotIfRequired(aggregateType, aggregateIdentifier, counter);
+            if (!captureCommittedState) {
+                triggerSnapshotIfRequired(aggregateType, aggregate.getIdentifier(), counter);
+            }
         }
     }
 }
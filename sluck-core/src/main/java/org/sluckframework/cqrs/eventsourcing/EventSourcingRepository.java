@@ -10,6 +10,7 @@ import org.sluckframework.domain.event.EventProxy;
 import org.sluckframework.domain.event.aggregate.AggregateEvent;
 import org.sluckframework.domain.event.aggregate.AggregateEventStream;
 import org.sluckframework.domain.event.eventstore.AggregateEventStore;
+import org.sluckframework.domain.event.eventstore.BatchStreamSupport;
 import org.sluckframework.domain.event.eventstore.EventStreamNotFoundException;
 import org.sluckframework.domain.identifier.Identifier;
 import org.sluckframework.domain.repository.AggregateNotFoundException;
@@ -121,6 +122,10 @@ public class EventSourcingRepository<T extends EventSourcedAggregateRoot<ID>, ID
      */
     @Override
     protected T doLoad(ID aggregateIdentifier, final Long expectedVersion) {
+        return readAggregate(aggregateIdentifier, expectedVersion);
+    }
+
+    private T readAggregate(ID aggregateIdentifier, Long expectedVersion) {
     	AggregateEventStream events = null;
     	AggregateEventStream originalStream = null;
         try {
@@ -133,16 +138,7 @@ public class EventSourcingRepository<T extends EventSourcedAggregateRoot<ID>, ID
             for (EventStreamDecorator decorator : eventStreamDecorators) {
                 events = decorator.decorateForRead(getTypeIdentifier(), aggregateIdentifier, events);
             }
-
-            final T aggregate = aggregateFactory.createAggregate(aggregateIdentifier, events.peek());
-            List<AggregateEvent> unseenEvents = new ArrayList<AggregateEvent>();
-            aggregate.initializeState(new CapturingEventStream(events, unseenEvents, expectedVersion));
-            if (aggregate.isDeleted()) {
-                throw new AggregateDeletedException(aggregateIdentifier);
-            }
-            CurrentUnitOfWork.get().registerListener(new ConflictResolvingListener(aggregate, unseenEvents));
-
-            return aggregate;
+            return initializeAggregate(aggregateIdentifier, events, expectedVersion);
         } finally {
             IOUtils.closeQuietlyIfCloseable(events);
             // if a decorator doesn't implement closeable, we still want to be sure we close the original stream
@@ -150,6 +146,58 @@ public class EventSourcingRepository<T extends EventSourcedAggregateRoot<ID>, ID
         }
     }
 
+    /**
+     * 批量加载聚合，事件仓储 实现 {@link BatchStreamSupport} 时 一次读取所有聚合的流，否则 逐个加载
+     *
+     * @param aggregateIdentifiers the distinct identifiers of the aggregates to load
+     * @return the fully initialized aggregates by identifier, in the order of the identifiers
+     */
+    @Override
+    protected Map<ID, T> doLoadAll(List<ID> aggregateIdentifiers) {
+        Map<ID, T> aggregates = new LinkedHashMap<ID, T>(aggregateIdentifiers.size());
+        if (!(AggregateEventStore instanceof BatchStreamSupport) || aggregateIdentifiers.size() < 2) {
+            for (ID aggregateIdentifier : aggregateIdentifiers) {
+                aggregates.put(aggregateIdentifier, readAggregate(aggregateIdentifier, null));
+            }
+            return aggregates;
+        }
+        Map<Identifier<?>, AggregateEventStream> streams =
+                ((BatchStreamSupport) AggregateEventStore).readEvents(getTypeIdentifier(), aggregateIdentifiers);
+        try {
+            for (ID aggregateIdentifier : aggregateIdentifiers) {
+                AggregateEventStream events = streams.get(aggregateIdentifier);
+                if (events == null) {
+                    throw new AggregateNotFoundException(aggregateIdentifier, "The aggregate was not found");
+                }
+                AggregateEventStream decorated = events;
+                try {
+                    for (EventStreamDecorator decorator : eventStreamDecorators) {
+                        decorated = decorator.decorateForRead(getTypeIdentifier(), aggregateIdentifier, decorated);
+                    }
+                    aggregates.put(aggregateIdentifier, initializeAggregate(aggregateIdentifier, decorated, null));
+                } finally {
+                    IOUtils.closeQuietlyIfCloseable(decorated);
+                }
+            }
+            return aggregates;
+        } finally {
+            for (AggregateEventStream events : streams.values()) {
+                IOUtils.closeQuietlyIfCloseable(events);
+            }
+        }
+    }
+
+    private T initializeAggregate(ID aggregateIdentifier, AggregateEventStream events, Long expectedVersion) {
+        final T aggregate = aggregateFactory.createAggregate(aggregateIdentifier, events.peek());
+        List<AggregateEvent> unseenEvents = new ArrayList<AggregateEvent>();
+        aggregate.initializeState(new CapturingEventStream(events, unseenEvents, expectedVersion));
+        if (aggregate.isDeleted()) {
+            throw new AggregateDeletedException(aggregateIdentifier);
+        }
+        CurrentUnitOfWork.get().registerListener(new ConflictResolvingListener(aggregate, unseenEvents));
+        return aggregate;
+    }
+
     public AggregateFactory<T> getAggregateFactory() {
         return aggregateFactory;
     }
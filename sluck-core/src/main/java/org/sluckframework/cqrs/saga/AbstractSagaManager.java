@@ -28,7 +28,7 @@ public abstract class AbstractSagaManager implements SagaManager {
     private final SagaRepository sagaRepository;
     private final SagaFactory sagaFactory;
     private final Class<? extends Saga>[] sagaTypes;
-    private final IdentifierBasedLock lock = new IdentifierBasedLock();
+    private volatile IdentifierBasedLock lock = new IdentifierBasedLock();
     private final Map<String, Saga> sagasInCreation = new ConcurrentHashMap<>();
     private volatile boolean suppressExceptions = true;
     private volatile boolean synchronizeSagaAccess = true;
@@ -67,15 +67,12 @@ public abstract class AbstractSagaManager implements SagaManager {
 
     private boolean invokeExistingSagas(EventProxy<?> event, Class<? extends Saga> sagaType,
                                         Collection<AssociationValue> associationValues) {
-        Set<String> sagas = new TreeSet<>();
-        for (AssociationValue associationValue : associationValues) {
-            sagas.addAll(sagaRepository.find(sagaType, associationValue));
-        }
-        for (Saga sagaInCreation : sagasInCreation.values()) {
-            if (sagaType.isInstance(sagaInCreation)
-                    && containsAny(sagaInCreation.getAssociationValues(), associationValues)) {
-                sagas.add(sagaInCreation.getSagaIdentifier());
-            }
+        Collection<String> sagas = findSagas(sagaType, associationValues);
+        if (synchronizeSagaAccess && sagas.size() > 1) {
+            // locks are held until the unit of work is cleaned up, obtain them in a fixed order
+            List<String> lockOrder = new ArrayList<>(sagas);
+            Collections.sort(lockOrder, lock.lockOrder());
+            sagas = lockOrder;
         }
         boolean sagaOfTypeInvoked = false;
         for (final String sagaId : sagas) {
@@ -97,6 +94,42 @@ public abstract class AbstractSagaManager implements SagaManager {
         return sagaOfTypeInvoked;
     }
 
+    /**
+     * 找到 与任一关联值 相关的 saga 和 正在创建的 saga。只有一个关联值 找到 saga 时 直接使用 仓储返回的集合，
+     * 多个关联值的结果 需要合并时 才复制。不排序，需要同步访问时 由调用者 按锁的顺序 排序
+     */
+    private Set<String> findSagas(Class<? extends Saga> sagaType, Collection<AssociationValue> associationValues) {
+        Set<String> found = Collections.emptySet();
+        Set<String> merged = null;
+        for (AssociationValue associationValue : associationValues) {
+            Set<String> sagaIdentifiers = sagaRepository.find(sagaType, associationValue);
+            if (sagaIdentifiers.isEmpty()) {
+                continue;
+            }
+            if (found.isEmpty()) {
+                found = sagaIdentifiers;
+            } else if (merged == null) {
+                merged = new HashSet<>(found);
+                merged.addAll(sagaIdentifiers);
+            } else {
+                merged.addAll(sagaIdentifiers);
+            }
+        }
+        for (Saga sagaInCreation : sagasInCreation.values()) {
+            if (sagaType.isInstance(sagaInCreation)
+                    && containsAny(sagaInCreation.getAssociationValues(), associationValues)) {
+                String sagaIdentifier = sagaInCreation.getSagaIdentifier();
+                if (merged == null && !found.contains(sagaIdentifier)) {
+                    merged = new HashSet<>(found);
+                }
+                if (merged != null) {
+                    merged.add(sagaIdentifier);
+                }
+            }
+        }
+        return merged != null ? merged : found;
+    }
+
     private boolean containsAny(AssociationValues associationValues, Collection<AssociationValue> toFind) {
         for (AssociationValue valueToFind : toFind) {
             if (associationValues.contains(valueToFind)) {
@@ -246,6 +279,17 @@ public abstract class AbstractSagaManager implements SagaManager {
         this.synchronizeSagaAccess = synchronizeSagaAccess;
     }
 
+    /**
+     * 使用 固定数量的 分段锁 同步 saga 的访问，需要在 处理事件前 设置。
+     * 在 unitOfWork 中 处理事件时 saga 的锁 保持到 unitOfWork 结束，不同 saga 共用分段锁 可能导致 DeadlockException
+     *
+     * @param lockStripes the minimum number of locks the saga identifiers are spread over
+     * @see IdentifierBasedLock#IdentifierBasedLock(int)
+     */
+    public void setLockStripes(int lockStripes) {
+        this.lock = new IdentifierBasedLock(lockStripes);
+    }
+
 
     /**
      * 获取被管理的的saga的类型
@@ -0,0 +1,41 @@
+package org.sluckframework.cqrs.saga;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 支持 批量 查找和加载 saga 的仓储，实现应 使用固定次数的存储交互 完成 整批 关联值 或 标示符 的查找和加载
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface BatchSagaLoadSupport {
+
+    /**
+     * 找到 与 任一给定关联值 相关的 指定类型的 saga
+     *
+     * @param type              The type of Saga to find
+     * @param associationValues The values of which the returned Sagas must be associated with at least one
+     * @return the identifiers of the associated Sagas, never <code>null</code>
+     */
+    Set<String> findAll(Class<? extends Saga> type, Collection<AssociationValue> associationValues);
+
+    /**
+     * 加载 多个 saga 及其关联值，返回的 saga 与 {@link SagaRepository#load(String)} 返回的相同
+     *
+     * @param sagaIdentifiers The identifiers of the Sagas to load
+     * @return the loaded Sagas by their identifier; Sagas that do not exist are absent
+     */
+    Map<String, Saga> loadAll(Collection<String> sagaIdentifiers);
+
+    /**
+     * 找到并加载 与 任一给定关联值 相关的 指定类型的 saga，等同于 先 {@link #findAll(Class, Collection)} 再
+     * {@link #loadAll(Collection)}，实现可以 在一次存储交互中 完成
+     *
+     * @param type              The type of Saga to find
+     * @param associationValues The values of which the returned Sagas must be associated with at least one
+     * @return the associated Sagas by their identifier
+     */
+    Map<String, Saga> findAndLoadAll(Class<? extends Saga> type, Collection<AssociationValue> associationValues);
+}
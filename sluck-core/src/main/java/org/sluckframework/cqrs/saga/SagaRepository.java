@@ -1,5 +1,6 @@
 package org.sluckframework.cqrs.saga;
 
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -12,12 +13,13 @@ import java.util.Set;
 public interface SagaRepository {
 
     /**
-     * 找到指定的saga类型和指定的关联值
+     * 找到指定的saga类型和指定的关联值，返回的集合 可能是 只读的，调用者 不能修改，也不应在 当前处理之后 继续持有，
+     * 集合 没有顺序
      *
      * @param type             The type of Saga to return
      * @param associationValue The value that the returned Sagas must be associated with
-     * @return A Set containing the found Saga instances. If none are found, an empty Set is returned. Will never
-     *         return <code>null</code>.
+     * @return A possibly read-only Set containing the identifiers of the found Sagas. If none are found, an empty
+     *         Set is returned. Will never return <code>null</code>.
      */
     Set<String> find(Class<? extends Saga> type, AssociationValue associationValue);
 
@@ -42,4 +44,20 @@ public interface SagaRepository {
      * @param saga The Saga instances to add.
      */
     void add(Saga saga);
+
+    /**
+     * 批量 新增 和 提交 saga，默认 对 addedSagas 逐个调用 {@link #add(Saga)}，对 committedSagas 逐个调用
+     * {@link #commit(Saga)}，实现可以覆盖 将整批变更 在一次存储操作中 完成
+     *
+     * @param addedSagas     The newly created Saga instances to add
+     * @param committedSagas The existing Saga instances to commit
+     */
+    default void commitAll(Collection<? extends Saga> addedSagas, Collection<? extends Saga> committedSagas) {
+        for (Saga saga : addedSagas) {
+            add(saga);
+        }
+        for (Saga saga : committedSagas) {
+            commit(saga);
+        }
+    }
 }
@@ -51,6 +51,7 @@ public class AsyncAnnotatedSagaManager implements SagaManager, EventProcessingMo
     private UnitOfWorkFactory unitOfWorkFactory = new DefaultUnitOfWorkFactory();
     private long startTimeout = 5000;
     private ErrorHandler errorHandler = new ProceedingErrorHandler();
+    private boolean batchSagaLoading = true;
 
 
     /**
@@ -91,7 +92,7 @@ public class AsyncAnnotatedSagaManager implements SagaManager, EventProcessingMo
             disruptor.handleEventsWith(AsyncSagaEventProcessor.createInstances(sagaRepository, parameterResolverFactory,
                     unitOfWorkFactory, processorCount,
                     disruptor.getRingBuffer(),
-                    sagaManagerStatus, errorHandler))
+                    sagaManagerStatus, errorHandler, batchSagaLoading))
                     .then(new MonitorNotifier(processingMonitors));
             disruptor.start();
         }
@@ -232,6 +233,17 @@ public class AsyncAnnotatedSagaManager implements SagaManager, EventProcessingMo
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * 设置 是否 批量加载 saga，开启时 处理器 在每批事件开始时 收集 ring buffer 中 所有已发布事件的关联值，
+     * 一次查找 并一次加载 相关的 saga，加载次数 不再随事件数量增长。默认开启
+     *
+     * @param batchSagaLoading whether to load the sagas of all available events at once
+     */
+    public synchronized void setBatchSagaLoading(boolean batchSagaLoading) {
+        Assert.state(disruptor == null, "Cannot set batchSagaLoading when SagaManager has started");
+        this.batchSagaLoading = batchSagaLoading;
+    }
+
     /**
      * 设置等待策略
      *
@@ -10,6 +10,7 @@ import org.sluckframework.common.exception.SluckNonTransientException;
 import org.sluckframework.cqrs.eventhanding.async.RetryPolicy;
 import org.sluckframework.cqrs.saga.AssociationValue;
 import org.sluckframework.cqrs.saga.AssociationValues;
+import org.sluckframework.cqrs.saga.BatchSagaLoadSupport;
 import org.sluckframework.cqrs.saga.Saga;
 import org.sluckframework.cqrs.saga.SagaRepository;
 import org.sluckframework.cqrs.unitofwork.UnitOfWork;
@@ -29,8 +30,18 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
     private static final Logger logger = LoggerFactory.getLogger(AsyncSagaEventProcessor.class);
     private final UnitOfWorkFactory unitOfWorkFactory;
     private final SagaRepository sagaRepository;
-    private final Map<String, Saga> processedSagas = new TreeMap<>();
-    private final Map<String, Saga> newlyCreatedSagas = new TreeMap<>();
+    // the sagas are invoked in no particular order, so hash based collections suffice
+    private final Map<String, Saga> processedSagas = new HashMap<>();
+    private final Map<String, Saga> newlyCreatedSagas = new HashMap<>();
+    // sagas loaded ahead for later events are only persisted once an event has been handled by them
+    private final Set<String> invokedSagaIds = new HashSet<>();
+    // scratch collections reused by the processor thread, cleared before each use
+    private final Map<Class<? extends Saga>, Set<AssociationValue>> batchAssociationValues = new HashMap<>();
+    private final Set<String> batchSagaIds = new HashSet<>();
+    private final Set<String> foundSagaIds = new HashSet<>();
+    private final List<String> sagaIdsToLoad = new ArrayList<>();
+    private final List<Saga> addedSagas = new ArrayList<>();
+    private final List<Saga> committedSagas = new ArrayList<>();
     private final ParameterResolverFactory parameterResolverFactory;
     private final int processorCount;
     private final int processorId;
@@ -38,13 +49,16 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
     private final AsyncAnnotatedSagaManager.SagaManagerStatus status;
     private UnitOfWork unitOfWork;
     private final ErrorHandler errorHandler;
+    private final boolean batchSagaLoading;
+    // the highest sequence of which the sagas have been loaded ahead by prepareBatch
+    private long preparedSequence = -1;
 
     private AsyncSagaEventProcessor(SagaRepository sagaRepository, ParameterResolverFactory parameterResolverFactory,
                                     int processorCount, int processorId,
                                     UnitOfWorkFactory unitOfWorkFactory,
                                     RingBuffer<AsyncSagaProcessingEvent> ringBuffer,
                                     AsyncAnnotatedSagaManager.SagaManagerStatus status,
-                                    ErrorHandler errorHandler) {
+                                    ErrorHandler errorHandler, boolean batchSagaLoading) {
         this.sagaRepository = sagaRepository;
         this.parameterResolverFactory = parameterResolverFactory;
         this.processorCount = processorCount;
@@ -53,6 +67,7 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
         this.ringBuffer = ringBuffer;
         this.status = status;
         this.errorHandler = errorHandler;
+        this.batchSagaLoading = batchSagaLoading;
     }
 
     /**
@@ -67,6 +82,7 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
      *                                 array containing the Disruptor Event Handlers to invoke Sagas.
      * @param errorHandler             Defines the behavior when errors occur while preparing or executing saga
      *                                 invocation
+     * @param batchSagaLoading         Whether to load the sagas of all available events at the start of a batch
      *
      * @return the processor instances that will process the incoming events
      */
@@ -74,7 +90,7 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
             SagaRepository sagaRepository, ParameterResolverFactory parameterResolverFactory,
             UnitOfWorkFactory unitOfWorkFactory, int processorCount,
             RingBuffer<AsyncSagaProcessingEvent> ringBuffer, AsyncAnnotatedSagaManager.SagaManagerStatus status,
-            ErrorHandler errorHandler) {
+            ErrorHandler errorHandler, boolean batchSagaLoading) {
         AsyncSagaEventProcessor[] processors = new AsyncSagaEventProcessor[processorCount];
         for (int processorId = 0; processorId < processorCount; processorId++) {
             processors[processorId] = new AsyncSagaEventProcessor(sagaRepository,
@@ -84,7 +100,8 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
                     unitOfWorkFactory,
                     ringBuffer,
                     status,
-                    errorHandler);
+                    errorHandler,
+                    batchSagaLoading);
         }
         return processors;
     }
@@ -96,7 +113,12 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
 
     private void doProcessEvent(final AsyncSagaProcessingEvent entry, long sequence, boolean endOfBatch)
             throws Exception {
-        prepareSagas(entry);
+        if (batchSagaLoading && sequence > preparedSequence) {
+            prepareBatch(sequence);
+        }
+        if (sequence > preparedSequence) {
+            prepareSagas(entry);
+        }
         boolean sagaInvoked = invokeSagas(entry);
         AssociationValue associationValue;
         switch (entry.getCreationHandler().getCreationPolicy()) {
@@ -137,6 +159,8 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
             if (attempts != 0) {
                 logger.info("Succesfully committed. Moving on...");
             }
+            // sagas loaded ahead for events beyond this batch have been released, they are loaded again
+            preparedSequence = sequence;
         }
     }
 
@@ -148,20 +172,7 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
             ensureActiveUnitOfWork();
             try {
                 invocationCount++;
-                Set<String> sagaIds = new HashSet<>();
-                for (AssociationValue associationValue : entry.getAssociationValues()) {
-                    sagaIds.addAll(sagaRepository.find(entry.getSagaType(), associationValue));
-                }
-                sagaIds.stream()
-                        .filter(sagaId -> ownedByCurrentProcessor(sagaId) && !processedSagas.containsKey(sagaId))
-                        .forEach(sagaId -> {
-                    ensureActiveUnitOfWork();
-                    final Saga saga = sagaRepository.load(sagaId);
-                    if (parameterResolverFactory != null) {
-                        ((AbstractAnnotatedSaga) saga).registerParameterResolverFactory(parameterResolverFactory);
-                    }
-                    processedSagas.put(sagaId, saga);
-                });
+                loadSagas(findSagas(entry.getSagaType(), entry.getAssociationValues()));
             } catch (Exception e) {
                 RetryPolicy retryPolicy = errorHandler.onErrorPreparing(entry.getSagaType(),
                         entry.getPublishedEvent(),
@@ -178,6 +189,105 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
         }
     }
 
+    /**
+     * 收集 从当前事件开始 ring buffer 中 所有已发布事件的关联值，按 saga 类型 一次查找，找到的 saga 一次加载。
+     * 加载的 saga 在 processedSagas 中，后续事件 不再单独查找。失败时 由 逐个事件的 prepareSagas 处理。
+     * 只有 处理过事件的 saga 在批次结束时 提交，为 批次之后的事件 提前加载的 saga 不会 未经修改地 写回
+     */
+    private void prepareBatch(long firstSequence) {
+        final long lastSequence = Math.min(ringBuffer.getCursor(), firstSequence + ringBuffer.getBufferSize() - 1);
+        // the saga types are fixed, so the per type sets are kept and only emptied
+        for (Set<AssociationValue> typeValues : batchAssociationValues.values()) {
+            typeValues.clear();
+        }
+        long sequence = firstSequence;
+        while (sequence <= lastSequence && ringBuffer.isPublished(sequence)) {
+            AsyncSagaProcessingEvent entry = ringBuffer.get(sequence);
+            Set<AssociationValue> typeValues = batchAssociationValues.computeIfAbsent(entry.getSagaType(),
+                                                                                      sagaType -> new HashSet<>());
+            for (AssociationValue associationValue : entry.getAssociationValues()) {
+                // handlers whose association property is null contribute no value
+                if (associationValue != null) {
+                    typeValues.add(associationValue);
+                }
+            }
+            sequence++;
+        }
+        try {
+            ensureActiveUnitOfWork();
+            if (processorCount == 1 && processedSagas.isEmpty() && sagaRepository instanceof BatchSagaLoadSupport) {
+                // every saga is owned by this processor and none is loaded yet, so find and load in one go
+                for (Map.Entry<Class<? extends Saga>, Set<AssociationValue>> typeValues
+                        : batchAssociationValues.entrySet()) {
+                    if (typeValues.getValue().isEmpty()) {
+                        continue;
+                    }
+                    Map<String, Saga> sagas = ((BatchSagaLoadSupport) sagaRepository)
+                            .findAndLoadAll(typeValues.getKey(), typeValues.getValue());
+                    for (Saga saga : sagas.values()) {
+                        addProcessedSaga(saga);
+                    }
+                }
+            } else {
+                batchSagaIds.clear();
+                for (Map.Entry<Class<? extends Saga>, Set<AssociationValue>> typeValues
+                        : batchAssociationValues.entrySet()) {
+                    if (!typeValues.getValue().isEmpty()) {
+                        batchSagaIds.addAll(findSagas(typeValues.getKey(), typeValues.getValue()));
+                    }
+                }
+                loadSagas(batchSagaIds);
+            }
+            preparedSequence = sequence - 1;
+        } catch (RuntimeException e) {
+            logger.warn("Failed to load the sagas of events {} to {}. Falling back to loading them per event.",
+                        firstSequence, sequence - 1, e);
+        }
+    }
+
+    private Set<String> findSagas(Class<? extends Saga> sagaType, Collection<AssociationValue> associationValues) {
+        if (sagaRepository instanceof BatchSagaLoadSupport) {
+            return ((BatchSagaLoadSupport) sagaRepository).findAll(sagaType, associationValues);
+        }
+        foundSagaIds.clear();
+        for (AssociationValue associationValue : associationValues) {
+            foundSagaIds.addAll(sagaRepository.find(sagaType, associationValue));
+        }
+        return foundSagaIds;
+    }
+
+    private void loadSagas(Collection<String> sagaIds) {
+        sagaIdsToLoad.clear();
+        for (String sagaId : sagaIds) {
+            if (ownedByCurrentProcessor(sagaId) && !processedSagas.containsKey(sagaId)) {
+                sagaIdsToLoad.add(sagaId);
+            }
+        }
+        if (sagaIdsToLoad.isEmpty()) {
+            return;
+        }
+        ensureActiveUnitOfWork();
+        if (sagaRepository instanceof BatchSagaLoadSupport) {
+            for (Saga saga : ((BatchSagaLoadSupport) sagaRepository).loadAll(sagaIdsToLoad).values()) {
+                addProcessedSaga(saga);
+            }
+        } else {
+            for (String sagaId : sagaIdsToLoad) {
+                addProcessedSaga(sagaRepository.load(sagaId));
+            }
+        }
+    }
+
+    private void addProcessedSaga(Saga saga) {
+        if (saga == null) {
+            return;
+        }
+        if (parameterResolverFactory != null) {
+            ((AbstractAnnotatedSaga) saga).registerParameterResolverFactory(parameterResolverFactory);
+        }
+        processedSagas.put(saga.getSagaIdentifier(), saga);
+    }
+
     private boolean inFuture(long timestamp) {
         return System.currentTimeMillis() < timestamp;
     }
@@ -195,6 +305,7 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
                         ensureActiveUnitOfWork();
                         invocationCount++;
                         saga.handle(entry.getPublishedEvent());
+                        invokedSagaIds.add(saga.getSagaIdentifier());
                     } catch (Exception e) {
                         RetryPolicy retryPolicy = errorHandler.onErrorInvoking(saga, entry.getPublishedEvent(),
                                 invocationCount, e);
@@ -226,19 +337,23 @@ public final class AsyncSagaEventProcessor implements EventHandler<AsyncSagaProc
     private boolean persistProcessedSagas(boolean logExceptions) throws Exception {
         try {
             if (!processedSagas.isEmpty()) {
-                Set<String> committedSagas = new HashSet<>();
-                ensureActiveUnitOfWork();
+                addedSagas.clear();
+                committedSagas.clear();
                 for (Saga saga : processedSagas.values()) {
                     if (newlyCreatedSagas.containsKey(saga.getSagaIdentifier())) {
-                        sagaRepository.add(saga);
-                    } else {
-                        sagaRepository.commit(saga);
+                        addedSagas.add(saga);
+                    } else if (invokedSagaIds.contains(saga.getSagaIdentifier())) {
+                        committedSagas.add(saga);
                     }
-                    committedSagas.add(saga.getSagaIdentifier());
                 }
+                ensureActiveUnitOfWork();
+                sagaRepository.commitAll(addedSagas, committedSagas);
                 unitOfWork.commit();
-                processedSagas.keySet().removeAll(committedSagas);
-                newlyCreatedSagas.keySet().removeAll(committedSagas);
+                processedSagas.clear();
+                newlyCreatedSagas.clear();
+                invokedSagaIds.clear();
+                addedSagas.clear();
+                committedSagas.clear();
             }
             return true;
         } catch (Exception e) {
@@ -4,24 +4,33 @@ import org.sluckframework.cache.Cache;
 import org.sluckframework.common.exception.Assert;
 import org.sluckframework.common.lock.IdentifierBasedLock;
 import org.sluckframework.cqrs.saga.AssociationValue;
+import org.sluckframework.cqrs.saga.BatchSagaLoadSupport;
 import org.sluckframework.cqrs.saga.Saga;
 import org.sluckframework.cqrs.saga.SagaRepository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * 支持in-memory的saga仓储
+ * <p/>
+ * 关联值缓存中的集合 是不可变的快照，变更时 在锁内 替换为新的快照，因此 find 可以 直接返回 缓存中的集合，不需要复制
  *
  * Author: sunxy
  * Created: 2015-09-13 22:14
  * Since: 1.0
  */
-public class CachingSagaRepository implements SagaRepository {
+public class CachingSagaRepository implements SagaRepository, BatchSagaLoadSupport {
 
     private final SagaRepository delegate;
     private final IdentifierBasedLock associationsCacheLock = new IdentifierBasedLock();
-    // guarded by "associationsCacheLock"
+    // writes guarded by "associationsCacheLock"; values are immutable snapshots
     private final Cache associationsCache;
     private final Cache sagaCache;
 
@@ -50,8 +59,7 @@ public class CachingSagaRepository implements SagaRepository {
         if (associations == null) {
             associations = feedCache(type, associationValue, key);
         }
-
-        return new HashSet<String>(associations);
+        return associations;
     }
 
     @SuppressWarnings("unchecked")
@@ -60,7 +68,7 @@ public class CachingSagaRepository implements SagaRepository {
         try {
             Set<String> associations = associationsCache.get(key);
             if (associations == null) {
-                associations = delegate.find(type, associationValue);
+                associations = snapshot(delegate.find(type, associationValue));
                 associationsCache.put(key, associations);
             }
             return associations;
@@ -80,23 +88,102 @@ public class CachingSagaRepository implements SagaRepository {
     }
 
     @Override
-    public void commit(Saga saga) {
-        final String sagaIdentifier = saga.getSagaIdentifier();
-        sagaCache.put(sagaIdentifier, saga);
-        if (saga.isActive()) {
-            updateAssociations(saga, sagaIdentifier);
+    public Set<String> findAll(Class<? extends Saga> type, Collection<AssociationValue> associationValues) {
+        Set<String> result = new HashSet<String>();
+        for (AssociationValue associationValue : associationValues) {
+            result.addAll(find(type, associationValue));
+        }
+        return result;
+    }
+
+    /**
+     * 缓存中的 saga 直接返回，其余的 在委派仓储 支持批量加载时 一次加载，加载后 放入缓存
+     *
+     * @param sagaIdentifiers The identifiers of the Sagas to load
+     * @return the loaded Sagas by their identifier; Sagas that do not exist are absent
+     */
+    @Override
+    public Map<String, Saga> loadAll(Collection<String> sagaIdentifiers) {
+        Map<String, Saga> result = new HashMap<String, Saga>();
+        List<String> uncached = new ArrayList<String>();
+        for (String sagaIdentifier : sagaIdentifiers) {
+            Saga saga = sagaCache.get(sagaIdentifier);
+            if (saga != null) {
+                result.put(sagaIdentifier, saga);
+            } else {
+                uncached.add(sagaIdentifier);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return result;
+        }
+        if (delegate instanceof BatchSagaLoadSupport) {
+            Map<String, Saga> loaded = ((BatchSagaLoadSupport) delegate).loadAll(uncached);
+            for (Map.Entry<String, Saga> entry : loaded.entrySet()) {
+                sagaCache.put(entry.getKey(), entry.getValue());
+            }
+            result.putAll(loaded);
         } else {
-            removeCachedAssociations(saga.getAssociationValues(), sagaIdentifier, saga.getClass().getName());
+            for (String sagaIdentifier : uncached) {
+                Saga saga = load(sagaIdentifier);
+                if (saga != null) {
+                    result.put(sagaIdentifier, saga);
+                }
+            }
         }
+        return result;
+    }
+
+    /**
+     * 通过 关联值缓存 和 saga缓存 查找，保证 返回的实例 与 缓存中的实例 相同
+     *
+     * @param type              The type of Saga to find
+     * @param associationValues The values of which the returned Sagas must be associated with at least one
+     * @return the associated Sagas by their identifier
+     */
+    @Override
+    public Map<String, Saga> findAndLoadAll(Class<? extends Saga> type,
+                                            Collection<AssociationValue> associationValues) {
+        return loadAll(findAll(type, associationValues));
+    }
+
+    @Override
+    public void commit(Saga saga) {
+        updateCachedSaga(saga);
         delegate.commit(saga);
     }
 
     @Override
     public void add(Saga saga) {
+        addCachedSaga(saga);
+        delegate.add(saga);
+    }
+
+    @Override
+    public void commitAll(Collection<? extends Saga> addedSagas, Collection<? extends Saga> committedSagas) {
+        for (Saga saga : addedSagas) {
+            addCachedSaga(saga);
+        }
+        for (Saga saga : committedSagas) {
+            updateCachedSaga(saga);
+        }
+        delegate.commitAll(addedSagas, committedSagas);
+    }
+
+    private void addCachedSaga(Saga saga) {
         final String sagaIdentifier = saga.getSagaIdentifier();
         sagaCache.put(sagaIdentifier, saga);
         updateAssociations(saga, sagaIdentifier);
-        delegate.add(saga);
+    }
+
+    private void updateCachedSaga(Saga saga) {
+        final String sagaIdentifier = saga.getSagaIdentifier();
+        sagaCache.put(sagaIdentifier, saga);
+        if (saga.isActive()) {
+            updateAssociations(saga, sagaIdentifier);
+        } else {
+            removeCachedAssociations(saga.getAssociationValues(), sagaIdentifier, saga.getClass().getName());
+        }
     }
 
     private void updateAssociations(Saga saga, String sagaIdentifier) {
@@ -113,8 +200,10 @@ public class CachingSagaRepository implements SagaRepository {
             associationsCacheLock.obtainLock(key);
             try {
                 Set<String> identifiers = associationsCache.get(key);
-                if (identifiers != null && identifiers.add(sagaIdentifier)) {
-                    associationsCache.put(key, identifiers);
+                if (identifiers != null && !identifiers.contains(sagaIdentifier)) {
+                    Set<String> updated = new HashSet<String>(identifiers);
+                    updated.add(sagaIdentifier);
+                    associationsCache.put(key, Collections.unmodifiableSet(updated));
                 }
             } finally {
                 associationsCacheLock.releaseLock(key);
@@ -130,8 +219,10 @@ public class CachingSagaRepository implements SagaRepository {
             associationsCacheLock.obtainLock(key);
             try {
                 Set<String> identifiers = associationsCache.get(key);
-                if (identifiers != null && identifiers.remove(sagaIdentifier)) {
-                    associationsCache.put(key, identifiers);
+                if (identifiers != null && identifiers.contains(sagaIdentifier)) {
+                    Set<String> updated = new HashSet<String>(identifiers);
+                    updated.remove(sagaIdentifier);
+                    associationsCache.put(key, Collections.unmodifiableSet(updated));
                 }
             } finally {
                 associationsCacheLock.releaseLock(key);
@@ -139,6 +230,16 @@ public class CachingSagaRepository implements SagaRepository {
         }
     }
 
+    private static Set<String> snapshot(Set<String> identifiers) {
+        if (identifiers.isEmpty()) {
+            return Collections.emptySet();
+        }
+        if (identifiers.size() == 1) {
+            return Collections.singleton(identifiers.iterator().next());
+        }
+        return Collections.unmodifiableSet(new HashSet<String>(identifiers));
+    }
+
     private String cacheKey(AssociationValue associationValue, String sagaType) {
         return sagaType + "/" + associationValue.getKey() + "=" + associationValue.getValue();
     }
@@ -1,35 +1,69 @@
 package org.sluckframework.cqrs.saga.repository.inmemory;
 
 import org.sluckframework.cqrs.saga.AssociationValue;
+import org.sluckframework.cqrs.saga.AssociationValues;
+import org.sluckframework.cqrs.saga.BatchSagaLoadSupport;
 import org.sluckframework.cqrs.saga.Saga;
 import org.sluckframework.cqrs.saga.SagaRepository;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * 基于内存的saga仓储
+ * <p/>
+ * 维护 (saga 类型, 关联值) 到 saga 标示符 的倒排索引，commit 时 根据 关联值的 增删 增量更新，查找 不再遍历所有 saga。
+ * 索引 只反映 已提交的 关联值。大多数 关联值 只对应一个 saga，此时 索引中 保存 不可变的单元素集合，多个 saga 共享时
+ * 才使用并发集合。{@link #find(Class, AssociationValue)} 只匹配一个 saga 类型时 直接返回 索引中的集合(只读)，不复制
  *
  * Author: sunxy
  * Created: 2015-09-13 21:53
  * Since: 1.0
  */
-public class InMemorySagaRepository implements SagaRepository {
+public class InMemorySagaRepository implements SagaRepository, BatchSagaLoadSupport {
 
     private final ConcurrentMap<String, Saga> managedSagas = new ConcurrentHashMap<String, Saga>();
+    // values are either an immutable singleton set or a concurrent set (KeySetView) of saga identifiers
+    private final ConcurrentHashMap<AssociationKey, Set<String>> associations =
+            new ConcurrentHashMap<AssociationKey, Set<String>>();
+    private final Set<Class<?>> sagaTypes = new CopyOnWriteArraySet<Class<?>>();
 
-    @SuppressWarnings("unchecked")
     @Override
     public Set<String> find(Class<? extends Saga> type, AssociationValue associationValue) {
-        Set<String> result = new TreeSet<String>();
-        for (Saga saga : managedSagas.values()) {
-            if (saga.getAssociationValues().contains(associationValue) && type.isInstance(saga)) {
-                result.add(saga.getSagaIdentifier());
+        Set<String> found = null;
+        Set<String> merged = null;
+        for (Class<?> sagaType : sagaTypes) {
+            if (type.isAssignableFrom(sagaType)) {
+                Set<String> sagaIdentifiers = associations.get(new AssociationKey(sagaType, associationValue));
+                if (sagaIdentifiers == null) {
+                    continue;
+                }
+                if (found == null) {
+                    found = sagaIdentifiers;
+                } else {
+                    // only queries for a super type matching several saga types need a copy
+                    if (merged == null) {
+                        merged = new HashSet<String>(found);
+                    }
+                    merged.addAll(sagaIdentifiers);
+                }
             }
         }
-        return result;
+        if (merged != null) {
+            return merged;
+        }
+        if (found == null) {
+            return Collections.emptySet();
+        }
+        // singleton sets are immutable and safe to share, the concurrent sets change with later commits
+        return found instanceof ConcurrentHashMap.KeySetView ? new HashSet<String>(found) : found;
     }
 
     @SuppressWarnings("unchecked")
@@ -38,14 +72,90 @@ public class InMemorySagaRepository implements SagaRepository {
         return managedSagas.get(sagaIdentifier);
     }
 
+    @Override
+    public Set<String> findAll(Class<? extends Saga> type, Collection<AssociationValue> associationValues) {
+        Set<String> result = new HashSet<String>();
+        for (AssociationValue associationValue : associationValues) {
+            result.addAll(find(type, associationValue));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Saga> loadAll(Collection<String> sagaIdentifiers) {
+        Map<String, Saga> result = new HashMap<String, Saga>();
+        for (String sagaIdentifier : sagaIdentifiers) {
+            Saga saga = managedSagas.get(sagaIdentifier);
+            if (saga != null) {
+                result.put(sagaIdentifier, saga);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Saga> findAndLoadAll(Class<? extends Saga> type,
+                                            Collection<AssociationValue> associationValues) {
+        return loadAll(findAll(type, associationValues));
+    }
+
     @Override
     public void commit(Saga saga) {
+        final String sagaIdentifier = saga.getSagaIdentifier();
+        final Class<?> sagaType = saga.getClass();
+        final AssociationValues associationValues = saga.getAssociationValues();
         if (!saga.isActive()) {
-            managedSagas.remove(saga.getSagaIdentifier());
+            managedSagas.remove(sagaIdentifier);
+            for (AssociationValue associationValue : associationValues) {
+                unindex(new AssociationKey(sagaType, associationValue), sagaIdentifier);
+            }
+            for (AssociationValue associationValue : associationValues.removedAssociations()) {
+                unindex(new AssociationKey(sagaType, associationValue), sagaIdentifier);
+            }
         } else {
-            managedSagas.put(saga.getSagaIdentifier(), saga);
+            managedSagas.put(sagaIdentifier, saga);
+            sagaTypes.add(sagaType);
+            for (AssociationValue associationValue : associationValues.addedAssociations()) {
+                index(new AssociationKey(sagaType, associationValue), sagaIdentifier);
+            }
+            for (AssociationValue associationValue : associationValues.removedAssociations()) {
+                unindex(new AssociationKey(sagaType, associationValue), sagaIdentifier);
+            }
         }
-        saga.getAssociationValues().commit();
+        associationValues.commit();
+    }
+
+    private void index(AssociationKey key, final String sagaIdentifier) {
+        associations.compute(key, (k, current) -> {
+            if (current == null) {
+                return Collections.singleton(sagaIdentifier);
+            }
+            if (current.contains(sagaIdentifier)) {
+                return current;
+            }
+            if (current instanceof ConcurrentHashMap.KeySetView) {
+                current.add(sagaIdentifier);
+                return current;
+            }
+            Set<String> sagaIdentifiers = ConcurrentHashMap.newKeySet();
+            sagaIdentifiers.addAll(current);
+            sagaIdentifiers.add(sagaIdentifier);
+            return sagaIdentifiers;
+        });
+    }
+
+    private void unindex(AssociationKey key, final String sagaIdentifier) {
+        associations.computeIfPresent(key, (k, current) -> {
+            if (!(current instanceof ConcurrentHashMap.KeySetView)) {
+                return current.contains(sagaIdentifier) ? null : current;
+            }
+            current.remove(sagaIdentifier);
+            if (current.size() > 1) {
+                return current;
+            }
+            // collapse back to the singleton representation
+            return current.isEmpty() ? null : Collections.singleton(current.iterator().next());
+        });
     }
 
     @Override
@@ -56,4 +166,43 @@ public class InMemorySagaRepository implements SagaRepository {
     public int size() {
         return managedSagas.size();
     }
+
+    /**
+     * 返回 索引中 不同的 (saga 类型, 关联值) 的数量
+     *
+     * @return the number of distinct associations in the index
+     */
+    public int associationCount() {
+        return associations.size();
+    }
+
+    private static final class AssociationKey {
+
+        private final Class<?> sagaType;
+        private final AssociationValue associationValue;
+        private final int hashCode;
+
+        private AssociationKey(Class<?> sagaType, AssociationValue associationValue) {
+            this.sagaType = sagaType;
+            this.associationValue = associationValue;
+            this.hashCode = 31 * sagaType.hashCode() + associationValue.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AssociationKey)) {
+                return false;
+            }
+            AssociationKey other = (AssociationKey) o;
+            return sagaType == other.sagaType && associationValue.equals(other.associationValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 }
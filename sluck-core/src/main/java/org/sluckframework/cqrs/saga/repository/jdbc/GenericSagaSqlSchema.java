@@ -2,11 +2,17 @@ package org.sluckframework.cqrs.saga.repository.jdbc;
 
 import org.sluckframework.common.serializer.SerializedObject;
 import org.sluckframework.common.serializer.SimpleSerializedObject;
+import org.sluckframework.cqrs.saga.AssociationValue;
+import org.sluckframework.cqrs.saga.repository.jpa.AssociationValueEntry;
+import org.sluckframework.cqrs.saga.repository.jpa.SagaEntry;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
+
+import static org.sluckframework.common.jdbc.JdbcUtils.closeQuietly;
 
 /**
  * 通用的 sql schmea 实现
@@ -43,13 +49,38 @@ public class GenericSagaSqlSchema implements SagaSqlSchema {
         return preparedStatement;
     }
 
+    @Override
+    public PreparedStatement sql_loadSagasWithAssociations(Connection connection, List<String> sagaIdentifiers)
+            throws SQLException {
+        final String sql = selectSagasWithAssociationsSql()
+                + " WHERE s.sagaId IN (" + placeholders(sagaIdentifiers.size()) + ")";
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        int parameterIndex = 1;
+        for (String sagaIdentifier : sagaIdentifiers) {
+            preparedStatement.setString(parameterIndex++, sagaIdentifier);
+        }
+        return preparedStatement;
+    }
+
+    @Override
+    public PreparedStatement sql_findAndLoadSagasWithAssociations(Connection connection, String sagaType,
+                                                                  List<AssociationValue> associationValues)
+            throws SQLException {
+        final String sql = selectSagasWithAssociationsSql()
+                + " WHERE s.sagaType = ? AND s.sagaId IN (SELECT sagaId FROM "
+                + schemaConfiguration.assocValueEntryTable()
+                + " WHERE sagaType = ? AND (" + associationValueConditions(associationValues.size()) + "))";
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        preparedStatement.setString(1, sagaType);
+        preparedStatement.setString(2, sagaType);
+        bindAssociationValues(preparedStatement, 3, associationValues);
+        return preparedStatement;
+    }
+
     @Override
     public PreparedStatement sql_removeAssocValue(Connection connection, String key, String value, String sagaType,
                                                   String sagaIdentifier) throws SQLException {
-        final String sql = "DELETE FROM " + schemaConfiguration.assocValueEntryTable()
-                + " WHERE associationKey = ? AND associationValue = ?"
-                + " AND sagaType = ? AND sagaId = ?";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = connection.prepareStatement(removeAssocValueSql());
         preparedStatement.setString(1, key);
         preparedStatement.setString(2, value);
         preparedStatement.setString(3, sagaType);
@@ -60,10 +91,7 @@ public class GenericSagaSqlSchema implements SagaSqlSchema {
     @Override
     public PreparedStatement sql_storeAssocValue(Connection connection, String key, String value, String sagaType,
                                                  String sagaIdentifier) throws SQLException {
-        final String sql = "INSERT INTO " + schemaConfiguration.assocValueEntryTable()
-                + " (associationKey, associationValue, sagaType, sagaId)"
-                + " VALUES(?, ?, ?, ?)";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = connection.prepareStatement(storeAssocValueSql());
         preparedStatement.setString(1, key);
         preparedStatement.setString(2, value);
         preparedStatement.setString(3, sagaType);
@@ -86,9 +114,20 @@ public class GenericSagaSqlSchema implements SagaSqlSchema {
     }
 
     @Override
-    public PreparedStatement sql_deleteSagaEntry(Connection connection, String sagaIdentifier) throws SQLException {
-        final String sql = "DELETE FROM " + schemaConfiguration.sagaEntryTable() + " WHERE sagaId = ?";
+    public PreparedStatement sql_findAllAssocSagaIdentifiers(Connection connection, String sagaType,
+                                                             List<AssociationValue> associationValues)
+            throws SQLException {
+        final String sql = "SELECT DISTINCT sagaId FROM " + schemaConfiguration.assocValueEntryTable()
+                + " WHERE sagaType = ? AND (" + associationValueConditions(associationValues.size()) + ")";
         PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        preparedStatement.setString(1, sagaType);
+        bindAssociationValues(preparedStatement, 2, associationValues);
+        return preparedStatement;
+    }
+
+    @Override
+    public PreparedStatement sql_deleteSagaEntry(Connection connection, String sagaIdentifier) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(deleteSagaEntrySql());
         preparedStatement.setString(1, sagaIdentifier);
         return preparedStatement;
     }
@@ -96,8 +135,7 @@ public class GenericSagaSqlSchema implements SagaSqlSchema {
     @Override
     public PreparedStatement sql_deleteAssociationEntries(Connection connection, String sagaIdentifier)
             throws SQLException {
-        final String sql = "DELETE FROM " + schemaConfiguration.assocValueEntryTable() + " WHERE sagaId = ?";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = connection.prepareStatement(deleteAssociationEntriesSql());
         preparedStatement.setString(1, sagaIdentifier);
         return preparedStatement;
     }
@@ -105,9 +143,7 @@ public class GenericSagaSqlSchema implements SagaSqlSchema {
     @Override
     public PreparedStatement sql_updateSaga(Connection connection, String sagaIdentifier, byte[] serializedSaga,
                                             String sagaType, String revision) throws SQLException {
-        final String sql = "UPDATE " + schemaConfiguration.sagaEntryTable()
-                + " SET serializedSaga = ?, revision = ? WHERE sagaId = ? AND sagaType = ?";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = connection.prepareStatement(updateSagaSql());
         preparedStatement.setBytes(1, serializedSaga);
         preparedStatement.setString(2, revision);
         preparedStatement.setString(3, sagaIdentifier);
@@ -119,8 +155,7 @@ public class GenericSagaSqlSchema implements SagaSqlSchema {
     public PreparedStatement sql_storeSaga(Connection connection, String sagaIdentifier, String revision,
                                            String sagaType,
                                            byte[] serializedSaga) throws SQLException {
-        final String sql = "INSERT INTO " + schemaConfiguration.sagaEntryTable() + "(sagaId, revision, sagaType, serializedSaga) VALUES(?,?,?,?)";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = connection.prepareStatement(storeSagaSql());
         preparedStatement.setString(1, sagaIdentifier);
         preparedStatement.setString(2, revision);
         preparedStatement.setString(3, sagaType);
@@ -128,6 +163,177 @@ public class GenericSagaSqlSchema implements SagaSqlSchema {
         return preparedStatement;
     }
 
+    @Override
+    public PreparedStatement sql_storeAssocValues(Connection connection, List<AssociationValueEntry> entries)
+            throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(storeAssocValueSql());
+        try {
+            for (AssociationValueEntry entry : entries) {
+                preparedStatement.setString(1, entry.getAssociationKey());
+                preparedStatement.setString(2, entry.getAssociationValue().getValue());
+                preparedStatement.setString(3, entry.getSagaType());
+                preparedStatement.setString(4, entry.getSagaId());
+                preparedStatement.addBatch();
+            }
+        } catch (SQLException e) {
+            closeQuietly(preparedStatement);
+            throw e;
+        }
+        return preparedStatement;
+    }
+
+    @Override
+    public PreparedStatement sql_removeAssocValues(Connection connection, List<AssociationValueEntry> entries)
+            throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(removeAssocValueSql());
+        try {
+            for (AssociationValueEntry entry : entries) {
+                preparedStatement.setString(1, entry.getAssociationKey());
+                preparedStatement.setString(2, entry.getAssociationValue().getValue());
+                preparedStatement.setString(3, entry.getSagaType());
+                preparedStatement.setString(4, entry.getSagaId());
+                preparedStatement.addBatch();
+            }
+        } catch (SQLException e) {
+            closeQuietly(preparedStatement);
+            throw e;
+        }
+        return preparedStatement;
+    }
+
+    @Override
+    public PreparedStatement sql_deleteSagaEntries(Connection connection, List<String> sagaIdentifiers)
+            throws SQLException {
+        return identifierBatch(connection, deleteSagaEntrySql(), sagaIdentifiers);
+    }
+
+    @Override
+    public PreparedStatement sql_deleteAssociationEntriesOfSagas(Connection connection, List<String> sagaIdentifiers)
+            throws SQLException {
+        return identifierBatch(connection, deleteAssociationEntriesSql(), sagaIdentifiers);
+    }
+
+    @Override
+    public PreparedStatement sql_updateSagas(Connection connection, List<SagaEntry> entries) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(updateSagaSql());
+        try {
+            for (SagaEntry entry : entries) {
+                preparedStatement.setBytes(1, entry.getSerializedSaga());
+                preparedStatement.setString(2, entry.getRevision());
+                preparedStatement.setString(3, entry.getSagaId());
+                preparedStatement.setString(4, entry.getSagaType());
+                preparedStatement.addBatch();
+            }
+        } catch (SQLException e) {
+            closeQuietly(preparedStatement);
+            throw e;
+        }
+        return preparedStatement;
+    }
+
+    @Override
+    public PreparedStatement sql_storeSagas(Connection connection, List<SagaEntry> entries) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(storeSagaSql());
+        try {
+            for (SagaEntry entry : entries) {
+                preparedStatement.setString(1, entry.getSagaId());
+                preparedStatement.setString(2, entry.getRevision());
+                preparedStatement.setString(3, entry.getSagaType());
+                preparedStatement.setBytes(4, entry.getSerializedSaga());
+                preparedStatement.addBatch();
+            }
+        } catch (SQLException e) {
+            closeQuietly(preparedStatement);
+            throw e;
+        }
+        return preparedStatement;
+    }
+
+    private PreparedStatement identifierBatch(Connection connection, String sql, List<String> sagaIdentifiers)
+            throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try {
+            for (String sagaIdentifier : sagaIdentifiers) {
+                preparedStatement.setString(1, sagaIdentifier);
+                preparedStatement.addBatch();
+            }
+        } catch (SQLException e) {
+            closeQuietly(preparedStatement);
+            throw e;
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * 生成 saga 与 关联值 连接查询的 select 和 from 部分，saga 表的别名为 s
+     *
+     * @return the select clause joining the saga entries with their association values
+     */
+    protected String selectSagasWithAssociationsSql() {
+        return "SELECT s.serializedSaga, s.sagaType, s.revision, s.sagaId, a.associationKey, a.associationValue"
+                + " FROM " + schemaConfiguration.sagaEntryTable() + " s"
+                + " LEFT JOIN " + schemaConfiguration.assocValueEntryTable() + " a"
+                + " ON a.sagaId = s.sagaId AND a.sagaType = s.sagaType";
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    private static String associationValueConditions(int count) {
+        StringBuilder sb = new StringBuilder(count * 48);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(" OR ");
+            }
+            sb.append("(associationKey = ? AND associationValue = ?)");
+        }
+        return sb.toString();
+    }
+
+    private static void bindAssociationValues(PreparedStatement preparedStatement, int firstIndex,
+                                              List<AssociationValue> associationValues) throws SQLException {
+        int parameterIndex = firstIndex;
+        for (AssociationValue associationValue : associationValues) {
+            preparedStatement.setString(parameterIndex++, associationValue.getKey());
+            preparedStatement.setString(parameterIndex++, associationValue.getValue());
+        }
+    }
+
+    private String removeAssocValueSql() {
+        return "DELETE FROM " + schemaConfiguration.assocValueEntryTable()
+                + " WHERE associationKey = ? AND associationValue = ?"
+                + " AND sagaType = ? AND sagaId = ?";
+    }
+
+    private String storeAssocValueSql() {
+        return "INSERT INTO " + schemaConfiguration.assocValueEntryTable()
+                + " (associationKey, associationValue, sagaType, sagaId)"
+                + " VALUES(?, ?, ?, ?)";
+    }
+
+    private String deleteSagaEntrySql() {
+        return "DELETE FROM " + schemaConfiguration.sagaEntryTable() + " WHERE sagaId = ?";
+    }
+
+    private String deleteAssociationEntriesSql() {
+        return "DELETE FROM " + schemaConfiguration.assocValueEntryTable() + " WHERE sagaId = ?";
+    }
+
+    private String updateSagaSql() {
+        return "UPDATE " + schemaConfiguration.sagaEntryTable()
+                + " SET serializedSaga = ?, revision = ? WHERE sagaId = ? AND sagaType = ?";
+    }
+
+    private String storeSagaSql() {
+        return "INSERT INTO " + schemaConfiguration.sagaEntryTable()
+                + "(sagaId, revision, sagaType, serializedSaga) VALUES(?,?,?,?)";
+    }
+
     @Override
     public PreparedStatement sql_createTableAssocValueEntry(Connection conn) throws SQLException {
         final String sql = "create table " + schemaConfiguration.assocValueEntryTable() + " (\n" +
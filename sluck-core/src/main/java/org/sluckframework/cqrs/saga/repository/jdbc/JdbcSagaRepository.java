@@ -5,14 +5,16 @@ import org.slf4j.LoggerFactory;
 import org.sluckframework.common.jdbc.ConnectionProvider;
 import org.sluckframework.common.jdbc.DataSourceConnectionProvider;
 import org.sluckframework.common.jdbc.UnitOfWorkAwareConnectionProviderWrapper;
-import org.sluckframework.common.serializer.SerializedObject;
 import org.sluckframework.common.serializer.Serializer;
 import org.sluckframework.common.serializer.json.JacksonSerializer;
 import org.sluckframework.cqrs.saga.AssociationValue;
+import org.sluckframework.cqrs.saga.AssociationValues;
+import org.sluckframework.cqrs.saga.BatchSagaLoadSupport;
 import org.sluckframework.cqrs.saga.ResourceInjector;
 import org.sluckframework.cqrs.saga.Saga;
 import org.sluckframework.cqrs.saga.SagaStorageException;
 import org.sluckframework.cqrs.saga.repository.AbstractSagaRepository;
+import org.sluckframework.cqrs.saga.repository.jpa.AssociationValueEntry;
 import org.sluckframework.cqrs.saga.repository.jpa.SagaEntry;
 
 import javax.sql.DataSource;
@@ -21,8 +23,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 import static org.sluckframework.common.jdbc.JdbcUtils.closeQuietly;
 
@@ -33,9 +43,10 @@ import static org.sluckframework.common.jdbc.JdbcUtils.closeQuietly;
  * Created: 2015-09-13 22:19
  * Since: 1.0
  */
-public class JdbcSagaRepository extends AbstractSagaRepository {
+public class JdbcSagaRepository extends AbstractSagaRepository implements BatchSagaLoadSupport {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcSagaRepository.class);
+    private static final int MAX_VALUES_PER_QUERY = 500;
 
     private ResourceInjector injector;
     private Serializer serializer;
@@ -86,53 +97,161 @@ public class JdbcSagaRepository extends AbstractSagaRepository {
         this.serializer = serializer;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Saga load(String sagaId) {
+        Saga loadedSaga = loadAll(Collections.singletonList(sagaId)).get(sagaId);
+        if (loadedSaga != null && logger.isDebugEnabled()) {
+            logger.debug("Loaded saga id [{}] of type [{}]", sagaId, loadedSaga.getClass().getName());
+        }
+        return loadedSaga;
+    }
+
+    /**
+     * 使用 saga 与 关联值 的连接查询 加载，每 500 个标示符 一次查询
+     *
+     * @param sagaIdentifiers The identifiers of the Sagas to load
+     * @return the loaded Sagas by their identifier; Sagas that do not exist are absent
+     */
+    @Override
+    public Map<String, Saga> loadAll(Collection<String> sagaIdentifiers) {
+        Map<String, Saga> sagas = new HashMap<>();
+        if (sagaIdentifiers.isEmpty()) {
+            return sagas;
+        }
         PreparedStatement statement = null;
         ResultSet resultSet = null;
         Connection conn = null;
-
-        PreparedStatement valueStatement = null;
-        ResultSet valuleResultSet = null;
         try {
             conn = connectionProvider.getConnection();
-            statement = sqldef.sql_loadSaga(conn, sagaId);
-            resultSet = statement.executeQuery();
-
-            SerializedObject<?> serializedSaga = null;
-            if (resultSet.next()) {
-                serializedSaga = sqldef.readSerializedSaga(resultSet);
-            }
-            if (serializedSaga == null) {
-                return null;
-            }
-            Saga loadedSaga = serializer.deserialize(serializedSaga);
-            if (injector != null) {
-                injector.injectResources(loadedSaga);
+            // keep the number of bind parameters per statement within the limits of common databases
+            List<String> chunk = new ArrayList<>(Math.min(sagaIdentifiers.size(), MAX_VALUES_PER_QUERY));
+            Iterator<String> iterator = sagaIdentifiers.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == MAX_VALUES_PER_QUERY || !iterator.hasNext()) {
+                    statement = sqldef.sql_loadSagasWithAssociations(conn, chunk);
+                    resultSet = statement.executeQuery();
+                    readSagas(resultSet, sagas);
+                    closeQuietly(resultSet);
+                    resultSet = null;
+                    closeQuietly(statement);
+                    statement = null;
+                    chunk.clear();
+                }
             }
-            loadedSaga.reSetAssociationValues();
-            valueStatement = sqldef.sql_findAssociationValues(conn, sagaId, typeOf(loadedSaga.getClass()));
-            valuleResultSet = valueStatement.executeQuery();
-            while (valuleResultSet.next()) {
-                loadedSaga.associateWith(new AssociationValue(valuleResultSet.getString(1),
-                        valuleResultSet.getString(2)));
-            }
-            if (logger.isDebugEnabled()) {
-                logger.debug("Loaded saga id [{}] of type [{}]", sagaId, loadedSaga.getClass().getName());
-            }
-            return loadedSaga;
+            return sagas;
         } catch (SQLException e) {
             throw new SagaStorageException("Exception while loading a Saga", e);
         } finally {
+            closeQuietly(resultSet);
             closeQuietly(statement);
+            closeQuietly(conn);
+        }
+    }
+
+    @Override
+    public Set<String> findAll(Class<? extends Saga> type, Collection<AssociationValue> associationValues) {
+        Set<String> result = new HashSet<>();
+        if (associationValues.isEmpty()) {
+            return result;
+        }
+        final String sagaType = typeOf(type);
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        Connection conn = null;
+        try {
+            conn = connectionProvider.getConnection();
+            List<AssociationValue> chunk = new ArrayList<>(Math.min(associationValues.size(), MAX_VALUES_PER_QUERY));
+            Iterator<AssociationValue> iterator = associationValues.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == MAX_VALUES_PER_QUERY || !iterator.hasNext()) {
+                    statement = sqldef.sql_findAllAssocSagaIdentifiers(conn, sagaType, chunk);
+                    resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        result.add(resultSet.getString(1));
+                    }
+                    closeQuietly(resultSet);
+                    resultSet = null;
+                    closeQuietly(statement);
+                    statement = null;
+                    chunk.clear();
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new SagaStorageException("Exception while reading saga associations", e);
+        } finally {
             closeQuietly(resultSet);
+            closeQuietly(statement);
             closeQuietly(conn);
-            closeQuietly(valueStatement);
-            closeQuietly(valuleResultSet);
         }
     }
 
+    @Override
+    public Map<String, Saga> findAndLoadAll(Class<? extends Saga> type,
+                                            Collection<AssociationValue> associationValues) {
+        Map<String, Saga> sagas = new HashMap<>();
+        if (associationValues.isEmpty()) {
+            return sagas;
+        }
+        final String sagaType = typeOf(type);
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        Connection conn = null;
+        try {
+            conn = connectionProvider.getConnection();
+            List<AssociationValue> chunk = new ArrayList<>(Math.min(associationValues.size(), MAX_VALUES_PER_QUERY));
+            Iterator<AssociationValue> iterator = associationValues.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == MAX_VALUES_PER_QUERY || !iterator.hasNext()) {
+                    statement = sqldef.sql_findAndLoadSagasWithAssociations(conn, sagaType, chunk);
+                    resultSet = statement.executeQuery();
+                    readSagas(resultSet, sagas);
+                    closeQuietly(resultSet);
+                    resultSet = null;
+                    closeQuietly(statement);
+                    statement = null;
+                    chunk.clear();
+                }
+            }
+            return sagas;
+        } catch (SQLException e) {
+            throw new SagaStorageException("Exception while loading associated Sagas", e);
+        } finally {
+            closeQuietly(resultSet);
+            closeQuietly(statement);
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * 读取 连接查询的结果，每个 saga 只反序列化一次，关联值 在读取完成后 标记为 已提交
+     */
+    private void readSagas(ResultSet resultSet, Map<String, Saga> sagas) throws SQLException {
+        List<Saga> readSagas = new ArrayList<>();
+        while (resultSet.next()) {
+            final String sagaId = resultSet.getString(4);
+            Saga saga = sagas.get(sagaId);
+            if (saga == null) {
+                saga = serializer.deserialize(sqldef.readSerializedSaga(resultSet));
+                if (injector != null) {
+                    injector.injectResources(saga);
+                }
+                saga.reSetAssociationValues();
+                sagas.put(sagaId, saga);
+                readSagas.add(saga);
+            }
+            final String associationKey = resultSet.getString(5);
+            if (associationKey != null) {
+                saga.associateWith(new AssociationValue(associationKey, resultSet.getString(6)));
+            }
+        }
+        for (Saga saga : readSagas) {
+            saga.getAssociationValues().commit();
+        }
+    }
 
     @SuppressWarnings({"unchecked"})
     @Override
@@ -196,7 +315,7 @@ public class JdbcSagaRepository extends AbstractSagaRepository {
             statement = sqldef.sql_findAssocSagaIdentifiers(conn, associationValue.getKey(),
                     associationValue.getValue(), typeOf(type));
             resultSet = statement.executeQuery();
-            Set<String> result = new TreeSet<>();
+            Set<String> result = new HashSet<>();
             while (resultSet.next()) {
                 result.add(resultSet.getString(1));
             }
@@ -286,6 +405,156 @@ public class JdbcSagaRepository extends AbstractSagaRepository {
         }
     }
 
+    /**
+     * 在一个连接上 使用 jdbc batch 写入 整批 saga 的 删除、关联值增删、更新 和 新增，每类语句 只需一次往返。
+     * 连接为 auto commit 时 整批 在一个事务中提交，否则 事务由 连接的持有者(如 UnitOfWork) 负责。
+     * 关联值的变更 只在 写入成功后 才被重置，因此 失败后 可以重新提交 同一批 saga
+     *
+     * @param addedSagas     The newly created Saga instances to add
+     * @param committedSagas The existing Saga instances to commit
+     */
+    @Override
+    public void commitAll(Collection<? extends Saga> addedSagas, Collection<? extends Saga> committedSagas) {
+        List<String> deletedSagas = new ArrayList<>();
+        List<SagaEntry> storedSagas = new ArrayList<>();
+        List<SagaEntry> updatedSagas = new ArrayList<>();
+        List<AssociationValueEntry> storedAssociations = new ArrayList<>();
+        List<AssociationValueEntry> removedAssociations = new ArrayList<>();
+        List<AssociationValues> trackedAssociations = new ArrayList<>();
+        for (Saga saga : addedSagas) {
+            if (saga.isActive()) {
+                final String sagaType = typeOf(saga.getClass());
+                final AssociationValues associationValues = saga.getAssociationValues();
+                addEntries(storedAssociations, associationValues.addedAssociations(), sagaType,
+                           saga.getSagaIdentifier());
+                trackedAssociations.add(associationValues);
+                storedSagas.add(new SagaEntry(saga, serializer));
+            }
+        }
+        for (Saga saga : committedSagas) {
+            if (!saga.isActive()) {
+                deletedSagas.add(saga.getSagaIdentifier());
+            } else {
+                final String sagaType = typeOf(saga.getClass());
+                final AssociationValues associationValues = saga.getAssociationValues();
+                addEntries(storedAssociations, associationValues.addedAssociations(), sagaType,
+                           saga.getSagaIdentifier());
+                addEntries(removedAssociations, associationValues.removedAssociations(), sagaType,
+                           saga.getSagaIdentifier());
+                trackedAssociations.add(associationValues);
+                updatedSagas.add(new SagaEntry(saga, serializer));
+            }
+        }
+        if (deletedSagas.isEmpty() && storedSagas.isEmpty() && updatedSagas.isEmpty()) {
+            return;
+        }
+
+        Connection conn = null;
+        try {
+            conn = connectionProvider.getConnection();
+            boolean autoCommit = conn.getAutoCommit();
+            try {
+                if (autoCommit) {
+                    conn.setAutoCommit(false);
+                }
+                if (!deletedSagas.isEmpty()) {
+                    executeBatch(sqldef.sql_deleteAssociationEntriesOfSagas(conn, deletedSagas));
+                    executeBatch(sqldef.sql_deleteSagaEntries(conn, deletedSagas));
+                }
+                if (!removedAssociations.isEmpty()) {
+                    executeBatch(sqldef.sql_removeAssocValues(conn, removedAssociations));
+                }
+                if (!storedAssociations.isEmpty()) {
+                    executeBatch(sqldef.sql_storeAssocValues(conn, storedAssociations));
+                }
+                if (!updatedSagas.isEmpty()) {
+                    int[] updateCounts = executeBatch(sqldef.sql_updateSagas(conn, updatedSagas));
+                    for (int i = 0; i < updatedSagas.size(); i++) {
+                        int updateCount = i < updateCounts.length ? updateCounts[i] : Statement.SUCCESS_NO_INFO;
+                        if (updateCount == Statement.SUCCESS_NO_INFO) {
+                            // the driver does not report counts for batched updates, repeat the update on its own
+                            SagaEntry entry = updatedSagas.get(i);
+                            updateCount = executeUpdate(sqldef.sql_updateSaga(conn, entry.getSagaId(),
+                                                                              entry.getSerializedSaga(),
+                                                                              entry.getSagaType(),
+                                                                              entry.getRevision()));
+                        }
+                        if (updateCount == 0) {
+                            logger.warn("Expected to be able to update Saga instance {}, but no rows were found. "
+                                                + "Inserting instead.", updatedSagas.get(i).getSagaId());
+                            storedSagas.add(updatedSagas.get(i));
+                        }
+                    }
+                }
+                if (!storedSagas.isEmpty()) {
+                    executeBatch(sqldef.sql_storeSagas(conn, storedSagas));
+                }
+                if (autoCommit) {
+                    conn.commit();
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (autoCommit) {
+                    rollbackQuietly(conn);
+                }
+                throw e;
+            } finally {
+                if (autoCommit) {
+                    resetAutoCommitQuietly(conn);
+                }
+            }
+        } catch (SQLException e) {
+            throw new SagaStorageException("Exception occurred while attempting to commit a batch of sagas", e);
+        } finally {
+            closeQuietly(conn);
+        }
+
+        for (AssociationValues associationValues : trackedAssociations) {
+            associationValues.commit();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Committed saga batch: {} deleted, {} updated, {} stored, {} associations added, "
+                                 + "{} associations removed", deletedSagas.size(), updatedSagas.size(),
+                         storedSagas.size(), storedAssociations.size(), removedAssociations.size());
+        }
+    }
+
+    private static void addEntries(List<AssociationValueEntry> entries, Set<AssociationValue> associationValues,
+                                   String sagaType, String sagaIdentifier) {
+        for (AssociationValue associationValue : associationValues) {
+            entries.add(new AssociationValueEntry(sagaType, sagaIdentifier, associationValue));
+        }
+    }
+
+    private static int[] executeBatch(PreparedStatement statement) throws SQLException {
+        try {
+            return statement.executeBatch();
+        } finally {
+            closeQuietly(statement);
+        }
+    }
+
+    private static int executeUpdate(PreparedStatement statement) throws SQLException {
+        try {
+            return statement.executeUpdate();
+        } finally {
+            closeQuietly(statement);
+        }
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    private static void resetAutoCommitQuietly(Connection connection) {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ignore) {
+        }
+    }
+
     /**
      * 为saga配置资源注入器
      *
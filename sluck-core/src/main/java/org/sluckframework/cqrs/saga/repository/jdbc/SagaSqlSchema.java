@@ -1,11 +1,15 @@
 package org.sluckframework.cqrs.saga.repository.jdbc;
 
 import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.cqrs.saga.AssociationValue;
+import org.sluckframework.cqrs.saga.repository.jpa.AssociationValueEntry;
+import org.sluckframework.cqrs.saga.repository.jpa.SagaEntry;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 /**
  * jdbc saga sql schema
@@ -26,6 +30,31 @@ public interface SagaSqlSchema {
      */
     PreparedStatement sql_loadSaga(Connection connection, String sagaId) throws SQLException;
 
+    /**
+     * 加载 多个 saga 及其所有关联值，saga 与 关联值 连接查询，每个关联值 一行，没有关联值的 saga 一行。
+     * 前 3 列 由 {@link #readSerializedSaga(java.sql.ResultSet)} 读取，第 4 列 为 sagaId，
+     * 第 5、6 列 为 associationKey 和 associationValue (没有关联值时 为 null)
+     *
+     * @param connection      The connection to create the PreparedStatement for
+     * @param sagaIdentifiers The identifiers of the Sagas to load
+     * @return a statement that creates a result set with the sagas joined with their associations, when executed
+     */
+    PreparedStatement sql_loadSagasWithAssociations(Connection connection, List<String> sagaIdentifiers)
+            throws SQLException;
+
+    /**
+     * 找到并加载 与任一给定关联值 相关的 指定类型的 saga 及其所有关联值，结果的列 与
+     * {@link #sql_loadSagasWithAssociations(java.sql.Connection, java.util.List)} 相同
+     *
+     * @param connection        The connection to create the PreparedStatement for
+     * @param sagaType          The type of saga to find
+     * @param associationValues The association values of which the sagas must have at least one
+     * @return a statement that creates a result set with the sagas joined with their associations, when executed
+     */
+    PreparedStatement sql_findAndLoadSagasWithAssociations(Connection connection, String sagaType,
+                                                           List<AssociationValue> associationValues)
+            throws SQLException;
+
     /**
      * remove 关联值
      *
@@ -64,6 +93,17 @@ public interface SagaSqlSchema {
     PreparedStatement sql_findAssocSagaIdentifiers(Connection connection, String key, String value, String sagaType)
             throws SQLException;
 
+    /**
+     * 通过 多个关联值 找到 saga标示符，saga 与 任一关联值 相关 即返回
+     *
+     * @param connection        The connection to create the PreparedStatement for
+     * @param sagaType          The type of saga to find associations for
+     * @param associationValues The association values to find the sagas of
+     * @return a PreparedStatement that creates a ResultSet containing only distinct saga identifiers when executed
+     */
+    PreparedStatement sql_findAllAssocSagaIdentifiers(Connection connection, String sagaType,
+                                                      List<AssociationValue> associationValues) throws SQLException;
+
     /**
      * 删除 saga
      *
@@ -107,6 +147,64 @@ public interface SagaSqlSchema {
     PreparedStatement sql_storeSaga(Connection connection, String sagaIdentifier, String revision, String sagaType,
                                     byte[] serializedSaga) throws SQLException;
 
+    /**
+     * 批量插入 关联值，返回的 statement 已包含所有关联值的 batch，由调用者 executeBatch 执行
+     *
+     * @param connection The connection to create the PreparedStatement for
+     * @param entries    The association values to insert
+     * @return a statement that inserts all given association values when its batch is executed
+     */
+    PreparedStatement sql_storeAssocValues(Connection connection, List<AssociationValueEntry> entries)
+            throws SQLException;
+
+    /**
+     * 批量删除 关联值，返回的 statement 已包含所有关联值的 batch，由调用者 executeBatch 执行
+     *
+     * @param connection The connection to create the PreparedStatement for
+     * @param entries    The association values to remove
+     * @return a statement that removes all given association values when its batch is executed
+     */
+    PreparedStatement sql_removeAssocValues(Connection connection, List<AssociationValueEntry> entries)
+            throws SQLException;
+
+    /**
+     * 批量删除 saga，返回的 statement 已包含所有 saga 的 batch，由调用者 executeBatch 执行
+     *
+     * @param connection      The connection to create the PreparedStatement for
+     * @param sagaIdentifiers The identifiers of the Sagas to remove
+     * @return a statement that deletes all given Sagas when its batch is executed
+     */
+    PreparedStatement sql_deleteSagaEntries(Connection connection, List<String> sagaIdentifiers)
+            throws SQLException;
+
+    /**
+     * 批量删除 与给定 saga 相关的 所有关联值
+     *
+     * @param connection      The connection to create the PreparedStatement for
+     * @param sagaIdentifiers The identifiers of the Sagas to remove associations for
+     * @return a statement that deletes the associations of all given Sagas when its batch is executed
+     */
+    PreparedStatement sql_deleteAssociationEntriesOfSagas(Connection connection, List<String> sagaIdentifiers)
+            throws SQLException;
+
+    /**
+     * 批量更新 saga，batch 中 每个 saga 的更新行数 与 entries 的顺序一致
+     *
+     * @param connection The connection to create the PreparedStatement for
+     * @param entries    The serialized sagas to update
+     * @return a statement that updates all given Saga entries when its batch is executed
+     */
+    PreparedStatement sql_updateSagas(Connection connection, List<SagaEntry> entries) throws SQLException;
+
+    /**
+     * 批量插入 saga
+     *
+     * @param connection The connection to create the PreparedStatement for
+     * @param entries    The serialized sagas to insert
+     * @return a statement that inserts all given Saga entries when its batch is executed
+     */
+    PreparedStatement sql_storeSagas(Connection connection, List<SagaEntry> entries) throws SQLException;
+
     /**
      * 创建表来存储 saga 关联值
      *
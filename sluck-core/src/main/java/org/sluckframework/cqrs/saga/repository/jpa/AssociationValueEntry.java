@@ -0,0 +1,52 @@
+package org.sluckframework.cqrs.saga.repository.jpa;
+
+import org.sluckframework.cqrs.saga.AssociationValue;
+
+/**
+ * 关联值 实体映射，一行 对应 一个 saga 的 一个关联值
+ *
+ * Author: sunxy
+ * Created: 2015-09-13 22:30
+ * Since: 1.0
+ */
+public class AssociationValueEntry {
+
+    private String sagaId;
+    private String associationKey;
+    private String associationValue;
+    private String sagaType;
+
+    /**
+     * 使用 saga 类型、标示符 和 关联值 初始化
+     *
+     * @param sagaType         The type identifier of the saga
+     * @param sagaIdentifier   The identifier of the saga
+     * @param associationValue The association value of the saga
+     */
+    public AssociationValueEntry(String sagaType, String sagaIdentifier, AssociationValue associationValue) {
+        this.sagaType = sagaType;
+        this.sagaId = sagaIdentifier;
+        this.associationKey = associationValue.getKey();
+        this.associationValue = associationValue.getValue();
+    }
+
+    protected AssociationValueEntry() {
+        // required by JPA
+    }
+
+    public AssociationValue getAssociationValue() {
+        return new AssociationValue(associationKey, associationValue);
+    }
+
+    public String getAssociationKey() {
+        return associationKey;
+    }
+
+    public String getSagaId() {
+        return sagaId;
+    }
+
+    public String getSagaType() {
+        return sagaType;
+    }
+}
@@ -0,0 +1,27 @@
+package org.sluckframework.domain.event.eventstore;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.sluckframework.domain.event.aggregate.AggregateEventStream;
+import org.sluckframework.domain.identifier.Identifier;
+
+/**
+ * 支持 一次读取 多个聚合的流，实现应 使用固定次数的存储交互 读取所有聚合的 快照 和 之后的事件
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public interface BatchStreamSupport {
+
+    /**
+     * 读取 多个聚合的事件流，每个流 与 {@link AggregateEventStore#readEvents(String, Identifier)} 返回的流相同，
+     * 从最近的快照开始
+     *
+     * @param type        The type identifier of the aggregates
+     * @param identifiers The identifiers of the aggregates to read the streams of
+     * @return the event stream of each aggregate by the given identifier; aggregates without events are absent
+     */
+    Map<Identifier<?>, AggregateEventStream> readEvents(String type, Collection<? extends Identifier<?>> identifiers);
+
+}
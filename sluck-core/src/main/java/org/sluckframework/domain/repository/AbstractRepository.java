@@ -1,5 +1,12 @@
 package org.sluckframework.domain.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
 import org.sluckframework.common.exception.Assert;
 import org.sluckframework.cqrs.eventhanding.EventBus;
 import org.sluckframework.cqrs.unitofwork.CurrentUnitOfWork;
@@ -57,6 +64,30 @@ public abstract class AbstractRepository<T extends AggregateRoot<ID>, ID extends
         return load(aggregateIdentifier, null);
     }
 
+    /**
+     * 批量加载聚合，在uow中注册所有聚合
+     */
+    @Override
+    public List<T> loadAll(Collection<ID> aggregateIdentifiers) {
+        Map<ID, T> aggregates = doLoadAll(distinct(aggregateIdentifiers));
+        List<T> registered = new ArrayList<T>(aggregates.size());
+        for (T aggregate : aggregates.values()) {
+            registered.add(CurrentUnitOfWork.get().registerAggregate(aggregate, eventBus, saveAggregateCallback));
+        }
+        return registered;
+    }
+
+    /**
+     * 去除重复的标示符，保持原有顺序
+     *
+     * @param aggregateIdentifiers The identifiers to remove the duplicates from
+     * @return the distinct identifiers in their original order
+     */
+    protected List<ID> distinct(Collection<ID> aggregateIdentifiers) {
+        Assert.notNull(aggregateIdentifiers, "aggregateIdentifiers may not be null");
+        return new ArrayList<ID>(new LinkedHashSet<ID>(aggregateIdentifiers));
+    }
+
     /**
      * 验证聚合版本，同步检测
      *
@@ -101,6 +132,20 @@ public abstract class AbstractRepository<T extends AggregateRoot<ID>, ID extends
      */
     protected abstract T doLoad(ID aggregateIdentifier, Long expectedVersion);
 
+    /**
+     * 批量加载 和 初始化 聚合，默认 逐个调用 {@link #doLoad(Identifier, Long)}，支持批量读取的仓储 应覆盖此方法
+     *
+     * @param aggregateIdentifiers the distinct identifiers of the aggregates to load
+     * @return the fully initialized aggregates by identifier, in the order of the identifiers
+     */
+    protected Map<ID, T> doLoadAll(List<ID> aggregateIdentifiers) {
+        Map<ID, T> aggregates = new LinkedHashMap<ID, T>(aggregateIdentifiers.size());
+        for (ID aggregateIdentifier : aggregateIdentifiers) {
+            aggregates.put(aggregateIdentifier, doLoad(aggregateIdentifier, null));
+        }
+        return aggregates;
+    }
+
     /**
      * 从仓储中移除聚合
      * @param aggregate the aggregate to delete
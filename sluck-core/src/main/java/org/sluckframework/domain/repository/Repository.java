@@ -1,5 +1,8 @@
 package org.sluckframework.domain.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.sluckframework.domain.aggregate.AggregateRoot;
 import org.sluckframework.domain.identifier.Identifier;
 
@@ -30,6 +33,14 @@ public interface Repository<T extends AggregateRoot<ID>, ID extends Identifier<?
      */
     T load(ID aggregateIdentifier);
 
+    /**
+     * 批量加载聚合，支持批量读取的仓储 使用固定次数的存储交互 加载所有聚合，任意聚合不存在时 抛出 AggregateNotFoundException
+     *
+     * @param aggregateIdentifiers The identifiers of the aggregates to load
+     * @return The aggregate roots with the given identifiers, in the order of the identifiers, without duplicates
+     */
+    List<T> loadAll(Collection<ID> aggregateIdentifiers);
+
     /**
      * 增加聚合到仓储中
      *
@@ -1,5 +1,7 @@
 package org.sluckframework.domain.repository.lock;
 
+import java.util.Comparator;
+
 import org.sluckframework.domain.aggregate.AggregateRoot;
 import org.sluckframework.domain.identifier.Identifier;
 
@@ -36,4 +38,13 @@ public interface LockManager {
      */
     void releaseLock(Identifier<?> aggregateIdentifier);
 
+    /**
+     * 一次获取 多个聚合的锁时 使用的顺序，默认 按标示符的字符串 排序
+     *
+     * @return the order in which to obtain the locks of multiple aggregates
+     */
+    default Comparator<Identifier<?>> lockOrder() {
+        return Comparator.comparing(Identifier::toString);
+    }
+
 }
@@ -1,5 +1,10 @@
 package org.sluckframework.domain.repository.lock;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sluckframework.common.exception.Assert;
@@ -79,6 +84,35 @@ public abstract class LockingRepository<T extends AggregateRoot<ID>, ID extends
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 按 {@link LockManager#lockOrder()} 的顺序 获取所有聚合的锁，避免 并发的批量加载 相互等待
+     */
+    @Override
+    public List<T> loadAll(Collection<ID> aggregateIdentifiers) {
+        List<ID> lockOrder = distinct(aggregateIdentifiers);
+        Collections.sort(lockOrder, lockManager.lockOrder());
+        List<ID> locked = new ArrayList<ID>(lockOrder.size());
+        try {
+            for (ID aggregateIdentifier : lockOrder) {
+                lockManager.obtainLock(aggregateIdentifier);
+                locked.add(aggregateIdentifier);
+            }
+            final List<T> aggregates = super.loadAll(aggregateIdentifiers);
+            for (ID aggregateIdentifier : locked) {
+                CurrentUnitOfWork.get().registerListener(new LockCleaningListener(aggregateIdentifier));
+            }
+            return aggregates;
+        } catch (RuntimeException ex) {
+            logger.debug("Exception occurred while trying to load aggregates. Releasing locks.", ex);
+            for (ID aggregateIdentifier : locked) {
+                lockManager.releaseLock(aggregateIdentifier);
+            }
+            throw ex;
+        }
+    }
+
     /**
      * 验证 是否 获取聚合的 锁后  执行 doSaveWithLock
      *
@@ -1,5 +1,7 @@
 package org.sluckframework.domain.repository.lock;
 
+import java.util.Comparator;
+
 import org.sluckframework.common.lock.IdentifierBasedLock;
 import org.sluckframework.domain.aggregate.AggregateRoot;
 import org.sluckframework.domain.identifier.Identifier;
@@ -14,7 +16,24 @@ import org.sluckframework.domain.identifier.Identifier;
  */
 public class PessimisticLockManager implements LockManager{
 
-    private final IdentifierBasedLock lock = new IdentifierBasedLock();
+    private final IdentifierBasedLock lock;
+
+    /**
+     * 为每个聚合 使用独立的锁 初始化
+     */
+    public PessimisticLockManager() {
+        this.lock = new IdentifierBasedLock();
+    }
+
+    /**
+     * 使用 固定数量的 分段锁 初始化，适用于 吞吐量优先 且 每个线程 同时只锁定一个聚合 的场景
+     *
+     * @param lockStripes the minimum number of locks the aggregate identifiers are spread over
+     * @see IdentifierBasedLock#IdentifierBasedLock(int)
+     */
+    public PessimisticLockManager(int lockStripes) {
+        this.lock = new IdentifierBasedLock(lockStripes);
+    }
 
     /**
      * {@inheritDoc}
@@ -44,4 +63,15 @@ public class PessimisticLockManager implements LockManager{
         lock.releaseLock(aggregateIdentifier.toString());
     }
 
+    /**
+     * 与 锁的分段 一致的顺序
+     *
+     * @see IdentifierBasedLock#lockOrder()
+     */
+    @Override
+    public Comparator<Identifier<?>> lockOrder() {
+        final Comparator<String> lockOrder = lock.lockOrder();
+        return (first, second) -> lockOrder.compare(first.toString(), second.toString());
+    }
+
 }
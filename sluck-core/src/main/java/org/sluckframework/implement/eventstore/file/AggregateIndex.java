@@ -0,0 +1,69 @@
+package org.sluckframework.implement.eventstore.file;
+
+import java.util.Arrays;
+
+/**
+ * 单个聚合的 偏移量索引，按 sequenceNumber 升序保存 每个事件在 分段日志中的地址
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class AggregateIndex {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] sequenceNumbers = new long[INITIAL_CAPACITY];
+    private long[] addresses = new long[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * 添加一个事件的地址，sequenceNumber 必须大于已有的最大值
+     *
+     * @param sequenceNumber The sequence number of the event
+     * @param address        The address of the event in the log
+     */
+    public synchronized void add(long sequenceNumber, long address) {
+        if (size == sequenceNumbers.length) {
+            sequenceNumbers = Arrays.copyOf(sequenceNumbers, size * 2);
+            addresses = Arrays.copyOf(addresses, size * 2);
+        }
+        sequenceNumbers[size] = sequenceNumber;
+        addresses[size] = address;
+        size++;
+    }
+
+    /**
+     * 返回最大的 sequenceNumber，没有事件时返回 -1
+     *
+     * @return the last sequence number, or -1
+     */
+    public synchronized long lastSequenceNumber() {
+        return size == 0 ? -1 : sequenceNumbers[size - 1];
+    }
+
+    /**
+     * 返回 最后一个事件的地址，没有事件时返回 -1
+     *
+     * @return the address of the last entry, or -1
+     */
+    public synchronized long lastAddress() {
+        return size == 0 ? -1 : addresses[size - 1];
+    }
+
+    /**
+     * 返回 sequenceNumber 在 [first, last] 之间的事件地址
+     *
+     * @param firstSequenceNumber The first sequence number to include
+     * @param lastSequenceNumber  The last sequence number to include
+     * @return the addresses, in sequence order
+     */
+    public synchronized long[] addresses(long firstSequenceNumber, long lastSequenceNumber) {
+        int from = Arrays.binarySearch(sequenceNumbers, 0, size, firstSequenceNumber);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int to = Arrays.binarySearch(sequenceNumbers, from, size, lastSequenceNumber);
+        to = to < 0 ? -to - 1 : to + 1;
+        return Arrays.copyOfRange(addresses, from, Math.max(from, to));
+    }
+}
@@ -0,0 +1,177 @@
+package org.sluckframework.implement.eventstore.file;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.joda.time.DateTime;
+import org.sluckframework.common.serializer.SerializedAggregateEventData;
+import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.common.serializer.SimpleSerializedObject;
+import org.sluckframework.common.util.IOUtils;
+import org.sluckframework.domain.identifier.DefaultIdentifier;
+import org.sluckframework.domain.identifier.Identifier;
+
+/**
+ * 文件中存储的一条事件记录，负责 记录 和 字节 之间的编解码
+ * <p/>
+ * 格式: eventIdentifier, type, aggregateIdentifier, sequenceNumber, timeStamp, payloadType, payloadRevision, payload,
+ * 字符串以 int 长度 + UTF-8 字节 存储，长度为 -1 表示 null
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class EventRecord implements SerializedAggregateEventData<byte[]> {
+
+    private static final Charset UTF8 = IOUtils.UTF8;
+
+    private final String eventIdentifier;
+    private final String type;
+    private final String aggregateIdentifier;
+    private final long sequenceNumber;
+    private final long timestamp;
+    private final String payloadType;
+    private final String payloadRevision;
+    private final byte[] payload;
+
+    public EventRecord(String eventIdentifier, String type, String aggregateIdentifier, // NOSONAR - Long ctor
+                       long sequenceNumber, long timestamp, String payloadType, String payloadRevision,
+                       byte[] payload) {
+        this.eventIdentifier = eventIdentifier;
+        this.type = type;
+        this.aggregateIdentifier = aggregateIdentifier;
+        this.sequenceNumber = sequenceNumber;
+        this.timestamp = timestamp;
+        this.payloadType = payloadType;
+        this.payloadRevision = payloadRevision;
+        this.payload = payload;
+    }
+
+    /**
+     * 从 buffer 的当前位置 解码一条记录
+     *
+     * @param buffer The buffer positioned at the start of an encoded record
+     * @return the decoded record
+     */
+    public static EventRecord decode(ByteBuffer buffer) {
+        String eventIdentifier = readString(buffer);
+        String type = readString(buffer);
+        String aggregateIdentifier = readString(buffer);
+        long sequenceNumber = buffer.getLong();
+        long timestamp = buffer.getLong();
+        String payloadType = readString(buffer);
+        String payloadRevision = readString(buffer);
+        byte[] payload = new byte[buffer.getInt()];
+        buffer.get(payload);
+        return new EventRecord(eventIdentifier, type, aggregateIdentifier, sequenceNumber, timestamp,
+                               payloadType, payloadRevision, payload);
+    }
+
+    /**
+     * 将记录编码为字节
+     *
+     * @return the encoded form of this record
+     */
+    public byte[] encode() {
+        byte[] eventIdentifierBytes = bytes(eventIdentifier);
+        byte[] typeBytes = bytes(type);
+        byte[] aggregateIdentifierBytes = bytes(aggregateIdentifier);
+        byte[] payloadTypeBytes = bytes(payloadType);
+        byte[] payloadRevisionBytes = bytes(payloadRevision);
+        int size = 4 * 6 + 8 * 2
+                + length(eventIdentifierBytes) + length(typeBytes) + length(aggregateIdentifierBytes)
+                + length(payloadTypeBytes) + length(payloadRevisionBytes) + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        writeBytes(buffer, eventIdentifierBytes);
+        writeBytes(buffer, typeBytes);
+        writeBytes(buffer, aggregateIdentifierBytes);
+        buffer.putLong(sequenceNumber);
+        buffer.putLong(timestamp);
+        writeBytes(buffer, payloadTypeBytes);
+        writeBytes(buffer, payloadRevisionBytes);
+        writeBytes(buffer, payload);
+        return buffer.array();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(UTF8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * 返回 聚合类型
+     *
+     * @return the type identifier of the aggregate that generated the event
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * 返回 聚合标示符 的字符串形式
+     *
+     * @return the aggregate identifier as stored
+     */
+    public String getAggregateIdentifierValue() {
+        return aggregateIdentifier;
+    }
+
+    public String getPayloadType() {
+        return payloadType;
+    }
+
+    public String getPayloadRevision() {
+        return payloadRevision;
+    }
+
+    @Override
+    public String getEventIdentifier() {
+        return eventIdentifier;
+    }
+
+    @Override
+    public Identifier<?> getAggregateIdentifier() {
+        return new DefaultIdentifier(aggregateIdentifier);
+    }
+
+    @Override
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    @Override
+    public DateTime getTimestamp() {
+        return new DateTime(timestamp);
+    }
+
+    @Override
+    public SerializedObject<byte[]> getPayload() {
+        return new SimpleSerializedObject<byte[]>(payload, byte[].class, payloadType, payloadRevision);
+    }
+
+    @Override
+    public Long getGlobalIndex() {
+        return null;
+    }
+}
@@ -0,0 +1,323 @@
+package org.sluckframework.implement.eventstore.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.util.IOUtils;
+
+/**
+ * 只追加的 分段日志，记录被顺序写入 segment 文件，达到 maxSegmentSize 后新建 segment。
+ * 一次 append 的所有记录 写为一帧，格式为 int 帧长度 + int crc + 记录，每条记录 为 int 长度 + 数据，
+ * crc 覆盖整帧，崩溃时 写了一部分的帧 在打开时 整体截断，不会只留下 批次中的部分记录。
+ * 记录 通过 地址(segment 编号 << 40 | 记录在文件内的偏移) 定位，
+ * 读取时使用 只读的 内存映射 ByteBuffer。只读映射 不能超出 文件大小，映射之后 追加的记录 直接从文件读取，
+ * 未映射的部分 超过 REMAP_THRESHOLD 时 才重新映射
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class EventSegmentLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventSegmentLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final long REMAP_THRESHOLD = 4 * 1024 * 1024;
+
+    private final File directory;
+    private final long maxSegmentSize;
+    private final boolean syncOnAppend;
+    private final List<Segment> segments = new CopyOnWriteArrayList<Segment>();
+
+    /**
+     * 打开 指定目录下的 分段日志，不存在则创建，最后一个 segment 末尾不完整的记录(如写入时崩溃) 会被截断，
+     * 之前的 segment 不再写入，其中 不完整或校验失败的记录 表示 文件已损坏
+     *
+     * @param directory      The directory containing the segment files
+     * @param maxSegmentSize The size in bytes after which a new segment is started
+     * @param syncOnAppend   Whether to force appended data to disk before returning
+     * @throws IOException when the segments cannot be opened, or a segment other than the last one is corrupt
+     */
+    public EventSegmentLog(File directory, long maxSegmentSize, boolean syncOnAppend) throws IOException {
+        Assert.isTrue(maxSegmentSize > 0 && maxSegmentSize <= Integer.MAX_VALUE,
+                      "maxSegmentSize must be positive and may not exceed Integer.MAX_VALUE");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.syncOnAppend = syncOnAppend;
+        File[] files = directory.listFiles();
+        int[] ids = new int[files == null ? 0 : files.length];
+        int count = 0;
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    ids[count++] = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                }
+            }
+        }
+        ids = Arrays.copyOf(ids, count);
+        Arrays.sort(ids);
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                Segment segment = new Segment(ids[i], segmentFile(ids[i]));
+                segments.add(segment);
+                segment.recover(i == ids.length - 1);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        if (segments.isEmpty()) {
+            segments.add(new Segment(0, segmentFile(0)));
+        }
+    }
+
+    /**
+     * 追加记录，所有记录 作为一帧 在一次写入中完成，syncOnAppend 时 返回前刷盘
+     *
+     * @param records The encoded records to append
+     * @return the addresses of the appended records, in the same order
+     * @throws IOException when writing fails
+     */
+    public synchronized long[] append(List<byte[]> records) throws IOException {
+        int total = FRAME_HEADER_SIZE;
+        for (byte[] record : records) {
+            total += RECORD_HEADER_SIZE + record.length;
+        }
+        Segment active = segments.get(segments.size() - 1);
+        if (active.size > 0 && active.size + total > maxSegmentSize) {
+            active = new Segment(active.id + 1, segmentFile(active.id + 1));
+            segments.add(active);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        buffer.position(FRAME_HEADER_SIZE);
+        long[] addresses = new long[records.size()];
+        for (int i = 0; i < addresses.length; i++) {
+            byte[] record = records.get(i);
+            addresses[i] = ((long) active.id << OFFSET_BITS) | (active.size + buffer.position());
+            buffer.putInt(record.length);
+            buffer.put(record);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), FRAME_HEADER_SIZE, total - FRAME_HEADER_SIZE);
+        buffer.putInt(0, total - FRAME_HEADER_SIZE);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        active.write(buffer, syncOnAppend);
+        return addresses;
+    }
+
+    /**
+     * 读取指定地址的记录，返回的 buffer 是内存映射文件的只读视图
+     *
+     * @param address The address returned by {@link #append(List)} or {@link #scan(RecordHandler)}
+     * @return a buffer containing exactly the record data
+     * @throws IOException when the segment cannot be mapped
+     */
+    public ByteBuffer read(long address) throws IOException {
+        int id = (int) (address >>> OFFSET_BITS);
+        Segment segment = segments.get(id - segments.get(0).id);
+        return segment.read(address & OFFSET_MASK, RECORD_HEADER_SIZE);
+    }
+
+    /**
+     * 按写入顺序 遍历所有记录
+     *
+     * @param handler The handler receiving each record
+     * @throws IOException when a segment cannot be mapped
+     */
+    public void scan(RecordHandler handler) throws IOException {
+        for (Segment segment : segments) {
+            long offset = 0;
+            long size = segment.size;
+            while (offset < size) {
+                ByteBuffer frame = segment.read(offset, FRAME_HEADER_SIZE);
+                int length = frame.remaining();
+                int position = 0;
+                while (position < length) {
+                    int recordLength = frame.getInt(position);
+                    ByteBuffer record = frame.duplicate();
+                    record.limit(position + RECORD_HEADER_SIZE + recordLength);
+                    record.position(position + RECORD_HEADER_SIZE);
+                    long address = ((long) segment.id << OFFSET_BITS) | (offset + FRAME_HEADER_SIZE + position);
+                    if (!handler.onRecord(address, record.slice())) {
+                        return;
+                    }
+                    position += RECORD_HEADER_SIZE + recordLength;
+                }
+                offset += FRAME_HEADER_SIZE + length;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            IOUtils.closeQuietly(segment.channel);
+        }
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * 记录 遍历 回调
+     */
+    public interface RecordHandler {
+
+        /**
+         * 处理一条记录
+         *
+         * @param address The address of the record
+         * @param record  The record data
+         * @return <code>true</code> to continue scanning, <code>false</code> to stop
+         */
+        boolean onRecord(long address, ByteBuffer record);
+    }
+
+    private static final class Segment {
+
+        private final int id;
+        private final FileChannel channel;
+        private volatile long size;
+        private volatile MappedByteBuffer mapped;
+
+        private Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.size = channel.size();
+        }
+
+        private void write(ByteBuffer buffer, boolean sync) throws IOException {
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+            size = position;
+        }
+
+        /**
+         * 读取 offset 处 以 int 长度开头 的数据(帧 或 记录)，headerSize 为 数据之前的 头部大小
+         */
+        private ByteBuffer read(long offset, int headerSize) throws IOException {
+            MappedByteBuffer buffer = mapped;
+            if (buffer == null || size - buffer.capacity() >= REMAP_THRESHOLD) {
+                buffer = remap();
+            }
+            if (offset + headerSize <= buffer.capacity()) {
+                int length = buffer.getInt((int) offset);
+                if (offset + headerSize + length <= buffer.capacity()) {
+                    ByteBuffer record = buffer.duplicate();
+                    record.limit((int) offset + headerSize + length);
+                    record.position((int) offset + headerSize);
+                    return record.slice();
+                }
+            }
+            return readUnmapped(offset, headerSize);
+        }
+
+        /**
+         * 读取 映射之后 追加的数据
+         */
+        private ByteBuffer readUnmapped(long offset, int headerSize) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            readFully(header, offset);
+            ByteBuffer record = ByteBuffer.allocate(header.getInt(0));
+            readFully(record, offset + headerSize);
+            record.flip();
+            return record.asReadOnlyBuffer();
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of segment " + id + " at offset " + position);
+                }
+                position += read;
+            }
+        }
+
+        private synchronized MappedByteBuffer remap() throws IOException {
+            long currentSize = size;
+            if (mapped == null || mapped.capacity() < currentSize) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, currentSize);
+            }
+            return mapped;
+        }
+
+        /**
+         * 校验 segment 中的帧，最后一个 segment 截断 末尾 不完整或校验失败的帧，其它 segment 抛出异常
+         */
+        private void recover(boolean isLast) throws IOException {
+            MappedByteBuffer buffer = remap();
+            long offset = 0;
+            CRC32 crc = new CRC32();
+            while (offset + FRAME_HEADER_SIZE <= size) {
+                int length = buffer.getInt((int) offset);
+                if (length < 0 || offset + FRAME_HEADER_SIZE + length > size) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                ByteBuffer frame = buffer.duplicate();
+                frame.position((int) offset + FRAME_HEADER_SIZE);
+                frame.get(data);
+                crc.reset();
+                crc.update(data, 0, length);
+                if ((int) crc.getValue() != buffer.getInt((int) offset + 4) || !isComplete(data)) {
+                    break;
+                }
+                offset += FRAME_HEADER_SIZE + length;
+            }
+            if (offset < size) {
+                if (!isLast) {
+                    throw new IOException(String.format(
+                            "Segment %d is corrupt at offset %d (size %d). Only the last segment can contain an "
+                                    + "incomplete append.", id, offset, size));
+                }
+                logger.warn("Truncating segment {} at offset {} (size {}). The last append was incomplete.",
+                            id, offset, size);
+                channel.truncate(offset);
+                size = offset;
+                mapped = null;
+            }
+        }
+
+        /**
+         * 帧中的记录 是否 正好填满整帧
+         */
+        private static boolean isComplete(byte[] frame) {
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    return false;
+                }
+                buffer.position(buffer.position() + length);
+            }
+            return !buffer.hasRemaining();
+        }
+    }
+}
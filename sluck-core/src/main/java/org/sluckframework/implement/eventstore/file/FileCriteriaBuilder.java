@@ -0,0 +1,20 @@
+package org.sluckframework.implement.eventstore.file;
+
+import org.sluckframework.domain.event.eventstore.query.CriteriaBuilder;
+import org.sluckframework.domain.event.eventstore.query.Property;
+import org.sluckframework.implement.eventstore.file.criteria.FileProperty;
+
+/**
+ * 文件仓储 实现的 criteriaBuilder
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class FileCriteriaBuilder implements CriteriaBuilder {
+
+	@Override
+	public Property property(String propertyName) {
+		return new FileProperty(propertyName);
+	}
+
+}
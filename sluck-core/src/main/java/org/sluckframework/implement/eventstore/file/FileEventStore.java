@@ -0,0 +1,442 @@
+package org.sluckframework.implement.eventstore.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.serializer.EventSerializer;
+import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.common.serializer.Serializer;
+import org.sluckframework.common.serializer.json.JacksonSerializer;
+import org.sluckframework.cqrs.upcasting.SimpleUpcasterChain;
+import org.sluckframework.cqrs.upcasting.UpcasterAware;
+import org.sluckframework.cqrs.upcasting.UpcasterChain;
+import org.sluckframework.domain.event.aggregate.AggregateEvent;
+import org.sluckframework.domain.event.aggregate.AggregateEventStream;
+import org.sluckframework.domain.event.aggregate.GenericAggregateEvent;
+import org.sluckframework.domain.event.eventstore.EventStoreException;
+import org.sluckframework.domain.event.eventstore.EventStreamNotFoundException;
+import org.sluckframework.domain.event.eventstore.EventVisitor;
+import org.sluckframework.domain.event.eventstore.PartialStreamSupport;
+import org.sluckframework.domain.event.eventstore.SnapshotEventStore;
+import org.sluckframework.domain.event.eventstore.query.Criteria;
+import org.sluckframework.domain.event.eventstore.query.CriteriaBuilder;
+import org.sluckframework.domain.event.eventstore.query.EventStoreQueryManagement;
+import org.sluckframework.domain.identifier.DefaultIdentifier;
+import org.sluckframework.domain.identifier.Identifier;
+import org.sluckframework.domain.repository.ConcurrencyException;
+import org.sluckframework.implement.eventstore.file.criteria.FileCriteria;
+
+import static org.sluckframework.cqrs.upcasting.UpcastUtils.upcastAndDeserialize;
+import static org.sluckframework.domain.identifier.IdentifierValidator.validateIdentifier;
+
+/**
+ * 基于文件的 嵌入式 聚合事件仓储，不需要数据库。事件 和 快照 分别写入 baseDirectory 下 events 和 snapshots 目录中的
+ * 只追加 分段文件，打开时扫描分段文件 在内存中建立 每个聚合的 偏移量索引，读取时通过 内存映射 ByteBuffer 直接定位记录。
+ * 同一个聚合 sequenceNumber 重复的 append 会抛出 ConcurrencyException
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+@SuppressWarnings("rawtypes")
+public class FileEventStore implements SnapshotEventStore, PartialStreamSupport, EventStoreQueryManagement,
+        UpcasterAware, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileEventStore.class);
+
+    private static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private final EventSerializer serializer;
+    private final EventSegmentLog eventLog;
+    private final EventSegmentLog snapshotLog;
+    private final ConcurrentMap<String, AggregateIndex> eventIndex = new ConcurrentHashMap<String, AggregateIndex>();
+    private final ConcurrentMap<String, AggregateIndex> snapshotIndex =
+            new ConcurrentHashMap<String, AggregateIndex>();
+    private final FileCriteriaBuilder criteriaBuilder = new FileCriteriaBuilder();
+    private final Object writeLock = new Object();
+
+    private UpcasterChain upcasterChain = SimpleUpcasterChain.EMPTY;
+
+    /**
+     * 使用指定目录 和 JacksonSerializer 初始化
+     *
+     * @param baseDirectory The directory to store the segment files in
+     */
+    public FileEventStore(File baseDirectory) {
+        this(baseDirectory, new JacksonSerializer());
+    }
+
+    /**
+     * 使用指定目录 和 serializer 初始化，每次 append 都会刷盘
+     *
+     * @param baseDirectory The directory to store the segment files in
+     * @param serializer    The serializer to serialize events
+     */
+    public FileEventStore(File baseDirectory, Serializer serializer) {
+        this(baseDirectory, serializer, DEFAULT_MAX_SEGMENT_SIZE, true);
+    }
+
+    /**
+     * 使用指定的属性 初始化，并 重建 内存中的索引
+     *
+     * @param baseDirectory  The directory to store the segment files in
+     * @param serializer     The serializer to serialize events
+     * @param maxSegmentSize The size in bytes after which a new segment file is started
+     * @param syncOnAppend   Whether each append is forced to disk before returning
+     */
+    public FileEventStore(File baseDirectory, Serializer serializer, long maxSegmentSize, boolean syncOnAppend) {
+        Assert.notNull(baseDirectory, "baseDirectory may not be null");
+        Assert.notNull(serializer, "serializer may not be null");
+        this.serializer = new EventSerializer(serializer);
+        try {
+            this.eventLog = new EventSegmentLog(new File(baseDirectory, "events"), maxSegmentSize, syncOnAppend);
+            this.snapshotLog = new EventSegmentLog(new File(baseDirectory, "snapshots"), maxSegmentSize,
+                                                   syncOnAppend);
+            rebuildIndex(eventLog, eventIndex);
+            rebuildIndex(snapshotLog, snapshotIndex);
+        } catch (IOException e) {
+            throw new EventStoreException("Exception while opening the file event store in " + baseDirectory, e);
+        }
+    }
+
+    private static void rebuildIndex(EventSegmentLog log, final ConcurrentMap<String, AggregateIndex> index)
+            throws IOException {
+        log.scan(new EventSegmentLog.RecordHandler() {
+            @Override
+            public boolean onRecord(long address, ByteBuffer record) {
+                EventRecord entry = EventRecord.decode(record);
+                AggregateIndex aggregateIndex = indexFor(index, key(entry.getType(),
+                                                                    entry.getAggregateIdentifierValue()));
+                if (entry.getSequenceNumber() > aggregateIndex.lastSequenceNumber()) {
+                    aggregateIndex.add(entry.getSequenceNumber(), address);
+                }
+                return true;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void appendEvents(String type, AggregateEventStream events) {
+        List<AggregateEvent> batch = new ArrayList<AggregateEvent>();
+        List<byte[]> records = new ArrayList<byte[]>();
+        while (events.hasNext()) {
+            AggregateEvent event = events.next();
+            validateIdentifier(event.getAggregateIdentifier().getClass());
+            batch.add(event);
+            records.add(toRecord(type, event).encode());
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            for (int i = 0; i < batch.size(); i++) {
+                AggregateEvent event = batch.get(i);
+                AggregateIndex index = eventIndex.get(key(type, event));
+                long lastSequenceNumber = index == null ? -1 : index.lastSequenceNumber();
+                for (int j = 0; j < i; j++) {
+                    if (batch.get(j).getAggregateIdentifier().equals(event.getAggregateIdentifier())) {
+                        lastSequenceNumber = Math.max(lastSequenceNumber, batch.get(j).getSequenceNumber());
+                    }
+                }
+                if (event.getSequenceNumber() <= lastSequenceNumber) {
+                    throw new ConcurrencyException(
+                            String.format("Concurrent modification detected for Aggregate identifier [%s], "
+                                                  + "sequence: [%s]",
+                                          event.getAggregateIdentifier(),
+                                          event.getSequenceNumber()));
+                }
+            }
+            long[] addresses;
+            try {
+                addresses = eventLog.append(records);
+            } catch (IOException e) {
+                throw new EventStoreException("Exception occurred while attempting to persist events", e);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                AggregateEvent event = batch.get(i);
+                indexFor(eventIndex, key(type, event)).add(event.getSequenceNumber(), addresses[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void appendSnapshotEvent(String type, AggregateEvent snapshotEvent) {
+        byte[] record = toRecord(type, snapshotEvent).encode();
+        String key = key(type, snapshotEvent);
+        synchronized (writeLock) {
+            AggregateIndex index = snapshotIndex.get(key);
+            if (index != null && snapshotEvent.getSequenceNumber() <= index.lastSequenceNumber()) {
+                throw new ConcurrencyException(
+                        String.format("A snapshot for aggregate [%s] at sequence: [%s] was already inserted",
+                                      snapshotEvent.getAggregateIdentifier(),
+                                      snapshotEvent.getSequenceNumber()));
+            }
+            long[] addresses;
+            try {
+                addresses = snapshotLog.append(Collections.singletonList(record));
+            } catch (IOException e) {
+                throw new EventStoreException("Exception while attempting to persist a snapshot", e);
+            }
+            indexFor(snapshotIndex, key).add(snapshotEvent.getSequenceNumber(), addresses[0]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public AggregateEventStream readEvents(String type, Identifier<?> identifier) {
+        String key = key(type, identifier.getIdentifier().toString());
+        long snapshotSequenceNumber = -1;
+        AggregateEvent snapshotEvent = null;
+        AggregateIndex snapshots = snapshotIndex.get(key);
+        if (snapshots != null && snapshots.lastAddress() >= 0) {
+            try {
+                EventRecord lastSnapshotEvent = EventRecord.decode(snapshotLog.read(snapshots.lastAddress()));
+                snapshotEvent = new GenericAggregateEvent(
+                        identifier,
+                        lastSnapshotEvent.getSequenceNumber(),
+                        serializer.deserialize(lastSnapshotEvent.getPayload()));
+                snapshotSequenceNumber = snapshotEvent.getSequenceNumber();
+            } catch (IOException ex) {
+                logger.warn("Error while reading snapshot event entry. "
+                                    + "Reconstructing aggregate on entire event stream. Caused by: {} {}",
+                            ex.getClass().getName(),
+                            ex.getMessage());
+            } catch (RuntimeException ex) {
+                logger.warn("Error while reading snapshot event entry. "
+                                    + "Reconstructing aggregate on entire event stream. Caused by: {} {}",
+                            ex.getClass().getName(),
+                            ex.getMessage());
+            } catch (LinkageError error) {
+                logger.warn("Error while reading snapshot event entry. "
+                                    + "Reconstructing aggregate on entire event stream. Caused by: {} {}",
+                            error.getClass().getName(),
+                            error.getMessage());
+            }
+        }
+        Iterator<EventRecord> entries = fetch(key, snapshotSequenceNumber + 1, Long.MAX_VALUE);
+        if (snapshotEvent == null && !entries.hasNext()) {
+            throw new EventStreamNotFoundException(type, identifier);
+        }
+        return new IteratorAggregateEventStream(snapshotEvent, entries, identifier, Long.MAX_VALUE, false);
+    }
+
+    @Override
+    public AggregateEventStream readEvents(String type, Identifier<?> identifier, long firstSequenceNumber) {
+        return readEvents(type, identifier, firstSequenceNumber, Long.MAX_VALUE);
+    }
+
+    @Override
+    public AggregateEventStream readEvents(String type, Identifier<?> identifier, long firstSequenceNumber,
+                                           long lastSequenceNumber) {
+        Iterator<EventRecord> entries = fetch(key(type, identifier.getIdentifier().toString()),
+                                              firstSequenceNumber, lastSequenceNumber);
+        if (!entries.hasNext()) {
+            throw new EventStreamNotFoundException(type, identifier);
+        }
+        return new IteratorAggregateEventStream(null, entries, identifier, lastSequenceNumber, false);
+    }
+
+    @Override
+    public AggregateEventStream readEvents(String type, Object identifier, long firstSequenceNumber) {
+        return readEvents(type, toIdentifier(identifier), firstSequenceNumber);
+    }
+
+    @Override
+    public AggregateEventStream readEvents(String type, Object identifier, long firstSequenceNumber,
+                                           long lastSequenceNumber) {
+        return readEvents(type, toIdentifier(identifier), firstSequenceNumber, lastSequenceNumber);
+    }
+
+    @Override
+    public void visitEvents(EventVisitor visitor) {
+        doVisitEvents(visitor, null);
+    }
+
+    @Override
+    public void visitEvents(Criteria criteria, EventVisitor visitor) {
+        doVisitEvents(visitor, (FileCriteria) criteria);
+    }
+
+    @Override
+    public CriteriaBuilder newCriteriaBuilder() {
+        return criteriaBuilder;
+    }
+
+    private void doVisitEvents(final EventVisitor visitor, final FileCriteria criteria) {
+        try {
+            eventLog.scan(new EventSegmentLog.RecordHandler() {
+                @Override
+                public boolean onRecord(long address, ByteBuffer record) {
+                    EventRecord entry = EventRecord.decode(record);
+                    if (criteria == null || criteria.matches(entry)) {
+                        for (AggregateEvent event : upcastAndDeserialize(entry, null, serializer,
+                                                                         upcasterChain, true)) {
+                            visitor.doWithEvent(event);
+                        }
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            throw new EventStoreException("Exception while attempting to read from the file event store", e);
+        }
+    }
+
+    @Override
+    public void setUpcasterChain(UpcasterChain upcasterChain) {
+        this.upcasterChain = upcasterChain;
+    }
+
+    /**
+     * 关闭 分段文件
+     */
+    @Override
+    public void close() {
+        eventLog.close();
+        snapshotLog.close();
+    }
+
+    private Iterator<EventRecord> fetch(String key, long firstSequenceNumber, long lastSequenceNumber) {
+        AggregateIndex index = eventIndex.get(key);
+        if (index == null) {
+            return Collections.<EventRecord>emptyList().iterator();
+        }
+        return new RecordIterator(index.addresses(firstSequenceNumber, lastSequenceNumber));
+    }
+
+    @SuppressWarnings("unchecked")
+    private EventRecord toRecord(String type, AggregateEvent event) {
+        SerializedObject<byte[]> payload = serializer.serializePayload(event, byte[].class);
+        return new EventRecord(event.getIdentifier().toString(),
+                               type,
+                               event.getAggregateIdentifier().getIdentifier().toString(),
+                               event.getSequenceNumber(),
+                               event.occurredOn().getMillis(),
+                               payload.getType().getName(),
+                               payload.getType().getRevision(),
+                               payload.getData());
+    }
+
+    private static Identifier<?> toIdentifier(Object identifier) {
+        if (identifier instanceof Identifier) {
+            return (Identifier<?>) identifier;
+        }
+        return new DefaultIdentifier(identifier.toString());
+    }
+
+    private static String key(String type, AggregateEvent event) {
+        return key(type, event.getAggregateIdentifier().getIdentifier().toString());
+    }
+
+    private static String key(String type, String aggregateIdentifier) {
+        return type + '\u0000' + aggregateIdentifier;
+    }
+
+    private static AggregateIndex indexFor(ConcurrentMap<String, AggregateIndex> index, String key) {
+        AggregateIndex aggregateIndex = index.get(key);
+        if (aggregateIndex == null) {
+            AggregateIndex newIndex = new AggregateIndex();
+            aggregateIndex = index.putIfAbsent(key, newIndex);
+            if (aggregateIndex == null) {
+                aggregateIndex = newIndex;
+            }
+        }
+        return aggregateIndex;
+    }
+
+    private final class RecordIterator implements Iterator<EventRecord> {
+
+        private final long[] addresses;
+        private int position;
+
+        private RecordIterator(long[] addresses) {
+            this.addresses = addresses;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < addresses.length;
+        }
+
+        @Override
+        public EventRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return EventRecord.decode(eventLog.read(addresses[position++]));
+            } catch (IOException e) {
+                throw new EventStoreException("Exception while attempting to read from the file event store", e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Iterator is read-only");
+        }
+    }
+
+    private final class IteratorAggregateEventStream implements AggregateEventStream {
+
+        private Iterator<AggregateEvent> currentBatch;
+        private AggregateEvent next;
+        private final Iterator<EventRecord> iterator;
+        private final Identifier<?> aggregateIdentifier;
+        private final long lastSequenceNumber;
+        private final boolean skipUnknownTypes;
+
+        public IteratorAggregateEventStream(AggregateEvent snapshotEvent, Iterator<EventRecord> iterator,
+                                            Identifier<?> aggregateIdentifier, long lastSequenceNumber,
+                                            boolean skipUnknownTypes) {
+            this.aggregateIdentifier = aggregateIdentifier;
+            this.lastSequenceNumber = lastSequenceNumber;
+            this.skipUnknownTypes = skipUnknownTypes;
+            if (snapshotEvent != null) {
+                currentBatch = Collections.singletonList(snapshotEvent).iterator();
+            } else {
+                currentBatch = Collections.<AggregateEvent>emptyList().iterator();
+            }
+            this.iterator = iterator;
+            initializeNextItem();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null && next.getSequenceNumber() <= lastSequenceNumber;
+        }
+
+        @Override
+        public AggregateEvent next() {
+            AggregateEvent current = next;
+            initializeNextItem();
+            return current;
+        }
+
+        private void initializeNextItem() {
+            while (!currentBatch.hasNext() && iterator.hasNext()) {
+                final EventRecord entry = iterator.next();
+                currentBatch = upcastAndDeserialize(entry, aggregateIdentifier, serializer, upcasterChain,
+                                                    skipUnknownTypes).iterator();
+            }
+            next = currentBatch.hasNext() ? currentBatch.next() : null;
+        }
+
+        @Override
+        public AggregateEvent peek() {
+            return next;
+        }
+    }
+}
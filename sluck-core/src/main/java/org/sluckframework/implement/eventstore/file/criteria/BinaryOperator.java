@@ -0,0 +1,38 @@
+package org.sluckframework.implement.eventstore.file.criteria;
+
+import org.sluckframework.implement.eventstore.file.EventRecord;
+
+/**
+ * 文件仓储 对 and / or 的操作
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class BinaryOperator extends FileCriteria {
+
+	private final FileCriteria criteria1;
+	private final FileCriteria criteria2;
+	private final boolean and;
+
+	/**
+	 * 根据两个 条件子句 初始化
+	 *
+	 * @param criteria1 The first criteria
+	 * @param and       <code>true</code> for AND, <code>false</code> for OR
+	 * @param criteria2 The second criteria
+	 */
+	public BinaryOperator(FileCriteria criteria1, boolean and, FileCriteria criteria2) {
+		this.criteria1 = criteria1;
+		this.and = and;
+		this.criteria2 = criteria2;
+	}
+
+	@Override
+	public boolean matches(EventRecord record) {
+		if (and) {
+			return criteria1.matches(record) && criteria2.matches(record);
+		}
+		return criteria1.matches(record) || criteria2.matches(record);
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.sluckframework.implement.eventstore.file.criteria;
+
+import java.util.Collection;
+
+import org.sluckframework.implement.eventstore.file.EventRecord;
+
+/**
+ * 文件仓储 集合操作 (in / not in)
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class CollectionOperator extends FileCriteria {
+
+	private final FileProperty property;
+	private final Collection<?> expression;
+	private final boolean in;
+
+	/**
+	 * 根据属性 和 操作 和对应值 初始化
+	 *
+	 * @param property   The property to match
+	 * @param in         <code>true</code> for IN, <code>false</code> for NOT IN
+	 * @param expression The collection to match against
+	 */
+	public CollectionOperator(FileProperty property, boolean in, Object expression) {
+		if (!(expression instanceof Collection)) {
+			throw new IllegalArgumentException("The expression of an in or not in criteria must be a Collection");
+		}
+		this.property = property;
+		this.in = in;
+		this.expression = (Collection<?>) expression;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public boolean matches(EventRecord record) {
+		Comparable actual = property.valueOf(record);
+		boolean found = false;
+		for (Object candidate : expression) {
+			if (actual != null && candidate != null
+					&& actual.equals(FileProperty.convert(actual, candidate))) {
+				found = true;
+				break;
+			}
+		}
+		return in == found;
+	}
+
+}
@@ -0,0 +1,32 @@
+package org.sluckframework.implement.eventstore.file.criteria;
+
+import org.sluckframework.domain.event.eventstore.query.Criteria;
+import org.sluckframework.implement.eventstore.file.EventRecord;
+
+/**
+ * 文件仓储 的 criteria 的抽象基类，条件在内存中对每条记录求值
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public abstract class FileCriteria implements Criteria {
+
+	@Override
+	public FileCriteria and(Criteria criteria) {
+		return new BinaryOperator(this, true, (FileCriteria) criteria);
+	}
+
+	@Override
+	public FileCriteria or(Criteria criteria) {
+		return new BinaryOperator(this, false, (FileCriteria) criteria);
+	}
+
+	/**
+	 * 判断记录是否满足条件
+	 *
+	 * @param record The record to evaluate
+	 * @return <code>true</code> if the record matches this criteria
+	 */
+	public abstract boolean matches(EventRecord record);
+
+}
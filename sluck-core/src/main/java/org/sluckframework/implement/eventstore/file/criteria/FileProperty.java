@@ -0,0 +1,115 @@
+package org.sluckframework.implement.eventstore.file.criteria;
+
+import org.joda.time.DateTime;
+import org.sluckframework.domain.event.eventstore.query.Criteria;
+import org.sluckframework.domain.event.eventstore.query.Property;
+import org.sluckframework.implement.eventstore.file.EventRecord;
+
+/**
+ * 文件仓储 的 Property 实现，支持的属性名称 与 jdbc 仓储的列名一致:
+ * eventIdentifier, type, aggregateIdentifier, sequenceNumber, timeStamp, payloadType, payloadRevision
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class FileProperty implements Property {
+
+	private final String propertyName;
+
+	/**
+	 * 根据属性名称 初始化
+	 *
+	 * @param propertyName The name of the property
+	 */
+	public FileProperty(String propertyName) {
+		this.propertyName = propertyName;
+	}
+
+	@Override
+	public FileCriteria lessThan(Object expression) {
+		return new SimpleOperator(this, "<", expression);
+	}
+
+	@Override
+	public FileCriteria lessThanEquals(Object expression) {
+		return new SimpleOperator(this, "<=", expression);
+	}
+
+	@Override
+	public FileCriteria greaterThan(Object expression) {
+		return new SimpleOperator(this, ">", expression);
+	}
+
+	@Override
+	public FileCriteria greaterThanEquals(Object expression) {
+		return new SimpleOperator(this, ">=", expression);
+	}
+
+	@Override
+	public FileCriteria is(Object expression) {
+		return new SimpleOperator(this, "=", expression);
+	}
+
+	@Override
+	public FileCriteria isNot(Object expression) {
+		return new SimpleOperator(this, "!=", expression);
+	}
+
+	@Override
+	public Criteria in(Object expression) {
+		return new CollectionOperator(this, true, expression);
+	}
+
+	@Override
+	public Criteria notIn(Object expression) {
+		return new CollectionOperator(this, false, expression);
+	}
+
+	/**
+	 * 从记录中取出 属性值
+	 *
+	 * @param record The record to read the property from
+	 * @return the value of the property
+	 */
+	@SuppressWarnings("rawtypes")
+	public Comparable valueOf(EventRecord record) {
+		switch (propertyName) {
+			case "eventIdentifier":
+				return record.getEventIdentifier();
+			case "type":
+				return record.getType();
+			case "aggregateIdentifier":
+				return record.getAggregateIdentifierValue();
+			case "sequenceNumber":
+				return record.getSequenceNumber();
+			case "timeStamp":
+				return record.getTimestamp();
+			case "payloadType":
+				return record.getPayloadType();
+			case "payloadRevision":
+				return record.getPayloadRevision();
+			default:
+				throw new IllegalArgumentException("Unknown property: " + propertyName);
+		}
+	}
+
+	/**
+	 * 将 条件中的值 转换为 可以和属性值比较的类型
+	 *
+	 * @param actual   The value of the property
+	 * @param expected The value given in the criteria
+	 * @return the expected value, converted to the type of the actual value
+	 */
+	static Object convert(Object actual, Object expected) {
+		if (actual instanceof Long && expected instanceof Number) {
+			return ((Number) expected).longValue();
+		}
+		if (actual instanceof DateTime && !(expected instanceof DateTime)) {
+			return new DateTime(expected);
+		}
+		if (actual instanceof String && !(expected instanceof String)) {
+			return expected.toString();
+		}
+		return expected;
+	}
+}
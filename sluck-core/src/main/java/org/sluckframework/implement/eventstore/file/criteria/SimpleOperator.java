@@ -0,0 +1,52 @@
+package org.sluckframework.implement.eventstore.file.criteria;
+
+import org.sluckframework.implement.eventstore.file.EventRecord;
+
+/**
+ * 比较操作 (=, !=, <, <=, >, >=) 的 FileCriteria 实现
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class SimpleOperator extends FileCriteria {
+
+	private final FileProperty property;
+	private final String operator;
+	private final Object expression;
+
+	public SimpleOperator(FileProperty property, String operator, Object expression) {
+		this.property = property;
+		this.operator = operator;
+		this.expression = expression;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public boolean matches(EventRecord record) {
+		Comparable actual = property.valueOf(record);
+		Object expected = expression instanceof FileProperty
+				? ((FileProperty) expression).valueOf(record) : expression;
+		if (actual == null || expected == null) {
+			boolean equal = actual == expected;
+			return "=".equals(operator) ? equal : "!=".equals(operator) && !equal;
+		}
+		int comparison = actual.compareTo(FileProperty.convert(actual, expected));
+		switch (operator) {
+			case "=":
+				return comparison == 0;
+			case "!=":
+				return comparison != 0;
+			case "<":
+				return comparison < 0;
+			case "<=":
+				return comparison <= 0;
+			case ">":
+				return comparison > 0;
+			case ">=":
+				return comparison >= 0;
+			default:
+				throw new IllegalArgumentException("Unsupported operator: " + operator);
+		}
+	}
+
+}
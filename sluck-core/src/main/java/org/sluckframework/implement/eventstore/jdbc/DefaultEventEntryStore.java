@@ -7,12 +7,17 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.joda.time.DateTime;
 import org.sluckframework.common.jdbc.ConnectionProvider;
 import org.sluckframework.common.jdbc.DataSourceConnectionProvider;
 import org.sluckframework.common.jdbc.UnitOfWorkAwareConnectionProviderWrapper;
@@ -34,6 +39,8 @@ import static org.sluckframework.common.jdbc.JdbcUtils.closeQuietly;
  */
 public class DefaultEventEntryStore<T> implements EventEntryStore<T> {
 
+    private static final int MAX_IDENTIFIERS_PER_QUERY = 500;
+
     private final ConnectionProvider connectionProvider;
 
     private final EventSqlSchema<T> sqlSchema;
@@ -78,7 +85,7 @@ public class DefaultEventEntryStore<T> implements EventEntryStore<T> {
             preparedStatement = sqlSchema.sql_loadLastSnapshot(connection, identifier, aggregateType);
             result = preparedStatement.executeQuery();
             if (result.next()) {
-                return sqlSchema.createSerializedDomainEventData(result);
+                return sqlSchema.createSerializedSnapshotEventData(result);
             }
             return null;
         } catch (SQLException e) {
@@ -91,6 +98,99 @@ public class DefaultEventEntryStore<T> implements EventEntryStore<T> {
         }
     }
 
+    @Override
+    public Map<String, SerializedAggregateEventData<T>> loadLastSnapshotEvents(
+            String aggregateType, Collection<? extends Identifier<?>> identifiers) {
+        Map<String, SerializedAggregateEventData<T>> snapshots = new HashMap<String, SerializedAggregateEventData<T>>();
+        if (identifiers.isEmpty()) {
+            return snapshots;
+        }
+        ResultSet result = null;
+        PreparedStatement preparedStatement = null;
+        Connection connection = null;
+        try {
+            connection = connectionProvider.getConnection();
+            // keep the number of bind parameters per statement within the limits of common databases
+            List<Identifier<?>> chunk = new ArrayList<Identifier<?>>(MAX_IDENTIFIERS_PER_QUERY);
+            Iterator<? extends Identifier<?>> iterator = identifiers.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == MAX_IDENTIFIERS_PER_QUERY || !iterator.hasNext()) {
+                    preparedStatement = sqlSchema.sql_loadLastSnapshots(connection, aggregateType, chunk);
+                    result = preparedStatement.executeQuery();
+                    while (result.next()) {
+                        SerializedAggregateEventData<T> snapshot = sqlSchema.createSerializedSnapshotEventData(result);
+                        snapshots.put(snapshot.getAggregateIdentifier().toString(), snapshot);
+                    }
+                    closeQuietly(result);
+                    closeQuietly(preparedStatement);
+                    result = null;
+                    preparedStatement = null;
+                    chunk.clear();
+                }
+            }
+            return snapshots;
+        } catch (SQLException e) {
+            throw new EventStoreException("Exception while attempting to load the last snapshot events of "
+                                                  + identifiers.size() + " aggregates of type " + aggregateType, e);
+        } finally {
+            closeQuietly(result);
+            closeQuietly(preparedStatement);
+            closeQuietly(connection);
+        }
+    }
+
+    @Override
+    public Map<String, List<SerializedAggregateEventData<T>>> fetchAggregateStreams(
+            String aggregateType, Map<? extends Identifier<?>, Long> firstSequenceNumbers) {
+        Map<String, List<SerializedAggregateEventData<T>>> streams =
+                new HashMap<String, List<SerializedAggregateEventData<T>>>();
+        if (firstSequenceNumbers.isEmpty()) {
+            return streams;
+        }
+        ResultSet result = null;
+        PreparedStatement preparedStatement = null;
+        Connection connection = null;
+        try {
+            connection = connectionProvider.getConnection();
+            Map<Identifier<?>, Long> chunk = new LinkedHashMap<Identifier<?>, Long>();
+            Iterator<? extends Map.Entry<? extends Identifier<?>, Long>> iterator =
+                    firstSequenceNumbers.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<? extends Identifier<?>, Long> entry = iterator.next();
+                chunk.put(entry.getKey(), entry.getValue());
+                if (chunk.size() == MAX_IDENTIFIERS_PER_QUERY || !iterator.hasNext()) {
+                    preparedStatement = sqlSchema.sql_fetchFromSequenceNumbers(connection, aggregateType, chunk);
+                    result = preparedStatement.executeQuery();
+                    while (result.next()) {
+                        SerializedAggregateEventData<T> event = sqlSchema.createSerializedDomainEventData(result);
+                        String identifier = event.getAggregateIdentifier().toString();
+                        List<SerializedAggregateEventData<T>> stream = streams.get(identifier);
+                        if (stream == null) {
+                            stream = new ArrayList<SerializedAggregateEventData<T>>();
+                            streams.put(identifier, stream);
+                        }
+                        stream.add(event);
+                    }
+                    closeQuietly(result);
+                    closeQuietly(preparedStatement);
+                    result = null;
+                    preparedStatement = null;
+                    chunk.clear();
+                }
+            }
+            return streams;
+        } catch (SQLException e) {
+            throw new EventStoreException("Exception while attempting to read the streams of "
+                                                  + firstSequenceNumbers.size() + " aggregates of type "
+                                                  + aggregateType, e);
+        } finally {
+            closeQuietly(result);
+            closeQuietly(preparedStatement);
+            closeQuietly(connection);
+        }
+    }
+
     @Override
     public Iterator<SerializedAggregateEventData<T>> fetchFiltered(String whereClause, List<Object> parameters,
                                                                 int batchSize) {
@@ -162,6 +262,28 @@ public class DefaultEventEntryStore<T> implements EventEntryStore<T> {
     }
 
 
+    @SuppressWarnings("rawtypes")
+	@Override
+    public void persistEvents(String aggregateType, List<? extends AggregateEvent> events,
+                              List<? extends SerializedObject<T>> serializedPayloads) {
+        if (events.isEmpty()) {
+            return;
+        }
+        PreparedStatement preparedStatement = null;
+        Connection connection = null;
+        try {
+            connection = connectionProvider.getConnection();
+            preparedStatement = sqlSchema.sql_insertDomainEventEntries(connection, aggregateType, events,
+                                                                       serializedPayloads);
+            preparedStatement.executeBatch();
+        } catch (SQLException e) {
+            throw new EventStoreException("Exception occurred while attempting to persist a batch of events", e);
+        } finally {
+            closeQuietly(preparedStatement);
+            closeQuietly(connection);
+        }
+    }
+
     @SuppressWarnings("rawtypes")
 	@Override
     public void pruneSnapshots(String type, AggregateEvent mostRecentSnapshotEvent, int maxSnapshotsArchived) {
@@ -248,6 +370,82 @@ public class DefaultEventEntryStore<T> implements EventEntryStore<T> {
         }
     }
 
+    @Override
+    public boolean supportsSingleQuerySnapshotLoad() {
+        return sqlSchema.supportsSingleQuerySnapshotLoad();
+    }
+
+    @Override
+    public Iterator<SerializedAggregateEventData<T>> fetchAggregateStreamFromLastSnapshot(String aggregateType,
+                                                                                    Identifier<?> identifier,
+                                                                                    int fetchSize) {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = connectionProvider.getConnection();
+            statement = sqlSchema.sql_fetchFromLastSnapshot(connection, aggregateType, identifier);
+            statement.setFetchSize(fetchSize);
+            return new ConnectionResourceManagingIterator<T>(
+                    new PreparedStatementIterator<T>(statement, sqlSchema),
+                    connection);
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            closeQuietly(statement);
+            throw new EventStoreException("Exception while attempting to read from the last snapshot of "
+                                                  + aggregateType + "/" + identifier, e);
+        } catch (EventStoreException e) {
+            closeQuietly(connection);
+            closeQuietly(statement);
+            throw e;
+        }
+    }
+
+    @Override
+    public Iterator<SerializedAggregateEventData<T>> fetchAfterGlobalIndex(long lastGlobalIndex, Collection<Long> gaps,
+                                                                     int batchSize) {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = connectionProvider.getConnection();
+            statement = sqlSchema.sql_fetchAfterGlobalIndex(connection, lastGlobalIndex, gaps);
+            statement.setMaxRows(batchSize);
+            statement.setFetchSize(batchSize);
+            return new ConnectionResourceManagingIterator<T>(
+                    new PreparedStatementIterator<T>(statement, sqlSchema),
+                    connection);
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            closeQuietly(statement);
+            throw new EventStoreException("Exception while attempting to read events after global index "
+                                                  + lastGlobalIndex, e);
+        }
+    }
+
+    @Override
+    public Long findFirstGlobalIndexAfter(DateTime timestamp, long sequenceNumber, String aggregateIdentifier) {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = connectionProvider.getConnection();
+            statement = sqlSchema.sql_findFirstGlobalIndexAfter(connection, timestamp, sequenceNumber,
+                                                                aggregateIdentifier);
+            resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                return null;
+            }
+            long globalIndex = resultSet.getLong(1);
+            return resultSet.wasNull() ? null : globalIndex;
+        } catch (SQLException e) {
+            throw new EventStoreException("Exception while attempting to find the global index of the events after "
+                                                  + timestamp, e);
+        } finally {
+            closeQuietly(resultSet);
+            closeQuietly(statement);
+            closeQuietly(connection);
+        }
+    }
+
     private static class ConnectionResourceManagingIterator<T>
             implements Iterator<SerializedAggregateEventData<T>>, Closeable {
 
@@ -514,6 +712,32 @@ public class DefaultEventEntryStore<T> implements EventEntryStore<T> {
             connection = connectionProvider.getConnection();
             executeUpdate(sqlSchema.sql_createDomainEventEntryTable(connection), "create domain event entry table");
             executeUpdate(sqlSchema.sql_createSnapshotEventEntryTable(connection), "create snapshot entry table");
+            for (String aggregateType : sqlSchema.dedicatedAggregateTypes()) {
+                executeUpdate(sqlSchema.sql_createDomainEventEntryTable(connection, aggregateType),
+                              "create domain event entry table of " + aggregateType);
+                executeUpdate(sqlSchema.sql_createSnapshotEventEntryTable(connection, aggregateType),
+                              "create snapshot entry table of " + aggregateType);
+            }
+        } finally {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * 为 之前版本 创建的 事件表(包括 独立存储的聚合类型 的事件表) 添加 globalIndex 列，
+     * 完成后 应在 SchemaConfiguration 中 开启 globalIndex
+     *
+     * @throws SQLException when an error occurs executing SQL statements
+     */
+    public void addGlobalIndexColumn() throws SQLException {
+        Connection connection = null;
+        try {
+            connection = connectionProvider.getConnection();
+            executeUpdate(sqlSchema.sql_addGlobalIndexColumn(connection), "add the global index column");
+            for (String aggregateType : sqlSchema.dedicatedAggregateTypes()) {
+                executeUpdate(sqlSchema.sql_addGlobalIndexColumn(connection, aggregateType),
+                              "add the global index column of " + aggregateType);
+            }
         } finally {
             closeQuietly(connection);
         }
@@ -1,10 +1,16 @@
 package org.sluckframework.implement.eventstore.jdbc;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import org.joda.time.DateTime;
 import org.sluckframework.common.serializer.SerializedAggregateEventData;
 import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.common.util.IOUtils;
 import org.sluckframework.domain.event.aggregate.AggregateEvent;
 import org.sluckframework.domain.identifier.Identifier;
 
@@ -27,6 +33,21 @@ public interface EventEntryStore<T> {
      */
 	void persistEvent(String aggregateType, AggregateEvent event, SerializedObject<T> serializedPayload);
 
+    /**
+     * 批量持久化 已序列化的事件到存储，实现应在一次数据库交互中写入所有事件，
+     * 默认 逐个调用 {@link #persistEvent(String, AggregateEvent, SerializedObject)}
+     *
+     * @param aggregateType      The type identifier of the aggregate that generated the events
+     * @param events             The actual event instances
+     * @param serializedPayloads The serialized payloads of the events, in the same order as the events
+     */
+    default void persistEvents(String aggregateType, List<? extends AggregateEvent> events,
+                               List<? extends SerializedObject<T>> serializedPayloads) {
+        for (int i = 0; i < events.size(); i++) {
+            persistEvent(aggregateType, events.get(i), serializedPayloads.get(i));
+        }
+    }
+
     /**
      * 加载最近的快照事件
      *
@@ -36,6 +57,82 @@ public interface EventEntryStore<T> {
      */
 	SerializedAggregateEventData<T> loadLastSnapshotEvent(String aggregateType, Identifier<?> identifier);
 
+    /**
+     * 返回 是否支持 {@link #fetchAggregateStreamFromLastSnapshot(String, Identifier, int)}，
+     * 不支持时 调用者 分别读取 快照 和 事件，默认不支持
+     *
+     * @return <code>true</code> if the last snapshot and the events after it can be read in a single round trip
+     */
+    default boolean supportsSingleQuerySnapshotLoad() {
+        return false;
+    }
+
+    /**
+     * 在一次数据库交互中 读取聚合 最近的快照 和 快照之后的事件，快照(如果存在) 为第一个元素，且全局序号为 <code>null</code>。
+     * 只在 {@link #supportsSingleQuerySnapshotLoad()} 返回 <code>true</code> 时调用，默认抛出 UnsupportedOperationException
+     *
+     * @param aggregateType The type identifier of the aggregate
+     * @param identifier    The identifier of the aggregate
+     * @param batchSize     The number of entries to fetch per round trip of the result set
+     * @return the serialized last snapshot followed by the serialized events after it
+     */
+    default Iterator<? extends SerializedAggregateEventData<T>> fetchAggregateStreamFromLastSnapshot(
+            String aggregateType, Identifier<?> identifier, int batchSize) {
+        throw new UnsupportedOperationException(
+                getClass().getName() + " does not support loading the last snapshot in a single query");
+    }
+
+    /**
+     * 在一次数据库交互中 加载多个聚合 最近的快照事件，
+     * 默认 逐个调用 {@link #loadLastSnapshotEvent(String, Identifier)}
+     *
+     * @param aggregateType The type of the aggregates
+     * @param identifiers   The identifiers of the aggregates to load the snapshots for
+     * @return the serialized last snapshot event by aggregate identifier value; aggregates without snapshot are absent
+     */
+    default Map<String, SerializedAggregateEventData<T>> loadLastSnapshotEvents(
+            String aggregateType, Collection<? extends Identifier<?>> identifiers) {
+        Map<String, SerializedAggregateEventData<T>> snapshots = new HashMap<String, SerializedAggregateEventData<T>>();
+        for (Identifier<?> identifier : identifiers) {
+            SerializedAggregateEventData<T> snapshot = loadLastSnapshotEvent(aggregateType, identifier);
+            if (snapshot != null) {
+                snapshots.put(identifier.toString(), snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * 在一次数据库交互中 读取多个聚合 从各自的起始序号开始的全部事件，
+     * 默认 逐个调用 {@link #fetchAggregateStream(String, Identifier, long, int)}
+     *
+     * @param aggregateType        The type identifier of the aggregates
+     * @param firstSequenceNumbers The first sequence number to read for each aggregate
+     * @return the serialized events in sequence order by aggregate identifier value; aggregates without events are
+     * absent
+     */
+    default Map<String, List<SerializedAggregateEventData<T>>> fetchAggregateStreams(
+            String aggregateType, Map<? extends Identifier<?>, Long> firstSequenceNumbers) {
+        Map<String, List<SerializedAggregateEventData<T>>> streams =
+                new HashMap<String, List<SerializedAggregateEventData<T>>>();
+        for (Map.Entry<? extends Identifier<?>, Long> entry : firstSequenceNumbers.entrySet()) {
+            Iterator<? extends SerializedAggregateEventData<T>> events =
+                    fetchAggregateStream(aggregateType, entry.getKey(), entry.getValue(), 100);
+            try {
+                List<SerializedAggregateEventData<T>> stream = new ArrayList<SerializedAggregateEventData<T>>();
+                while (events.hasNext()) {
+                    stream.add(events.next());
+                }
+                if (!stream.isEmpty()) {
+                    streams.put(entry.getKey().toString(), stream);
+                }
+            } finally {
+                IOUtils.closeQuietlyIfCloseable(events);
+            }
+        }
+        return streams;
+    }
+
     /**
      * 获取指定聚合的聚合事件集合，根据 sequenceNumber 和 batchSize获取对应的聚合事件
      *
@@ -59,6 +156,34 @@ public interface EventEntryStore<T> {
     Iterator<? extends SerializedAggregateEventData<T>> fetchFiltered(String whereClause, List<Object> parameters,
                                                                    int batchSize);
 
+    /**
+     * 按 全局序号 升序 获取 序号大于 lastGlobalIndex 或 位于 gaps 中的 序列化聚合事件，最多 batchSize 个。
+     * 默认 不支持 全局序号，抛出 UnsupportedOperationException
+     *
+     * @param lastGlobalIndex The global index after which to read events
+     * @param gaps            Global indices below lastGlobalIndex to read as well, may be empty
+     * @param batchSize       The maximum number of events to return
+     * @return the serialized events in global index order
+     */
+    default Iterator<? extends SerializedAggregateEventData<T>> fetchAfterGlobalIndex(long lastGlobalIndex,
+                                                                                   Collection<Long> gaps,
+                                                                                   int batchSize) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support reading by global index");
+    }
+
+    /**
+     * 返回 按 (timeStamp, sequenceNumber, aggregateIdentifier) 排序时 位于给定位置之后的事件中 最小的全局序号，
+     * 用于 转换 之前版本的 跟踪令牌。默认 不支持 全局序号，抛出 UnsupportedOperationException
+     *
+     * @param timestamp           The timestamp of the last processed event
+     * @param sequenceNumber      The sequence number of the last processed event
+     * @param aggregateIdentifier The aggregate identifier of the last processed event
+     * @return the lowest global index after the given position, or <code>null</code> if there are no such events
+     */
+    default Long findFirstGlobalIndexAfter(DateTime timestamp, long sequenceNumber, String aggregateIdentifier) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support reading by global index");
+    }
+
     /**
      * 移除旧的快照事件，根据 maxSnapshotsArchived Number决定 保留多个 快照事件在移除后
      *
@@ -4,9 +4,15 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.joda.time.DateTime;
 import org.sluckframework.common.serializer.SerializedAggregateEventData;
+import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.domain.event.aggregate.AggregateEvent;
 
 /**
  * 事件存储 的 sql 执行
@@ -29,6 +35,19 @@ public interface EventSqlSchema<T> {
     PreparedStatement sql_loadLastSnapshot(Connection connection, Object identifier, String aggregateType)
             throws SQLException;
 
+    /**
+     * 在一次查询中 加载多个聚合 最近的快照事件，结果按 aggregateIdentifier 排序，每个聚合 只返回 序号最大的快照，
+     * 结果可以通过 {@link #createSerializedSnapshotEventData(ResultSet)} 读取
+     *
+     * @param connection    The connection to create the statement for
+     * @param aggregateType The type identifier of the aggregates
+     * @param identifiers   The identifiers of the aggregates to load the snapshots for, may not be empty
+     * @return a statement that selects the last snapshot of each of the given aggregates
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_loadLastSnapshots(Connection connection, String aggregateType, Collection<?> identifiers)
+            throws SQLException;
+
     /**
      * 插入领域事件实体
      * 
@@ -39,6 +58,22 @@ public interface EventSqlSchema<T> {
                                                  T eventPayload,
                                                  String aggregateType) throws SQLException;
 
+    /**
+     * 批量插入领域事件实体，返回的 statement 已包含所有事件的 batch，由调用者 executeBatch 执行
+     *
+     * @param connection         The connection to create the statement for
+     * @param aggregateType      The type identifier of the aggregate the events belong to
+     * @param events             The events to insert
+     * @param serializedPayloads The serialized payloads of the events, in the same order as the events
+     * @return a prepared statement that inserts all given entries when its batch is executed
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    @SuppressWarnings("rawtypes")
+    PreparedStatement sql_insertDomainEventEntries(Connection connection, String aggregateType,
+                                                   List<? extends AggregateEvent> events,
+                                                   List<? extends SerializedObject<T>> serializedPayloads)
+            throws SQLException;
+
     /**
      * 插入 快照事件实体
      * 
@@ -97,9 +132,76 @@ public interface EventSqlSchema<T> {
     PreparedStatement sql_fetchFromSequenceNumber(Connection connection, String type, Object aggregateIdentifier,
                                                   long firstSequenceNumber) throws SQLException;
 
+    /**
+     * 在一次查询中 读取多个聚合 从各自的起始序号开始的事件，结果按 aggregateIdentifier, sequenceNumber 升序，
+     * 结果可以通过 {@link #createSerializedDomainEventData(ResultSet)} 读取
+     *
+     * @param connection           The connection to create the statement for
+     * @param type                 The type identifier of the aggregates
+     * @param firstSequenceNumbers The first sequence number to read for each aggregate identifier, may not be empty
+     * @return a statement that selects the event tails of the given aggregates
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_fetchFromSequenceNumbers(Connection connection, String type,
+                                                   Map<?, Long> firstSequenceNumbers) throws SQLException;
+
+    /**
+     * 返回 数据库 是否支持 {@link #sql_fetchFromLastSnapshot(Connection, String, Object)} 的查询，
+     * 不支持时 快照 和 事件 分别查询
+     *
+     * @return <code>true</code> if the last snapshot and the events after it can be read in a single query
+     */
+    boolean supportsSingleQuerySnapshotLoad();
+
+    /**
+     * 在一次查询中 读取聚合 最近的快照 和 快照之后的领域事件(union all)，按 sequenceNumber 升序，快照 总是第一行。
+     * 结果可以通过 {@link #createSerializedDomainEventData(ResultSet)} 读取，快照行 的全局序号为 <code>null</code>
+     *
+     * @param connection          The connection to create the statement for
+     * @param type                The type identifier of the aggregate
+     * @param aggregateIdentifier The identifier of the aggregate
+     * @return a statement that selects the last snapshot followed by the events after it
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_fetchFromLastSnapshot(Connection connection, String type, Object aggregateIdentifier)
+            throws SQLException;
+
     PreparedStatement sql_getFetchAll(Connection connection, String whereClause, Object[] parameters)
             throws SQLException;
 
+    /**
+     * 按 全局序号 升序 读取 序号大于 lastGlobalIndex 或 位于 gaps 中的 领域事件，结果可以通过
+     * {@link #createSerializedDomainEventData(ResultSet)} 读取。
+     * 事件表 没有 globalIndex 列，或 全局序号 在所有事件表中 不唯一时(见 {@link SchemaConfiguration#isGlobalIndexUnique()})
+     * 抛出 配置异常
+     *
+     * @param connection      The connection to create the statement for
+     * @param lastGlobalIndex The global index after which to read events
+     * @param gaps            Global indices below lastGlobalIndex to read as well, may be empty
+     * @return a statement that selects the events in global index order
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_fetchAfterGlobalIndex(Connection connection, long lastGlobalIndex, Collection<Long> gaps)
+            throws SQLException;
+
+    /**
+     * 查询 按 (timeStamp, sequenceNumber, aggregateIdentifier) 排序时 位于给定位置之后的事件中 最小的全局序号，
+     * 用于 转换 之前版本的 跟踪令牌，结果 只有一行一列，没有事件时 为 <code>null</code>。
+     * 默认 不支持，抛出 UnsupportedOperationException
+     *
+     * @param connection          The connection to create the statement for
+     * @param timestamp           The timestamp of the last processed event
+     * @param sequenceNumber      The sequence number of the last processed event
+     * @param aggregateIdentifier The aggregate identifier of the last processed event
+     * @return a statement that selects the lowest global index of the events after the given position
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    default PreparedStatement sql_findFirstGlobalIndexAfter(Connection connection, DateTime timestamp,
+                                                           long sequenceNumber, String aggregateIdentifier)
+            throws SQLException {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support reading by global index");
+    }
+
     /**
      * 见 快照事件表
      * 
@@ -118,6 +220,59 @@ public interface EventSqlSchema<T> {
      */
     PreparedStatement sql_createDomainEventEntryTable(Connection connection) throws SQLException;
 
+    /**
+     * 创建 独立存储的聚合类型 的快照表
+     *
+     * @param connection    The connection to create the statement for
+     * @param aggregateType The aggregate type, as returned by {@link #dedicatedAggregateTypes()}
+     * @return a statement that creates the snapshot table of the aggregate type
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_createSnapshotEventEntryTable(Connection connection, String aggregateType)
+            throws SQLException;
+
+    /**
+     * 创建 独立存储的聚合类型 的事件表
+     *
+     * @param connection    The connection to create the statement for
+     * @param aggregateType The aggregate type, as returned by {@link #dedicatedAggregateTypes()}
+     * @return a statement that creates the domain event table of the aggregate type
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    PreparedStatement sql_createDomainEventEntryTable(Connection connection, String aggregateType)
+            throws SQLException;
+
+    /**
+     * 为 之前版本 创建的 事件表 添加 globalIndex 列，默认 不支持，抛出 UnsupportedOperationException
+     *
+     * @param connection The connection to create the statement for
+     * @return a statement that adds the globalIndex column to the default event table
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    default PreparedStatement sql_addGlobalIndexColumn(Connection connection) throws SQLException {
+        throw new UnsupportedOperationException(getClass().getName() + " does not provide the globalIndex migration");
+    }
+
+    /**
+     * 为 独立存储的聚合类型 的事件表 添加 globalIndex 列，默认 不支持，抛出 UnsupportedOperationException
+     *
+     * @param connection    The connection to create the statement for
+     * @param aggregateType The aggregate type, as returned by {@link #dedicatedAggregateTypes()}
+     * @return a statement that adds the globalIndex column to the event table of the aggregate type
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    default PreparedStatement sql_addGlobalIndexColumn(Connection connection, String aggregateType)
+            throws SQLException {
+        throw new UnsupportedOperationException(getClass().getName() + " does not provide the globalIndex migration");
+    }
+
+    /**
+     * 返回 使用独立表存储的 聚合类型
+     *
+     * @return the aggregate types that have their own tables
+     */
+    Set<String> dedicatedAggregateTypes();
+
     /**
      * 根据 sql 结果  create 序列化的 聚合事件信息
      * 
@@ -127,6 +282,15 @@ public interface EventSqlSchema<T> {
      */
     SerializedAggregateEventData<T> createSerializedDomainEventData(ResultSet resultSet) throws SQLException;
 
+    /**
+     * 根据 快照查询的结果 create 序列化的 快照事件信息，快照没有全局序号
+     *
+     * @param resultSet The result set positioned at a snapshot entry
+     * @return the serialized snapshot event
+     * @throws SQLException when an error occurs reading the result set
+     */
+    SerializedAggregateEventData<T> createSerializedSnapshotEventData(ResultSet resultSet) throws SQLException;
+
     /**
      * 将 date time 转换 为 数据库可识别的 对象
      * 
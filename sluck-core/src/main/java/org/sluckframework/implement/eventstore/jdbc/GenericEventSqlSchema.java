@@ -3,14 +3,28 @@ package org.sluckframework.implement.eventstore.jdbc;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
+import org.sluckframework.common.exception.SluckConfigurationException;
+import org.sluckframework.common.jdbc.PreparedStatementCache;
 import org.sluckframework.common.serializer.SerializedAggregateEventData;
+import org.sluckframework.common.serializer.SerializedObject;
 import org.sluckframework.common.serializer.SimpleSerializedAggregateEventData;
+import org.sluckframework.common.serializer.SerializedType;
+import org.sluckframework.common.serializer.SimpleSerializedObject;
+import org.sluckframework.common.serializer.SimpleSerializedType;
+import org.sluckframework.domain.event.aggregate.AggregateEvent;
 import org.sluckframework.domain.identifier.DefaultIdentifier;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.sluckframework.common.jdbc.JdbcUtils.closeQuietly;
 
 /**
  * 通用的 sqlSchema 实现
@@ -32,6 +46,18 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
 
     protected SchemaConfiguration schemaConfiguration;
 
+    private PreparedStatementCache statementCache;
+
+    private JdbcPayloadTypeDictionary payloadTypeDictionary;
+
+    private final String domainEventFields;
+    private final TableSql defaultTableSql;
+    private final Map<String, TableSql> aggregateTypeTableSql = new HashMap<String, TableSql>();
+    private final Map<String, String> insertSqlByTable = new HashMap<String, String>();
+    private final String fetchAllPrefixSql;
+    private final String fetchAfterGlobalIndexSql;
+    private final String findFirstGlobalIndexAfterSql;
+
     /**
      * 使用默认的 GenericEventSqlSchema  初始化
      */
@@ -58,6 +84,43 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
     public GenericEventSqlSchema(Class<T> dataType, SchemaConfiguration schemaConfiguration) {
         this.dataType = dataType;
         this.schemaConfiguration = schemaConfiguration;
+        this.domainEventFields = schemaConfiguration.hasGlobalIndex() ? STD_FIELDS + ", globalIndex" : STD_FIELDS;
+        this.defaultTableSql = new TableSql(schemaConfiguration.domainEventEntryTable(),
+                                            schemaConfiguration.snapshotEntryTable());
+        for (String aggregateType : schemaConfiguration.dedicatedAggregateTypes()) {
+            aggregateTypeTableSql.put(aggregateType,
+                                      new TableSql(schemaConfiguration.domainEventEntryTable(aggregateType),
+                                                   schemaConfiguration.snapshotEntryTable(aggregateType)));
+        }
+        String domainEventSource = domainEventSource(schemaConfiguration, domainEventFields + ", type");
+        this.fetchAllPrefixSql = "select " + domainEventFields + " from " + domainEventSource + " e ";
+        this.fetchAfterGlobalIndexSql = "SELECT " + domainEventFields + " FROM " + domainEventSource + " e"
+                + " WHERE globalIndex > ?";
+        this.findFirstGlobalIndexAfterSql = "SELECT MIN(e.globalIndex) FROM " + domainEventSource + " e"
+                + " WHERE (e.timeStamp > ?)"
+                + " OR (e.timeStamp = ? AND e.sequenceNumber > ?)"
+                + " OR (e.timeStamp = ? AND e.sequenceNumber = ? AND e.aggregateIdentifier > ?)";
+    }
+
+    /**
+     * 返回 跨聚合类型 查询时的 数据源，没有独立表时 为默认事件表，否则为 所有事件表的 union all
+     */
+    private static String domainEventSource(SchemaConfiguration schemaConfiguration, String columns) {
+        if (schemaConfiguration.dedicatedAggregateTypes().isEmpty()) {
+            return schemaConfiguration.domainEventEntryTable();
+        }
+        StringBuilder sb = new StringBuilder("(SELECT ").append(columns)
+                .append(" FROM ").append(schemaConfiguration.domainEventEntryTable());
+        for (String aggregateType : schemaConfiguration.dedicatedAggregateTypes()) {
+            sb.append(" UNION ALL SELECT ").append(columns)
+              .append(" FROM ").append(schemaConfiguration.domainEventEntryTable(aggregateType));
+        }
+        return sb.append(")").toString();
+    }
+
+    private TableSql tableSql(String aggregateType) {
+        TableSql tableSql = aggregateTypeTableSql.get(aggregateType);
+        return tableSql == null ? defaultTableSql : tableSql;
     }
 
 
@@ -70,24 +133,77 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
         this.forceUtc = forceUtc;
     }
 
+    /**
+     * 设置 statement 缓存，设置后 工作单元 中 同一连接上相同 sql 的 statement 会被复用，默认不缓存
+     *
+     * @param statementCache the cache to obtain statements from, or <code>null</code> to disable caching
+     */
+    public void setStatementCache(PreparedStatementCache statementCache) {
+        this.statementCache = statementCache;
+    }
+
+    /**
+     * 设置 payload 类型字典，设置后 payloadType 列 只保存 字典中的编号，payloadRevision 列 为空，
+     * 读取时 同时支持 编号 和 设置字典前 写入的完整类名，默认不使用字典
+     *
+     * @param payloadTypeDictionary the dictionary interning payload types, or <code>null</code> to store full names
+     */
+    public void setPayloadTypeDictionary(JdbcPayloadTypeDictionary payloadTypeDictionary) {
+        this.payloadTypeDictionary = payloadTypeDictionary;
+    }
+
+    /**
+     * 创建 statement，设置了 statementCache 时从缓存中获取
+     *
+     * @param connection The connection to create the statement for
+     * @param sql        The sql of the statement
+     * @return the prepared statement
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    protected PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        if (statementCache == null) {
+            return connection.prepareStatement(sql); // NOSONAR
+        }
+        return statementCache.prepare(connection, sql);
+    }
+
     @Override
     public PreparedStatement sql_loadLastSnapshot(Connection connection, Object identifier, String aggregateType)
             throws SQLException {
-        final String s = "SELECT " + STD_FIELDS + " FROM " + schemaConfiguration.snapshotEntryTable()
-                + " WHERE aggregateIdentifier = ? AND type = ? ORDER BY sequenceNumber DESC";
-        PreparedStatement statement = connection.prepareStatement(s);
+        PreparedStatement statement = prepareStatement(connection, tableSql(aggregateType).loadLastSnapshot);
         statement.setString(1, identifier.toString());
         statement.setString(2, aggregateType);
         return statement;
     }
 
+    @Override
+    public PreparedStatement sql_loadLastSnapshots(Connection connection, String aggregateType,
+                                                   Collection<?> identifiers) throws SQLException {
+        TableSql tableSql = tableSql(aggregateType);
+        StringBuilder sb = new StringBuilder("SELECT ").append(STD_FIELDS).append(" FROM ")
+                .append(tableSql.snapshotTable).append(" s WHERE s.type = ? AND s.aggregateIdentifier IN (");
+        for (int i = 0; i < identifiers.size(); i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        sb.append(") AND s.sequenceNumber = (SELECT MAX(m.sequenceNumber) FROM ").append(tableSql.snapshotTable)
+          .append(" m WHERE m.type = s.type AND m.aggregateIdentifier = s.aggregateIdentifier)")
+          .append(" ORDER BY s.aggregateIdentifier ASC");
+        PreparedStatement statement = prepareStatement(connection, sb.toString());
+        int index = 1;
+        statement.setString(index++, aggregateType);
+        for (Object identifier : identifiers) {
+            statement.setString(index++, identifier.toString());
+        }
+        return statement;
+    }
+
     @Override
     public PreparedStatement sql_insertDomainEventEntry(Connection conn, String eventIdentifier,
                                                         String aggregateIdentifier, long sequenceNumber,
                                                         DateTime timestamp, String eventType, String eventRevision,
                                                         T eventPayload, String aggregateType)
             throws SQLException {
-        return doInsertEventEntry(schemaConfiguration.domainEventEntryTable(),
+        return doInsertEventEntry(tableSql(aggregateType).domainEventTable,
                 conn, eventIdentifier, aggregateIdentifier, sequenceNumber, timestamp,
                 eventType, eventRevision, eventPayload,
                 aggregateType);
@@ -99,7 +215,7 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
                                                           DateTime timestamp, String eventType, String eventRevision,
                                                           T eventPayload, 
                                                           String aggregateType) throws SQLException {
-        return doInsertEventEntry(schemaConfiguration.snapshotEntryTable(),
+        return doInsertEventEntry(tableSql(aggregateType).snapshotTable,
                 conn, eventIdentifier, aggregateIdentifier, sequenceNumber, timestamp,
                 eventType, eventRevision, eventPayload,
                 aggregateType);
@@ -127,28 +243,95 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
                                                    String eventRevision,
                                                    T eventPayload, String aggregateType)
             throws SQLException {
-        final String sql = "INSERT INTO " + tableName
+        PreparedStatement preparedStatement = prepareStatement(connection, insertSql(tableName));
+        bindEventEntry(preparedStatement, eventIdentifier, aggregateIdentifier, sequenceNumber, timestamp,
+                       eventType, eventRevision, eventPayload, aggregateType);
+        return preparedStatement;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public PreparedStatement sql_insertDomainEventEntries(Connection connection, String aggregateType,
+                                                          List<? extends AggregateEvent> events,
+                                                          List<? extends SerializedObject<T>> serializedPayloads)
+            throws SQLException {
+        PreparedStatement preparedStatement = prepareStatement(connection, tableSql(aggregateType).insertDomainEventEntry);
+        try {
+            for (int i = 0; i < events.size(); i++) {
+                AggregateEvent event = events.get(i);
+                SerializedObject<T> serializedPayload = serializedPayloads.get(i);
+                bindEventEntry(preparedStatement,
+                               event.getIdentifier().toString(),
+                               event.getAggregateIdentifier().getIdentifier().toString(),
+                               event.getSequenceNumber(),
+                               event.occurredOn(),
+                               serializedPayload.getType().getName(),
+                               serializedPayload.getType().getRevision(),
+                               serializedPayload.getData(),
+                               aggregateType);
+                preparedStatement.addBatch();
+            }
+        } catch (SQLException e) {
+            closeQuietly(preparedStatement);
+            throw e;
+        }
+        return preparedStatement;
+    }
+
+    private String insertSql(String tableName) {
+        String sql = insertSqlByTable.get(tableName);
+        return sql == null ? insertEventEntrySql(tableName) : sql;
+    }
+
+    /**
+     * 生成插入事件实体的 sql 语句
+     *
+     * @param tableName The name of the table to insert the entry into
+     * @return the insert statement sql
+     */
+    protected String insertEventEntrySql(String tableName) {
+        return "INSERT INTO " + tableName
                 + " (eventIdentifier, type, aggregateIdentifier, sequenceNumber, timeStamp, payloadType, "
                 + "payloadRevision, payload) VALUES (?,?,?,?,?,?,?,?)";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql); // NOSONAR
+    }
+
+    /**
+     * 将事件实体的字段 设置到 insert statement 中
+     *
+     * @param preparedStatement   The statement created with the sql of {@link #insertEventEntrySql(String)}
+     * @param eventIdentifier     The unique identifier of the event
+     * @param aggregateIdentifier The identifier of the aggregate that generated the event
+     * @param sequenceNumber      The sequence number of the event
+     * @param timestamp           The time at which the Event Message was generated
+     * @param eventType           The type identifier of the serialized event
+     * @param eventRevision       The revision of the serialized event
+     * @param eventPayload        The serialized payload of the Event
+     * @param aggregateType       The type identifier of the aggregate the event belongs to
+     * @throws SQLException when an exception occurs setting the parameters
+     */
+    protected void bindEventEntry(PreparedStatement preparedStatement, String eventIdentifier,
+                                  String aggregateIdentifier, long sequenceNumber, DateTime timestamp,
+                                  String eventType, String eventRevision, T eventPayload, String aggregateType)
+            throws SQLException {
         preparedStatement.setString(1, eventIdentifier);
         preparedStatement.setString(2, aggregateType);
         preparedStatement.setString(3, aggregateIdentifier);
         preparedStatement.setLong(4, sequenceNumber);
         preparedStatement.setString(5, sql_dateTime(timestamp));
-        preparedStatement.setString(6, eventType);
-        preparedStatement.setString(7, eventRevision);
+        if (payloadTypeDictionary == null) {
+            preparedStatement.setString(6, eventType);
+            preparedStatement.setString(7, eventRevision);
+        } else {
+            preparedStatement.setString(6, payloadTypeDictionary.referenceOf(eventType, eventRevision));
+            preparedStatement.setString(7, null);
+        }
         preparedStatement.setObject(8, eventPayload);
-        return preparedStatement;
     }
 
     @Override
     public PreparedStatement sql_pruneSnapshots(Connection connection, String type, Object aggregateIdentifier,
                                                 long sequenceOfFirstSnapshotToPrune) throws SQLException {
-        PreparedStatement preparedStatement = connection.prepareStatement("DELETE FROM " + schemaConfiguration.snapshotEntryTable()
-                + " WHERE type = ?"
-                + " AND aggregateIdentifier = ?"
-                + " AND sequenceNumber <= ?");
+        PreparedStatement preparedStatement = prepareStatement(connection, tableSql(type).pruneSnapshots);
         preparedStatement.setString(1, type);
         preparedStatement.setString(2, aggregateIdentifier.toString());
         preparedStatement.setLong(3, sequenceOfFirstSnapshotToPrune);
@@ -158,10 +341,7 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
     @Override
     public PreparedStatement sql_findSnapshotSequenceNumbers(Connection connection, String type,
                                                              Object aggregateIdentifier) throws SQLException {
-        final String sql = "SELECT sequenceNumber FROM " + schemaConfiguration.snapshotEntryTable()
-                + " WHERE type = ? AND aggregateIdentifier = ?"
-                + " ORDER BY sequenceNumber DESC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = prepareStatement(connection, tableSql(type).findSnapshotSequenceNumbers);
         preparedStatement.setString(1, type);
         preparedStatement.setString(2, aggregateIdentifier.toString());
         return preparedStatement;
@@ -170,24 +350,69 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
     @Override
     public PreparedStatement sql_fetchFromSequenceNumber(Connection connection, String type, Object aggregateIdentifier,
                                                          long firstSequenceNumber) throws SQLException {
-        final String sql = "SELECT " + STD_FIELDS + " FROM " + schemaConfiguration.domainEventEntryTable()
-                + " WHERE aggregateIdentifier = ? AND type = ?"
-                + " AND sequenceNumber >= ?"
-                + " ORDER BY sequenceNumber ASC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = prepareStatement(connection, tableSql(type).fetchFromSequenceNumber);
         preparedStatement.setString(1, aggregateIdentifier.toString());
         preparedStatement.setString(2, type);
         preparedStatement.setLong(3, firstSequenceNumber);
         return preparedStatement;
     }
 
+    @Override
+    public PreparedStatement sql_fetchFromSequenceNumbers(Connection connection, String type,
+                                                          Map<?, Long> firstSequenceNumbers) throws SQLException {
+        StringBuilder sb = new StringBuilder("SELECT ").append(domainEventFields).append(" FROM ")
+                .append(tableSql(type).domainEventTable).append(" WHERE type = ? AND (");
+        for (int i = 0; i < firstSequenceNumbers.size(); i++) {
+            sb.append(i == 0 ? "" : " OR ").append("(aggregateIdentifier = ? AND sequenceNumber >= ?)");
+        }
+        sb.append(") ORDER BY aggregateIdentifier ASC, sequenceNumber ASC");
+        PreparedStatement preparedStatement = prepareStatement(connection, sb.toString());
+        int index = 1;
+        preparedStatement.setString(index++, type);
+        for (Map.Entry<?, Long> entry : firstSequenceNumbers.entrySet()) {
+            preparedStatement.setString(index++, entry.getKey().toString());
+            preparedStatement.setLong(index++, entry.getValue());
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * 事件表 有 globalIndex 列 时 支持，{@link #sqlNullGlobalIndex()} 返回 <code>null</code> 时 不支持。
+     * 快照行 通过 globalIndex 为 <code>null</code> 与 事件行 区分
+     */
+    @Override
+    public boolean supportsSingleQuerySnapshotLoad() {
+        return schemaConfiguration.hasGlobalIndex() && sqlNullGlobalIndex() != null;
+    }
+
+    /**
+     * 返回 快照行 的 globalIndex 列 使用的 空值表达式，与 事件表的 globalIndex 列 union all。
+     * 默认为 <code>NULL</code>，MySQL、PostgreSQL、Oracle、H2 可以使用；Derby、HSQLDB 等 要求 类型明确的空值，
+     * 应覆盖为 如 <code>CAST(NULL AS BIGINT)</code>。返回 <code>null</code> 表示 数据库 不支持该查询
+     *
+     * @return the SQL expression of a null global index, or <code>null</code> if the single query is not supported
+     */
+    protected String sqlNullGlobalIndex() {
+        return "NULL";
+    }
+
+    @Override
+    public PreparedStatement sql_fetchFromLastSnapshot(Connection connection, String type,
+                                                       Object aggregateIdentifier) throws SQLException {
+        PreparedStatement preparedStatement = prepareStatement(connection, tableSql(type).fetchFromLastSnapshot());
+        for (int i = 0; i < 4; i++) {
+            preparedStatement.setString(2 * i + 1, aggregateIdentifier.toString());
+            preparedStatement.setString(2 * i + 2, type);
+        }
+        return preparedStatement;
+    }
+
     @Override
     public PreparedStatement sql_getFetchAll(Connection connection, String whereClause,
                                              Object[] params) throws SQLException {
-        final String sql = "select " + STD_FIELDS + " from " + schemaConfiguration.domainEventEntryTable()
-                + " e " + whereClause
+        final String sql = fetchAllPrefixSql + whereClause
                 + " ORDER BY e.timeStamp ASC, e.sequenceNumber ASC, e.aggregateIdentifier ASC ";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = prepareStatement(connection, sql);
         for (int i = 0; i < params.length; i++) {
             Object param = params[i];
             if (param instanceof DateTime) {
@@ -203,6 +428,57 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
         return preparedStatement;
     }
 
+    @Override
+    public PreparedStatement sql_fetchAfterGlobalIndex(Connection connection, long lastGlobalIndex,
+                                                       Collection<Long> gaps) throws SQLException {
+        assertGlobalIndexReadable();
+        String sql = fetchAfterGlobalIndexSql;
+        if (!gaps.isEmpty()) {
+            StringBuilder sb = new StringBuilder(sql).append(" OR globalIndex IN (");
+            for (int i = 0; i < gaps.size(); i++) {
+                sb.append(i == 0 ? "?" : ", ?");
+            }
+            sql = sb.append(")").toString();
+        }
+        PreparedStatement preparedStatement = prepareStatement(connection, sql + " ORDER BY globalIndex ASC");
+        int index = 1;
+        preparedStatement.setLong(index++, lastGlobalIndex);
+        for (Long gap : gaps) {
+            preparedStatement.setLong(index++, gap);
+        }
+        return preparedStatement;
+    }
+
+    @Override
+    public PreparedStatement sql_findFirstGlobalIndexAfter(Connection connection, DateTime timestamp,
+                                                           long sequenceNumber, String aggregateIdentifier)
+            throws SQLException {
+        assertGlobalIndexReadable();
+        String dateTime = sql_dateTime(timestamp);
+        PreparedStatement preparedStatement = prepareStatement(connection, findFirstGlobalIndexAfterSql);
+        preparedStatement.setString(1, dateTime);
+        preparedStatement.setString(2, dateTime);
+        preparedStatement.setLong(3, sequenceNumber);
+        preparedStatement.setString(4, dateTime);
+        preparedStatement.setLong(5, sequenceNumber);
+        preparedStatement.setString(6, aggregateIdentifier);
+        return preparedStatement;
+    }
+
+    private void assertGlobalIndexReadable() {
+        if (!schemaConfiguration.hasGlobalIndex()) {
+            throw new SluckConfigurationException(
+                    "Reading events by global index requires the globalIndex column. Add it to existing tables "
+                            + "using sql_addGlobalIndexColumn and enable it in the SchemaConfiguration.");
+        }
+        if (!schemaConfiguration.isGlobalIndexUnique()) {
+            throw new SluckConfigurationException(
+                    "Reading events by global index is not supported when aggregate types have their own event "
+                            + "tables, as each table assigns its own globalIndex values. "
+                            + "See SchemaConfiguration for using a shared sequence.");
+        }
+    }
+
     protected Object readTimeStamp(ResultSet resultSet, int columnIndex) throws SQLException {
         return resultSet.getString(columnIndex);
     }
@@ -217,7 +493,69 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
 
     @Override
     public PreparedStatement sql_createSnapshotEventEntryTable(Connection connection) throws SQLException {
-        final String sql = "    create table " + schemaConfiguration.snapshotEntryTable() + " (\n" +
+        return createSnapshotEventEntryTable(connection, schemaConfiguration.snapshotEntryTable());
+    }
+
+    @Override
+    public PreparedStatement sql_createSnapshotEventEntryTable(Connection connection, String aggregateType)
+            throws SQLException {
+        return createSnapshotEventEntryTable(connection, tableSql(aggregateType).snapshotTable);
+    }
+
+    @Override
+    public PreparedStatement sql_createDomainEventEntryTable(Connection connection, String aggregateType)
+            throws SQLException {
+        return createDomainEventEntryTable(connection, tableSql(aggregateType).domainEventTable);
+    }
+
+    /**
+     * 为 之前版本 创建的 事件表 添加 globalIndex 列，已有的行 由数据库 分配序号。
+     * 已有行的序号 顺序 由数据库决定，不一定是 写入顺序，之前版本的 跟踪令牌 转换后 可能 重复读取 部分事件，不会遗漏
+     *
+     * @param connection The connection to create the statement for
+     * @return a statement that adds the globalIndex column to the default event table
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    @Override
+    public PreparedStatement sql_addGlobalIndexColumn(Connection connection) throws SQLException {
+        return addGlobalIndexColumn(connection, schemaConfiguration.domainEventEntryTable());
+    }
+
+    @Override
+    public PreparedStatement sql_addGlobalIndexColumn(Connection connection, String aggregateType)
+            throws SQLException {
+        return addGlobalIndexColumn(connection, tableSql(aggregateType).domainEventTable);
+    }
+
+    /**
+     * 添加 globalIndex 列 的 statement，与 {@link #createDomainEventEntryTable(Connection, String)} 中的定义相同
+     *
+     * @param connection The connection to create the statement for
+     * @param tableName  The name of the event table to alter
+     * @return a statement that adds the column
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    protected PreparedStatement addGlobalIndexColumn(Connection connection, String tableName) throws SQLException {
+        final String sql = "alter table " + tableName + " add globalIndex bigint auto_increment not null unique";
+        return connection.prepareStatement(sql);
+    }
+
+    @Override
+    public Set<String> dedicatedAggregateTypes() {
+        return schemaConfiguration.dedicatedAggregateTypes();
+    }
+
+    /**
+     * 创建 快照表 的 statement
+     *
+     * @param connection The connection to create the statement for
+     * @param tableName  The name of the table to create
+     * @return a statement that creates the table
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    protected PreparedStatement createSnapshotEventEntryTable(Connection connection, String tableName)
+            throws SQLException {
+        final String sql = "    create table " + tableName + " (\n" +
                 "        aggregateIdentifier varchar(255) not null,\n" +
                 "        sequenceNumber number not null,\n" +
                 "        type varchar(255) not null,\n" +
@@ -233,7 +571,21 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
 
     @Override
     public PreparedStatement sql_createDomainEventEntryTable(Connection connection) throws SQLException {
-        final String sql = "create table " + schemaConfiguration.domainEventEntryTable() + " (\n" +
+        return createDomainEventEntryTable(connection, schemaConfiguration.domainEventEntryTable());
+    }
+
+    /**
+     * 创建 事件表 的 statement，{@link SchemaConfiguration#hasGlobalIndex()} 时 包含 globalIndex 列，
+     * globalIndex 为 表内自增，独立表 之间 不共用序列
+     *
+     * @param connection The connection to create the statement for
+     * @param tableName  The name of the table to create
+     * @return a statement that creates the table
+     * @throws SQLException when an exception occurs creating the PreparedStatement
+     */
+    protected PreparedStatement createDomainEventEntryTable(Connection connection, String tableName)
+            throws SQLException {
+        final String sql = "create table " + tableName + " (\n" +
                 "        aggregateIdentifier varchar(255) not null,\n" +
                 "        sequenceNumber number not null,\n" +
                 "        type varchar(255) not null,\n" +
@@ -242,18 +594,50 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
                 "        payloadRevision varchar(255),\n" +
                 "        payloadType varchar(255) not null,\n" +
                 "        timeStamp varchar(255) not null,\n" +
-                "        primary key (aggregateIdentifier, sequenceNumber, type)\n" +
+                (schemaConfiguration.hasGlobalIndex() ? "        globalIndex bigint auto_increment not null,\n" : "") +
+                "        primary key (aggregateIdentifier, sequenceNumber, type)" +
+                (schemaConfiguration.hasGlobalIndex() ? ",\n        unique (globalIndex)\n" : "\n") +
                 "    );\n";
         return connection.prepareStatement(sql);
     }
 
     @Override
     public SerializedAggregateEventData<T> createSerializedDomainEventData(ResultSet resultSet) throws SQLException {
-        return new SimpleSerializedAggregateEventData<T>(resultSet.getString(1), 
-        		new DefaultIdentifier(resultSet.getString(2)),
+        SerializedObject<T> payload = readSerializedPayload(resultSet, 5, 6, 7);
+        Long globalIndex = null;
+        if (schemaConfiguration.hasGlobalIndex()) {
+            long value = resultSet.getLong(8);
+            globalIndex = resultSet.wasNull() ? null : value;
+        }
+        return new SimpleSerializedAggregateEventData<T>(resultSet.getString(1),
+                new DefaultIdentifier(resultSet.getString(2)),
                 resultSet.getLong(3), readTimeStamp(resultSet, 4),
-                resultSet.getString(5), resultSet.getString(6),
-                readPayload(resultSet, 7));
+                payload, globalIndex);
+    }
+
+    @Override
+    public SerializedAggregateEventData<T> createSerializedSnapshotEventData(ResultSet resultSet) throws SQLException {
+        return new SimpleSerializedAggregateEventData<T>(resultSet.getString(1),
+                new DefaultIdentifier(resultSet.getString(2)),
+                resultSet.getLong(3), readTimeStamp(resultSet, 4),
+                readSerializedPayload(resultSet, 5, 6, 7));
+    }
+
+    /**
+     * 读取 payload 及其类型，类型列 为字典编号时 通过字典 解析
+     */
+    @SuppressWarnings("unchecked")
+    private SerializedObject<T> readSerializedPayload(ResultSet resultSet, int typeColumn, int revisionColumn,
+                                                      int payloadColumn) throws SQLException {
+        T payload = readPayload(resultSet, payloadColumn);
+        String payloadType = resultSet.getString(typeColumn);
+        SerializedType type;
+        if (payloadTypeDictionary != null && payloadTypeDictionary.isReference(payloadType)) {
+            type = payloadTypeDictionary.typeOf(payloadType);
+        } else {
+            type = new SimpleSerializedType(payloadType, resultSet.getString(revisionColumn));
+        }
+        return new SimpleSerializedObject<T>(payload, (Class<T>) payload.getClass(), type);
     }
 
     @Override
@@ -269,4 +653,59 @@ public class GenericEventSqlSchema<T> implements EventSqlSchema<T> {
     public Class<T> getDataType() {
         return dataType;
     }
+
+    /**
+     * 一组 事件表 和 快照表 上 预先生成的 sql
+     */
+    private final class TableSql {
+
+        private final String domainEventTable;
+        private final String snapshotTable;
+        private final String loadLastSnapshot;
+        private final String insertDomainEventEntry;
+        private final String pruneSnapshots;
+        private final String findSnapshotSequenceNumbers;
+        private final String fetchFromSequenceNumber;
+        private volatile String fetchFromLastSnapshot;
+
+        private TableSql(String domainEventTable, String snapshotTable) {
+            this.domainEventTable = domainEventTable;
+            this.snapshotTable = snapshotTable;
+            this.loadLastSnapshot = "SELECT " + STD_FIELDS + " FROM " + snapshotTable
+                    + " WHERE aggregateIdentifier = ? AND type = ? ORDER BY sequenceNumber DESC";
+            this.insertDomainEventEntry = insertEventEntrySql(domainEventTable);
+            this.pruneSnapshots = "DELETE FROM " + snapshotTable
+                    + " WHERE type = ?"
+                    + " AND aggregateIdentifier = ?"
+                    + " AND sequenceNumber <= ?";
+            this.findSnapshotSequenceNumbers = "SELECT sequenceNumber FROM " + snapshotTable
+                    + " WHERE type = ? AND aggregateIdentifier = ?"
+                    + " ORDER BY sequenceNumber DESC";
+            this.fetchFromSequenceNumber = "SELECT " + domainEventFields + " FROM " + domainEventTable
+                    + " WHERE aggregateIdentifier = ? AND type = ?"
+                    + " AND sequenceNumber >= ?"
+                    + " ORDER BY sequenceNumber ASC";
+            insertSqlByTable.put(domainEventTable, insertDomainEventEntry);
+            insertSqlByTable.put(snapshotTable, insertEventEntrySql(snapshotTable));
+        }
+
+        /**
+         * 第一次使用时 生成，{@link #sqlNullGlobalIndex()} 可能被子类覆盖，不在构造时调用
+         */
+        private String fetchFromLastSnapshot() {
+            if (fetchFromLastSnapshot == null) {
+                String lastSnapshotSequenceNumber = "(SELECT MAX(sequenceNumber) FROM " + snapshotTable
+                        + " WHERE aggregateIdentifier = ? AND type = ?)";
+                fetchFromLastSnapshot = "SELECT " + STD_FIELDS + ", " + sqlNullGlobalIndex() + " AS globalIndex"
+                        + " FROM " + snapshotTable
+                        + " WHERE aggregateIdentifier = ? AND type = ?"
+                        + " AND sequenceNumber = " + lastSnapshotSequenceNumber
+                        + " UNION ALL SELECT " + domainEventFields + " FROM " + domainEventTable
+                        + " WHERE aggregateIdentifier = ? AND type = ?"
+                        + " AND sequenceNumber > COALESCE(" + lastSnapshotSequenceNumber + ", -1)"
+                        + " ORDER BY sequenceNumber ASC";
+            }
+            return fetchFromLastSnapshot;
+        }
+    }
 }
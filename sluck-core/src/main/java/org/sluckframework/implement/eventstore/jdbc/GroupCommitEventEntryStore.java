@@ -0,0 +1,371 @@
+package org.sluckframework.implement.eventstore.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.jdbc.ConnectionProvider;
+import org.sluckframework.common.serializer.SerializedAggregateEventData;
+import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.common.thread.SluckThreadFactory;
+import org.sluckframework.cqrs.unitofwork.CurrentUnitOfWork;
+import org.sluckframework.domain.event.aggregate.AggregateEvent;
+import org.sluckframework.domain.event.eventstore.EventStoreException;
+import org.sluckframework.domain.identifier.Identifier;
+
+import static org.sluckframework.common.jdbc.JdbcUtils.closeQuietly;
+
+/**
+ * 组提交的 事件存储，多个线程并发 append 的事件 会被放入队列，由单独的写线程 在 commitWindow 时间窗口内
+ * 或达到 maxBatchSize 后 在同一个事务中批量写入，调用线程会阻塞直到自己的事件被提交。
+ * 如果整组提交失败，则回滚后逐个提交，保证每个调用者得到自己的异常(如重复主键)。
+ * 读取 和 快照 操作直接委托给 delegate。
+ * <p/>
+ * 组提交 只用于 非事务性的 UnitOfWork: 事件在写线程自己的连接和事务中提交，无法加入 调用者的事务。
+ * 当前线程的 UnitOfWork 是事务性的({@link org.sluckframework.cqrs.unitofwork.UnitOfWork#isTransactional()})时，
+ * 事件 直接由 delegate 在调用者的事务中 写入，不参与组提交
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+@SuppressWarnings("rawtypes")
+public class GroupCommitEventEntryStore<T> implements EventEntryStore<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitEventEntryStore.class);
+    private static final ThreadGroup GROUP_COMMIT_THREAD_GROUP = new ThreadGroup("GroupCommitEventEntryStore");
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    private static final long DEFAULT_COMMIT_WINDOW_MILLIS = 2;
+
+    private final EventEntryStore<T> delegate;
+    private final ConnectionProvider connectionProvider;
+    private final EventSqlSchema<T> sqlSchema;
+    private final BlockingQueue<PendingAppend<T>> queue = new LinkedBlockingQueue<PendingAppend<T>>();
+    // queued by stop() after the last accepted append, the writer exits when it takes this entry
+    private final PendingAppend<T> stopSignal = new PendingAppend<T>(null, Collections.<AggregateEvent>emptyList(),
+                                                                     Collections.<SerializedObject<T>>emptyList());
+    // guards running together with adding to the queue, so no append is queued after the stop signal
+    private final Object lifecycleLock = new Object();
+    private final Thread writerThread;
+
+    private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private volatile long commitWindowMillis = DEFAULT_COMMIT_WINDOW_MILLIS;
+    private volatile boolean running = true;
+
+    /**
+     * 使用 delegate 处理读取，使用 cp 和 sqlSchema 组提交事件，并启动写线程
+     *
+     * @param delegate           The store handling reads and snapshots
+     * @param connectionProvider Provides the connections used by the writer thread; must not be bound to a UoW
+     * @param sqlSchema          The SQL Definitions
+     */
+    public GroupCommitEventEntryStore(EventEntryStore<T> delegate, ConnectionProvider connectionProvider,
+                                      EventSqlSchema<T> sqlSchema) {
+        Assert.notNull(delegate, "delegate may not be null");
+        Assert.notNull(connectionProvider, "connectionProvider may not be null");
+        Assert.notNull(sqlSchema, "sqlSchema may not be null");
+        this.delegate = delegate;
+        this.connectionProvider = connectionProvider;
+        this.sqlSchema = sqlSchema;
+        this.writerThread = new SluckThreadFactory(GROUP_COMMIT_THREAD_GROUP).newThread(new Writer());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void persistEvent(String aggregateType, AggregateEvent event, SerializedObject<T> serializedPayload) {
+        persistEvents(aggregateType, Collections.singletonList(event), Collections.singletonList(serializedPayload));
+    }
+
+    @Override
+    public void persistEvents(String aggregateType, List<? extends AggregateEvent> events,
+                              List<? extends SerializedObject<T>> serializedPayloads) {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (CurrentUnitOfWork.isStarted() && CurrentUnitOfWork.get().isTransactional()) {
+            // the writer thread cannot join the caller's transaction
+            delegate.persistEvents(aggregateType, events, serializedPayloads);
+            return;
+        }
+        PendingAppend<T> append = new PendingAppend<T>(aggregateType, events, serializedPayloads);
+        synchronized (lifecycleLock) {
+            if (!running) {
+                throw new EventStoreException("GroupCommitEventEntryStore has been stopped");
+            }
+            queue.add(append);
+        }
+        try {
+            append.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventStoreException("Interrupted while waiting for events to be committed", e);
+        }
+        if (append.failure != null) {
+            throw append.failure;
+        }
+    }
+
+    @Override
+    public SerializedAggregateEventData<T> loadLastSnapshotEvent(String aggregateType, Identifier<?> identifier) {
+        return delegate.loadLastSnapshotEvent(aggregateType, identifier);
+    }
+
+    @Override
+    public boolean supportsSingleQuerySnapshotLoad() {
+        return delegate.supportsSingleQuerySnapshotLoad();
+    }
+
+    @Override
+    public Iterator<? extends SerializedAggregateEventData<T>> fetchAggregateStreamFromLastSnapshot(
+            String aggregateType, Identifier<?> identifier, int batchSize) {
+        return delegate.fetchAggregateStreamFromLastSnapshot(aggregateType, identifier, batchSize);
+    }
+
+    @Override
+    public Map<String, SerializedAggregateEventData<T>> loadLastSnapshotEvents(
+            String aggregateType, Collection<? extends Identifier<?>> identifiers) {
+        return delegate.loadLastSnapshotEvents(aggregateType, identifiers);
+    }
+
+    @Override
+    public Map<String, List<SerializedAggregateEventData<T>>> fetchAggregateStreams(
+            String aggregateType, Map<? extends Identifier<?>, Long> firstSequenceNumbers) {
+        return delegate.fetchAggregateStreams(aggregateType, firstSequenceNumbers);
+    }
+
+    @Override
+    public Iterator<? extends SerializedAggregateEventData<T>> fetchAggregateStream(String aggregateType,
+                                                                                 Identifier<?> identifier,
+                                                                                 long firstSequenceNumber,
+                                                                                 int batchSize) {
+        return delegate.fetchAggregateStream(aggregateType, identifier, firstSequenceNumber, batchSize);
+    }
+
+    @Override
+    public Iterator<? extends SerializedAggregateEventData<T>> fetchFiltered(String whereClause,
+                                                                          List<Object> parameters, int batchSize) {
+        return delegate.fetchFiltered(whereClause, parameters, batchSize);
+    }
+
+    @Override
+    public Iterator<? extends SerializedAggregateEventData<T>> fetchAfterGlobalIndex(long lastGlobalIndex,
+                                                                                  Collection<Long> gaps,
+                                                                                  int batchSize) {
+        return delegate.fetchAfterGlobalIndex(lastGlobalIndex, gaps, batchSize);
+    }
+
+    @Override
+    public Long findFirstGlobalIndexAfter(DateTime timestamp, long sequenceNumber, String aggregateIdentifier) {
+        return delegate.findFirstGlobalIndexAfter(timestamp, sequenceNumber, aggregateIdentifier);
+    }
+
+    @Override
+    public void pruneSnapshots(String type, AggregateEvent mostRecentSnapshotEvent, int maxSnapshotsArchived) {
+        delegate.pruneSnapshots(type, mostRecentSnapshotEvent, maxSnapshotsArchived);
+    }
+
+    @Override
+    public void persistSnapshot(String aggregateType, AggregateEvent snapshotEvent,
+                                SerializedObject<T> serializedPayload) {
+        delegate.persistSnapshot(aggregateType, snapshotEvent, serializedPayload);
+    }
+
+    @Override
+    public Class<T> getDataType() {
+        return sqlSchema.getDataType();
+    }
+
+    /**
+     * 设置一次组提交包含的最大 append 请求数，默认 256
+     *
+     * @param maxBatchSize the maximum number of appends committed in one transaction
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * 设置收到第一个 append 后 等待更多 append 加入同一组的时间(毫秒)，默认 2ms
+     *
+     * @param commitWindowMillis the time window in milliseconds, 0 to only group appends already queued
+     */
+    public void setCommitWindowMillis(long commitWindowMillis) {
+        Assert.isTrue(commitWindowMillis >= 0, "commitWindowMillis may not be negative");
+        this.commitWindowMillis = commitWindowMillis;
+    }
+
+    /**
+     * 停止写线程，已在队列中的 append 会在停止前被提交，之后的 append 抛出异常。
+     * 不中断写线程，正在进行的 JDBC 操作 会正常完成
+     */
+    public void stop() {
+        synchronized (lifecycleLock) {
+            if (running) {
+                running = false;
+                queue.add(stopSignal);
+            }
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(List<PendingAppend<T>> group) {
+        if (group.size() > 1) {
+            try {
+                commit(group);
+                for (PendingAppend<T> append : group) {
+                    append.complete(null);
+                }
+                return;
+            } catch (SQLException e) {
+                logger.debug("Group commit of {} appends failed. Retrying them one by one.", group.size(), e);
+            } catch (RuntimeException e) {
+                logger.debug("Group commit of {} appends failed. Retrying them one by one.", group.size(), e);
+            }
+        }
+        for (PendingAppend<T> append : group) {
+            try {
+                commit(Collections.singletonList(append));
+                append.complete(null);
+            } catch (SQLException e) {
+                append.complete(new EventStoreException(
+                        "Exception occurred while attempting to persist a batch of events", e));
+            } catch (RuntimeException e) {
+                append.complete(e);
+            }
+        }
+    }
+
+    private void commit(List<PendingAppend<T>> group) throws SQLException {
+        Connection connection = connectionProvider.getConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            if (autoCommit) {
+                connection.setAutoCommit(false);
+            }
+            for (PendingAppend<T> append : group) {
+                PreparedStatement statement = sqlSchema.sql_insertDomainEventEntries(
+                        connection, append.aggregateType, append.events, append.serializedPayloads);
+                try {
+                    statement.executeBatch();
+                } finally {
+                    closeQuietly(statement);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly(connection);
+            throw e;
+        } catch (RuntimeException e) {
+            rollbackQuietly(connection);
+            throw e;
+        } finally {
+            if (autoCommit) {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException ignore) {
+                }
+            }
+            closeQuietly(connection);
+        }
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    private final class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            List<PendingAppend<T>> group = new ArrayList<PendingAppend<T>>();
+            try {
+                boolean stopped = false;
+                while (!stopped) {
+                    try {
+                        PendingAppend<T> first = queue.take();
+                        stopped = first == stopSignal;
+                        if (!stopped) {
+                            group.add(first);
+                        }
+                        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commitWindowMillis);
+                        while (!stopped && group.size() < maxBatchSize) {
+                            PendingAppend<T> next = queue.poll(Math.max(0, deadline - System.nanoTime()),
+                                                               TimeUnit.NANOSECONDS);
+                            if (next == null) {
+                                break;
+                            }
+                            stopped = next == stopSignal;
+                            if (!stopped) {
+                                group.add(next);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        // only the stop signal ends the writer, commit what has been collected so far
+                        logger.warn("Group commit writer was interrupted. Use stop() to stop the writer.");
+                    }
+                    if (!group.isEmpty()) {
+                        flush(group);
+                        group.clear();
+                    }
+                }
+            } finally {
+                synchronized (lifecycleLock) {
+                    running = false;
+                }
+                // appends left behind when the writer failed
+                queue.drainTo(group);
+                for (PendingAppend<T> append : group) {
+                    append.complete(new EventStoreException("GroupCommitEventEntryStore has been stopped"));
+                }
+            }
+        }
+    }
+
+    private static final class PendingAppend<T> {
+
+        private final String aggregateType;
+        private final List<? extends AggregateEvent> events;
+        private final List<? extends SerializedObject<T>> serializedPayloads;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile RuntimeException failure;
+
+        private PendingAppend(String aggregateType, List<? extends AggregateEvent> events,
+                              List<? extends SerializedObject<T>> serializedPayloads) {
+            this.aggregateType = aggregateType;
+            this.events = events;
+            this.serializedPayloads = serializedPayloads;
+        }
+
+        private void complete(RuntimeException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        private void await() throws InterruptedException {
+            done.await();
+        }
+    }
+}
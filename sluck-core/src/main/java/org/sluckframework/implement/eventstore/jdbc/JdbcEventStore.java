@@ -12,13 +12,20 @@ import org.sluckframework.common.serializer.SerializedAggregateEventData;
 import org.sluckframework.common.serializer.SerializedObject;
 import org.sluckframework.common.serializer.Serializer;
 import org.sluckframework.common.serializer.json.JacksonSerializer;
+import org.sluckframework.common.thread.SluckThreadFactory;
 import org.sluckframework.common.util.IOUtils;
+import org.sluckframework.cqrs.eventhanding.tracking.StreamableEventStore;
+import org.sluckframework.cqrs.eventhanding.tracking.TrackedAggregateEvent;
+import org.sluckframework.cqrs.eventhanding.tracking.TrackingToken;
+import org.sluckframework.cqrs.unitofwork.CurrentUnitOfWork;
 import org.sluckframework.cqrs.upcasting.SimpleUpcasterChain;
 import org.sluckframework.cqrs.upcasting.UpcasterAware;
 import org.sluckframework.cqrs.upcasting.UpcasterChain;
 import org.sluckframework.domain.event.aggregate.AggregateEvent;
 import org.sluckframework.domain.event.aggregate.AggregateEventStream;
 import org.sluckframework.domain.event.aggregate.GenericAggregateEvent;
+import org.sluckframework.domain.event.eventstore.BatchStreamSupport;
+import org.sluckframework.domain.event.eventstore.EventStoreException;
 import org.sluckframework.domain.event.eventstore.EventStreamNotFoundException;
 import org.sluckframework.domain.event.eventstore.EventVisitor;
 import org.sluckframework.domain.event.eventstore.SnapshotEventStore;
@@ -33,9 +40,24 @@ import org.sluckframework.implement.eventstore.jdbc.criteria.ParameterRegistry;
 import javax.sql.DataSource;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.sluckframework.cqrs.upcasting.UpcastUtils.upcastAndDeserialize;
 import static org.sluckframework.domain.identifier.IdentifierValidator.validateIdentifier;
@@ -49,12 +71,18 @@ import static org.sluckframework.domain.identifier.IdentifierValidator.validateI
  * @since 1.0
  */
 @SuppressWarnings("rawtypes")
-public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManagement, UpcasterAware{
+public class JdbcEventStore implements SnapshotEventStore, BatchStreamSupport, EventStoreQueryManagement,
+        StreamableEventStore, UpcasterAware{
 	
 	private static final Logger logger = LoggerFactory.getLogger(JdbcEventStore.class);
 
     private static final int DEFAULT_BATCH_SIZE = 100;
     private static final int DEFAULT_MAX_SNAPSHOTS_ARCHIVED = 1;
+    private static final long DEFAULT_GAP_WINDOW = 1000;
+    private static final ThreadGroup PREFETCH_THREAD_GROUP = new ThreadGroup("JdbcEventStore-prefetch");
+    private static final int DEFAULT_MAX_PREFETCH_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final long PREFETCH_OFFER_TIMEOUT_MILLIS = 30000;
+    private static final Object END_OF_STREAM = new Object();
 
     private final EventSerializer serializer;
     private final EventEntryStore<?> eventEntryStore;
@@ -64,6 +92,11 @@ public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManage
     private UpcasterChain upcasterChain = SimpleUpcasterChain.EMPTY;
     private int maxSnapshotsArchived = DEFAULT_MAX_SNAPSHOTS_ARCHIVED;
     private PersistenceExceptionResolver persistenceExceptionResolver;
+    private int prefetchBatches = 0;
+    private Executor prefetchExecutor;
+    private ExecutorService ownPrefetchExecutor;
+    private long gapWindow = DEFAULT_GAP_WINDOW;
+    private boolean singleQueryLoad = true;
 
     /**
      * 使用真正存储的 eventEntryStore 和 serializer 初始化
@@ -112,23 +145,31 @@ public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManage
     @SuppressWarnings({ "unchecked"})
     @Override
     public void appendEvents(String type, AggregateEventStream events) {
-        AggregateEvent event = null;
+        List<AggregateEvent> batch = new ArrayList<AggregateEvent>();
+        List<SerializedObject> serializedPayloads = new ArrayList<SerializedObject>();
+        final Class dataType = eventEntryStore.getDataType();
+        while (events.hasNext()) {
+            AggregateEvent event = events.next();
+            validateIdentifier(event.getAggregateIdentifier().getClass());
+            batch.add(event);
+            serializedPayloads.add(serializer.serializePayload(event, dataType));
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
         try {
-            while (events.hasNext()) {
-                event = events.next();
-                validateIdentifier(event.getAggregateIdentifier().getClass());
-                final Class dataType = eventEntryStore.getDataType();
-                SerializedObject serializedPayload = serializer.serializePayload(event, dataType);
-                eventEntryStore.persistEvent(type, event, serializedPayload);
-            }
+            ((EventEntryStore) eventEntryStore).persistEvents(type, batch, serializedPayloads);
         } catch (RuntimeException exception) {
             if (persistenceExceptionResolver != null
                     && persistenceExceptionResolver.isDuplicateKeyViolation(exception)) {
-                //noinspection ConstantConditions
+                AggregateEvent first = batch.get(0);
+                AggregateEvent last = batch.get(batch.size() - 1);
                 throw new ConcurrencyException(
-                        String.format("Concurrent modification detected for Aggregate identifier [%s], sequence: [%s]",
-                                      event.getAggregateIdentifier(),
-                                      event.getSequenceNumber()),
+                        String.format("Concurrent modification detected for Aggregate identifier [%s], "
+                                              + "sequence: [%s] to [%s]",
+                                      first.getAggregateIdentifier(),
+                                      first.getSequenceNumber(),
+                                      last.getSequenceNumber()),
                         exception
                 );
             }
@@ -139,30 +180,15 @@ public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManage
     @SuppressWarnings({"unchecked"})
     @Override
     public AggregateEventStream readEvents(String type, Identifier<?> identifier) {
-        long snapshotSequenceNumber = -1;
-        SerializedAggregateEventData lastSnapshotEvent = eventEntryStore.loadLastSnapshotEvent(type, identifier);
-        AggregateEvent snapshotEvent = null;
-        if (lastSnapshotEvent != null) {
-            try {
-                snapshotEvent = new GenericAggregateEvent(
-                        identifier,
-                        lastSnapshotEvent.getSequenceNumber(),
-                        serializer.deserialize(lastSnapshotEvent.getPayload()));
-                snapshotSequenceNumber = snapshotEvent.getSequenceNumber();
-            } catch (RuntimeException ex) {
-                logger.warn("Error while reading snapshot event entry. "
-                                    + "Reconstructing aggregate on entire event stream. Caused by: {} {}",
-                            ex.getClass().getName(),
-                            ex.getMessage()
-                );
-            } catch (LinkageError error) {
-                logger.warn("Error while reading snapshot event entry. "
-                                    + "Reconstructing aggregate on entire event stream. Caused by: {} {}",
-                            error.getClass().getName(),
-                            error.getMessage()
-                );
+        if (singleQueryLoad && eventEntryStore.supportsSingleQuerySnapshotLoad()) {
+            AggregateEventStream stream = readEventsFromLastSnapshot(type, identifier);
+            if (stream != null) {
+                return stream;
             }
         }
+        AggregateEvent snapshotEvent = readSnapshotEvent(identifier,
+                                                         eventEntryStore.loadLastSnapshotEvent(type, identifier));
+        long snapshotSequenceNumber = snapshotEvent == null ? -1 : snapshotEvent.getSequenceNumber();
 
         Iterator<? extends SerializedAggregateEventData> entries =
                 eventEntryStore.fetchAggregateStream(type, identifier, snapshotSequenceNumber + 1, batchSize);
@@ -170,7 +196,103 @@ public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManage
             IOUtils.closeQuietlyIfCloseable(entries);
             throw new EventStreamNotFoundException(type, identifier);
         }
-        return new IteratorAggregateEventStream(snapshotEvent, entries, identifier, false);
+        return createAggregateEventStream(type, snapshotEvent, entries, identifier, Long.MAX_VALUE);
+    }
+
+    /**
+     * 在一次数据库交互中 读取快照 和 之后的事件，快照无法读取时 返回 null，由调用者 分别查询
+     */
+    private AggregateEventStream readEventsFromLastSnapshot(String type, Identifier<?> identifier) {
+        Iterator<? extends SerializedAggregateEventData> entries =
+                eventEntryStore.fetchAggregateStreamFromLastSnapshot(type, identifier, batchSize);
+        if (!entries.hasNext()) {
+            IOUtils.closeQuietlyIfCloseable(entries);
+            throw new EventStreamNotFoundException(type, identifier);
+        }
+        SerializedAggregateEventData first = entries.next();
+        if (first.getGlobalIndex() != null) {
+            return createAggregateEventStream(type, null,
+                                              new PushbackIterator(Collections.singletonList(first), entries),
+                                              identifier, Long.MAX_VALUE);
+        }
+        AggregateEvent snapshotEvent = readSnapshotEvent(identifier, first);
+        if (snapshotEvent == null) {
+            IOUtils.closeQuietlyIfCloseable(entries);
+            return null;
+        }
+        return createAggregateEventStream(type, snapshotEvent, entries, identifier, Long.MAX_VALUE);
+    }
+
+    /**
+     * 使用 一次快照查询 和 一次事件查询 读取所有聚合的流(标示符过多时 按批 分为多次)，事件 在返回前 已全部读入内存
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<Identifier<?>, AggregateEventStream> readEvents(String type,
+                                                              Collection<? extends Identifier<?>> identifiers) {
+        Map<String, Identifier<?>> identifiersByValue = new LinkedHashMap<String, Identifier<?>>();
+        for (Identifier<?> identifier : identifiers) {
+            identifiersByValue.put(identifier.toString(), identifier);
+        }
+        Map<String, ? extends SerializedAggregateEventData> lastSnapshotEvents =
+                eventEntryStore.loadLastSnapshotEvents(type, identifiersByValue.values());
+
+        Map<Identifier<?>, AggregateEvent> snapshotEvents = new HashMap<Identifier<?>, AggregateEvent>();
+        Map<Identifier<?>, Long> firstSequenceNumbers = new LinkedHashMap<Identifier<?>, Long>();
+        for (Map.Entry<String, Identifier<?>> entry : identifiersByValue.entrySet()) {
+            Identifier<?> identifier = entry.getValue();
+            AggregateEvent snapshotEvent = readSnapshotEvent(identifier, lastSnapshotEvents.get(entry.getKey()));
+            if (snapshotEvent != null) {
+                snapshotEvents.put(identifier, snapshotEvent);
+            }
+            firstSequenceNumbers.put(identifier, snapshotEvent == null ? 0 : snapshotEvent.getSequenceNumber() + 1);
+        }
+        Map<String, ? extends List<? extends SerializedAggregateEventData>> tails =
+                eventEntryStore.fetchAggregateStreams(type, firstSequenceNumbers);
+
+        Map<Identifier<?>, AggregateEventStream> streams =
+                new LinkedHashMap<Identifier<?>, AggregateEventStream>(identifiersByValue.size());
+        for (Map.Entry<String, Identifier<?>> entry : identifiersByValue.entrySet()) {
+            Identifier<?> identifier = entry.getValue();
+            AggregateEvent snapshotEvent = snapshotEvents.get(identifier);
+            List<? extends SerializedAggregateEventData> tail = tails.get(entry.getKey());
+            if (snapshotEvent == null && tail == null) {
+                continue;
+            }
+            Iterator<? extends SerializedAggregateEventData> entries = tail == null
+                    ? Collections.<SerializedAggregateEventData>emptyList().iterator() : tail.iterator();
+            streams.put(identifier, new IteratorAggregateEventStream(snapshotEvent, entries, identifier, false));
+        }
+        return streams;
+    }
+
+    /**
+     * 反序列化 快照事件，快照 无法读取时 返回 null，聚合 将从完整的事件流 重建
+     */
+    @SuppressWarnings("unchecked")
+    private AggregateEvent readSnapshotEvent(Identifier<?> identifier, SerializedAggregateEventData lastSnapshotEvent) {
+        if (lastSnapshotEvent == null) {
+            return null;
+        }
+        try {
+            return new GenericAggregateEvent(
+                    identifier,
+                    lastSnapshotEvent.getSequenceNumber(),
+                    serializer.deserialize(lastSnapshotEvent.getPayload()));
+        } catch (RuntimeException ex) {
+            logger.warn("Error while reading snapshot event entry. "
+                                + "Reconstructing aggregate on entire event stream. Caused by: {} {}",
+                        ex.getClass().getName(),
+                        ex.getMessage()
+            );
+        } catch (LinkageError error) {
+            logger.warn("Error while reading snapshot event entry. "
+                                + "Reconstructing aggregate on entire event stream. Caused by: {} {}",
+                        error.getClass().getName(),
+                        error.getMessage()
+            );
+        }
+        return null;
     }
 
     @Override
@@ -187,9 +309,63 @@ public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManage
                                                                                                      firstSequenceNumber,
                                                                                                      minimalBatchSize);
         if (!entries.hasNext()) {
+            IOUtils.closeQuietlyIfCloseable(entries);
             throw new EventStreamNotFoundException(type, identifier);
         }
-        return new IteratorAggregateEventStream(null, entries, identifier, lastSequenceNumber, false);
+        return createAggregateEventStream(type, null, entries, identifier, lastSequenceNumber);
+    }
+
+    private AggregateEventStream createAggregateEventStream(String type, AggregateEvent snapshotEvent,
+                                                            Iterator<? extends SerializedAggregateEventData> entries,
+                                                            Identifier<?> identifier, long lastSequenceNumber) {
+        if (prefetchBatches > 0 && CurrentUnitOfWork.isStarted()) {
+            return createUnitOfWorkPrefetchingStream(type, snapshotEvent, entries, identifier, lastSequenceNumber);
+        }
+        if (prefetchBatches > 0) {
+            List<AggregateEvent> head = snapshotEvent == null
+                    ? Collections.<AggregateEvent>emptyList() : Collections.singletonList(snapshotEvent);
+            PrefetchingAggregateEventStream stream = new PrefetchingAggregateEventStream(head, entries, type,
+                                                                                         identifier, 0,
+                                                                                         lastSequenceNumber);
+            if (stream.start()) {
+                return stream;
+            }
+        }
+        return new IteratorAggregateEventStream(snapshotEvent, entries, identifier, lastSequenceNumber, false);
+    }
+
+    /**
+     * UnitOfWork 中 entries 使用 绑定在 UnitOfWork 上的连接，不能在 其它线程上 读取。调用线程 读取 第一批事件，
+     * 之后的事件 由 预读线程 使用 不绑定 UnitOfWork 的连接 重新查询，因此 预读 看不到 当前事务 未提交的事件
+     */
+    private AggregateEventStream createUnitOfWorkPrefetchingStream(
+            String type, AggregateEvent snapshotEvent, Iterator<? extends SerializedAggregateEventData> entries,
+            Identifier<?> identifier, long lastSequenceNumber) {
+        List<SerializedAggregateEventData> firstBatch = new ArrayList<SerializedAggregateEventData>(batchSize);
+        long nextSequenceNumber = -1;
+        while (firstBatch.size() < batchSize && entries.hasNext()) {
+            SerializedAggregateEventData entry = entries.next();
+            firstBatch.add(entry);
+            nextSequenceNumber = entry.getSequenceNumber() + 1;
+        }
+        if (entries.hasNext() && nextSequenceNumber <= lastSequenceNumber) {
+            List<AggregateEvent> head = new ArrayList<AggregateEvent>(firstBatch.size() + 1);
+            if (snapshotEvent != null) {
+                head.add(snapshotEvent);
+            }
+            for (SerializedAggregateEventData entry : firstBatch) {
+                head.addAll(upcastAndDeserialize(entry, identifier, serializer, upcasterChain, false));
+            }
+            PrefetchingAggregateEventStream stream = new PrefetchingAggregateEventStream(head, null, type, identifier,
+                                                                                         nextSequenceNumber,
+                                                                                         lastSequenceNumber);
+            if (stream.start()) {
+                IOUtils.closeQuietlyIfCloseable(entries);
+                return stream;
+            }
+        }
+        return new IteratorAggregateEventStream(snapshotEvent, new PushbackIterator(firstBatch, entries), identifier,
+                                                lastSequenceNumber, false);
     }
 
     @SuppressWarnings("unchecked")
@@ -252,6 +428,54 @@ public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManage
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 事件按 全局序号 排序，令牌为 {@link JdbcTrackingToken}，需要 事件表 有 globalIndex 列，
+     * 见 {@link SchemaConfiguration#hasGlobalIndex()}
+     */
+    @Override
+    public List<TrackedAggregateEvent> readEvents(TrackingToken lastToken, int batchSize) {
+        JdbcTrackingToken token = lastToken == null ? new JdbcTrackingToken(0, null) : (JdbcTrackingToken) lastToken;
+        if (token.isLegacy()) {
+            token = convertLegacyToken(token);
+            if (token == null) {
+                return Collections.emptyList();
+            }
+        }
+        Iterator<? extends SerializedAggregateEventData> entries =
+                eventEntryStore.fetchAfterGlobalIndex(token.getGlobalIndex(), token.getGaps(), batchSize);
+        List<TrackedAggregateEvent> events = new ArrayList<TrackedAggregateEvent>();
+        try {
+            while (entries.hasNext()) {
+                SerializedAggregateEventData entry = entries.next();
+                token = token.advanceTo(entry.getGlobalIndex(), gapWindow);
+                for (AggregateEvent event : upcastAndDeserialize(entry, null, serializer, upcasterChain, true)) {
+                    events.add(new TrackedAggregateEvent(event, token));
+                }
+            }
+        } finally {
+            IOUtils.closeQuietlyIfCloseable(entries);
+        }
+        return events;
+    }
+
+    /**
+     * 将 之前版本 按 (timeStamp, sequenceNumber, aggregateIdentifier) 定位的令牌 转换为 全局序号 的令牌，
+     * 位于 之后的事件中 最小的全局序号 之前。全局序号 与 时间顺序 不完全一致，位于两者之间 且已处理的事件
+     * 会被再次处理，但不会遗漏事件。之后还没有事件时 返回 null，令牌 保持不变
+     */
+    private JdbcTrackingToken convertLegacyToken(JdbcTrackingToken token) {
+        Long firstUnprocessed = eventEntryStore.findFirstGlobalIndexAfter(token.getTimestamp(),
+                                                                          token.getSequenceNumber(),
+                                                                          token.getAggregateIdentifier());
+        if (firstUnprocessed == null) {
+            return null;
+        }
+        logger.info("Converted tracking token {} to the global index {}", token, firstUnprocessed - 1);
+        return new JdbcTrackingToken(firstUnprocessed - 1, null);
+    }
+
     /**
      * 设置 持久化异常 解析器 来帮助解决 同步异常问题
      *
@@ -275,6 +499,65 @@ public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManage
         this.upcasterChain = upcasterChain;
     }
 
+    /**
+     * 设置 加载聚合时 预读的批次数量，大于 0 时 下一批事件会在辅助线程上 提前读取并反序列化，
+     * 与聚合应用当前批次的事件 并行进行，默认为 0 不预读。
+     * <p/>
+     * 没有 UnitOfWork 时 结果集 在辅助线程上读取。UnitOfWork 中 读取的连接 绑定在 UnitOfWork 上，
+     * 第一批事件 在调用线程上读取，之后的事件 由辅助线程 使用 不绑定 UnitOfWork 的连接 查询，
+     * 看不到 当前事务中 尚未提交的事件。预读线程 都在使用时，事件流 在调用线程上读取。
+     * 调用者 超过 30 秒 未取走 预读的批次时，预读停止 并关闭结果集
+     *
+     * @param prefetchBatches the maximum number of batches of batchSize events to read ahead
+     */
+    public void setPrefetchBatches(int prefetchBatches) {
+        this.prefetchBatches = prefetchBatches;
+    }
+
+    /**
+     * 设置 预读使用的 executor，executor 拒绝任务时 事件流 在调用线程上读取，executor 由调用者 关闭。
+     * 默认使用 最多 处理器数量 个 守护线程的线程池，由 {@link #shutdown()} 关闭
+     *
+     * @param prefetchExecutor the executor running the read-ahead tasks
+     */
+    public synchronized void setPrefetchExecutor(Executor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    private synchronized Executor prefetchExecutor() {
+        if (prefetchExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(0, DEFAULT_MAX_PREFETCH_THREADS,
+                                                                 60, TimeUnit.SECONDS,
+                                                                 new SynchronousQueue<Runnable>(),
+                                                                 new PrefetchThreadFactory());
+            ownPrefetchExecutor = executor;
+            prefetchExecutor = executor;
+        }
+        return prefetchExecutor;
+    }
+
+    /**
+     * 关闭 默认创建的 预读线程池，正在进行的预读 会继续完成，之后的 事件流 在调用线程上读取。
+     * 通过 {@link #setPrefetchExecutor(Executor)} 设置的 executor 不会被关闭
+     */
+    public synchronized void shutdown() {
+        if (ownPrefetchExecutor != null) {
+            ownPrefetchExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 设置 跟踪读取时 保留 gap 的范围，距离 最大已读全局序号 超过该值的 未出现序号 被视为 回滚事务留下的空洞，
+     * 不再查询，默认 1000。应大于 并发写入事务 可能分配的 最大序号跨度
+     *
+     * @param gapWindow the maximum distance from the highest read global index at which missing indices are
+     *                  queried again
+     */
+    public void setGapWindow(long gapWindow) {
+        Assert.isTrue(gapWindow >= 0, "gapWindow may not be negative");
+        this.gapWindow = gapWindow;
+    }
+
     /**
      * 设置一个聚合能有持有的快照的最大数量
      * @param maxSnapshotsArchived The maximum number of snapshots to archive for an aggregate
@@ -283,6 +566,54 @@ public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManage
         this.maxSnapshotsArchived = maxSnapshotsArchived;
     }
 
+    /**
+     * 设置 是否 在一次数据库交互中 读取快照 和 之后的事件，默认 true。
+     * 只在 {@link EventEntryStore#supportsSingleQuerySnapshotLoad()} 为 true 时 使用，否则 快照 和 事件 分别查询
+     *
+     * @param singleQueryLoad whether to read the last snapshot and the events after it in a single query
+     */
+    public void setSingleQueryLoad(boolean singleQueryLoad) {
+        this.singleQueryLoad = singleQueryLoad;
+    }
+
+    /**
+     * 将 已读取的第一个元素 放回 iterator 之前，关闭时 关闭底层的 iterator
+     */
+    private static final class PushbackIterator implements Iterator<SerializedAggregateEventData>, Closeable {
+
+        private final Iterator<? extends SerializedAggregateEventData> delegate;
+        private final Iterator<? extends SerializedAggregateEventData> pushedBack;
+
+        private PushbackIterator(List<? extends SerializedAggregateEventData> pushedBack,
+                                 Iterator<? extends SerializedAggregateEventData> delegate) {
+            this.pushedBack = pushedBack.iterator();
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pushedBack.hasNext() || delegate.hasNext();
+        }
+
+        @Override
+        public SerializedAggregateEventData next() {
+            if (pushedBack.hasNext()) {
+                return pushedBack.next();
+            }
+            return delegate.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Iterator is read-only");
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOUtils.closeIfCloseable(delegate);
+        }
+    }
+
     private final class IteratorAggregateEventStream implements AggregateEventStream, Closeable {
 
         private Iterator<AggregateEvent> currentBatch;
@@ -347,4 +678,173 @@ public class JdbcEventStore implements SnapshotEventStore, EventStoreQueryManage
         }
     }
 
+    /**
+     * 预读的事件流，辅助线程 按 batchSize 读取、转换 并反序列化 事件，放入容量为 prefetchBatches 的队列，
+     * 调用线程 从队列中取出批次。没有给定 iterator 时 辅助线程 从 firstSequenceNumber 开始 查询事件。
+     * 关闭时 辅助线程停止读取 并关闭底层的 iterator
+     */
+    private final class PrefetchingAggregateEventStream implements AggregateEventStream, Closeable {
+
+        private final BlockingQueue<Object> batches = new ArrayBlockingQueue<Object>(prefetchBatches);
+        private final Iterator<? extends SerializedAggregateEventData> iterator;
+        private final String type;
+        private final Identifier<?> aggregateIdentifier;
+        private final long firstSequenceNumber;
+        private final long lastSequenceNumber;
+        private volatile boolean closed;
+        private boolean endOfStream;
+        private Iterator<AggregateEvent> currentBatch;
+        private AggregateEvent next;
+
+        public PrefetchingAggregateEventStream(List<AggregateEvent> head,
+                                               Iterator<? extends SerializedAggregateEventData> iterator,
+                                               String type, Identifier<?> aggregateIdentifier,
+                                               long firstSequenceNumber, long lastSequenceNumber) {
+            this.iterator = iterator;
+            this.type = type;
+            this.aggregateIdentifier = aggregateIdentifier;
+            this.firstSequenceNumber = firstSequenceNumber;
+            this.lastSequenceNumber = lastSequenceNumber;
+            this.currentBatch = head.iterator();
+        }
+
+        /**
+         * 开始预读，executor 拒绝时 返回 false，给定的 iterator 保持打开 由调用者 继续使用
+         */
+        boolean start() {
+            try {
+                prefetchExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        prefetch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+            initializeNextItem();
+            return true;
+        }
+
+        private void prefetch() {
+            Iterator<? extends SerializedAggregateEventData> iterator = this.iterator;
+            try {
+                if (iterator == null) {
+                    iterator = eventEntryStore.fetchAggregateStream(type, aggregateIdentifier, firstSequenceNumber,
+                                                                    batchSize);
+                }
+                List<AggregateEvent> batch = new ArrayList<AggregateEvent>(batchSize);
+                while (!closed && iterator.hasNext()) {
+                    SerializedAggregateEventData entry = iterator.next();
+                    if (entry.getSequenceNumber() > lastSequenceNumber) {
+                        break;
+                    }
+                    for (AggregateEvent event : upcastAndDeserialize(entry, aggregateIdentifier,
+                                                                     serializer, upcasterChain, false)) {
+                        event.getPayload();
+                        batch.add(event);
+                    }
+                    if (batch.size() >= batchSize) {
+                        offer(batch);
+                        batch = new ArrayList<AggregateEvent>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    offer(batch);
+                }
+                offer(END_OF_STREAM);
+            } catch (RuntimeException e) {
+                offer(e);
+            } catch (Error e) {
+                offer(e);
+            } finally {
+                IOUtils.closeQuietlyIfCloseable(iterator);
+            }
+        }
+
+        /**
+         * 等待 调用者 取走批次，调用者 关闭事件流 或 长时间未读取(如 未关闭 就放弃了事件流)时 停止预读
+         */
+        private void offer(Object item) {
+            long deadline = System.currentTimeMillis() + PREFETCH_OFFER_TIMEOUT_MILLIS;
+            try {
+                while (!closed) {
+                    if (batches.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                    if (System.currentTimeMillis() >= deadline) {
+                        logger.warn("The event stream of aggregate [{}] was not read for {} ms. Stopped prefetching.",
+                                    aggregateIdentifier, PREFETCH_OFFER_TIMEOUT_MILLIS);
+                        closed = true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null && next.getSequenceNumber() <= lastSequenceNumber;
+        }
+
+        @Override
+        public AggregateEvent next() {
+            AggregateEvent current = next;
+            initializeNextItem();
+            return current;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void initializeNextItem() {
+            while (!currentBatch.hasNext() && !endOfStream && !closed) {
+                Object item;
+                try {
+                    item = batches.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EventStoreException("Interrupted while waiting for the next batch of events", e);
+                }
+                if (item == END_OF_STREAM) {
+                    endOfStream = true;
+                } else if (item instanceof RuntimeException) {
+                    endOfStream = true;
+                    throw (RuntimeException) item;
+                } else if (item instanceof Error) {
+                    endOfStream = true;
+                    throw (Error) item;
+                } else {
+                    currentBatch = ((List<AggregateEvent>) item).iterator();
+                }
+            }
+            next = currentBatch.hasNext() ? currentBatch.next() : null;
+        }
+
+        @Override
+        public AggregateEvent peek() {
+            return next;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            batches.clear();
+        }
+    }
+
+    private static final class PrefetchThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory delegate = new SluckThreadFactory(PREFETCH_THREAD_GROUP);
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = delegate.newThread(r);
+            thread.setName(PREFETCH_THREAD_GROUP.getName() + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
@@ -0,0 +1,206 @@
+package org.sluckframework.implement.eventstore.jdbc;
+
+import static org.sluckframework.common.jdbc.JdbcUtils.closeQuietly;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sluckframework.common.exception.Assert;
+import org.sluckframework.common.jdbc.ConnectionProvider;
+import org.sluckframework.common.serializer.SerializedType;
+import org.sluckframework.common.serializer.SimpleSerializedType;
+import org.sluckframework.domain.event.eventstore.EventStoreException;
+
+/**
+ * payload 类型字典，为每个 (payloadType, payloadRevision) 分配一个 数字编号 并保存在字典表中，
+ * 事件表中 只保存 "#编号"，代替 每行都重复的 完整类名 和 版本。编号 在内存中缓存，每个类型 只在第一次使用时 访问数据库。
+ * <p/>
+ * 新类型 在独立的连接上 插入 并立即提交，不能使用 加入 unitOfWork 的连接，
+ * 否则 事务回滚后 已缓存的编号 在字典表中 不存在
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class JdbcPayloadTypeDictionary {
+
+    public static final String DEFAULT_TYPE_ENTRY_TABLE = "PayloadTypeEntry";
+
+    private static final String REFERENCE_PREFIX = "#";
+
+    private final ConnectionProvider connectionProvider;
+    private final String tableName;
+    private final ConcurrentMap<SerializedType, String> referencesByType =
+            new ConcurrentHashMap<SerializedType, String>();
+    private final ConcurrentMap<String, SerializedType> typesByReference =
+            new ConcurrentHashMap<String, SerializedType>();
+
+    /**
+     * 使用 默认的表名 初始化
+     *
+     * @param connectionProvider The provider of auto-committing connections, not bound to a unit of work
+     */
+    public JdbcPayloadTypeDictionary(ConnectionProvider connectionProvider) {
+        this(connectionProvider, DEFAULT_TYPE_ENTRY_TABLE);
+    }
+
+    /**
+     * 使用 指定的表名 初始化
+     *
+     * @param connectionProvider The provider of auto-committing connections, not bound to a unit of work
+     * @param tableName          The name of the dictionary table
+     */
+    public JdbcPayloadTypeDictionary(ConnectionProvider connectionProvider, String tableName) {
+        Assert.notNull(connectionProvider, "connectionProvider may not be null");
+        this.connectionProvider = connectionProvider;
+        this.tableName = tableName;
+    }
+
+    /**
+     * 返回 类型的引用，类型 不在字典中时 先加入字典
+     *
+     * @param payloadType     The name of the payload type
+     * @param payloadRevision The revision of the payload type, may be <code>null</code>
+     * @return the reference to store instead of the type
+     */
+    public String referenceOf(String payloadType, String payloadRevision) {
+        SerializedType type = new SimpleSerializedType(payloadType, payloadRevision);
+        String reference = referencesByType.get(type);
+        if (reference == null) {
+            reference = REFERENCE_PREFIX + loadOrInsert(payloadType, payloadRevision);
+            cache(reference, type);
+        }
+        return reference;
+    }
+
+    /**
+     * 返回 值 是否是 字典的引用，不是引用的值 为 没有使用字典时 写入的完整类名
+     *
+     * @param value The value of the payload type column
+     * @return <code>true</code> if the value is a dictionary reference
+     */
+    public boolean isReference(String value) {
+        return value != null && value.startsWith(REFERENCE_PREFIX);
+    }
+
+    /**
+     * 返回 引用 对应的类型
+     *
+     * @param reference The reference returned by {@link #referenceOf(String, String)}
+     * @return the payload type the reference stands for
+     */
+    public SerializedType typeOf(String reference) {
+        SerializedType type = typesByReference.get(reference);
+        if (type == null) {
+            type = load(Long.parseLong(reference.substring(REFERENCE_PREFIX.length())));
+            cache(reference, type);
+        }
+        return type;
+    }
+
+    private void cache(String reference, SerializedType type) {
+        referencesByType.putIfAbsent(type, reference);
+        typesByReference.putIfAbsent(reference, type);
+    }
+
+    private long loadOrInsert(String payloadType, String payloadRevision) {
+        String revision = payloadRevision == null ? "" : payloadRevision;
+        Connection connection = null;
+        try {
+            connection = connectionProvider.getConnection();
+            Long id = findId(connection, payloadType, revision);
+            SQLException insertFailure = null;
+            if (id == null) {
+                PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO " + tableName + " (payloadType, payloadRevision) VALUES (?, ?)");
+                try {
+                    insert.setString(1, payloadType);
+                    insert.setString(2, revision);
+                    insert.executeUpdate();
+                } catch (SQLException e) {
+                    // another node may have inserted the same type concurrently
+                    insertFailure = e;
+                } finally {
+                    closeQuietly(insert);
+                }
+                id = findId(connection, payloadType, revision);
+            }
+            if (id == null) {
+                throw new EventStoreException("Unable to register payload type " + payloadType + " in " + tableName,
+                                              insertFailure);
+            }
+            return id;
+        } catch (SQLException e) {
+            throw new EventStoreException("Exception while registering payload type " + payloadType, e);
+        } finally {
+            closeQuietly(connection);
+        }
+    }
+
+    private Long findId(Connection connection, String payloadType, String revision) throws SQLException {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement(
+                    "SELECT typeId FROM " + tableName + " WHERE payloadType = ? AND payloadRevision = ?");
+            statement.setString(1, payloadType);
+            statement.setString(2, revision);
+            resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getLong(1) : null;
+        } finally {
+            closeQuietly(resultSet);
+            closeQuietly(statement);
+        }
+    }
+
+    private SerializedType load(long id) {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = connectionProvider.getConnection();
+            statement = connection.prepareStatement(
+                    "SELECT payloadType, payloadRevision FROM " + tableName + " WHERE typeId = ?");
+            statement.setLong(1, id);
+            resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                throw new EventStoreException("Unknown payload type reference #" + id);
+            }
+            String revision = resultSet.getString(2);
+            return new SimpleSerializedType(resultSet.getString(1),
+                                            revision == null || revision.isEmpty() ? null : revision);
+        } catch (SQLException e) {
+            throw new EventStoreException("Exception while loading payload type #" + id, e);
+        } finally {
+            closeQuietly(resultSet);
+            closeQuietly(statement);
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * 创建 字典表
+     *
+     * @throws SQLException when an error occurs executing SQL statements
+     */
+    public void createSchema() throws SQLException {
+        Connection connection = connectionProvider.getConnection();
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement("create table " + tableName + " (\n" +
+                    "        typeId bigint auto_increment not null,\n" +
+                    "        payloadType varchar(255) not null,\n" +
+                    "        payloadRevision varchar(255) not null,\n" +
+                    "        primary key (typeId),\n" +
+                    "        unique (payloadType, payloadRevision)\n" +
+                    "    );");
+            statement.executeUpdate();
+        } finally {
+            closeQuietly(statement);
+            closeQuietly(connection);
+        }
+    }
+}
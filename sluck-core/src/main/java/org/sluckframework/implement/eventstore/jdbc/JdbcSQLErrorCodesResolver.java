@@ -1,9 +1,11 @@
 package org.sluckframework.implement.eventstore.jdbc;
 
+import java.sql.SQLException;
+
 import org.sluckframework.common.jdbc.PersistenceExceptionResolver;
 
 /**
- * jdbc sql 解析 持久化异常
+ * jdbc sql 解析 持久化异常，批量执行时会同时检查 SQLException 的 next exception 链
  * @author sunxy
  * @time 2015年8月30日 上午1:56:39
  * @since 1.0
@@ -17,6 +19,8 @@ public class JdbcSQLErrorCodesResolver implements PersistenceExceptionResolver {
 
     private boolean causeIsEntityExistsException(Throwable exception) {
         return exception instanceof java.sql.SQLIntegrityConstraintViolationException
+                || (exception instanceof SQLException && ((SQLException) exception).getNextException() != null
+                        && causeIsEntityExistsException(((SQLException) exception).getNextException()))
                 || (exception.getCause() != null && causeIsEntityExistsException(exception.getCause()));
     }
 }
@@ -0,0 +1,151 @@
+package org.sluckframework.implement.eventstore.jdbc;
+
+import java.io.ObjectStreamException;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.joda.time.DateTime;
+import org.sluckframework.cqrs.eventhanding.tracking.TrackingToken;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * jdbc 事件仓储 的跟踪令牌，记录 已处理的最大 全局序号，以及 小于该序号 但尚未读到的序号(gaps)。
+ * <p/>
+ * 全局序号 在插入时分配，提交顺序 可能与序号顺序不同，先分配序号的事务 可能晚于后分配的事务提交，
+ * 因此跳过的序号 会被记为 gap 并在之后的读取中 再次查询。回滚的事务 留下的序号 永远不会出现，
+ * 所以只保留 距离最大序号 gapWindow 以内的 gap。
+ * <p/>
+ * 之前版本的令牌 按 (timestamp, sequenceNumber, aggregateIdentifier) 定位事件，仍可以读取，
+ * 事件仓储 在第一次读取时 将其转换为 全局序号 的令牌，见 {@link #isLegacy()}
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JdbcTrackingToken implements TrackingToken {
+
+    private static final long serialVersionUID = 4671834982355640132L;
+
+    private final long globalIndex;
+    private final SortedSet<Long> gaps;
+    // the position of a token written by the previous version, null for global index tokens
+    private final DateTime timestamp;
+    private final long sequenceNumber;
+    private final String aggregateIdentifier;
+
+    /**
+     * 使用 最大的已处理序号 和 gaps 初始化
+     *
+     * @param globalIndex The highest global index processed
+     * @param gaps        The global indices below globalIndex that have not been seen yet
+     */
+    public JdbcTrackingToken(long globalIndex, SortedSet<Long> gaps) {
+        this(globalIndex, gaps, null, 0, null);
+    }
+
+    /**
+     * 使用 之前版本的 事件排序字段 初始化，仅用于 读取 已保存的令牌
+     *
+     * @param timestamp           The timestamp of the last processed event
+     * @param sequenceNumber      The sequence number of the last processed event
+     * @param aggregateIdentifier The identifier of the aggregate that published the last processed event
+     */
+    public JdbcTrackingToken(DateTime timestamp, long sequenceNumber, String aggregateIdentifier) {
+        this(0, null, timestamp, sequenceNumber, aggregateIdentifier);
+    }
+
+    private JdbcTrackingToken(long globalIndex, SortedSet<Long> gaps, DateTime timestamp, long sequenceNumber,
+                              String aggregateIdentifier) {
+        this.globalIndex = globalIndex;
+        this.gaps = gaps == null ? Collections.<Long>emptySortedSet()
+                : Collections.unmodifiableSortedSet(new TreeSet<Long>(gaps));
+        this.timestamp = timestamp;
+        this.sequenceNumber = sequenceNumber;
+        this.aggregateIdentifier = aggregateIdentifier;
+    }
+
+    /**
+     * 读取 两种格式的令牌，有 timestamp 时 为之前版本的令牌
+     */
+    @JsonCreator
+    static JdbcTrackingToken fromJson(@JsonProperty("globalIndex") long globalIndex,
+                                      @JsonProperty("gaps") SortedSet<Long> gaps,
+                                      @JsonProperty("timestamp") DateTime timestamp,
+                                      @JsonProperty("sequenceNumber") Long sequenceNumber,
+                                      @JsonProperty("aggregateIdentifier") String aggregateIdentifier) {
+        if (timestamp != null) {
+            return new JdbcTrackingToken(timestamp, sequenceNumber == null ? 0 : sequenceNumber,
+                                         aggregateIdentifier);
+        }
+        return new JdbcTrackingToken(globalIndex, gaps);
+    }
+
+    /**
+     * java 反序列化 之前版本的令牌时 gaps 为 null
+     */
+    private Object readResolve() throws ObjectStreamException {
+        return new JdbcTrackingToken(globalIndex, gaps, timestamp, sequenceNumber, aggregateIdentifier);
+    }
+
+    /**
+     * 返回 处理了 给定序号的事件之后 的令牌
+     *
+     * @param index     The global index of the processed event
+     * @param gapWindow The maximum distance from the highest global index at which gaps are kept
+     * @return the token positioned after the given event
+     */
+    public JdbcTrackingToken advanceTo(long index, long gapWindow) {
+        TreeSet<Long> newGaps = new TreeSet<Long>(gaps);
+        long newIndex = globalIndex;
+        if (!newGaps.remove(index)) {
+            for (long gap = Math.max(globalIndex + 1, index - gapWindow); gap < index; gap++) {
+                newGaps.add(gap);
+            }
+            newIndex = Math.max(globalIndex, index);
+        }
+        return new JdbcTrackingToken(newIndex, newGaps.tailSet(newIndex - gapWindow));
+    }
+
+    /**
+     * 返回 是否为 之前版本 按事件排序字段 定位的令牌，此时 全局序号 和 gaps 没有意义
+     *
+     * @return <code>true</code> if the token holds the position of the previous token format
+     */
+    @JsonIgnore
+    public boolean isLegacy() {
+        return timestamp != null;
+    }
+
+    public long getGlobalIndex() {
+        return globalIndex;
+    }
+
+    public SortedSet<Long> getGaps() {
+        return gaps;
+    }
+
+    public DateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public Long getSequenceNumber() {
+        return timestamp == null ? null : sequenceNumber;
+    }
+
+    public String getAggregateIdentifier() {
+        return aggregateIdentifier;
+    }
+
+    @Override
+    public String toString() {
+        if (isLegacy()) {
+            return "JdbcTrackingToken{" + timestamp + ", " + sequenceNumber + ", " + aggregateIdentifier + "}";
+        }
+        return "JdbcTrackingToken{globalIndex=" + globalIndex + ", gaps=" + gaps + "}";
+    }
+}
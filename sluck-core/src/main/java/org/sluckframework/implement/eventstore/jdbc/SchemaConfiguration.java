@@ -1,6 +1,23 @@
 package org.sluckframework.implement.eventstore.jdbc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * schema配置 指定 快照 和 事件 存储
+ * <p/>
+ * 可以为 指定的聚合类型 配置 独立的表，表名为 默认表名 + "_" + 后缀，其它聚合类型 仍使用默认表。
+ * 跨表的查询(visitEvents 和 按全局序号 跟踪读取) 使用 union all。
+ * <p/>
+ * 事件表的 globalIndex 列 需要 显式开启，默认 不读写该列，与 之前版本 创建的表 兼容。
+ * 按全局序号 跟踪读取 和 一次查询 读取快照与事件 需要该列，已有的表 可以通过
+ * {@link GenericEventSqlSchema#sql_addGlobalIndexColumn(java.sql.Connection)} 添加。
+ * <p/>
+ * 各表 自增的 globalIndex 相互独立，会重复，因此 使用独立表时 不支持 按全局序号 跟踪读取。
+ * 只有 各表的 globalIndex 由使用者 保证 来自同一个数据库序列(如 PostgreSQL 的 sequence 作为 各表的默认值) 时，
+ * 才可以 使用 globalIndexShared 为 true 的构造函数 开启跟踪读取
  * 
  * @author sunxy
  * @time 2015年8月30日 下午11:13:56
@@ -14,6 +31,9 @@ public class SchemaConfiguration {
 
     private final String eventEntryTable;
     private final String snapshotEntryTable;
+    private final Map<String, String> aggregateTypeTableSuffixes;
+    private final boolean globalIndex;
+    private final boolean globalIndexShared;
 
     /**
      * 使用默认值 初始化
@@ -29,8 +49,66 @@ public class SchemaConfiguration {
      * @param snapshotEntryTable
      */
     public SchemaConfiguration(String eventEntryTable, String snapshotEntryTable) {
+        this(eventEntryTable, snapshotEntryTable, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * 使用指定的表名 和 事件表 是否有 globalIndex 列 初始化
+     *
+     * @param eventEntryTable    The default domain event table
+     * @param snapshotEntryTable The default snapshot table
+     * @param globalIndex        Whether the event table has a globalIndex column
+     */
+    public SchemaConfiguration(String eventEntryTable, String snapshotEntryTable, boolean globalIndex) {
+        this(eventEntryTable, snapshotEntryTable, Collections.<String, String>emptyMap(), globalIndex, false);
+    }
+
+    /**
+     * 使用指定的表名 和 独立存储的聚合类型 初始化
+     *
+     * @param eventEntryTable            The default domain event table
+     * @param snapshotEntryTable         The default snapshot table
+     * @param aggregateTypeTableSuffixes The table name suffix of each aggregate type stored in its own tables
+     */
+    public SchemaConfiguration(String eventEntryTable, String snapshotEntryTable,
+                               Map<String, String> aggregateTypeTableSuffixes) {
+        this(eventEntryTable, snapshotEntryTable, aggregateTypeTableSuffixes, false);
+    }
+
+    /**
+     * 使用指定的表名、独立存储的聚合类型 和 各事件表 是否共用 globalIndex 序列 初始化，
+     * globalIndexShared 为 true 时 事件表 有 globalIndex 列
+     *
+     * @param eventEntryTable            The default domain event table
+     * @param snapshotEntryTable         The default snapshot table
+     * @param aggregateTypeTableSuffixes The table name suffix of each aggregate type stored in its own tables
+     * @param globalIndexShared          Whether the globalIndex of all event tables is taken from one database
+     *                                   sequence, which the tables created by the schema do not provide
+     */
+    public SchemaConfiguration(String eventEntryTable, String snapshotEntryTable,
+                               Map<String, String> aggregateTypeTableSuffixes, boolean globalIndexShared) {
+        this(eventEntryTable, snapshotEntryTable, aggregateTypeTableSuffixes, globalIndexShared, globalIndexShared);
+    }
+
+    /**
+     * 使用指定的表名、独立存储的聚合类型、事件表 是否有 globalIndex 列 以及 各事件表 是否共用 globalIndex 序列 初始化
+     *
+     * @param eventEntryTable            The default domain event table
+     * @param snapshotEntryTable         The default snapshot table
+     * @param aggregateTypeTableSuffixes The table name suffix of each aggregate type stored in its own tables
+     * @param globalIndex                Whether the event tables have a globalIndex column
+     * @param globalIndexShared          Whether the globalIndex of all event tables is taken from one database
+     *                                   sequence, which the tables created by the schema do not provide
+     */
+    public SchemaConfiguration(String eventEntryTable, String snapshotEntryTable,
+                               Map<String, String> aggregateTypeTableSuffixes, boolean globalIndex,
+                               boolean globalIndexShared) {
+        this.globalIndex = globalIndex;
+        this.globalIndexShared = globalIndexShared;
         this.eventEntryTable = eventEntryTable;
         this.snapshotEntryTable = snapshotEntryTable;
+        this.aggregateTypeTableSuffixes = Collections.unmodifiableMap(
+                new HashMap<String, String>(aggregateTypeTableSuffixes));
     }
 
     public String domainEventEntryTable() {
@@ -41,4 +119,53 @@ public class SchemaConfiguration {
         return snapshotEntryTable;
     }
 
+    /**
+     * 返回 聚合类型 对应的 事件表
+     *
+     * @param aggregateType The type of the aggregate
+     * @return the dedicated event table of the type, or the default event table
+     */
+    public String domainEventEntryTable(String aggregateType) {
+        String suffix = aggregateTypeTableSuffixes.get(aggregateType);
+        return suffix == null ? eventEntryTable : eventEntryTable + "_" + suffix;
+    }
+
+    /**
+     * 返回 聚合类型 对应的 快照表
+     *
+     * @param aggregateType The type of the aggregate
+     * @return the dedicated snapshot table of the type, or the default snapshot table
+     */
+    public String snapshotEntryTable(String aggregateType) {
+        String suffix = aggregateTypeTableSuffixes.get(aggregateType);
+        return suffix == null ? snapshotEntryTable : snapshotEntryTable + "_" + suffix;
+    }
+
+    /**
+     * 返回 使用独立表的 聚合类型
+     *
+     * @return the aggregate types that have their own tables
+     */
+    public Set<String> dedicatedAggregateTypes() {
+        return aggregateTypeTableSuffixes.keySet();
+    }
+
+    /**
+     * 返回 事件表 是否有 globalIndex 列
+     *
+     * @return <code>true</code> if the event tables have a globalIndex column
+     */
+    public boolean hasGlobalIndex() {
+        return globalIndex;
+    }
+
+    /**
+     * 返回 是否可以 按全局序号 跨所有事件表 跟踪读取，有 globalIndex 列，且 没有独立表 或 各表 共用 globalIndex 序列 时 为 true
+     *
+     * @return <code>true</code> if the global index is unique across all event tables
+     */
+    public boolean isGlobalIndexUnique() {
+        return globalIndex && (aggregateTypeTableSuffixes.isEmpty() || globalIndexShared);
+    }
+
 }
@@ -45,6 +45,24 @@ public abstract class MonitorRegistry {
         }
     }
 
+    /**
+     * 注销 之前注册的 监视器 bean，用于 生命周期 短于 应用 的组件
+     *
+     * @param monitoringBean The bean registered earlier
+     * @param componentType  The type of component the bean was registered for
+     */
+    public static void unregisterMonitoringBean(Object monitoringBean, Class<?> componentType) {
+        for (MonitorRegistry registry : registries) {
+            try {
+                registry.unregisterBean(monitoringBean, componentType);
+            } catch (Exception e) {
+                logger.warn("Exception when unregistering {} with {} ", monitoringBean, registry, e);
+            } catch (Error e) {
+                logger.warn("Error when unregistering {} with {} ", monitoringBean, registry, e);
+            }
+        }
+    }
+
     /**
      * 注册 自定义的 监视器 bean
      *
@@ -53,4 +71,13 @@ public abstract class MonitorRegistry {
      */
     protected abstract void registerBean(Object monitoringBean, Class<?> componentType);
 
+    /**
+     * 注销 监视器 bean，默认 不做任何操作
+     *
+     * @param monitoringBean The bean to unregister
+     * @param componentType  The type of component the bean was registered for
+     */
+    protected void unregisterBean(Object monitoringBean, Class<?> componentType) {
+    }
+
 }
@@ -0,0 +1,88 @@
+package org.sluck.test.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.sluckframework.cache.CacheInvalidation;
+import org.sluckframework.cache.CacheInvalidationListener;
+import org.sluckframework.cache.SocketCacheInvalidationBus;
+import org.sluckframework.domain.identifier.DefaultIdentifier;
+
+/**
+ * 向 失效通知通道 发送 不是通知的 java 序列化对象(String) 和 无法解析的字节，
+ * 检查 接收线程 丢弃它们 并继续 接收 之后的 正常通知
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class SocketCacheInvalidationMalformedPacket {
+
+    public static void main(String[] args) throws Exception {
+        int publisherPort = freePort();
+        int receiverPort = freePort();
+        SocketCacheInvalidationBus publisher = new SocketCacheInvalidationBus(publisherPort, receiverPort);
+        SocketCacheInvalidationBus receiver = new SocketCacheInvalidationBus(receiverPort, publisherPort);
+        final BlockingQueue<CacheInvalidation> received = new LinkedBlockingQueue<CacheInvalidation>();
+        receiver.subscribe(new CacheInvalidationListener() {
+            @Override
+            public void onInvalidation(CacheInvalidation invalidation) {
+                received.add(invalidation);
+            }
+        });
+        try {
+            DatagramSocket attacker = new DatagramSocket();
+            try {
+                send(attacker, receiverPort, serialize("not an invalidation"));
+                send(attacker, receiverPort, new byte[]{1, 2, 3, 4});
+            } finally {
+                attacker.close();
+            }
+
+            CacheInvalidation invalidation = new CacheInvalidation("publisher", "Counter",
+                                                                   new DefaultIdentifier("counter-1"), 7);
+            publisher.publish(invalidation);
+            CacheInvalidation delivered = received.poll(5, TimeUnit.SECONDS);
+            if (delivered == null) {
+                throw new AssertionError("the receiver stopped after the malformed datagrams");
+            }
+            if (delivered.getVersion() != 7 || !"Counter".equals(delivered.getAggregateType())) {
+                throw new AssertionError("unexpected invalidation " + delivered);
+            }
+            if (!received.isEmpty()) {
+                throw new AssertionError("malformed datagrams were dispatched: " + received);
+            }
+            System.out.println("OK " + delivered);
+        } finally {
+            publisher.shutDown();
+            receiver.shutDown();
+        }
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void send(DatagramSocket socket, int port, byte[] data) throws IOException {
+        socket.send(new DatagramPacket(data, data.length, InetAddress.getLoopbackAddress(), port));
+    }
+
+    private static int freePort() throws IOException {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
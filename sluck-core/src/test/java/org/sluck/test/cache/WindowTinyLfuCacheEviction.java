@@ -0,0 +1,149 @@
+package org.sluck.test.cache;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sluckframework.cache.Cache;
+import org.sluckframework.cache.EntryWeigher;
+import org.sluckframework.cache.WindowTinyLfuCache;
+
+/**
+ * 检查 W-TinyLFU 缓存 的 淘汰、准入 和 权重限制：
+ * 超出容量的条目 被淘汰并通知监听器；经常访问的条目 不会被 只访问一次的条目 挤出；
+ * 按权重 限制容量时 总权重 不超过上限，频率统计 按条目数 而不是 权重 分配
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class WindowTinyLfuCacheEviction {
+
+    public static void main(String[] args) throws Exception {
+        evictsBeyondMaximumSize();
+        keepsFrequentEntriesDuringScan();
+        limitsTotalWeight();
+        sizesSketchByEntries();
+        System.out.println("OK");
+    }
+
+    private static void evictsBeyondMaximumSize() {
+        WindowTinyLfuCache cache = new WindowTinyLfuCache(100, 100, singletonWeigher(), false);
+        final AtomicInteger expired = new AtomicInteger();
+        cache.registerCacheEntryListener(new Cache.EntryListenerAdapter() {
+            @Override
+            public void onEntryExpired(Object key) {
+                expired.incrementAndGet();
+            }
+        });
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key-" + i, i);
+        }
+        int present = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (cache.containsKey("key-" + i)) {
+                present++;
+            }
+        }
+        check(present == 100, "expected 100 entries, found " + present);
+        check(expired.get() == 900, "expected 900 expired notifications, got " + expired.get());
+        check(cache.getStatistics().getEvictionCount() == 900,
+              "eviction count " + cache.getStatistics().getEvictionCount());
+        System.out.println("eviction: " + present + " entries kept, " + expired.get() + " expired");
+    }
+
+    private static void keepsFrequentEntriesDuringScan() {
+        WindowTinyLfuCache cache = new WindowTinyLfuCache(100, 100, singletonWeigher(), false);
+        for (int i = 0; i < 50; i++) {
+            cache.put("hot-" + i, i);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get("hot-" + i);
+            }
+        }
+        // a replay loading every aggregate once
+        for (int i = 0; i < 10000; i++) {
+            cache.put("scan-" + i, i);
+        }
+        int hot = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.containsKey("hot-" + i)) {
+                hot++;
+            }
+        }
+        check(hot >= 45, "only " + hot + " of 50 frequently read entries survived the scan");
+        System.out.println("admission: " + hot + " of 50 frequent entries kept after scanning 10000 keys");
+    }
+
+    private static void limitsTotalWeight() {
+        EntryWeigher lengthWeigher = new EntryWeigher() {
+            @Override
+            public int weigh(Object key, Object value) {
+                return ((String) value).length();
+            }
+        };
+        WindowTinyLfuCache cache = new WindowTinyLfuCache(1000, 0, lengthWeigher, false);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key-" + i, repeat('x', 10 + i % 90));
+            long weight = cache.getStatistics().getWeightedSize();
+            check(weight <= 1000, "weighted size " + weight + " exceeds the maximum");
+        }
+        cache.put("big", repeat('y', 900));
+        check(cache.getStatistics().getWeightedSize() <= 1000,
+              "weighted size " + cache.getStatistics().getWeightedSize() + " after a heavy entry");
+        System.out.println("weight: " + cache.getStatistics().getSize() + " entries weighing "
+                                   + cache.getStatistics().getWeightedSize());
+    }
+
+    private static void sizesSketchByEntries() throws Exception {
+        EntryWeigher byteWeigher = new EntryWeigher() {
+            @Override
+            public int weigh(Object key, Object value) {
+                return ((byte[]) value).length;
+            }
+        };
+        WindowTinyLfuCache cache = new WindowTinyLfuCache(1L << 30, byteWeigher);
+        try {
+            check(sketchLength(cache) <= 16, "sketch allocated " + sketchLength(cache) + " counters up front");
+            for (int i = 0; i < 1000; i++) {
+                cache.put("key-" + i, new byte[1024]);
+            }
+            int length = sketchLength(cache);
+            check(length >= 1000 && length <= 1024, "sketch for 1000 entries has " + length + " counters");
+            System.out.println("sketch: " + length + " counters for 1000 entries of 1 KB");
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    private static int sketchLength(WindowTinyLfuCache cache) throws Exception {
+        Field sketchField = WindowTinyLfuCache.class.getDeclaredField("sketch");
+        sketchField.setAccessible(true);
+        Object sketch = sketchField.get(cache);
+        Field tableField = sketch.getClass().getDeclaredField("table");
+        tableField.setAccessible(true);
+        return ((long[]) tableField.get(sketch)).length;
+    }
+
+    private static EntryWeigher singletonWeigher() {
+        return new EntryWeigher() {
+            @Override
+            public int weigh(Object key, Object value) {
+                return 1;
+            }
+        };
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
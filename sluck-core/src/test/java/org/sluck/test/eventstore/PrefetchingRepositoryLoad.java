@@ -0,0 +1,193 @@
+package org.sluck.test.eventstore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.joda.time.DateTime;
+import org.sluckframework.common.serializer.SerializedAggregateEventData;
+import org.sluckframework.common.serializer.SerializedObject;
+import org.sluckframework.common.serializer.SimpleSerializedAggregateEventData;
+import org.sluckframework.common.serializer.json.JacksonSerializer;
+import org.sluckframework.cqrs.eventsourcing.EventSourcingRepository;
+import org.sluckframework.cqrs.eventsourcing.annotation.AbstractAnnotatedAggregateRoot;
+import org.sluckframework.cqrs.eventsourcing.annotation.AggregateIdentifier;
+import org.sluckframework.cqrs.eventsourcing.annotation.EventSourcingHandler;
+import org.sluckframework.cqrs.unitofwork.CurrentUnitOfWork;
+import org.sluckframework.cqrs.unitofwork.DefaultUnitOfWork;
+import org.sluckframework.cqrs.unitofwork.UnitOfWork;
+import org.sluckframework.domain.event.aggregate.AggregateEvent;
+import org.sluckframework.domain.identifier.DefaultIdentifier;
+import org.sluckframework.domain.identifier.Identifier;
+import org.sluckframework.implement.eventstore.jdbc.EventEntryStore;
+import org.sluckframework.implement.eventstore.jdbc.JdbcEventStore;
+
+/**
+ * 在 UnitOfWork 中 通过 repository 加载聚合，检查 预读 在预读线程上 使用不绑定 UnitOfWork 的连接 读取后续事件，
+ * 事件仓储 使用 记录每次查询 所在线程 的内存 EventEntryStore
+ * <p/>
+ * 参数: [事件数量] [batchSize]
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class PrefetchingRepositoryLoad {
+
+    public static void main(String[] args) {
+        int eventCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        JacksonSerializer serializer = new JacksonSerializer();
+        DefaultIdentifier counterId = new DefaultIdentifier(UUID.randomUUID().toString());
+        List<SerializedAggregateEventData<byte[]>> entries = new ArrayList<SerializedAggregateEventData<byte[]>>();
+        for (int i = 0; i < eventCount; i++) {
+            SerializedObject<byte[]> payload = serializer.serialize(new CounterIncrementedEvent(counterId.toString()),
+                                                                    byte[].class);
+            entries.add(new SimpleSerializedAggregateEventData<byte[]>(UUID.randomUUID().toString(), counterId, i,
+                                                                       new DateTime(), payload));
+        }
+        RecordingEventEntryStore entryStore = new RecordingEventEntryStore(entries);
+        JdbcEventStore eventStore = new JdbcEventStore(entryStore, serializer);
+        eventStore.setBatchSize(batchSize);
+        eventStore.setPrefetchBatches(2);
+        EventSourcingRepository<Counter, DefaultIdentifier> repository =
+                new EventSourcingRepository<Counter, DefaultIdentifier>(Counter.class, eventStore);
+
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        Counter counter;
+        try {
+            counter = repository.load(counterId);
+        } finally {
+            unitOfWork.rollback();
+        }
+        eventStore.shutdown();
+
+        check(counter.getCount() == eventCount, "applied " + counter.getCount() + " of " + eventCount + " events");
+        check(entryStore.fetches.size() == 2, "expected 2 queries, got " + entryStore.fetches);
+        Fetch first = entryStore.fetches.get(0);
+        Fetch readAhead = entryStore.fetches.get(1);
+        check(first.unitOfWork && first.thread.equals(Thread.currentThread().getName()),
+              "first batch should be read on the calling thread in the unit of work: " + first);
+        check(!readAhead.unitOfWork && readAhead.thread.startsWith("JdbcEventStore-prefetch"),
+              "read-ahead should run on a prefetch thread outside the unit of work: " + readAhead);
+        check(readAhead.firstSequenceNumber == batchSize,
+              "read-ahead should continue after the first batch: " + readAhead);
+        System.out.println("OK " + entryStore.fetches);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static class Counter extends AbstractAnnotatedAggregateRoot<DefaultIdentifier> {
+
+        private static final long serialVersionUID = 1L;
+
+        @AggregateIdentifier
+        private DefaultIdentifier id;
+        private int count;
+
+        @EventSourcingHandler
+        public void on(CounterIncrementedEvent event) {
+            this.id = new DefaultIdentifier(event.getCounterId());
+            count++;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    public static class CounterIncrementedEvent {
+
+        private String counterId;
+
+        public CounterIncrementedEvent() {
+        }
+
+        public CounterIncrementedEvent(String counterId) {
+            this.counterId = counterId;
+        }
+
+        public String getCounterId() {
+            return counterId;
+        }
+
+        public void setCounterId(String counterId) {
+            this.counterId = counterId;
+        }
+    }
+
+    private static final class Fetch {
+
+        private final String thread = Thread.currentThread().getName();
+        private final boolean unitOfWork = CurrentUnitOfWork.isStarted();
+        private final long firstSequenceNumber;
+
+        private Fetch(long firstSequenceNumber) {
+            this.firstSequenceNumber = firstSequenceNumber;
+        }
+
+        @Override
+        public String toString() {
+            return "Fetch{from " + firstSequenceNumber + " on " + thread + (unitOfWork ? " in UoW" : "") + "}";
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final class RecordingEventEntryStore implements EventEntryStore<byte[]> {
+
+        private final List<SerializedAggregateEventData<byte[]>> entries;
+        private final List<Fetch> fetches = new CopyOnWriteArrayList<Fetch>();
+
+        private RecordingEventEntryStore(List<SerializedAggregateEventData<byte[]>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public Iterator<? extends SerializedAggregateEventData<byte[]>> fetchAggregateStream(
+                String aggregateType, Identifier<?> identifier, long firstSequenceNumber, int batchSize) {
+            fetches.add(new Fetch(firstSequenceNumber));
+            return entries.subList((int) firstSequenceNumber, entries.size()).iterator();
+        }
+
+        @Override
+        public SerializedAggregateEventData<byte[]> loadLastSnapshotEvent(String aggregateType,
+                                                                        Identifier<?> identifier) {
+            return null;
+        }
+
+        @Override
+        public Class<byte[]> getDataType() {
+            return byte[].class;
+        }
+
+        @Override
+        public void persistEvent(String aggregateType, AggregateEvent event,
+                                 SerializedObject<byte[]> serializedPayload) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<? extends SerializedAggregateEventData<byte[]>> fetchFiltered(String whereClause,
+                                                                                    List<Object> parameters,
+                                                                                    int batchSize) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void pruneSnapshots(String type, AggregateEvent mostRecentSnapshotEvent, int maxSnapshotsArchived) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void persistSnapshot(String aggregateType, AggregateEvent snapshotEvent,
+                                    SerializedObject<byte[]> serializedPayload) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
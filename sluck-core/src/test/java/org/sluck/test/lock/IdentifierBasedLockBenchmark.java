@@ -0,0 +1,81 @@
+package org.sluck.test.lock;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.sluckframework.common.lock.IdentifierBasedLock;
+
+/**
+ * 比较 默认的 IdentifierBasedLock 与 分段锁 的吞吐量，每种场景 先预热 再测量
+ * <p/>
+ * 参数: [线程数] [每个线程的操作次数] [分段数]
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class IdentifierBasedLockBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int stripes = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+
+        // every thread locks its own identifiers: measures the uncontended path
+        String[][] distinct = new String[threads][];
+        // all threads lock the same few identifiers: measures contention
+        String[][] shared = new String[threads][];
+        for (int t = 0; t < threads; t++) {
+            distinct[t] = new String[1024];
+            for (int i = 0; i < distinct[t].length; i++) {
+                distinct[t][i] = "aggregate-" + t + "-" + i;
+            }
+            shared[t] = new String[16];
+            for (int i = 0; i < shared[t].length; i++) {
+                shared[t][i] = "aggregate-" + i;
+            }
+        }
+
+        for (int round = 0; round <= ROUNDS; round++) {
+            String prefix = round == 0 ? "warmup " : "round " + round + " ";
+            report(prefix + "distinct/default", run(new IdentifierBasedLock(), distinct, operations), operations, threads);
+            report(prefix + "distinct/striped", run(new IdentifierBasedLock(stripes), distinct, operations), operations, threads);
+            report(prefix + "shared/default  ", run(new IdentifierBasedLock(), shared, operations), operations, threads);
+            report(prefix + "shared/striped  ", run(new IdentifierBasedLock(stripes), shared, operations), operations, threads);
+        }
+    }
+
+    private static long run(final IdentifierBasedLock lock, final String[][] identifiers, final int operations)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(identifiers.length);
+        for (final String[] ids : identifiers) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < operations; i++) {
+                            String identifier = ids[i & (ids.length - 1)];
+                            lock.obtainLock(identifier);
+                            lock.releaseLock(identifier);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        finished.await();
+        return System.nanoTime() - begin;
+    }
+
+    private static void report(String name, long nanos, int operations, int threads) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%s %,12.0f ops/s%n", name, operations * (double) threads / seconds);
+    }
+}
@@ -0,0 +1,147 @@
+package org.sluck.test.saga;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.sluckframework.cache.WeakReferenceCache;
+import org.sluckframework.cqrs.saga.AssociationValue;
+import org.sluckframework.cqrs.saga.Saga;
+import org.sluckframework.cqrs.saga.SagaRepository;
+import org.sluckframework.cqrs.saga.annotation.AbstractAnnotatedSaga;
+import org.sluckframework.cqrs.saga.repository.CachingSagaRepository;
+import org.sluckframework.cqrs.saga.repository.inmemory.InMemorySagaRepository;
+
+/**
+ * 比较 saga 查找路径上 排序复制(之前的实现) 与 只读视图 的吞吐量 和 每次操作的分配字节数，每种场景 先预热 再测量
+ * <p/>
+ * 参数: [saga 数量] [每轮的操作次数] [每批的 saga 数量]
+ *
+ * @author sunxy
+ * @since 1.0
+ */
+public class SagaLookupBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        int sagaCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        InMemorySagaRepository inMemory = new InMemorySagaRepository();
+        AssociationValue[] orders = new AssociationValue[sagaCount];
+        String[] sagaIds = new String[sagaCount];
+        for (int i = 0; i < sagaCount; i++) {
+            orders[i] = new AssociationValue("orderId", "order-" + i);
+            OrderSaga saga = new OrderSaga(UUID.randomUUID().toString(), orders[i]);
+            sagaIds[i] = saga.getSagaIdentifier();
+            inMemory.add(saga);
+        }
+        CachingSagaRepository caching = new CachingSagaRepository(inMemory, new WeakReferenceCache(),
+                                                                  new WeakReferenceCache());
+        Map<String, Saga> sagas = inMemory.loadAll(Arrays.asList(sagaIds));
+
+        for (int round = 0; round <= ROUNDS; round++) {
+            String prefix = round == 0 ? "warmup " : "round " + round + " ";
+            find(prefix + "in-memory find/sorted copy ", inMemory, orders, operations, true);
+            find(prefix + "in-memory find/view        ", inMemory, orders, operations, false);
+            find(prefix + "caching find/hash copy     ", caching, orders, operations, true);
+            find(prefix + "caching find/view          ", caching, orders, operations, false);
+            batch(prefix + "processed sagas/TreeMap    ", new TreeMap<String, Saga>(), sagas, sagaIds,
+                  operations, batchSize);
+            batch(prefix + "processed sagas/HashMap    ", new HashMap<String, Saga>(), sagas, sagaIds,
+                  operations, batchSize);
+        }
+    }
+
+    /**
+     * 之前 InMemorySagaRepository.find 返回新的 TreeSet，AbstractSagaManager 再复制到 TreeSet，
+     * CachingSagaRepository.find 复制到新的 HashSet，copy 为 true 时 模拟这些复制
+     */
+    private static void find(String name, SagaRepository repository, AssociationValue[] associationValues,
+                             int operations, boolean copy) {
+        long allocated = allocatedBytes();
+        long begin = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < operations; i++) {
+            AssociationValue associationValue = associationValues[i % associationValues.length];
+            Set<String> sagaIdentifiers = repository.find(OrderSaga.class, associationValue);
+            if (copy) {
+                sagaIdentifiers = repository instanceof CachingSagaRepository
+                        ? new HashSet<String>(sagaIdentifiers) : new TreeSet<String>(sagaIdentifiers);
+            }
+            for (String sagaIdentifier : sagaIdentifiers) {
+                found += sagaIdentifier.length();
+            }
+        }
+        report(name, System.nanoTime() - begin, allocatedBytes() - allocated, operations);
+        sink = found;
+    }
+
+    /**
+     * 模拟 AsyncSagaEventProcessor 每批事件 对 processedSagas 的使用: 加入、查找、遍历、清空
+     */
+    private static void batch(String name, Map<String, Saga> processedSagas, Map<String, Saga> sagas,
+                              String[] sagaIds, int operations, int batchSize) {
+        long allocated = allocatedBytes();
+        long begin = System.nanoTime();
+        int invoked = 0;
+        for (int i = 0; i < operations; i += batchSize) {
+            for (int j = 0; j < batchSize; j++) {
+                String sagaId = sagaIds[(i + j) % sagaIds.length];
+                if (!processedSagas.containsKey(sagaId)) {
+                    processedSagas.put(sagaId, sagas.get(sagaId));
+                }
+            }
+            invoked += invokeAll(processedSagas.values());
+            processedSagas.clear();
+        }
+        report(name, System.nanoTime() - begin, allocatedBytes() - allocated, operations);
+        sink = invoked;
+    }
+
+    private static int invokeAll(Collection<Saga> sagas) {
+        int active = 0;
+        for (Saga saga : sagas) {
+            if (saga.isActive()) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static void report(String name, long nanos, long allocated, int operations) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%s %,12.0f ops/s %8.1f bytes/op%n", name, operations / seconds,
+                          allocated / (double) operations);
+    }
+
+    public static class OrderSaga extends AbstractAnnotatedSaga {
+
+        private static final long serialVersionUID = -6412098517744519224L;
+
+        public OrderSaga(String identifier, AssociationValue order) {
+            super(identifier);
+            associateWith(order);
+        }
+    }
+}